@@ -31,6 +31,7 @@ import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.BiFunction;
@@ -43,6 +44,8 @@ public class JiraConnection extends JsonPluginFile<Configuration> {
   private class IssueCache extends KeyValueCache<String, Stream<Issue>> {
     public IssueCache(Path fileName) {
       super("jira-issue " + fileName.toString(), 15, ReplacingRecord::new);
+      maximumEntries(10_000);
+      singleFlightTimeout(Duration.ofMinutes(1));
     }
 
     @Override
@@ -1,13 +1,14 @@
 package ca.on.oicr.gsi.shesmu.loki;
 
-import ca.on.oicr.gsi.Pair;
 import ca.on.oicr.gsi.prometheus.LatencyHistogram;
 import ca.on.oicr.gsi.shesmu.plugin.Definer;
 import ca.on.oicr.gsi.shesmu.plugin.LogLevel;
 import ca.on.oicr.gsi.shesmu.plugin.json.JsonPluginFile;
 import ca.on.oicr.gsi.status.SectionRenderer;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -18,23 +19,45 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 public class LokiPlugin extends JsonPluginFile<Configuration> {
+  private record Entry(Instant time, String message, Map<String, String> attributes) {}
 
+  private static final int BATCH_SIZE = 500;
+  private static final Duration BATCH_TIME = Duration.ofSeconds(5);
   private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
   private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(5);
+  private static final int QUEUE_CAPACITY = 10_000;
+  private static final int RETRY_CAPACITY = 50_000;
+  private static final Counter dropped =
+      Counter.build(
+              "shesmu_loki_dropped",
+              "The number of log messages discarded because the queue or the retry buffer was full, or"
+                  + " because they could not be sent before the plugin stopped")
+          .labelNames("filename", "reason")
+          .register();
   private static final Gauge error =
       Gauge.build(
               "shesmu_loki_push_error",
               "Whether the Loki client had a push error on its last write")
           .labelNames("filename")
           .register();
+  private static final Gauge queueDepth =
+      Gauge.build("shesmu_loki_queue_depth", "The number of log messages waiting to be sent")
+          .labelNames("filename")
+          .register();
   private static final LatencyHistogram writeLatency =
       new LatencyHistogram(
           "shesmu_loki_write_latency",
@@ -45,13 +68,33 @@ public class LokiPlugin extends JsonPluginFile<Configuration> {
           .labelNames("filename")
           .register();
   private final Pattern INVALID_LABEL = Pattern.compile("[^a-zA-Z0-9_]");
-  private final Map<Map<String, String>, List<Pair<Instant, String>>> buffer = new HashMap<>();
-  private Optional<Configuration> configuration = Optional.empty();
+  private final Duration batchTime;
+  private volatile Optional<Configuration> configuration = Optional.empty();
   private final Definer<LokiPlugin> definer;
+  private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+  private final int queueCapacity;
+  private final AtomicInteger queueSize = new AtomicInteger();
+  private final int retryCapacity;
+  // The thread currently responsible for sending messages; a sender that is no longer this thread
+  // makes one last push and exits
+  private volatile Thread sender;
 
   public LokiPlugin(Path fileName, String instanceName, Definer<LokiPlugin> definer) {
+    this(fileName, instanceName, definer, BATCH_TIME, QUEUE_CAPACITY, RETRY_CAPACITY);
+  }
+
+  LokiPlugin(
+      Path fileName,
+      String instanceName,
+      Definer<LokiPlugin> definer,
+      Duration batchTime,
+      int queueCapacity,
+      int retryCapacity) {
     super(fileName, instanceName, MAPPER, Configuration.class);
     this.definer = definer;
+    this.batchTime = batchTime;
+    this.queueCapacity = queueCapacity;
+    this.retryCapacity = retryCapacity;
   }
 
   @Override
@@ -64,111 +107,187 @@ public class LokiPlugin extends JsonPluginFile<Configuration> {
             renderer.line("Label: " + entry.getKey(), entry.getValue());
           }
         });
+    renderer.line("Queued Messages", queueSize.get());
   }
 
-  private void flush(Instant now) {
-    configuration.ifPresent(
-        c -> {
-          var size = 0;
-          var flush = false;
-          for (final var list : buffer.values()) {
-            size += list.size();
-            flush =
-                list.stream()
-                    .map(Pair::first)
-                    .min(Comparator.naturalOrder())
-                    .map(x -> Duration.between(x, now).getSeconds() > 60)
-                    .orElse(false);
-            if (flush || size > 10) {
-              flush = true;
-              break;
-            }
+  private boolean push(Configuration c, List<Entry> entries) {
+    final var body = MAPPER.createObjectNode();
+    final var streams = body.putArray("streams");
+    final Map<Map<String, String>, List<Entry>> grouped =
+        entries.stream().collect(Collectors.groupingBy(Entry::attributes));
+    for (final var entry : grouped.entrySet()) {
+      final var stream = streams.addObject();
+      final var labels = stream.putObject("stream");
+      for (final var label : entry.getKey().entrySet()) {
+        labels.put(INVALID_LABEL.matcher(label.getKey()).replaceAll("_"), label.getValue());
+      }
+      for (final var label : c.getLabels().entrySet()) {
+        labels.put(INVALID_LABEL.matcher(label.getKey()).replaceAll("_"), label.getValue());
+      }
+      final var values = stream.putArray("values");
+      entry.getValue().sort(Comparator.comparing(Entry::time));
+      for (final var value : entry.getValue()) {
+        final var record = values.addArray();
+        record.add(String.format("%d%09d", value.time().getEpochSecond(), value.time().getNano()));
+        record.add(value.message().replace('\n', ' '));
+      }
+    }
+    final HttpRequest request;
+    try {
+      final var compressed = new ByteArrayOutputStream();
+      try (final var output = new GZIPOutputStream(compressed)) {
+        MAPPER.writeValue(output, body);
+      }
+      // This doesn't use the built-in constant for JSON because that one includes a charset
+      // and Loki then thinks the request is a protobuf
+      request =
+          HttpRequest.newBuilder(URI.create(c.getUrl()))
+              .timeout(Duration.ofMinutes(c.getTimeout()))
+              .POST(BodyPublishers.ofByteArray(compressed.toByteArray()))
+              .header("Content-type", "application/json")
+              .header("Content-Encoding", "gzip")
+              .build();
+    } catch (final Exception e) {
+      e.printStackTrace();
+      error.labels(fileName().toString()).set(1);
+      // This batch can never be sent, so don't retry it
+      return true;
+    }
+    writeTime.labels(fileName().toString()).setToCurrentTime();
+    try (final var timer = writeLatency.start(fileName().toString())) {
+      final var response = HTTP_CLIENT.send(request, BodyHandlers.ofString());
+      if (response.statusCode() / 100 == 2) {
+        error.labels(fileName().toString()).set(0);
+        return true;
+      }
+      try (final var s = new Scanner(response.body())) {
+        s.useDelimiter("\\A");
+        if (s.hasNext()) {
+          final var message = s.next();
+          if (message.contains("ignored")) {
+            // Loki complains if we send duplicate messages, so treat that like success
+            error.labels(fileName().toString()).set(0);
+            return true;
+          }
+          System.err.println(message);
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (final Exception e) {
+      e.printStackTrace();
+    }
+    error.labels(fileName().toString()).set(1);
+    return false;
+  }
+
+  /**
+   * Move messages from the queue into batches and push them to Loki
+   *
+   * <p>This runs on its own thread so that logging never waits on Loki. Messages that could not be
+   * pushed are kept and sent again later, up to a limit; beyond that, the oldest are dropped. While
+   * pushes keep failing, the time between attempts doubles, up to {@link #MAX_RETRY_DELAY}.
+   * Messages are always pushed in batches of at most {@link #BATCH_SIZE}, so a backlog that builds
+   * up while Loki is unavailable does not turn into a request too large for Loki to accept.
+   */
+  private void send() {
+    final var self = Thread.currentThread();
+    final List<Entry> pending = new ArrayList<>();
+    var lastPush = Instant.now();
+    var retryDelay = Duration.ZERO;
+    var stopping = false;
+    while (!stopping) {
+      stopping = sender != self;
+      Entry entry;
+      while ((entry = queue.poll()) != null) {
+        queueSize.decrementAndGet();
+        pending.add(entry);
+      }
+      queueDepth.labels(fileName().toString()).set(queueSize.get());
+      final var now = Instant.now();
+      final var c = configuration;
+      final var sinceLastPush = Duration.between(lastPush, now);
+      if (c.isPresent()
+          && !pending.isEmpty()
+          && (stopping
+              || sinceLastPush.compareTo(retryDelay) >= 0
+                  && (pending.size() >= BATCH_SIZE || sinceLastPush.compareTo(batchTime) >= 0))) {
+        lastPush = now;
+        while (!pending.isEmpty()) {
+          final var batch = pending.subList(0, Math.min(BATCH_SIZE, pending.size()));
+          if (!push(c.get(), new ArrayList<>(batch))) {
+            break;
           }
-          if (flush) {
-            final var body = MAPPER.createObjectNode();
-            final var streams = body.putArray("streams");
-            for (final var entry : buffer.entrySet()) {
-              final var stream = streams.addObject();
-              final var labels = stream.putObject("stream");
-              for (final var label : entry.getKey().entrySet()) {
-                labels.put(INVALID_LABEL.matcher(label.getKey()).replaceAll("_"), label.getValue());
-              }
-              for (final var label : c.getLabels().entrySet()) {
-                labels.put(INVALID_LABEL.matcher(label.getKey()).replaceAll("_"), label.getValue());
-              }
-              final var values = stream.putArray("values");
-              entry.getValue().sort(Comparator.comparing(Pair::first));
-              for (final var value : entry.getValue()) {
-                final var record = values.addArray();
-                record.add(
-                    String.format(
-                        "%d%09d", value.first().getEpochSecond(), value.first().getNano()));
-                record.add(value.second().replace('\n', ' '));
-              }
-            }
-            final HttpRequest request;
-            try {
-              // This doesn't use the built-in constant for JSON because that one includes a charset
-              // and Loki then thinks the request is a protobuf
-              request =
-                  HttpRequest.newBuilder(URI.create(c.getUrl()))
-                      .timeout(Duration.ofMinutes(c.getTimeout()))
-                      .POST(BodyPublishers.ofString(MAPPER.writeValueAsString(body)))
-                      .header("Content-type", "application/json")
-                      .build();
-            } catch (final Exception e) {
-              e.printStackTrace();
-              error.labels(fileName().toString()).set(1);
-              return;
-            }
-            writeTime.labels(fileName().toString()).setToCurrentTime();
-            try (final var timer = writeLatency.start(fileName().toString())) {
-              final var response = HTTP_CLIENT.send(request, BodyHandlers.ofString());
-              final var success = response.statusCode() / 100 == 2;
-              if (success) {
-                buffer.clear();
-                error.labels(fileName().toString()).set(0);
-              } else {
-                try (final var s = new Scanner(response.body())) {
-                  s.useDelimiter("\\A");
-                  if (s.hasNext()) {
-                    final var message = s.next();
-                    if (message.contains("ignored")) {
-                      buffer.clear();
-                      // Loki complains if we send duplicate messages, so treat that like success
-                      error.labels(fileName().toString()).set(0);
-                      return;
-                    }
-                    System.err.println(message);
-                  }
-                }
-                error.labels(fileName().toString()).set(1);
-              }
-            } catch (final Exception e) {
-              e.printStackTrace();
-              error.labels(fileName().toString()).set(1);
-            }
+          batch.clear();
+        }
+        if (pending.isEmpty()) {
+          retryDelay = Duration.ZERO;
+        } else {
+          // Loki is having trouble, so back off rather than adding to its load
+          retryDelay = retryDelay.isZero() ? batchTime : retryDelay.multipliedBy(2);
+          if (retryDelay.compareTo(MAX_RETRY_DELAY) > 0) {
+            retryDelay = MAX_RETRY_DELAY;
           }
-        });
+        }
+        if (pending.size() > retryCapacity) {
+          final var excess = pending.size() - retryCapacity;
+          pending.subList(0, excess).clear();
+          dropped.labels(fileName().toString(), "retry").inc(excess);
+        }
+      }
+      // The HTTP client parks this thread too, so a wake up from writeLog or stop that arrived
+      // during a push may have been used up; check again rather than waiting a whole batch time
+      if (!stopping && sender == self && (queueSize.get() < BATCH_SIZE || !retryDelay.isZero())) {
+        LockSupport.parkNanos(batchTime.toNanos());
+      }
+    }
+    // Anything left over couldn't be sent in the final push and is lost
+    if (!pending.isEmpty()) {
+      dropped.labels(fileName().toString(), "stop").inc(pending.size());
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    if (sender == null) {
+      // Assign the thread before starting it, since it checks that it is still the sender
+      final var thread = Thread.ofVirtual().name("loki-" + fileName()).unstarted(this::send);
+      sender = thread;
+      thread.start();
+    }
   }
 
   @Override
-  protected synchronized Optional<Integer> update(Configuration configuration) {
-    // Flush logs to the old configuration if it's about to change; if there's a backlog, it will
-    // get flushed in a minute.
-    flush(Instant.now());
+  public synchronized void stop() {
+    // The sender will make one last attempt to push anything outstanding; if the plugin is started
+    // again before it finishes, a new sender is created
+    final var thread = sender;
+    sender = null;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  @Override
+  protected Optional<Integer> update(Configuration configuration) {
     this.configuration = Optional.of(configuration);
-    // Keep waking us up to flush logs
-    return Optional.of(1);
+    return Optional.empty();
   }
 
   @Override
-  public synchronized void writeLog(
-      String message, LogLevel level, Map<String, String> attributes) {
-    final var now = Instant.now();
-    if (level.compareTo(this.configuration.get().getLevel()) >= 0) {
-      buffer.computeIfAbsent(attributes, k -> new ArrayList<>()).add(new Pair<>(now, message));
-      flush(now);
+  public void writeLog(String message, LogLevel level, Map<String, String> attributes) {
+    final var c = configuration;
+    if (c.isEmpty() || level.compareTo(c.get().getLevel()) < 0) {
+      return;
+    }
+    if (queueSize.incrementAndGet() > queueCapacity) {
+      queueSize.decrementAndGet();
+      dropped.labels(fileName().toString(), "queue").inc();
+      return;
+    }
+    queue.add(new Entry(Instant.now(), message, attributes));
+    if (queueSize.get() >= BATCH_SIZE) {
+      LockSupport.unpark(sender);
     }
   }
 }
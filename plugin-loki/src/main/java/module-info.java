@@ -9,6 +9,7 @@ module ca.on.oicr.gsi.shesmu.plugin.loki {
   requires com.fasterxml.jackson.databind;
   requires simpleclient;
   requires java.net.http;
+  requires jdk.httpserver;
 
   provides PluginFileType with
       LokiPluginType;
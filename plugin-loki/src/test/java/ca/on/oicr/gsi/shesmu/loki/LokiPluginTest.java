@@ -0,0 +1,197 @@
+package ca.on.oicr.gsi.shesmu.loki;
+
+import ca.on.oicr.gsi.shesmu.plugin.LogLevel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.prometheus.client.CollectorRegistry;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LokiPluginTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static double dropped(String fileName, String reason) {
+    final var value =
+        CollectorRegistry.defaultRegistry.getSampleValue(
+            "shesmu_loki_dropped_total",
+            new String[] {"filename", "reason"},
+            new String[] {fileName, reason});
+    return value == null ? 0 : value;
+  }
+
+  private static void waitFor(String description, BooleanSupplier condition)
+      throws InterruptedException {
+    final var deadline = Instant.now().plusSeconds(10);
+    while (!condition.getAsBoolean()) {
+      Assertions.assertTrue(
+          Instant.now().isBefore(deadline), "Timed out waiting for " + description);
+      Thread.sleep(10);
+    }
+  }
+
+  private final List<LokiPlugin> plugins = new ArrayList<>();
+
+  /** The messages in each push Loki accepted */
+  private final List<List<String>> pushes = new CopyOnWriteArrayList<>();
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private HttpServer server;
+  private final AtomicInteger status = new AtomicInteger(204);
+
+  private LokiPlugin plugin(String name, Duration batchTime, int queueCapacity, int retryCapacity) {
+    final var configuration = new Configuration();
+    configuration.setLevel(LogLevel.INFO);
+    configuration.setTimeout(1);
+    configuration.setUrl("http://localhost:" + server.getAddress().getPort() + "/loki/api/v1/push");
+    final var plugin =
+        new LokiPlugin(Path.of(name), "test", null, batchTime, queueCapacity, retryCapacity);
+    plugin.update(configuration);
+    plugins.add(plugin);
+    return plugin;
+  }
+
+  private int received() {
+    return pushes.stream().mapToInt(List::size).sum();
+  }
+
+  private static void write(LokiPlugin plugin, int start, int count) {
+    for (var i = start; i < start + count; i++) {
+      plugin.writeLog("message " + i, LogLevel.INFO, Map.of());
+    }
+  }
+
+  @BeforeEach
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/loki/api/v1/push",
+        exchange -> {
+          requests.incrementAndGet();
+          final List<String> messages = new ArrayList<>();
+          try (final var input = new GZIPInputStream(exchange.getRequestBody())) {
+            for (final var stream : MAPPER.readTree(input).get("streams")) {
+              for (final var value : stream.get("values")) {
+                messages.add(value.get(1).asText());
+              }
+            }
+          }
+          final var code = status.get();
+          if (code / 100 == 2) {
+            pushes.add(messages);
+          }
+          exchange.sendResponseHeaders(code, -1);
+          exchange.close();
+        });
+    server.start();
+  }
+
+  @AfterEach
+  public void stop() {
+    plugins.forEach(LokiPlugin::stop);
+    server.stop(0);
+  }
+
+  @Test
+  public void testBatchBySize() throws InterruptedException {
+    final var plugin = plugin("test-size.loki", Duration.ofMinutes(1), 10_000, 10_000);
+    plugin.start();
+    write(plugin, 0, 10);
+    Thread.sleep(500);
+    // A small batch waits for the batch time
+    Assertions.assertEquals(0, requests.get());
+
+    // Full batches are sent right away and less than a batch is left waiting
+    write(plugin, 10, 1190);
+    waitFor("full batches", () -> received() > 700);
+    plugin.stop();
+    waitFor("final push", () -> received() == 1200);
+    Assertions.assertTrue(pushes.stream().allMatch(push -> push.size() <= 500));
+    Assertions.assertEquals(1200, pushes.stream().flatMap(List::stream).distinct().count());
+  }
+
+  @Test
+  public void testBatchByTime() throws InterruptedException {
+    final var plugin = plugin("test-time.loki", Duration.ofMillis(100), 10_000, 10_000);
+    plugin.start();
+    write(plugin, 0, 3);
+    waitFor("batch time", () -> received() == 3);
+    Assertions.assertEquals(List.of(List.of("message 0", "message 1", "message 2")), pushes);
+  }
+
+  @Test
+  public void testQueueFull() throws InterruptedException {
+    final var plugin = plugin("test-queue.loki", Duration.ofMillis(100), 5, 10_000);
+    // Without a sender, nothing takes messages off the queue
+    write(plugin, 0, 8);
+    Assertions.assertEquals(3, dropped("test-queue.loki", "queue"));
+
+    plugin.start();
+    waitFor("queued messages", () -> received() == 5);
+    Assertions.assertEquals(
+        List.of("message 0", "message 1", "message 2", "message 3", "message 4"), pushes.get(0));
+  }
+
+  @Test
+  public void testRetryFull() throws InterruptedException {
+    status.set(500);
+    final var plugin = plugin("test-retry.loki", Duration.ofMillis(50), 10_000, 4);
+    plugin.start();
+    write(plugin, 0, 10);
+    // The oldest messages are discarded to make room in the retry buffer
+    waitFor("retry drops", () -> dropped("test-retry.loki", "retry") == 6);
+
+    status.set(204);
+    waitFor("retried messages", () -> received() == 4);
+    Assertions.assertEquals(
+        List.of("message 6", "message 7", "message 8", "message 9"), pushes.get(0));
+    Assertions.assertEquals(6, dropped("test-retry.loki", "retry"));
+  }
+
+  @Test
+  public void testRetryBackoff() throws InterruptedException {
+    status.set(500);
+    final var plugin = plugin("test-backoff.loki", Duration.ofMillis(50), 10_000, 10_000);
+    plugin.start();
+    write(plugin, 0, 1);
+    Thread.sleep(1_500);
+    // Retrying every batch time would make about 30 attempts; backing off makes about 5
+    final var attempts = requests.get();
+    Assertions.assertTrue(attempts >= 2 && attempts <= 8, "Made " + attempts + " attempts");
+  }
+
+  @Test
+  public void testFinalPushOnStop() throws InterruptedException {
+    final var plugin = plugin("test-stop.loki", Duration.ofMinutes(1), 10_000, 10_000);
+    plugin.start();
+    write(plugin, 0, 3);
+    plugin.stop();
+    waitFor("final push", () -> received() == 3);
+    Assertions.assertEquals(0, dropped("test-stop.loki", "stop"));
+  }
+
+  @Test
+  public void testFailedFinalPushOnStop() throws InterruptedException {
+    status.set(500);
+    final var plugin = plugin("test-stop-failed.loki", Duration.ofMinutes(1), 10_000, 10_000);
+    plugin.start();
+    write(plugin, 0, 3);
+    plugin.stop();
+    // Messages that couldn't be sent before stopping are counted as dropped
+    waitFor("final push drops", () -> dropped("test-stop-failed.loki", "stop") == 3);
+    Assertions.assertEquals(1, requests.get());
+  }
+}
@@ -9,7 +9,6 @@ import ca.on.oicr.gsi.shesmu.plugin.AlgebraicValue;
 import ca.on.oicr.gsi.shesmu.plugin.ErrorableStream;
 import ca.on.oicr.gsi.shesmu.plugin.Tuple;
 import ca.on.oicr.gsi.shesmu.plugin.cache.MergingRecord;
-import ca.on.oicr.gsi.shesmu.plugin.cache.ReplacingRecord;
 import ca.on.oicr.gsi.shesmu.plugin.cache.SimpleRecord;
 import ca.on.oicr.gsi.shesmu.plugin.cache.ValueCache;
 import ca.on.oicr.gsi.shesmu.plugin.functions.ShesmuMethod;
@@ -23,13 +22,22 @@ import ca.on.oicr.ws.dto.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.prometheus.client.Gauge;
-import java.io.IOException;
 import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -46,45 +54,21 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
    * This input format filters out skipped samples and lanes, and provides only items that would be
    * desirable to analyze.
    */
-  private final class AnalysisItemCache extends ValueCache<Stream<PineryIUSForAnalysisValue>> {
-    private AnalysisItemCache(Path fileName) {
-      super("pinery " + fileName.toString(), 30, ReplacingRecord::new);
-    }
-
-    @Override
-    protected Stream<PineryIUSForAnalysisValue> fetch(Instant lastUpdated) throws Exception {
-      if (config.isEmpty()) {
-        System.err.println(
-            "The pinery_ius input format is unusable because Pinery config is empty.");
-        return new ErrorableStream<>(Stream.empty(), false);
-      }
-      final PineryConfiguration cfg = config.get();
+  private final class AnalysisItems {
+    private Stream<PineryIUSForAnalysisValue> build(PineryConfiguration cfg, Provenance snapshot) {
       final Map<String, Integer> badSetCounts = new TreeMap<>();
-      final Map<String, RunDto> allRuns =
-          HTTP_CLIENT
-              .send(
-                  httpGet(cfg.getUrl() + "/sequencerruns", Optional.of(cfg.getTimeout())),
-                  new JsonListBodyHandler<>(MAPPER, RunDto.class))
-              .body()
-              .get()
-              .collect(
-                  Collectors.toMap(
-                      RunDto::getName,
-                      Function.identity(),
-                      // If duplicate run names occur, pick one at random, because the universe is
-                      // spiteful, so we spite it back.
-                      (a, b) -> a));
+      final Map<String, RunDto> allRuns = snapshot.runs();
       final Set<Pair<String, String>> validLanes = new HashSet<>();
       return Stream.concat(
               lanes(
-                  cfg.getUrl(),
+                  snapshot.lanes(),
                   cfg.getVersion(),
                   cfg.getProvider(),
                   badSetCounts,
                   allRuns,
                   (run, lane) -> validLanes.add(new Pair<>(run, lane))),
               samples(
-                  cfg.getUrl(),
+                  snapshot.samples(),
                   cfg.getVersion(),
                   cfg.getProvider(),
                   badSetCounts,
@@ -104,21 +88,13 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
     }
 
     private Stream<PineryIUSForAnalysisValue> lanes(
-        String baseUrl,
+        List<LaneProvenanceDto> provenance,
         int version,
         String provider,
         Map<String, Integer> badSetCounts,
         Map<String, RunDto> allRuns,
-        BiConsumer<String, String> addLane)
-        throws IOException, InterruptedException {
-      return HTTP_CLIENT
-          .send(
-              httpGet(
-                  baseUrl + "/provenance/v" + version + "/lane-provenance",
-                  config.map(PineryConfiguration::getTimeout)),
-              new JsonListBodyHandler<>(MAPPER, LaneProvenanceDto.class))
-          .body()
-          .get()
+        BiConsumer<String, String> addLane) {
+      return provenance.stream()
           .filter(
               lp ->
                   isRunValid(allRuns.get(lp.getSequencerRunName()))
@@ -209,21 +185,13 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
     }
 
     private Stream<PineryIUSForAnalysisValue> samples(
-        String baseUrl,
+        List<SampleProvenanceDto> provenance,
         int version,
         String provider,
         Map<String, Integer> badSetCounts,
         Map<String, RunDto> allRuns,
-        BiPredicate<String, String> hasLane)
-        throws IOException, InterruptedException {
-      return HTTP_CLIENT
-          .send(
-              httpGet(
-                  baseUrl + "/provenance/v" + version + "/sample-provenance",
-                  config.map(PineryConfiguration::getTimeout)),
-              new JsonListBodyHandler<>(MAPPER, SampleProvenanceDto.class))
-          .body()
-          .get()
+        BiPredicate<String, String> hasLane) {
+      return provenance.stream()
           .filter(
               sp ->
                   isRunValid(allRuns.get(sp.getSequencerRunName()))
@@ -336,46 +304,22 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
   }
 
   /** This input format includes skipped samples and lanes. */
-  private final class IncludeSkippedItemCache
-      extends ValueCache<Stream<PineryIUSIncludeSkippedValue>> {
-    private IncludeSkippedItemCache(Path fileName) {
-      super("pinery-include-skipped " + fileName.toString(), 30, ReplacingRecord::new);
-    }
-
-    @Override
-    protected Stream<PineryIUSIncludeSkippedValue> fetch(Instant lastUpdated) throws Exception {
-      if (config.isEmpty()) {
-        System.err.println(
-            "The pinery_ius_include_skipped input format is unusable because Pinery config is empty.");
-        return new ErrorableStream<>(Stream.empty(), false);
-      }
-      final PineryConfiguration cfg = config.get();
+  private final class IncludeSkippedItems {
+    private Stream<PineryIUSIncludeSkippedValue> build(
+        PineryConfiguration cfg, Provenance snapshot) {
       final Map<String, Integer> badSetCounts = new TreeMap<>();
-      final Map<String, RunDto> allRuns =
-          HTTP_CLIENT
-              .send(
-                  httpGet(cfg.getUrl() + "/sequencerruns", Optional.of(cfg.getTimeout())),
-                  new JsonListBodyHandler<>(MAPPER, RunDto.class))
-              .body()
-              .get()
-              .collect(
-                  Collectors.toMap(
-                      RunDto::getName,
-                      Function.identity(),
-                      // If duplicate run names occur, pick one at random, because the universe is
-                      // spiteful, so we spite it back.
-                      (a, b) -> a));
+      final Map<String, RunDto> allRuns = snapshot.runs();
       final Set<Pair<String, String>> validLanes = new HashSet<>();
       return Stream.concat(
               lanes(
-                  cfg.getUrl(),
+                  snapshot.lanes(),
                   cfg.getVersion(),
                   cfg.getProvider(),
                   badSetCounts,
                   allRuns,
                   (run, lane) -> validLanes.add(new Pair<>(run, lane))),
               samples(
-                  cfg.getUrl(),
+                  snapshot.samples(),
                   cfg.getVersion(),
                   cfg.getProvider(),
                   badSetCounts,
@@ -395,21 +339,13 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
     }
 
     private Stream<PineryIUSIncludeSkippedValue> lanes(
-        String baseUrl,
+        List<LaneProvenanceDto> provenance,
         int version,
         String provider,
         Map<String, Integer> badSetCounts,
         Map<String, RunDto> allRuns,
-        BiConsumer<String, String> addLane)
-        throws IOException, InterruptedException {
-      return HTTP_CLIENT
-          .send(
-              httpGet(
-                  baseUrl + "/provenance/v" + version + "/lane-provenance",
-                  config.map(PineryConfiguration::getTimeout)),
-              new JsonListBodyHandler<>(MAPPER, LaneProvenanceDto.class))
-          .body()
-          .get()
+        BiConsumer<String, String> addLane) {
+      return provenance.stream()
           .filter(lp -> isRunValid(allRuns.get(lp.getSequencerRunName())))
           .map(
               lp -> {
@@ -499,21 +435,13 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
     }
 
     private Stream<PineryIUSIncludeSkippedValue> samples(
-        String baseUrl,
+        List<SampleProvenanceDto> provenance,
         int version,
         String provider,
         Map<String, Integer> badSetCounts,
         Map<String, RunDto> allRuns,
-        BiPredicate<String, String> hasLane)
-        throws IOException, InterruptedException {
-      return HTTP_CLIENT
-          .send(
-              httpGet(
-                  baseUrl + "/provenance/v" + version + "/sample-provenance",
-                  config.map(PineryConfiguration::getTimeout)),
-              new JsonListBodyHandler<>(MAPPER, SampleProvenanceDto.class))
-          .body()
-          .get()
+        BiPredicate<String, String> hasLane) {
+      return provenance.stream()
           .filter(
               sp ->
                   isRunValid(allRuns.get(sp.getSequencerRunName()))
@@ -625,6 +553,111 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
     }
   }
 
+  /** The records that both IUS input formats are built from */
+  private record Provenance(
+      Map<String, RunDto> runs, List<LaneProvenanceDto> lanes, List<SampleProvenanceDto> samples) {}
+
+  /** The records of both IUS input formats */
+  private record IusRecords(
+      List<PineryIUSForAnalysisValue> analysis,
+      List<PineryIUSIncludeSkippedValue> includeSkipped) {}
+
+  /**
+   * Downloads the runs, lane provenance, and sample provenance once and builds both IUS input
+   * formats from them
+   *
+   * <p>Both formats are built during the same refresh, so they are always consistent with each
+   * other and no older than the download. The downloaded records are not kept once the formats are
+   * built.
+   */
+  private final class ProvenanceCache extends ValueCache<Optional<IusRecords>> {
+    private ProvenanceCache(Path fileName) {
+      super("pinery-provenance " + fileName.toString(), 30, SimpleRecord::new);
+    }
+
+    private <T> List<T> collect(Stream<T> stream) {
+      // Closing the stream records the bad set metrics
+      try (stream) {
+        return stream.collect(Collectors.toList());
+      }
+    }
+
+    private <T> void download(
+        CompletionService<Void> downloads,
+        String endpoint,
+        String url,
+        Class<T> clazz,
+        List<T> output) {
+      downloads.submit(
+          () -> {
+            final var bytes = new LongAdder();
+            HTTP_CLIENT
+                .send(
+                    httpGet(url, config.map(PineryConfiguration::getTimeout)),
+                    new CountingBodyHandler<>(new JsonListBodyHandler<>(MAPPER, clazz), bytes))
+                .body()
+                .get()
+                .forEach(output::add);
+            provenanceBytes.labels(fileName().toString(), endpoint).set(bytes.sum());
+            return null;
+          });
+    }
+
+    @Override
+    protected Optional<IusRecords> fetch(Instant lastUpdated) throws Exception {
+      if (config.isEmpty()) {
+        return Optional.empty();
+      }
+      final PineryConfiguration cfg = config.get();
+      final var provenanceUrl = cfg.getUrl() + "/provenance/v" + cfg.getVersion();
+      final List<RunDto> runs = new ArrayList<>();
+      final List<LaneProvenanceDto> lanes = new ArrayList<>();
+      final List<SampleProvenanceDto> samples = new ArrayList<>();
+      try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        final var downloads = new ExecutorCompletionService<Void>(executor);
+        download(downloads, "sequencerruns", cfg.getUrl() + "/sequencerruns", RunDto.class, runs);
+        download(
+            downloads,
+            "lane-provenance",
+            provenanceUrl + "/lane-provenance",
+            LaneProvenanceDto.class,
+            lanes);
+        download(
+            downloads,
+            "sample-provenance",
+            provenanceUrl + "/sample-provenance",
+            SampleProvenanceDto.class,
+            samples);
+        try {
+          // Check the downloads in the order they finish, so a failure is seen right away
+          for (var i = 0; i < 3; i++) {
+            result(downloads.take());
+          }
+        } catch (Exception e) {
+          // Don't wait for the other downloads if one has failed
+          executor.shutdownNow();
+          throw e;
+        }
+      }
+      final var snapshot =
+          new Provenance(
+              runs.stream()
+                  .collect(
+                      Collectors.toMap(
+                          RunDto::getName,
+                          Function.identity(),
+                          // If duplicate run names occur, pick one at random, because the
+                          // universe is spiteful, so we spite it back.
+                          (a, b) -> a)),
+              lanes,
+              samples);
+      return Optional.of(
+          new IusRecords(
+              collect(new AnalysisItems().build(cfg, snapshot)),
+              collect(new IncludeSkippedItems().build(cfg, snapshot))));
+    }
+  }
+
   private final class PlatformCache extends ValueCache<Optional<Map<String, String>>> {
     private PlatformCache(Path fileName) {
       super("pinery-platform " + fileName.toString(), 30, SimpleRecord::new);
@@ -700,6 +733,51 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
     }
   }
 
+  /** Counts the bytes in a response body before passing them on to be decoded */
+  private static final class CountingBodyHandler<T> implements HttpResponse.BodyHandler<T> {
+    private final LongAdder bytes;
+    private final HttpResponse.BodyHandler<T> inner;
+
+    private CountingBodyHandler(HttpResponse.BodyHandler<T> inner, LongAdder bytes) {
+      this.inner = inner;
+      this.bytes = bytes;
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<T> apply(HttpResponse.ResponseInfo responseInfo) {
+      final var subscriber = inner.apply(responseInfo);
+      return new HttpResponse.BodySubscriber<>() {
+        @Override
+        public CompletionStage<T> getBody() {
+          return subscriber.getBody();
+        }
+
+        @Override
+        public void onComplete() {
+          subscriber.onComplete();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+          for (final var item : items) {
+            bytes.add(item.remaining());
+          }
+          subscriber.onNext(items);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+          subscriber.onSubscribe(subscription);
+        }
+      };
+    }
+  }
+
   private static final Pattern COMMA = Pattern.compile(",");
 
   private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
@@ -711,6 +789,21 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
           .labelNames("target", "property", "reason")
           .register();
 
+  private static final Gauge provenanceBytes =
+      Gauge.build(
+              "shesmu_pinery_provenance_bytes",
+              "The number of bytes downloaded from a Pinery endpoint in the last refresh.")
+          .labelNames("target", "endpoint")
+          .register();
+
+  private static <T> T result(Future<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception cause ? cause : e;
+    }
+  }
+
   static {
     MAPPER.registerModule(new JavaTimeModule());
   }
@@ -753,19 +846,17 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
         .orElse(0);
   }
 
-  private final AnalysisItemCache cache;
-  private final IncludeSkippedItemCache includeSkippedCache;
   private Set<String> clinicalPipelines;
   private Optional<PineryConfiguration> config = Optional.empty();
   private final PlatformCache platforms;
   private final ProjectCache projects;
+  private final ProvenanceCache provenance;
   private final AssayCache assays;
 
   public PinerySource(Path fileName, String instanceName) {
     super(fileName, instanceName, MAPPER, PineryConfiguration.class);
     projects = new ProjectCache(fileName);
-    cache = new AnalysisItemCache(fileName);
-    includeSkippedCache = new IncludeSkippedItemCache(fileName);
+    provenance = new ProvenanceCache(fileName);
     platforms = new PlatformCache(fileName);
     assays = new AssayCache(fileName);
   }
@@ -913,7 +1004,13 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
   @ShesmuInputSource
   public Stream<PineryIUSForAnalysisValue> streamIUS(boolean readStale) {
     try {
-      return readStale ? cache.getStale() : cache.get();
+      final var records = readStale ? provenance.getStale() : provenance.get();
+      if (records.isEmpty()) {
+        System.err.println(
+            "The pinery_ius input format is unusable because Pinery config is empty.");
+        return new ErrorableStream<>(Stream.empty(), false);
+      }
+      return records.get().analysis().stream();
     } catch (Exception e) {
       System.err.println(
           "The pinery_ius input format is unusable because there was an error getting the data.");
@@ -925,7 +1022,13 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
   @ShesmuInputSource
   public Stream<PineryIUSIncludeSkippedValue> streamAllIUS(boolean readStale) {
     try {
-      return readStale ? includeSkippedCache.getStale() : includeSkippedCache.get();
+      final var records = readStale ? provenance.getStale() : provenance.get();
+      if (records.isEmpty()) {
+        System.err.println(
+            "The pinery_ius_include_skipped input format is unusable because Pinery config is empty.");
+        return new ErrorableStream<>(Stream.empty(), false);
+      }
+      return records.get().includeSkipped().stream();
     } catch (Exception e) {
       System.err.println(
           "The pinery_ius_include_skipped input format is unusable because there was an error getting the data.");
@@ -953,8 +1056,7 @@ public class PinerySource extends JsonPluginFile<PineryConfiguration> {
     config = Optional.of(value);
     clinicalPipelines = value.getClinicalPipelines();
     projects.invalidate();
-    cache.invalidate();
-    includeSkippedCache.invalidate();
+    provenance.invalidate();
     return Optional.empty();
   }
 }
@@ -22,6 +22,7 @@ module shesmu.plugin.pinery {
   requires com.fasterxml.jackson.datatype.jsr310;
   requires simpleclient;
   requires java.net.http;
+  requires jdk.httpserver;
   requires org.apache.commons.text;
 
   provides GrouperDefinition with
@@ -0,0 +1,242 @@
+package ca.on.oicr.gsi.shesmu.pinery;
+
+import ca.on.oicr.gsi.shesmu.plugin.ErrorableStream;
+import ca.on.oicr.gsi.shesmu.plugin.Tuple;
+import ca.on.oicr.ws.dto.LaneProvenanceDto;
+import ca.on.oicr.ws.dto.RunDto;
+import ca.on.oicr.ws.dto.SampleProvenanceDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PinerySourceTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final ZonedDateTime MODIFIED =
+      ZonedDateTime.of(2024, 1, 2, 3, 4, 5, 0, ZoneOffset.UTC);
+
+  static {
+    MAPPER.registerModule(new JavaTimeModule());
+  }
+
+  private static LaneProvenanceDto lane(String id, String lane, boolean skip) {
+    final var dto = new LaneProvenanceDto();
+    dto.setCreatedDate(MODIFIED);
+    dto.setLaneNumber(lane);
+    dto.setLaneProvenanceId(id);
+    dto.setLastModified(MODIFIED);
+    dto.setProvenanceId(id);
+    dto.setSequencerRunName("RUN1");
+    dto.setSequencerRunPlatformModel("NovaSeq 6000");
+    dto.setSkip(skip);
+    dto.setVersion("v-" + id);
+    return dto;
+  }
+
+  /** The lane or sample provenance identifiers of the records, sorted */
+  private static <T extends PineryIUSValue> List<String> ids(Stream<T> records) {
+    return records.map(record -> (String) record.lims().get(0)).sorted().toList();
+  }
+
+  private static RunDto run() {
+    final var dto = new RunDto();
+    dto.setCreatedDate("2024-01-01T00:00:00Z");
+    dto.setId(7);
+    dto.setName("RUN1");
+    dto.setRunBasesMask("y151,i8,y151");
+    dto.setRunDirectory("/runs/RUN1");
+    dto.setStartDate("2024-01-01T01:00:00Z");
+    dto.setState("Completed");
+    return dto;
+  }
+
+  private static SampleProvenanceDto sample(String id, String lane, boolean skip) {
+    final var attributes = new TreeMap<String, SortedSet<String>>();
+    attributes.put("geo_library_source_template_type", new TreeSet<>(Set.of("WG")));
+    attributes.put("geo_organism", new TreeSet<>(Set.of("Homo sapiens")));
+    attributes.put("geo_tissue_origin", new TreeSet<>(Set.of("Ly")));
+    attributes.put("geo_tissue_type", new TreeSet<>(Set.of("R")));
+    final var dto = new SampleProvenanceDto();
+    dto.setCreatedDate(MODIFIED);
+    dto.setIusTag("ACGTACGT");
+    dto.setLaneNumber(lane);
+    dto.setLastModified(MODIFIED);
+    dto.setParentSampleName("PROJ_0001_Ly_R_nn_1-1:PROJ_0001");
+    dto.setProvenanceId(id);
+    dto.setRootSampleName("PROJ_0001");
+    dto.setSampleAttributes(attributes);
+    dto.setSampleName("PROJ_0001_Ly_R_PE_" + id + "_WG");
+    dto.setSampleProvenanceId(id);
+    dto.setSequencerRunName("RUN1");
+    dto.setSequencerRunPlatformModel("NovaSeq 6000");
+    dto.setSkip(skip);
+    dto.setStudyTitle("PROJ");
+    dto.setVersion("v-" + id);
+    return dto;
+  }
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final Map<String, Integer> requests = new ConcurrentHashMap<>();
+  private final Set<String> slow = ConcurrentHashMap.newKeySet();
+  private final Set<String> failing = ConcurrentHashMap.newKeySet();
+  private ExecutorService serverExecutor;
+  private HttpServer server;
+
+  private void respond(HttpExchange exchange, String endpoint, Object body) throws IOException {
+    requests.merge(endpoint, 1, Integer::sum);
+    if (slow.contains(endpoint)) {
+      try {
+        release.await(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    final var bytes =
+        failing.contains(endpoint)
+            ? "Internal Server Error".getBytes()
+            : MAPPER.writeValueAsBytes(body);
+    exchange.getResponseHeaders().set("Content-type", "application/json");
+    exchange.sendResponseHeaders(failing.contains(endpoint) ? 500 : 200, bytes.length);
+    try (final var output = exchange.getResponseBody()) {
+      output.write(bytes);
+    }
+  }
+
+  private PinerySource source() {
+    final var configuration = new PineryConfiguration();
+    configuration.setProvider("pinery-miso");
+    configuration.setShortProvider("miso");
+    configuration.setTimeout(1);
+    configuration.setUrl("http://localhost:" + server.getAddress().getPort());
+    configuration.setVersion(9);
+    final var source = new PinerySource(Path.of("test.pinery"), "test");
+    source.update(configuration);
+    return source;
+  }
+
+  @BeforeEach
+  public void start() throws IOException {
+    serverExecutor = Executors.newCachedThreadPool();
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(serverExecutor);
+    server.createContext(
+        "/sequencerruns", exchange -> respond(exchange, "sequencerruns", List.of(run())));
+    server.createContext(
+        "/provenance/v9/lane-provenance",
+        exchange ->
+            respond(
+                exchange, "lane-provenance", List.of(lane("1", "1", false), lane("2", "2", true))));
+    server.createContext(
+        "/provenance/v9/sample-provenance",
+        exchange ->
+            respond(
+                exchange,
+                "sample-provenance",
+                List.of(
+                    sample("11", "1", false), sample("12", "1", true), sample("21", "2", false))));
+    server.start();
+  }
+
+  @AfterEach
+  public void stop() {
+    release.countDown();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testBothFormatsFromOneDownload() {
+    final var source = source();
+    final var analysis = source.streamIUS(false).toList();
+    final var includeSkipped = source.streamAllIUS(false).toList();
+    Assertions.assertEquals(
+        Map.of("sequencerruns", 1, "lane-provenance", 1, "sample-provenance", 1), requests);
+
+    // Skipped lanes and samples, and samples on skipped lanes, are only in the format that
+    // includes skipped items
+    Assertions.assertEquals(List.of("1", "11"), ids(analysis.stream()));
+    Assertions.assertEquals(List.of("1", "11", "12", "2", "21"), ids(includeSkipped.stream()));
+    Assertions.assertEquals(
+        Set.of("12", "2"),
+        includeSkipped.stream()
+            .filter(PineryIUSIncludeSkippedValue::skip)
+            .map(record -> (String) record.lims().get(0))
+            .collect(Collectors.toSet()));
+
+    // The records that are in both formats are built the same way
+    final var includeSkippedById =
+        includeSkipped.stream()
+            .collect(Collectors.toMap(record -> (String) record.lims().get(0), record -> record));
+    for (final var record : analysis) {
+      final var other = includeSkippedById.get((String) record.lims().get(0));
+      Assertions.assertEquals(record.bases_mask(), other.bases_mask());
+      Assertions.assertEquals(record.donor(), other.donor());
+      Assertions.assertEquals(record.external_key(), other.external_key());
+      Assertions.assertEquals(record.is_sample(), other.is_sample());
+      Assertions.assertEquals(record.ius(), other.ius());
+      Assertions.assertEquals(record.library_name(), other.library_name());
+      Assertions.assertEquals(record.lims(), other.lims());
+      Assertions.assertEquals(record.path(), other.path());
+      Assertions.assertEquals(record.run_id(), other.run_id());
+      Assertions.assertEquals(record.timestamp(), other.timestamp());
+      Assertions.assertEquals(record.tissue_name(), other.tissue_name());
+    }
+
+    final var sample =
+        analysis.stream().filter(PineryIUSValue::is_sample).findFirst().orElseThrow();
+    Assertions.assertEquals("PROJ_0001", sample.donor());
+    Assertions.assertEquals(new Tuple("RUN1", 1L, "ACGTACGT"), sample.ius());
+    Assertions.assertEquals(Path.of("/runs/RUN1"), sample.path());
+    Assertions.assertEquals(7L, sample.run_id());
+    Assertions.assertEquals(MODIFIED.toInstant(), sample.timestamp());
+    Assertions.assertEquals("PROJ_0001_Ly_R_nn_1-1", sample.tissue_name());
+    final var lane =
+        analysis.stream().filter(record -> !record.is_sample()).findFirst().orElseThrow();
+    Assertions.assertEquals(new Tuple("RUN1", 1L, "NoIndex"), lane.ius());
+    Assertions.assertEquals(Instant.parse("2024-01-01T01:00:00Z"), lane.start_date());
+
+    // Reading the formats again uses the same snapshot
+    Assertions.assertEquals(analysis, source.streamIUS(false).toList());
+    Assertions.assertEquals(
+        Map.of("sequencerruns", 1, "lane-provenance", 1, "sample-provenance", 1), requests);
+  }
+
+  @Test
+  public void testFailedDownloadCancelsOthers() {
+    failing.add("lane-provenance");
+    slow.add("sequencerruns");
+    slow.add("sample-provenance");
+    final var source = source();
+    final var started = Instant.now();
+    final var analysis = source.streamIUS(false);
+    // The refresh gives up as soon as one download fails rather than waiting for the others
+    Assertions.assertTrue(
+        Duration.between(started, Instant.now()).compareTo(Duration.ofSeconds(10)) < 0);
+    Assertions.assertFalse(((ErrorableStream<PineryIUSForAnalysisValue>) analysis).isOk());
+    Assertions.assertEquals(0, analysis.count());
+  }
+}
@@ -24,6 +24,7 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -78,6 +79,8 @@ public class PrometheusAlertManagerPluginType
 
     private final AlertCache cache;
     private Optional<Configuration> configuration = Optional.empty();
+    // Only accessed by pushes, which never run concurrently
+    private String lastUptime;
 
     public AlertManagerEndpoint(Path fileName, String instanceName) {
       super(fileName, instanceName, MAPPER, Configuration.class);
@@ -96,30 +99,60 @@ public class PrometheusAlertManagerPluginType
     }
 
     @Override
-    public void pushAlerts(String alertJson) {
-      configuration.ifPresent(
-          config -> {
-            var request =
-                HttpRequest.newBuilder(
-                        URI.create(String.format("%s/api/v1/alerts", config.getAlertmanager())))
-                    .header("Content-type", "application/json")
-                    .timeout(Duration.ofMinutes(config.getTimeout()))
-                    .POST(BodyPublishers.ofString(alertJson, StandardCharsets.UTF_8))
-                    .build();
-            try {
-              final var response = HTTP_CLIENT.send(request, BodyHandlers.discarding());
-              var ok = response.statusCode() != 200;
-              if (ok) {
-                System.err.printf(
-                    "Failed to write alerts to %s: %d",
-                    config.getAlertmanager(), response.statusCode());
-              }
-              pushOk.labels(config.getAlertmanager()).set(ok ? 1 : 0);
-            } catch (Exception e) {
-              e.printStackTrace();
-              pushOk.labels(config.getAlertmanager()).set(0);
-            }
-          });
+    public boolean pushAlertChanges(String changedAlertJson, Supplier<String> allAlertJson) {
+      return configuration.map(config -> push(config, changedAlertJson)).orElse(true);
+    }
+
+    private boolean push(Configuration config, String alertJson) {
+      // Alert Manager only keeps alerts in memory, so if it has restarted since the last push (or
+      // this is the first push to it), it may be missing alerts sent earlier and needs to be sent
+      // all of them again
+      final var uptime = uptime(config);
+      final var continuous = uptime.isPresent() && uptime.get().equals(lastUptime);
+      lastUptime = uptime.orElse(null);
+      var request =
+          HttpRequest.newBuilder(
+                  URI.create(String.format("%s/api/v1/alerts", config.getAlertmanager())))
+              .header("Content-type", "application/json")
+              .timeout(Duration.ofMinutes(config.getTimeout()))
+              .POST(BodyPublishers.ofString(alertJson, StandardCharsets.UTF_8))
+              .build();
+      try {
+        final var response = HTTP_CLIENT.send(request, BodyHandlers.discarding());
+        final var ok = response.statusCode() == 200;
+        if (!ok) {
+          System.err.printf(
+              "Failed to write alerts to %s: %d%n",
+              config.getAlertmanager(), response.statusCode());
+        }
+        pushOk.labels(config.getAlertmanager()).set(ok ? 1 : 0);
+        return ok && continuous;
+      } catch (Exception e) {
+        e.printStackTrace();
+        pushOk.labels(config.getAlertmanager()).set(0);
+        return false;
+      }
+    }
+
+    private Optional<String> uptime(Configuration config) {
+      try {
+        final var response =
+            HTTP_CLIENT.send(
+                httpGet(
+                    String.format("%s/api/v1/status", config.getAlertmanager()),
+                    Optional.of(config.getTimeout())),
+                BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+          return Optional.empty();
+        }
+        try (var body = response.body()) {
+          return Optional.ofNullable(
+              MAPPER.readTree(body).path("data").path("uptime").asText(null));
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+        return Optional.empty();
+      }
     }
 
     @Override
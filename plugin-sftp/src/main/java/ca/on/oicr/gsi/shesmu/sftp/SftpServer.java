@@ -60,6 +60,7 @@ public class SftpServer extends JsonPluginFile<Configuration> {
       extends KeyValueCache<Pair<Path, Boolean>, Optional<AlgebraicValue>> {
     public FileAttributeCache(Path fileName) {
       super("sftp " + fileName.toString(), 10, SimpleRecord::new);
+      maximumEntries(100_000);
     }
 
     @Override
@@ -10,38 +10,90 @@ import io.prometheus.client.Gauge;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 class TableFunctionFile extends PluginFile {
 
+  /**
+   * A lookup table compiled into a tree with one level per column
+   *
+   * <p>Each node branches on the value of its column, with a separate branch for rows that have a
+   * wildcard in that column. Each node also records the earliest row beneath it, so a lookup can
+   * skip any branch that cannot beat a match it has already found. This keeps the first matching
+   * row winning, as if the rows were checked in order.
+   */
   static final class Table implements VariadicFunction {
-    private final List<Object[]> attempts;
+    private static final class Node {
+      private final Map<Object, Node> exact = new HashMap<>();
+      private final int first;
+      private Object result;
+      private Node wildcard;
+
+      private Node(int first) {
+        this.first = first;
+      }
+
+      private Node child(Object value, int row) {
+        if (value == null) {
+          if (wildcard == null) {
+            wildcard = new Node(row);
+          }
+          return wildcard;
+        }
+        return exact.computeIfAbsent(value, k -> new Node(row));
+      }
+    }
+
+    private static Node find(Node node, int column, Object[] parameters, Node best) {
+      if (best != null && node.first >= best.first) {
+        return best;
+      }
+      if (column == parameters.length) {
+        return node;
+      }
+      final var match = node.exact.get(parameters[column]);
+      if (match != null) {
+        best = find(match, column + 1, parameters, best);
+      }
+      if (node.wildcard != null) {
+        best = find(node.wildcard, column + 1, parameters, best);
+      }
+      return best;
+    }
+
     private final Object defaultValue;
+    private final Node root;
 
     public Table(List<Object[]> attempts, Object defaultValue) {
       super();
-      this.attempts = attempts;
       this.defaultValue = defaultValue;
+      root = new Node(0);
+      for (var row = 0; row < attempts.size(); row++) {
+        final var attempt = attempts.get(row);
+        final var result = attempt[attempt.length - 1];
+        if (result == null) {
+          continue;
+        }
+        var node = root;
+        for (var column = 0; column < attempt.length - 1; column++) {
+          node = node.child(attempt[column], row);
+        }
+        if (node.result == null) {
+          node.result = result;
+        }
+      }
     }
 
     @Override
     public Object apply(Object... parameters) {
-      return attempts.stream()
-          .map(
-              attempt ->
-                  IntStream.range(0, parameters.length)
-                          .allMatch(i -> attempt[i] == null || attempt[i].equals(parameters[i]))
-                      ? attempt[attempt.length - 1]
-                      : null)
-          .filter(Objects::nonNull)
-          .findFirst()
-          .orElse(defaultValue);
+      final var match = find(root, 0, parameters, null);
+      return match == null ? defaultValue : match.result;
     }
   }
 
@@ -3,15 +3,21 @@ package ca.on.oicr.gsi.shesmu.tsv;
 import ca.on.oicr.gsi.shesmu.plugin.Definer;
 import ca.on.oicr.gsi.shesmu.plugin.PluginFileType;
 import ca.on.oicr.gsi.shesmu.plugin.Utils;
+import ca.on.oicr.gsi.shesmu.plugin.dumper.BufferedDumper;
 import ca.on.oicr.gsi.shesmu.plugin.dumper.Dumper;
 import ca.on.oicr.gsi.shesmu.plugin.json.JsonPluginFile;
 import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
 import ca.on.oicr.gsi.status.SectionRenderer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
@@ -19,10 +25,20 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 public class TsvDumperFileType extends PluginFileType<TsvDumperFileType.DumperConfiguration> {
   private static final ObjectMapper MAPPER = new ObjectMapper();
 
+  /** Open a file for writing, compressing it if the file name ends in <code>.gz</code> */
+  private static Writer open(Path path) throws IOException {
+    OutputStream output = Files.newOutputStream(path);
+    if (path.getFileName().toString().endsWith(".gz")) {
+      output = new GZIPOutputStream(output, 65536);
+    }
+    return new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 65536);
+  }
+
   static class DumperConfiguration extends JsonPluginFile<ObjectNode> {
     private Map<String, Path> paths = Map.of();
 
@@ -45,22 +61,17 @@ public class TsvDumperFileType extends PluginFileType<TsvDumperFileType.DumperCo
       return path == null
           ? Stream.empty()
           : Stream.of(
-              new Dumper() {
-                private final Optional<PrintStream> output;
+              new BufferedDumper(name) {
+                private final Optional<Writer> output;
 
                 {
-                  Optional<PrintStream> output;
+                  Optional<Writer> output;
                   try {
-                    final var stream = new PrintStream(path.toFile());
-                    for (var it = 0; it < columns.length; it++) {
-                      if (it > 0) {
-                        stream.print("\t");
-                      }
-                      stream.print(columns[it]);
-                    }
-                    stream.println();
-                    output = Optional.of(stream);
-                  } catch (final FileNotFoundException e) {
+                    final var writer = open(path);
+                    writer.write(String.join("\t", columns));
+                    writer.write('\n');
+                    output = Optional.of(writer);
+                  } catch (final IOException e) {
                     e.printStackTrace();
                     output = Optional.empty();
                   }
@@ -68,22 +79,24 @@ public class TsvDumperFileType extends PluginFileType<TsvDumperFileType.DumperCo
                 }
 
                 @Override
-                public void stop() {
-                  output.ifPresent(PrintStream::close);
+                protected void finish() throws IOException {
+                  if (output.isPresent()) {
+                    output.get().close();
+                  }
                 }
 
                 @Override
-                public void write(Object... values) {
-                  output.ifPresent(
-                      o -> {
-                        for (var it = 0; it < values.length; it++) {
-                          if (it > 0) {
-                            o.print("\t");
-                          }
-                          o.print(values[it]);
-                        }
-                        o.println();
-                      });
+                protected void writeRow(Object[] values) throws IOException {
+                  if (output.isPresent()) {
+                    final var o = output.get();
+                    for (var it = 0; it < values.length; it++) {
+                      if (it > 0) {
+                        o.write('\t');
+                      }
+                      o.write(String.valueOf(values[it]));
+                    }
+                    o.write('\n');
+                  }
                 }
               });
     }
@@ -0,0 +1,67 @@
+package ca.on.oicr.gsi.shesmu.tsv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TableTest {
+  private static Object scan(List<Object[]> attempts, Object defaultValue, Object... parameters) {
+    for (final var attempt : attempts) {
+      var matches = true;
+      for (var i = 0; i < parameters.length; i++) {
+        if (attempt[i] != null && !attempt[i].equals(parameters[i])) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        return attempt[attempt.length - 1];
+      }
+    }
+    return defaultValue;
+  }
+
+  @Test
+  public void testFirstMatchWins() {
+    final var attempts =
+        List.of(
+            new Object[] {"a", null, 1L},
+            new Object[] {null, "x", 2L},
+            new Object[] {"a", "x", 3L},
+            new Object[] {null, null, 4L});
+    final var table = new TableFunctionFile.Table(attempts, 0L);
+    Assertions.assertEquals(1L, table.apply("a", "x"));
+    Assertions.assertEquals(2L, table.apply("b", "x"));
+    Assertions.assertEquals(4L, table.apply("b", "y"));
+  }
+
+  @Test
+  public void testMatchesScan() {
+    final var random = new Random(1234);
+    final var attempts = new ArrayList<Object[]>();
+    for (var row = 0; row < 500; row++) {
+      final var attempt = new Object[4];
+      for (var column = 0; column < 3; column++) {
+        attempt[column] = random.nextInt(4) == 0 ? null : (long) random.nextInt(6);
+      }
+      attempt[3] = "row" + row;
+      attempts.add(attempt);
+    }
+    final var table = new TableFunctionFile.Table(attempts, "default");
+    for (var i = 0; i < 5000; i++) {
+      final var parameters =
+          new Object[] {
+            (long) random.nextInt(7), (long) random.nextInt(7), (long) random.nextInt(7)
+          };
+      Assertions.assertEquals(scan(attempts, "default", parameters), table.apply(parameters));
+    }
+  }
+
+  @Test
+  public void testNoRows() {
+    final var table = new TableFunctionFile.Table(List.of(), "default");
+    Assertions.assertEquals("default", table.apply("a"));
+  }
+}
@@ -0,0 +1,219 @@
+package ca.on.oicr.gsi.shesmu.vidarr;
+
+import ca.on.oicr.gsi.shesmu.gsicommon.IUSUtils;
+import ca.on.oicr.gsi.shesmu.plugin.ErrorableStream;
+import ca.on.oicr.gsi.shesmu.plugin.Tuple;
+import ca.on.oicr.gsi.shesmu.plugin.cache.ReplacingRecord;
+import ca.on.oicr.gsi.shesmu.plugin.cache.ValueCache;
+import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
+import ca.on.oicr.gsi.vidarr.api.AnalysisOutputType;
+import ca.on.oicr.gsi.vidarr.api.AnalysisProvenanceResponse;
+import ca.on.oicr.gsi.vidarr.api.ExternalKey;
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Fetches the analysis provenance from Vidarr for the <code>vidarr_analysis</code> input format
+ *
+ * <p>Vidarr can send only the records that changed since a previous request, so keep the records
+ * from previous requests and merge in the changes. The epoch changes when Vidarr can't provide
+ * changes relative to the previous request, in which case it sends everything.
+ */
+final class AnalysisCache extends ValueCache<Stream<VidarrAnalysisValue>> {
+  private static final Duration FULL_RELOAD_INTERVAL = Duration.ofDays(1);
+  private static final Gauge deltaRecords =
+      Gauge.build(
+              "shesmu_vidarr_analysis_delta_records",
+              "The number of analysis records received from Vidarr in the last request.")
+          .labelNames("filename")
+          .register();
+  private static final Counter fullReloads =
+      Counter.build(
+              "shesmu_vidarr_analysis_full_reloads",
+              "The number of times Vidarr sent all analysis records rather than the changes since"
+                  + " the previous request.")
+          .labelNames("filename")
+          .register();
+  private static final Gauge totalRecords =
+      Gauge.build(
+              "shesmu_vidarr_analysis_records",
+              "The number of analysis records cached from Vidarr.")
+          .labelNames("filename")
+          .register();
+
+  private static String createVidarrProvenanceRequestBody(
+      List<AnalysisOutputType> analysisTypes,
+      List<String> versionTypes,
+      long epoch,
+      long timestamp) {
+    return "{"
+        + "\"analysisTypes\": ["
+        + analysisTypes.stream()
+            .map(name -> ("\"" + name.toString() + "\""))
+            .collect(Collectors.joining(","))
+        + "],"
+        + "\"epoch\": "
+        + epoch
+        + ","
+        + "\"includeParameters\": false,"
+        + "\"timestamp\": "
+        + timestamp
+        + ","
+        + "\"versionPolicy\": \"LATEST\","
+        + "\"versionTypes\": ["
+        + versionTypes.stream().map(name -> ("\"" + name + "\"")).collect(Collectors.joining(","))
+        + "]}";
+  }
+
+  private final Map<String, VidarrAnalysisValue> analysis = new HashMap<>();
+  private final Clock clock;
+  private final Supplier<Optional<Configuration>> configuration;
+  private long epoch;
+  private final String fileName;
+  private Instant lastFullReload = Instant.EPOCH;
+  private String query = "";
+  private long timestamp;
+
+  AnalysisCache(Path fileName, Supplier<Optional<Configuration>> configuration, Clock clock) {
+    super("vidarr-analysis " + fileName.toString(), 30, ReplacingRecord::new);
+    this.fileName = fileName.toString();
+    this.configuration = configuration;
+    this.clock = clock;
+  }
+
+  private synchronized Stream<VidarrAnalysisValue> analysisArchive(Configuration configuration)
+      throws Exception {
+    // If the server or the types requested have changed, the previous records can't be reused.
+    // Changes don't include workflow runs that have been deleted, so also start over
+    // periodically to drop those.
+    final var currentQuery =
+        configuration.getUrl()
+            + " "
+            + configuration.getAnalysisTypes()
+            + " "
+            + configuration.getVersionTypes();
+    if (!currentQuery.equals(query)
+        || Duration.between(lastFullReload, clock.instant()).compareTo(FULL_RELOAD_INTERVAL) > 0) {
+      analysis.clear();
+      epoch = 0;
+      timestamp = 0;
+      query = currentQuery;
+    }
+
+    final HttpResponse<Supplier<AnalysisProvenanceResponse<ExternalKey>>> results =
+        VidarrPlugin.HTTP_CLIENT.send(
+            HttpRequest.newBuilder(URI.create(configuration.getUrl() + "/api/provenance"))
+                .header("Content-type", "application/json")
+                .timeout(Duration.ofMinutes(configuration.getTimeout()))
+                .POST(
+                    HttpRequest.BodyPublishers.ofString(
+                        createVidarrProvenanceRequestBody(
+                            configuration.getAnalysisTypes(),
+                            configuration.getVersionTypes(),
+                            epoch,
+                            timestamp)))
+                .build(),
+            new JsonBodyHandler<>(VidarrPlugin.MAPPER, new TypeReference<>() {}));
+
+    if (results.statusCode() != 200) {
+      System.err.printf(
+          "Request to %s to build vidarr_analysis input format returned bad HTTP code %d. The input format is now unusable.%n",
+          configuration.getUrl(), results.statusCode());
+      return new ErrorableStream<>(Stream.empty(), false);
+    }
+
+    final AnalysisProvenanceResponse<ExternalKey> body = results.body().get();
+    if (body.getEpoch() != epoch) {
+      analysis.clear();
+      fullReloads.labels(fileName).inc();
+      lastFullReload = clock.instant();
+    }
+    epoch = body.getEpoch();
+    timestamp = body.getTimestamp();
+    deltaRecords.labels(fileName).set(body.getResults().size());
+    body.getResults().stream()
+        .map(
+            ca ->
+                new VidarrAnalysisValue(
+                    ca.getCompleted().toInstant(),
+                    ca.getCreated().toInstant(),
+                    ca.getLastAccessed() == null
+                        ? Optional.empty()
+                        : Optional.of(ca.getLastAccessed().toInstant()),
+                    ca.getStarted() == null
+                        ? Optional.empty()
+                        : Optional.of(ca.getStarted().toInstant()),
+                    ca.getAnalysis() == null
+                        ? new HashSet<>()
+                        : ca.getAnalysis().stream()
+                            .map(
+                                analysisRecord ->
+                                    new Tuple(
+                                        analysisRecord.getChecksum(),
+                                        analysisRecord.getChecksumType(),
+                                        analysisRecord.getExternalKeys().stream()
+                                            .map(
+                                                externalId ->
+                                                    new Tuple(
+                                                        externalId.getId(),
+                                                        externalId.getProvider()))
+                                            .collect(Collectors.toSet()),
+                                        analysisRecord.getLabels(),
+                                        analysisRecord.getSize(),
+                                        String.format(
+                                            "vidarr:%s/file/%s",
+                                            ca.getInstanceName(), analysisRecord.getId()),
+                                        analysisRecord.getMetatype(),
+                                        Path.of(analysisRecord.getPath())))
+                            .collect(Collectors.toSet()),
+                    ca.getExternalKeys().stream()
+                        .map(
+                            eKey ->
+                                new Tuple(
+                                    eKey.getId(),
+                                    eKey.getProvider(),
+                                    eKey.getVersions() == null ? Map.of() : eKey.getVersions()))
+                        .collect(Collectors.toSet()),
+                    new HashSet<>(ca.getInputFiles()),
+                    ca.getWorkflowName(),
+                    ca.getWorkflowName() + "/" + ca.getWorkflowVersion(),
+                    String.format("vidarr:%s/run/%s", ca.getInstanceName(), ca.getId()),
+                    VidarrPlugin.MAPPER.convertValue(ca.getLabels(), new TypeReference<>() {}),
+                    IUSUtils.parseWorkflowVersion(ca.getWorkflowVersion())
+                        .orElse(IUSUtils.UNKNOWN_VERSION)))
+        .forEach(value -> analysis.put(value.workflow_run_accession(), value));
+    totalRecords.labels(fileName).set(analysis.size());
+    return List.copyOf(analysis.values()).stream();
+  }
+
+  @Override
+  protected Stream<VidarrAnalysisValue> fetch(Instant lastUpdated) throws Exception {
+    final var configuration = this.configuration.get();
+    if (configuration.isEmpty()) {
+      System.err.println(
+          "The vidarr_analysis input format is unusable because Vidarr config is empty.");
+      return new ErrorableStream<>(Stream.empty(), false);
+    }
+    if (configuration.get().getAnalysisTypes() == null
+        || configuration.get().getAnalysisTypes().isEmpty()) {
+      return new ErrorableStream<>(Stream.empty(), true);
+    }
+    return analysisArchive(configuration.get());
+  }
+}
@@ -1,23 +1,17 @@
 package ca.on.oicr.gsi.shesmu.vidarr;
 
-import static ca.on.oicr.gsi.shesmu.vidarr.VidarrPlugin.MAPPER;
-
 import ca.on.oicr.gsi.shesmu.plugin.action.ActionState;
-import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
 import ca.on.oicr.gsi.vidarr.api.ImportRequest;
 import ca.on.oicr.gsi.vidarr.api.WorkflowRunStatusResponse;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
-import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -32,13 +26,20 @@ public class ImportStateMonitor extends ImportState {
 
   public static PerformResult create(URI vidarrUrl, String id)
       throws IOException, InterruptedException {
-    final URI url = vidarrUrl.resolve("/api/status/" + id);
-    final HttpResponse<Supplier<WorkflowRunStatusResponse>> response =
-        VidarrPlugin.CLIENT.send(
-            HttpRequest.newBuilder(url).GET().build(),
-            new JsonBodyHandler<>(MAPPER, WorkflowRunStatusResponse.class));
-    if (response.statusCode() == 200) {
-      final WorkflowRunStatusResponse result = response.body().get();
+    final StatusBatcher batcher = StatusBatcher.of(vidarrUrl);
+    final URI url = batcher.url(id);
+    final Optional<WorkflowRunStatusResponse> response;
+    try {
+      response = batcher.status(id);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return new PerformResult(
+          List.of("Error getting workflow status."),
+          ActionState.UNKNOWN,
+          new ImportStateAttemptSubmit());
+    }
+    if (response.isPresent()) {
+      final WorkflowRunStatusResponse result = response.get();
 
       // Translating operation statuses to action states is the same for both modes
       final ActionState status = RunStateMonitor.actionStatusForWorkflowRun(result);
@@ -51,16 +52,11 @@ public class ImportStateMonitor extends ImportState {
         return new PerformResult(
             List.of(), status, new ImportStateMonitor(url.toASCIIString(), result));
       }
-    } else if (response.statusCode() == 404) {
+    } else {
       return new PerformResult(
           List.of("Imported workflow run is missing. Where did it go?"),
           ActionState.WAITING,
           new ImportStateAttemptSubmit(0));
-    } else {
-      return new PerformResult(
-          List.of("Error getting workflow status."),
-          ActionState.UNKNOWN,
-          new ImportStateAttemptSubmit());
     }
   }
 
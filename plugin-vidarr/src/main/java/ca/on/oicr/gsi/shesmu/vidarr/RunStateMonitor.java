@@ -61,13 +61,19 @@ final class RunStateMonitor extends RunState {
 
   public static PerformResult create(URI vidarrUrl, String id)
       throws IOException, InterruptedException {
-    final URI workflowRunUrl = vidarrUrl.resolve("/api/status/" + id);
-    final HttpResponse<Supplier<WorkflowRunStatusResponse>> response =
-        VidarrPlugin.CLIENT.send(
-            HttpRequest.newBuilder(workflowRunUrl).GET().build(),
-            new JsonBodyHandler<>(MAPPER, WorkflowRunStatusResponse.class));
-    if (response.statusCode() == 200) {
-      final WorkflowRunStatusResponse result = response.body().get();
+    final StatusBatcher batcher = StatusBatcher.of(vidarrUrl);
+    final Optional<WorkflowRunStatusResponse> response;
+    try {
+      response = batcher.status(id);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return new PerformResult(
+          List.of("Error getting workflow status."),
+          ActionState.UNKNOWN,
+          new RunStateAttemptSubmit(0));
+    }
+    if (response.isPresent()) {
+      final WorkflowRunStatusResponse result = response.get();
       final ActionState status = actionStatusForWorkflowRun(result);
       return new PerformResult(
           status == ActionState.FAILED
@@ -75,15 +81,10 @@ final class RunStateMonitor extends RunState {
                   "Workflow run has failed while executing. See workflow run logs for details.")
               : List.of(),
           status,
-          new RunStateMonitor(workflowRunUrl.toASCIIString(), result));
-    } else if (response.statusCode() == 404) {
-      return new PerformResult(
-          List.of("Workflow run was deleted."), ActionState.WAITING, new RunStateAttemptSubmit(0));
+          new RunStateMonitor(batcher.url(id).toASCIIString(), result));
     } else {
       return new PerformResult(
-          List.of("Error getting workflow status."),
-          ActionState.UNKNOWN,
-          new RunStateAttemptSubmit(0));
+          List.of("Workflow run was deleted."), ActionState.WAITING, new RunStateAttemptSubmit(0));
     }
   }
 
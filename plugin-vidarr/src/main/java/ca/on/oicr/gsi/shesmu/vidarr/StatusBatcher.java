@@ -0,0 +1,309 @@
+package ca.on.oicr.gsi.shesmu.vidarr;
+
+import static ca.on.oicr.gsi.shesmu.vidarr.VidarrPlugin.MAPPER;
+
+import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
+import ca.on.oicr.gsi.vidarr.api.WorkflowRunStatusResponse;
+import io.prometheus.client.Counter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Collects the workflow run status lookups made by actions and resolves them in bulk
+ *
+ * <p>Every action monitoring a workflow run needs its status each time it is checked. Rather than
+ * have each action make its own request, lookups made at around the same time are collected and
+ * fetched in a single request. Since monitoring actions are all rechecked on the same schedule, the
+ * statuses of workflow runs that will be due for a check soon are fetched along with them and kept
+ * in a short-lived snapshot that later lookups can be answered from.
+ *
+ * <p>If the Vidarr server does not support fetching statuses in bulk, each lookup is made
+ * individually, as before. If a bulk request fails for any other reason, the lookups in it are
+ * retried individually, but bulk requests will still be used for later batches. Workflow runs
+ * missing from a bulk response are also looked up individually, since only that lookup can say for
+ * certain that a workflow run does not exist.
+ *
+ * <p>Batches are fetched on a separate thread, so every action waiting on a batch is blocked only
+ * for as long as its own lookup takes.
+ */
+final class StatusBatcher {
+  private record Snapshot(Instant fetched, WorkflowRunStatusResponse status) {}
+
+  /** How long to wait for other lookups to join a batch */
+  private static final long BATCH_WINDOW_MS = 100;
+
+  private static final Map<URI, StatusBatcher> BATCHERS = new ConcurrentHashMap<>();
+
+  private static final Executor FLUSH_EXECUTOR =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            final var thread = new Thread(runnable, "vidarr-status");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** The maximum number of workflow runs to request at once */
+  private static final int MAX_BATCH_SIZE = 500;
+
+  /** How often monitoring actions are rechecked; this must match {@link RunState#retryMinutes()} */
+  private static final Duration POLL_INTERVAL = Duration.ofMinutes(5);
+
+  /** How long a fetched status can be used to answer a lookup */
+  private static final Duration SNAPSHOT_TTL = Duration.ofMinutes(1);
+
+  private static final Counter lookups =
+      Counter.build(
+              "shesmu_vidarr_status_lookups",
+              "The number of workflow run statuses requested by actions.")
+          .labelNames("url")
+          .register();
+  private static final Counter requests =
+      Counter.build(
+              "shesmu_vidarr_status_requests",
+              "The number of HTTP requests made to Vidarr to fetch workflow run statuses.")
+          .labelNames("url")
+          .register();
+  private static final Counter snapshotHits =
+      Counter.build(
+              "shesmu_vidarr_status_snapshot_hits",
+              "The number of workflow run status lookups answered from a previously fetched"
+                  + " batch.")
+          .labelNames("url")
+          .register();
+
+  /**
+   * Get the batcher for a Vidarr server
+   *
+   * <p>All plugin configurations that use the same Vidarr server share a batcher.
+   */
+  public static StatusBatcher of(URI vidarrUrl) {
+    return BATCHERS.computeIfAbsent(
+        vidarrUrl, url -> new StatusBatcher(url, Clock.systemUTC(), MAX_BATCH_SIZE));
+  }
+
+  private boolean bulkSupported = true;
+  private final Clock clock;
+  private boolean collecting;
+  private final Map<String, Instant> lastLookup = new HashMap<>();
+  private final int maxBatchSize;
+  private Map<String, CompletableFuture<Optional<WorkflowRunStatusResponse>>> pending =
+      new HashMap<>();
+  private final Map<String, Snapshot> snapshots = new HashMap<>();
+  private final String label;
+  private final URI vidarrUrl;
+
+  StatusBatcher(URI vidarrUrl, Clock clock, int maxBatchSize) {
+    this.vidarrUrl = vidarrUrl;
+    this.clock = clock;
+    this.maxBatchSize = maxBatchSize;
+    label = vidarrUrl.toString();
+  }
+
+  private void completeIndividually(
+      Map<String, CompletableFuture<Optional<WorkflowRunStatusResponse>>> batch) {
+    for (final var entry : batch.entrySet()) {
+      try {
+        requests.labels(label).inc();
+        final HttpResponse<Supplier<WorkflowRunStatusResponse>> response =
+            VidarrPlugin.CLIENT.send(
+                HttpRequest.newBuilder(url(entry.getKey())).GET().build(),
+                new JsonBodyHandler<>(MAPPER, WorkflowRunStatusResponse.class));
+        if (response.statusCode() == 200) {
+          entry.getValue().complete(Optional.of(response.body().get()));
+        } else if (response.statusCode() == 404) {
+          entry.getValue().complete(Optional.empty());
+        } else {
+          entry
+              .getValue()
+              .completeExceptionally(
+                  new IOException(
+                      String.format(
+                          "Unexpected HTTP response %d from server.", response.statusCode())));
+        }
+      } catch (Exception e) {
+        entry.getValue().completeExceptionally(e);
+      }
+    }
+  }
+
+  private void flush() {
+    final Map<String, CompletableFuture<Optional<WorkflowRunStatusResponse>>> batch;
+    final List<String> prefetch = new ArrayList<>();
+    final boolean bulk;
+    synchronized (this) {
+      batch = pending;
+      pending = new HashMap<>();
+      collecting = false;
+      bulk = bulkSupported;
+      if (bulk) {
+        // Anything that will be due for a check before the snapshot expires is fetched now;
+        // anything that hasn't been looked up in a while probably belongs to an action that is gone
+        final var now = clock.instant();
+        final var dueBefore = now.minus(POLL_INTERVAL).plus(SNAPSHOT_TTL);
+        final var forgetBefore = now.minus(POLL_INTERVAL.multipliedBy(3));
+        final var iterator = lastLookup.entrySet().iterator();
+        while (iterator.hasNext()) {
+          final var entry = iterator.next();
+          if (entry.getValue().isBefore(forgetBefore)) {
+            iterator.remove();
+            snapshots.remove(entry.getKey());
+          } else if (!batch.containsKey(entry.getKey()) && entry.getValue().isBefore(dueBefore)) {
+            final var snapshot = snapshots.get(entry.getKey());
+            if (snapshot == null || snapshot.fetched().isBefore(now.minus(SNAPSHOT_TTL))) {
+              prefetch.add(entry.getKey());
+            }
+          }
+        }
+      }
+    }
+    if (!bulk) {
+      completeIndividually(batch);
+      return;
+    }
+    final var ids = new ArrayList<>(batch.keySet());
+    ids.addAll(prefetch);
+    for (var start = 0; start < ids.size(); start += maxBatchSize) {
+      final var chunk = ids.subList(start, Math.min(ids.size(), start + maxBatchSize));
+      try {
+        requests.labels(label).inc();
+        final HttpResponse<Supplier<WorkflowRunStatusResponse[]>> response =
+            VidarrPlugin.CLIENT.send(
+                HttpRequest.newBuilder(vidarrUrl.resolve("/api/status"))
+                    .header("Content-type", "application/json")
+                    .POST(BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(chunk)))
+                    .build(),
+                new JsonBodyHandler<>(MAPPER, WorkflowRunStatusResponse[].class));
+        if (response.statusCode() != 200) {
+          // If this server can't do bulk lookups, don't ask it again; otherwise, only this chunk
+          // is looked up individually and the prefetched workflow runs are skipped
+          final var unsupported = response.statusCode() == 404 || response.statusCode() == 405;
+          if (unsupported) {
+            synchronized (this) {
+              bulkSupported = false;
+            }
+          }
+          final Map<String, CompletableFuture<Optional<WorkflowRunStatusResponse>>> remaining =
+              new HashMap<>();
+          for (final var id : unsupported ? ids.subList(start, ids.size()) : chunk) {
+            final var future = batch.get(id);
+            if (future != null) {
+              remaining.put(id, future);
+            }
+          }
+          completeIndividually(remaining);
+          if (unsupported) {
+            return;
+          }
+          continue;
+        }
+        final Map<String, WorkflowRunStatusResponse> results = new HashMap<>();
+        for (final var status : response.body().get()) {
+          results.put(status.getId(), status);
+        }
+        // Store the prefetched statuses before any waiting lookups are released, so that lookups
+        // that follow can use them
+        final var now = clock.instant();
+        synchronized (this) {
+          for (final var id : chunk) {
+            final var status = results.get(id);
+            // A prefetched workflow run that is missing is left to be looked up normally
+            if (status != null && !batch.containsKey(id)) {
+              snapshots.put(id, new Snapshot(now, status));
+            }
+          }
+        }
+        final Map<String, CompletableFuture<Optional<WorkflowRunStatusResponse>>> missing =
+            new HashMap<>();
+        for (final var id : chunk) {
+          final var future = batch.get(id);
+          if (future != null) {
+            final var status = results.get(id);
+            if (status == null) {
+              missing.put(id, future);
+            } else {
+              future.complete(Optional.of(status));
+            }
+          }
+        }
+        completeIndividually(missing);
+      } catch (Exception e) {
+        final Map<String, CompletableFuture<Optional<WorkflowRunStatusResponse>>> remaining =
+            new HashMap<>();
+        for (final var id : chunk) {
+          final var future = batch.get(id);
+          if (future != null) {
+            remaining.put(id, future);
+          }
+        }
+        completeIndividually(remaining);
+      }
+    }
+  }
+
+  /**
+   * Get the status of a workflow run
+   *
+   * @param id the workflow run identifier
+   * @return the status of the workflow run or empty if Vidarr does not know about it
+   */
+  public Optional<WorkflowRunStatusResponse> status(String id)
+      throws IOException, InterruptedException {
+    lookups.labels(label).inc();
+    final CompletableFuture<Optional<WorkflowRunStatusResponse>> future;
+    synchronized (this) {
+      final var now = clock.instant();
+      lastLookup.put(id, now);
+      final var snapshot = snapshots.remove(id);
+      if (snapshot != null && snapshot.fetched().isAfter(now.minus(SNAPSHOT_TTL))) {
+        snapshotHits.labels(label).inc();
+        return Optional.of(snapshot.status());
+      }
+      future = pending.computeIfAbsent(id, k -> new CompletableFuture<>());
+      if (!collecting) {
+        collecting = true;
+        CompletableFuture.runAsync(
+            this::flush,
+            CompletableFuture.delayedExecutor(
+                BATCH_WINDOW_MS, TimeUnit.MILLISECONDS, FLUSH_EXECUTOR));
+      }
+    }
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) {
+        throw ioException;
+      } else if (e.getCause() instanceof InterruptedException interruptedException) {
+        throw interruptedException;
+      } else {
+        throw new IOException(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * The URL to get the status of a single workflow run
+   *
+   * @param id the workflow run identifier
+   */
+  public URI url(String id) {
+    return vidarrUrl.resolve("/api/status/" + id);
+  }
+}
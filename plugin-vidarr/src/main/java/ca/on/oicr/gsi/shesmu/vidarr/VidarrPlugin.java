@@ -1,12 +1,10 @@
 package ca.on.oicr.gsi.shesmu.vidarr;
 
 import ca.on.oicr.gsi.Pair;
-import ca.on.oicr.gsi.shesmu.gsicommon.IUSUtils;
 import ca.on.oicr.gsi.shesmu.plugin.*;
 import ca.on.oicr.gsi.shesmu.plugin.action.CustomActionParameter;
 import ca.on.oicr.gsi.shesmu.plugin.action.ShesmuAction;
 import ca.on.oicr.gsi.shesmu.plugin.cache.KeyValueCache;
-import ca.on.oicr.gsi.shesmu.plugin.cache.ReplacingRecord;
 import ca.on.oicr.gsi.shesmu.plugin.cache.SimpleRecord;
 import ca.on.oicr.gsi.shesmu.plugin.cache.ValueCache;
 import ca.on.oicr.gsi.shesmu.plugin.functions.ShesmuMethod;
@@ -31,6 +29,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Path;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
@@ -43,119 +42,6 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class VidarrPlugin extends JsonPluginFile<Configuration> {
-
-  private class AnalysisCache extends ValueCache<Stream<VidarrAnalysisValue>> {
-    public AnalysisCache(Path fileName) {
-      super("vidarr-analysis " + fileName.toString(), 30, ReplacingRecord::new);
-    }
-
-    private String createVidarrProvenanceRequestBody(
-        List<AnalysisOutputType> analysisTypes, List<String> versionTypes) {
-      return "{"
-          + "\"analysisTypes\": ["
-          + analysisTypes.stream()
-              .map(name -> ("\"" + name.toString() + "\""))
-              .collect(Collectors.joining(","))
-          + "],"
-          + "\"epoch\": 0,"
-          + "\"includeParameters\": false,"
-          + "\"timestamp\": 0,"
-          + "\"versionPolicy\": \"LATEST\","
-          + "\"versionTypes\": ["
-          + versionTypes.stream().map(name -> ("\"" + name + "\"")).collect(Collectors.joining(","))
-          + "]}";
-    }
-
-    protected Stream<VidarrAnalysisValue> analysisArchive(String baseUrl) throws Exception {
-
-      final HttpResponse<Supplier<AnalysisProvenanceResponse<ExternalKey>>> results =
-          HTTP_CLIENT.send(
-              HttpRequest.newBuilder(URI.create(baseUrl + "/api/provenance"))
-                  .header("Content-type", "application/json")
-                  .timeout(Duration.ofMinutes(configuration.get().getTimeout()))
-                  .POST(
-                      HttpRequest.BodyPublishers.ofString(
-                          createVidarrProvenanceRequestBody(
-                              configuration.get().getAnalysisTypes(),
-                              configuration.get().getVersionTypes())))
-                  .build(),
-              new JsonBodyHandler<>(MAPPER, new TypeReference<>() {}));
-
-      if (results.statusCode() != 200) {
-        System.err.printf(
-            "Request to %s to build vidarr_analysis input format returned bad HTTP code %d. The input format is now unusable.%n",
-            baseUrl, results.statusCode());
-        return new ErrorableStream<>(Stream.empty(), false);
-      }
-
-      final AnalysisProvenanceResponse<ExternalKey> body = results.body().get();
-      return body.getResults().stream()
-          .map(
-              ca ->
-                  new VidarrAnalysisValue(
-                      ca.getCompleted().toInstant(),
-                      ca.getCreated().toInstant(),
-                      ca.getLastAccessed() == null
-                          ? Optional.empty()
-                          : Optional.of(ca.getLastAccessed().toInstant()),
-                      ca.getStarted() == null
-                          ? Optional.empty()
-                          : Optional.of(ca.getStarted().toInstant()),
-                      ca.getAnalysis() == null
-                          ? new HashSet<>()
-                          : ca.getAnalysis().stream()
-                              .map(
-                                  analysisRecord ->
-                                      new Tuple(
-                                          analysisRecord.getChecksum(),
-                                          analysisRecord.getChecksumType(),
-                                          analysisRecord.getExternalKeys().stream()
-                                              .map(
-                                                  externalId ->
-                                                      new Tuple(
-                                                          externalId.getId(),
-                                                          externalId.getProvider()))
-                                              .collect(Collectors.toSet()),
-                                          analysisRecord.getLabels(),
-                                          analysisRecord.getSize(),
-                                          String.format(
-                                              "vidarr:%s/file/%s",
-                                              ca.getInstanceName(), analysisRecord.getId()),
-                                          analysisRecord.getMetatype(),
-                                          Path.of(analysisRecord.getPath())))
-                              .collect(Collectors.toSet()),
-                      ca.getExternalKeys().stream()
-                          .map(
-                              eKey ->
-                                  new Tuple(
-                                      eKey.getId(),
-                                      eKey.getProvider(),
-                                      eKey.getVersions() == null ? Map.of() : eKey.getVersions()))
-                          .collect(Collectors.toSet()),
-                      new HashSet<>(ca.getInputFiles()),
-                      ca.getWorkflowName(),
-                      ca.getWorkflowName() + "/" + ca.getWorkflowVersion(),
-                      String.format("vidarr:%s/run/%s", ca.getInstanceName(), ca.getId()),
-                      MAPPER.convertValue(ca.getLabels(), new TypeReference<>() {}),
-                      IUSUtils.parseWorkflowVersion(ca.getWorkflowVersion())
-                          .orElse(IUSUtils.UNKNOWN_VERSION)));
-    }
-
-    @Override
-    protected Stream<VidarrAnalysisValue> fetch(Instant lastUpdated) throws Exception {
-      if (configuration.isEmpty()) {
-        System.err.println(
-            "The vidarr_analysis input format is unusable because Vidarr config is empty.");
-        return new ErrorableStream<>(Stream.empty(), false);
-      }
-      if (configuration.get().getAnalysisTypes() == null
-          || configuration.get().getAnalysisTypes().isEmpty()) {
-        return new ErrorableStream<>(Stream.empty(), true);
-      }
-      return analysisArchive(configuration.get().getUrl());
-    }
-  }
-
   private class MaxInFlightCache extends ValueCache<Optional<MaxInFlightDeclaration>> {
 
     public MaxInFlightCache(String name) {
@@ -186,6 +72,8 @@ public class VidarrPlugin extends JsonPluginFile<Configuration> {
 
     public WorkflowRunInformationCache(String instanceName) {
       super("workflow-info " + instanceName, 10, SimpleRecord::new);
+      maximumEntries(100_000);
+      singleFlightTimeout(Duration.ofMinutes(1));
     }
 
     @Override
@@ -331,7 +219,7 @@ public class VidarrPlugin extends JsonPluginFile<Configuration> {
     this.definer = definer;
     mifCache = new MaxInFlightCache(instanceName);
     workflowRunInfo = new WorkflowRunInformationCache(instanceName);
-    analysisCache = new AnalysisCache(fileName);
+    analysisCache = new AnalysisCache(fileName, () -> configuration, Clock.systemUTC());
   }
 
   @Override
@@ -12,7 +12,9 @@ module ca.on.oicr.gsi.shesmu.plugin.vidarr {
   requires ca.on.oicr.gsi.vidarr.pluginapi;
   requires com.fasterxml.jackson.datatype.jsr310;
   requires java.net.http;
+  requires jdk.httpserver;
   requires com.fasterxml.jackson.databind;
+  requires simpleclient;
 
   provides InputFormat with
       VidarrAnalysisFormatDefinition;
@@ -0,0 +1,178 @@
+package ca.on.oicr.gsi.shesmu.vidarr;
+
+import static ca.on.oicr.gsi.shesmu.vidarr.VidarrPlugin.MAPPER;
+
+import ca.on.oicr.gsi.shesmu.plugin.Tuple;
+import ca.on.oicr.gsi.vidarr.api.AnalysisOutputType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AnalysisCacheTest {
+  private static final class TestClock extends Clock {
+    private Instant now = Instant.now();
+
+    public void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+  }
+
+  private static String response(long epoch, long timestamp, String... runs) {
+    return "{\"epoch\":"
+        + epoch
+        + ",\"timestamp\":"
+        + timestamp
+        + ",\"results\":["
+        + String.join(",", runs)
+        + "]}";
+  }
+
+  private static String run(String id, String version) {
+    return "{\"id\":\""
+        + id
+        + "\",\"instanceName\":\"test\",\"workflowName\":\"bcl2fastq\",\"workflowVersion\":\""
+        + version
+        + "\",\"created\":\"2024-01-01T00:00:00Z\",\"completed\":\"2024-01-02T00:00:00Z\","
+        + "\"externalKeys\":[{\"id\":\"1\",\"provider\":\"pinery-miso\",\"versions\":{}}],"
+        + "\"inputFiles\":[],\"labels\":{},\"analysis\":[]}";
+  }
+
+  private final TestClock clock = new TestClock();
+  private final List<JsonNode> requests = new CopyOnWriteArrayList<>();
+  private final Queue<String> responses = new ConcurrentLinkedQueue<>();
+  private HttpServer server;
+
+  private AnalysisCache cache(String name) {
+    final var configuration = new Configuration();
+    configuration.setAnalysisTypes(List.of(AnalysisOutputType.FILE));
+    configuration.setTimeout(1);
+    configuration.setUrl("http://localhost:" + server.getAddress().getPort());
+    configuration.setVersionTypes(List.of());
+    return new AnalysisCache(Path.of(name), () -> Optional.of(configuration), clock);
+  }
+
+  private static Map<String, Tuple> fetch(AnalysisCache cache) {
+    cache.invalidate();
+    return cache
+        .get()
+        .collect(
+            Collectors.toMap(
+                VidarrAnalysisValue::workflow_run_accession,
+                VidarrAnalysisValue::workflow_version));
+  }
+
+  private void assertRequest(int index, long epoch, long timestamp) {
+    Assertions.assertEquals(epoch, requests.get(index).get("epoch").asLong());
+    Assertions.assertEquals(timestamp, requests.get(index).get("timestamp").asLong());
+  }
+
+  @BeforeEach
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/api/provenance",
+        exchange -> {
+          requests.add(MAPPER.readTree(exchange.getRequestBody()));
+          final var bytes = responses.remove().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-type", "application/json");
+          exchange.sendResponseHeaders(200, bytes.length);
+          try (final var output = exchange.getResponseBody()) {
+            output.write(bytes);
+          }
+        });
+    server.start();
+  }
+
+  @AfterEach
+  public void stop() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testMerge() {
+    final var cache = cache("test-merge");
+    responses.add(response(7, 100, run("a", "1.0.0"), run("b", "1.0.0")));
+    responses.add(response(7, 200, run("b", "2.0.0"), run("c", "1.0.0")));
+    Assertions.assertEquals(
+        Map.of(
+            "vidarr:test/run/a", new Tuple(1L, 0L, 0L),
+            "vidarr:test/run/b", new Tuple(1L, 0L, 0L)),
+        fetch(cache));
+    assertRequest(0, 0, 0);
+
+    // The second request asks for the changes since the first and they are merged in
+    Assertions.assertEquals(
+        Map.of(
+            "vidarr:test/run/a", new Tuple(1L, 0L, 0L),
+            "vidarr:test/run/b", new Tuple(2L, 0L, 0L),
+            "vidarr:test/run/c", new Tuple(1L, 0L, 0L)),
+        fetch(cache));
+    assertRequest(1, 7, 100);
+  }
+
+  @Test
+  public void testEpochChanged() {
+    final var cache = cache("test-epoch");
+    responses.add(response(7, 100, run("a", "1.0.0"), run("b", "1.0.0")));
+    responses.add(response(8, 300, run("c", "1.0.0")));
+    responses.add(response(8, 400));
+    Assertions.assertEquals(2, fetch(cache).size());
+
+    // A new epoch means Vidarr has sent everything, so the old records are replaced
+    Assertions.assertEquals(Map.of("vidarr:test/run/c", new Tuple(1L, 0L, 0L)), fetch(cache));
+    assertRequest(1, 7, 100);
+    Assertions.assertEquals(Map.of("vidarr:test/run/c", new Tuple(1L, 0L, 0L)), fetch(cache));
+    assertRequest(2, 8, 300);
+  }
+
+  @Test
+  public void testDailyReload() {
+    final var cache = cache("test-daily");
+    responses.add(response(7, 100, run("a", "1.0.0"), run("b", "1.0.0")));
+    responses.add(response(7, 200));
+    responses.add(response(7, 300, run("b", "1.0.0")));
+    Assertions.assertEquals(2, fetch(cache).size());
+    clock.advance(Duration.ofHours(23));
+    Assertions.assertEquals(2, fetch(cache).size());
+    assertRequest(1, 7, 100);
+
+    // After a day, everything is requested again to drop workflow runs that have been deleted
+    clock.advance(Duration.ofHours(2));
+    Assertions.assertEquals(Map.of("vidarr:test/run/b", new Tuple(1L, 0L, 0L)), fetch(cache));
+    assertRequest(2, 0, 0);
+  }
+}
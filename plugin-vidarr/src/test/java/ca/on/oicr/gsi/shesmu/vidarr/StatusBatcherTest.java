@@ -0,0 +1,277 @@
+package ca.on.oicr.gsi.shesmu.vidarr;
+
+import static ca.on.oicr.gsi.shesmu.vidarr.VidarrPlugin.MAPPER;
+
+import ca.on.oicr.gsi.vidarr.api.WorkflowRunStatusResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StatusBatcherTest {
+  private static final class TestClock extends Clock {
+    private Instant now = Instant.now();
+
+    public void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+  }
+
+  /** The workflow runs the stand-in Vidarr server knows about */
+  private static final Set<String> KNOWN = Set.of("a", "b", "c", "d", "e");
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    final var bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    try (final var output = exchange.getResponseBody()) {
+      output.write(bytes);
+    }
+  }
+
+  private static String status(String id) {
+    return "{\"id\":\"" + id + "\"}";
+  }
+
+  private final AtomicReference<String> bulkBody = new AtomicReference<>();
+  private final List<List<String>> bulkRequests = new CopyOnWriteArrayList<>();
+  private final AtomicInteger bulkStatus = new AtomicInteger(200);
+  private final TestClock clock = new TestClock();
+  private final List<String> individualRequests = new CopyOnWriteArrayList<>();
+  private final Set<String> omitted = ConcurrentHashMap.newKeySet();
+  private HttpServer server;
+
+  private StatusBatcher batcher(int maxBatchSize) {
+    return new StatusBatcher(
+        URI.create("http://localhost:" + server.getAddress().getPort() + "/"), clock, maxBatchSize);
+  }
+
+  private List<Optional<String>> lookupConcurrently(StatusBatcher batcher, String... ids)
+      throws InterruptedException, ExecutionException {
+    final List<Optional<String>> results = new ArrayList<>();
+    try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final List<Future<Optional<String>>> futures = new ArrayList<>();
+      for (final var id : ids) {
+        futures.add(
+            executor.submit(() -> batcher.status(id).map(WorkflowRunStatusResponse::getId)));
+      }
+      for (final var future : futures) {
+        results.add(future.get());
+      }
+    }
+    return results;
+  }
+
+  @BeforeEach
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/api/status",
+        exchange -> {
+          final var path = exchange.getRequestURI().getPath();
+          if (path.equals("/api/status")) {
+            final List<String> ids =
+                List.of(MAPPER.readValue(exchange.getRequestBody(), String[].class));
+            bulkRequests.add(ids);
+            if (bulkBody.get() != null) {
+              respond(exchange, 200, bulkBody.get());
+            } else if (bulkStatus.get() == 200) {
+              final var body = new StringBuilder("[");
+              for (final var id : ids) {
+                if (KNOWN.contains(id) && !omitted.contains(id)) {
+                  if (body.length() > 1) {
+                    body.append(",");
+                  }
+                  body.append(status(id));
+                }
+              }
+              respond(exchange, 200, body.append("]").toString());
+            } else {
+              respond(exchange, bulkStatus.get(), "");
+            }
+          } else {
+            final var id = path.substring("/api/status/".length());
+            individualRequests.add(id);
+            if (KNOWN.contains(id)) {
+              respond(exchange, 200, status(id));
+            } else {
+              respond(exchange, 404, "");
+            }
+          }
+        });
+    server.start();
+  }
+
+  @AfterEach
+  public void stop() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testBatched() throws Exception {
+    final var results = lookupConcurrently(batcher(500), "a", "b", "c", "missing");
+    Assertions.assertEquals(
+        List.of(Optional.of("a"), Optional.of("b"), Optional.of("c"), Optional.empty()), results);
+    Assertions.assertEquals(1, bulkRequests.size());
+    Assertions.assertEquals(Set.of("a", "b", "c", "missing"), Set.copyOf(bulkRequests.get(0)));
+    // Only an individual lookup can confirm that a workflow run doesn't exist
+    Assertions.assertEquals(List.of("missing"), individualRequests);
+  }
+
+  @Test
+  public void testOmitted() throws Exception {
+    // The server leaves out a workflow run it knows about, so it must be looked up individually
+    omitted.add("b");
+    final var batcher = batcher(500);
+    Assertions.assertEquals(
+        List.of(Optional.of("a"), Optional.of("b")), lookupConcurrently(batcher, "a", "b"));
+    Assertions.assertEquals(List.of("b"), individualRequests);
+
+    // An omitted workflow run that was only prefetched isn't recorded as missing
+    clock.advance(Duration.ofMinutes(4).plusSeconds(30));
+    Assertions.assertEquals(
+        Optional.of("a"), batcher.status("a").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(Set.of("a", "b"), Set.copyOf(bulkRequests.get(1)));
+    omitted.clear();
+    Assertions.assertEquals(
+        Optional.of("b"), batcher.status("b").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(3, bulkRequests.size());
+  }
+
+  @Test
+  public void testUnreadable() throws Exception {
+    bulkBody.set("<html>Bad gateway</html>");
+    final var batcher = batcher(500);
+    Assertions.assertEquals(
+        List.of(Optional.of("a"), Optional.empty()), lookupConcurrently(batcher, "a", "missing"));
+    Assertions.assertEquals(Set.of("a", "missing"), Set.copyOf(individualRequests));
+
+    // A response that can't be read doesn't stop later batches from using bulk lookups
+    bulkBody.set(null);
+    Assertions.assertEquals(
+        Optional.of("b"), batcher.status("b").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(2, bulkRequests.size());
+    Assertions.assertEquals(2, individualRequests.size());
+  }
+
+  @Test
+  public void testChunked() throws Exception {
+    final var results = lookupConcurrently(batcher(2), "a", "b", "c", "d", "e");
+    Assertions.assertTrue(results.stream().allMatch(Optional::isPresent));
+    Assertions.assertEquals(3, bulkRequests.size());
+    Assertions.assertTrue(bulkRequests.stream().allMatch(ids -> ids.size() <= 2));
+    Assertions.assertEquals(
+        KNOWN, Set.copyOf(bulkRequests.stream().flatMap(List::stream).toList()));
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    final var batcher = batcher(500);
+    Assertions.assertEquals(
+        Optional.of("a"), batcher.status("a").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(
+        Optional.of("b"), batcher.status("b").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(2, bulkRequests.size());
+
+    // "b" will be due for a check soon, so it is fetched along with "a"
+    clock.advance(Duration.ofMinutes(4).plusSeconds(30));
+    Assertions.assertEquals(
+        Optional.of("a"), batcher.status("a").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(3, bulkRequests.size());
+    Assertions.assertEquals(Set.of("a", "b"), Set.copyOf(bulkRequests.get(2)));
+    clock.advance(Duration.ofSeconds(30));
+    Assertions.assertEquals(
+        Optional.of("b"), batcher.status("b").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(3, bulkRequests.size());
+
+    // Once the snapshot has expired, it must not be used
+    clock.advance(Duration.ofMinutes(4).plusSeconds(30));
+    Assertions.assertEquals(
+        Optional.of("a"), batcher.status("a").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(Set.of("a", "b"), Set.copyOf(bulkRequests.get(3)));
+    clock.advance(Duration.ofMinutes(2));
+    Assertions.assertEquals(
+        Optional.of("b"), batcher.status("b").map(WorkflowRunStatusResponse::getId));
+    Assertions.assertEquals(5, bulkRequests.size());
+    Assertions.assertEquals(List.of("b"), bulkRequests.get(4));
+  }
+
+  @Test
+  public void testUnsupported() throws Exception {
+    for (final var status : new int[] {404, 405}) {
+      bulkRequests.clear();
+      individualRequests.clear();
+      bulkStatus.set(status);
+      final var batcher = batcher(2);
+      Assertions.assertEquals(
+          List.of(Optional.of("a"), Optional.of("b"), Optional.of("c"), Optional.empty()),
+          lookupConcurrently(batcher, "a", "b", "c", "missing"));
+      Assertions.assertEquals(1, bulkRequests.size());
+      Assertions.assertEquals(Set.of("a", "b", "c", "missing"), Set.copyOf(individualRequests));
+
+      // Once the server has said it can't do bulk lookups, it isn't asked again
+      bulkStatus.set(200);
+      Assertions.assertEquals(
+          Optional.of("d"), batcher.status("d").map(WorkflowRunStatusResponse::getId));
+      Assertions.assertEquals(1, bulkRequests.size());
+    }
+  }
+
+  @Test
+  public void testFailed() throws Exception {
+    for (final var status : new int[] {400, 500}) {
+      bulkRequests.clear();
+      individualRequests.clear();
+      bulkStatus.set(status);
+      final var batcher = batcher(500);
+      Assertions.assertEquals(
+          List.of(Optional.of("a"), Optional.empty()), lookupConcurrently(batcher, "a", "missing"));
+      Assertions.assertEquals(1, bulkRequests.size());
+      Assertions.assertEquals(Set.of("a", "missing"), Set.copyOf(individualRequests));
+
+      // A failed bulk request doesn't stop later batches from using bulk lookups
+      bulkStatus.set(200);
+      Assertions.assertEquals(
+          Optional.of("b"), batcher.status("b").map(WorkflowRunStatusResponse::getId));
+      Assertions.assertEquals(2, bulkRequests.size());
+      Assertions.assertEquals(2, individualRequests.size());
+    }
+  }
+}
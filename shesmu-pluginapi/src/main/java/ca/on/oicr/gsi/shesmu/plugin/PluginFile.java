@@ -13,6 +13,7 @@ import java.time.Instant;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -73,6 +74,24 @@ public abstract class PluginFile implements RequiredServices {
     return instanceName;
   }
 
+  /**
+   * Receive JSON data describing Prometheus alerts that are firing for the olives
+   *
+   * <p>Only alerts that are new, have changed, or are close to their previously pushed end time are
+   * included, unless a previous push was not confirmed or a periodic push of every firing alert is
+   * due. Receivers that want these changes must override this method; by default, every firing
+   * alert is sent to {@link #pushAlerts(String)}.
+   *
+   * @param changedAlertJson the alerts that have changed since the last confirmed push
+   * @param allAlertJson all the alerts that are firing
+   * @return true if the alerts were delivered and the receiver still has every alert delivered
+   *     before; if false, all firing alerts will be sent on the next push
+   */
+  public boolean pushAlertChanges(String changedAlertJson, Supplier<String> allAlertJson) {
+    pushAlerts(allAlertJson.get());
+    return true;
+  }
+
   /** Receive JSON data describing Prometheus alerts that are firing for the olives */
   public void pushAlerts(String alertJson) {}
 
@@ -2,6 +2,13 @@ package ca.on.oicr.gsi.shesmu.plugin.cache;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Takes a stream of items and stores them. When updated, it discards the existing items and
@@ -11,11 +18,32 @@ import java.time.Instant;
  * @param <S> the state that is stored in a cache
  */
 public abstract class BaseRecord<V, S> implements Record<V> {
+  /**
+   * The fraction of the time-to-live after which records will be refreshed in the background, if
+   * the owner refreshes ahead
+   */
+  private static final double REFRESH_AHEAD_FRACTION = 0.8;
+
+  private static final ExecutorService REFRESH_EXECUTOR =
+      Executors.newFixedThreadPool(
+          Optional.ofNullable(System.getenv("CACHE_REFRESH_THREADS"))
+              .map(Integer::parseInt)
+              .orElse(Runtime.getRuntime().availableProcessors() / 2 + 1),
+          runnable -> {
+            final var thread = new Thread(runnable, "cache-refresh");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          });
+
   private Instant fetchTime = Instant.EPOCH;
   protected final Updater<V> fetcher;
   private boolean initialState = true;
-  private boolean regenerating;
-  private S state;
+
+  /** The fetch currently in progress, if any; callers with no value can wait for it */
+  private CompletableFuture<Void> regenerating;
+
+  private volatile S state;
 
   public BaseRecord(Updater<V> fetcher, S initialState) {
     this.fetcher = fetcher;
@@ -50,48 +78,109 @@ public abstract class BaseRecord<V, S> implements Record<V> {
   @Override
   public final V refresh(String context) {
     final boolean doRefresh;
+    final boolean inBackground;
+    final CompletableFuture<Void> inFlight;
     boolean shouldThrow;
+    var message = context;
     synchronized (this) {
-      final var now = Instant.now();
+      final var age = Duration.between(fetchTime, Instant.now());
+      final var ttl = fetcher.owner().ttl();
+      // A record that has never been fetched or has been invalidated has no value worth returning,
+      // so readers must wait for it even if the owner refreshes ahead
+      inBackground =
+          fetcher.owner().refreshAhead() && !initialState && !fetchTime.equals(Instant.EPOCH);
       doRefresh =
-          Duration.between(fetchTime, now).toMinutes() > fetcher.owner().ttl() && !regenerating;
+          regenerating == null
+              && (inBackground
+                  ? age.toSeconds() > ttl * 60 * REFRESH_AHEAD_FRACTION
+                  : age.toMinutes() > ttl);
       shouldThrow = initialState;
       if (doRefresh) {
-        regenerating = true;
+        regenerating = new CompletableFuture<>();
       }
+      inFlight = doRefresh ? null : regenerating;
     }
     if (doRefresh) {
-      try (var timer = refreshLatency.start(fetcher.owner().name())) {
-        refreshStartTime.labels(fetcher.owner().name()).setToCurrentTime();
-        S result = update(state, fetchTime);
-        if (result != null) {
-          synchronized (this) {
-            state = result;
-            fetchTime = Instant.now();
-            refreshEndTime
-                .labels(fetcher.owner().name())
-                .setToCurrentTime(); // Can't use the Instant we just created unfortunately
-            initialState = false;
-          }
-          shouldThrow = false;
+      if (inBackground) {
+        final var name = fetcher.owner().name();
+        refreshQueueDepth.labels(name).inc();
+        REFRESH_EXECUTOR.execute(
+            () -> {
+              refreshQueueDepth.labels(name).dec();
+              reload(context);
+            });
+      } else {
+        if (fetcher.owner().refreshAhead()) {
+          refreshBlocked.labels(fetcher.owner().name()).inc();
         }
-      } catch (final Exception e) {
-        context += " " + e.getMessage();
-        System.err.printf("Exception occurred while refreshing cache %s is as follows:\n", context);
-        e.printStackTrace();
-        staleRefreshError.labels(fetcher.owner().name()).inc();
-      } finally {
-        synchronized (this) {
-          regenerating = false;
+        final var error = reload(context);
+        if (error.isEmpty()) {
+          shouldThrow = false;
+        } else {
+          message = error.get();
         }
       }
     }
+    final var timeout = fetcher.owner().singleFlightTimeout();
+    if (shouldThrow && inFlight != null && !timeout.isZero() && !timeout.isNegative()) {
+      // Another caller is already fetching a value we don't have, so wait for its result rather
+      // than fetching it again or failing
+      refreshCoalesced.labels(fetcher.owner().name()).inc();
+      try {
+        inFlight.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException | ExecutionException e) {
+        message += " gave up waiting for fetch in progress";
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        shouldThrow = initialState;
+      }
+    }
     if (shouldThrow) {
-      throw new InitialCachePopulationException(fetcher.owner().name(), context);
+      throw new InitialCachePopulationException(fetcher.owner().name(), message);
     }
     return unpack(state);
   }
 
+  /**
+   * Fetch a new state for this record
+   *
+   * @param context information about the owner's cache to log if an exception occurs
+   * @return empty if the state was replaced; otherwise, the context with any error message
+   */
+  private Optional<String> reload(String context) {
+    try (var timer = refreshLatency.start(fetcher.owner().name())) {
+      refreshStartTime.labels(fetcher.owner().name()).setToCurrentTime();
+      S result = update(state, fetchTime);
+      if (result != null) {
+        synchronized (this) {
+          state = result;
+          fetchTime = Instant.now();
+          refreshEndTime
+              .labels(fetcher.owner().name())
+              .setToCurrentTime(); // Can't use the Instant we just created unfortunately
+          initialState = false;
+        }
+        return Optional.empty();
+      }
+      return Optional.of(context);
+    } catch (final Exception e) {
+      context += " " + e.getMessage();
+      System.err.printf("Exception occurred while refreshing cache %s is as follows:\n", context);
+      e.printStackTrace();
+      staleRefreshError.labels(fetcher.owner().name()).inc();
+      return Optional.of(context);
+    } finally {
+      final CompletableFuture<Void> finished;
+      synchronized (this) {
+        finished = regenerating;
+        regenerating = null;
+      }
+      finished.complete(null);
+    }
+  }
+
   protected abstract V unpack(S state);
 
   protected abstract S update(S oldstate, Instant fetchTime) throws Exception;
@@ -2,14 +2,19 @@ package ca.on.oicr.gsi.shesmu.plugin.cache;
 
 import ca.on.oicr.gsi.Pair;
 import ca.on.oicr.gsi.prometheus.LatencyHistogram;
+import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import java.lang.ref.SoftReference;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 /**
@@ -48,8 +53,34 @@ public abstract class KeyValueCache<K, V> implements Owner, Iterable<Map.Entry<K
     }
   }
 
+  /** How recently and how heavily a key has been used; guarded by the stripe holding it */
+  private static final class Usage {
+    private long tick;
+    private long weight;
+
+    private Usage(long tick, long weight) {
+      this.tick = tick;
+      this.weight = weight;
+    }
+  }
+
   private static final Map<String, SoftReference<KeyValueCache<?, ?>>> CACHES =
       new ConcurrentHashMap<>();
+  private static final Counter evictions =
+      Counter.build(
+              "shesmu_cache_kv_evictions",
+              "The number of items removed from a cache to keep it within its size limits.")
+          .labelNames("name")
+          .register();
+  private static final Counter hits =
+      Counter.build("shesmu_cache_kv_hits", "The number of lookups for items already in a cache.")
+          .labelNames("name")
+          .register();
+  private static final Counter misses =
+      Counter.build("shesmu_cache_kv_misses", "The number of lookups for items not in a cache.")
+          .labelNames("name")
+          .register();
+  private static final int STRIPES = 16;
   private static final Gauge count =
       Gauge.build("shesmu_cache_kv_item_count", "Number of items in a cache.")
           .labelNames("name")
@@ -78,9 +109,26 @@ public abstract class KeyValueCache<K, V> implements Owner, Iterable<Map.Entry<K
   }
 
   private long maxCount = 0;
+  private volatile long maximumEntries;
+  private volatile long maximumWeight;
   private final String name;
   private final RecordFactory<V> recordFactory;
   private final Map<K, Record<V>> records = new ConcurrentHashMap<>();
+  private volatile boolean refreshAhead;
+  private volatile Duration singleFlightTimeout = Duration.ZERO;
+  // Usage is only tracked when the cache has a size limit. Keys are spread over several
+  // access-ordered maps, each with its own lock, so readers rarely contend. Every access takes a
+  // tick from a shared clock, so the least recently used key overall is the oldest of the first
+  // key in each map.
+  private final AtomicLong clock = new AtomicLong();
+  private final Object evictionLock = new Object();
+  private final List<LinkedHashMap<K, Usage>> stripes =
+      Stream.<LinkedHashMap<K, Usage>>generate(() -> new LinkedHashMap<>(16, 0.75f, true))
+          .limit(STRIPES)
+          .toList();
+  private final AtomicLong totalWeight = new AtomicLong();
+  private final AtomicLong trackedEntries = new AtomicLong();
+  private volatile boolean tracking;
   private int ttl;
 
   /**
@@ -118,12 +166,29 @@ public abstract class KeyValueCache<K, V> implements Owner, Iterable<Map.Entry<K
    *     is in an error state
    */
   public final V get(K key) {
-    final var record =
-        records.computeIfAbsent(key, k -> recordFactory.create(new KeyValueUpdater(k)));
+    final var record = access(key);
     maxCount = Math.max(maxCount, record.collectionSize());
     innerCount.labels(name).set(maxCount);
     count.labels(name).set(records.size());
-    return record.refresh(String.format("%s [key=%s]", name, key));
+    final var value = record.refresh(String.format("%s [key=%s]", name, key));
+    if (tracking) {
+      // The weight of a record only changes when it is fetched, so update it now
+      final long weight = record.collectionSize();
+      final var stripe = stripe(key);
+      var changed = false;
+      synchronized (stripe) {
+        final var usage = records.get(key) == record ? stripe.get(key) : null;
+        if (usage != null && usage.weight != weight) {
+          totalWeight.addAndGet(weight - usage.weight);
+          usage.weight = weight;
+          changed = true;
+        }
+      }
+      if (changed) {
+        evict();
+      }
+    }
+    return value;
   }
 
   /**
@@ -133,9 +198,136 @@ public abstract class KeyValueCache<K, V> implements Owner, Iterable<Map.Entry<K
    * @return the last value that was fetched
    */
   public final V getStale(K key) {
+    return access(key).readStale();
+  }
+
+  private Record<V> access(K key) {
+    final var created = new boolean[1];
     final var record =
-        records.computeIfAbsent(key, k -> recordFactory.create(new KeyValueUpdater(k)));
-    return record.readStale();
+        records.computeIfAbsent(
+            key,
+            k -> {
+              created[0] = true;
+              return recordFactory.create(new KeyValueUpdater(k));
+            });
+    if (tracking) {
+      track(key, record, 0);
+      if (created[0]) {
+        evict();
+      }
+    }
+    if (created[0]) {
+      misses.labels(name).inc();
+    } else {
+      hits.labels(name).inc();
+    }
+    return record;
+  }
+
+  /**
+   * Remove the least recently used items if the cache is over its size limits
+   *
+   * <p>Once the cache is over a limit, items are removed until it is 10% under that limit, so that
+   * adding new keys to a full cache doesn't require evicting an item every time.
+   */
+  private void evict() {
+    final var maxEntries = maximumEntries;
+    final var maxWeight = maximumWeight;
+    if ((maxEntries <= 0 || trackedEntries.get() <= maxEntries)
+        && (maxWeight <= 0 || totalWeight.get() <= maxWeight)) {
+      return;
+    }
+    final var targetEntries = maxEntries - maxEntries / 10;
+    final var targetWeight = maxWeight - maxWeight / 10;
+    synchronized (evictionLock) {
+      while (maxEntries > 0 && trackedEntries.get() > targetEntries
+          || maxWeight > 0 && totalWeight.get() > targetWeight) {
+        LinkedHashMap<K, Usage> oldestStripe = null;
+        var oldestTick = Long.MAX_VALUE;
+        for (final var stripe : stripes) {
+          synchronized (stripe) {
+            final var iterator = stripe.values().iterator();
+            if (iterator.hasNext()) {
+              final var tick = iterator.next().tick;
+              if (tick < oldestTick) {
+                oldestTick = tick;
+                oldestStripe = stripe;
+              }
+            }
+          }
+        }
+        if (oldestStripe == null) {
+          break;
+        }
+        synchronized (oldestStripe) {
+          // The stripe may have been read since it was checked, in which case the search is
+          // repeated
+          final var iterator = oldestStripe.entrySet().iterator();
+          if (iterator.hasNext()) {
+            final var entry = iterator.next();
+            if (entry.getValue().tick == oldestTick) {
+              iterator.remove();
+              trackedEntries.decrementAndGet();
+              totalWeight.addAndGet(-entry.getValue().weight);
+              if (records.remove(entry.getKey()) != null) {
+                evictions.labels(name).inc();
+              }
+            }
+          }
+        }
+      }
+    }
+    count.labels(name).set(records.size());
+  }
+
+  private LinkedHashMap<K, Usage> stripe(K key) {
+    return stripes.get(Math.floorMod(Objects.hashCode(key), STRIPES));
+  }
+
+  /**
+   * Mark a key as the most recently used
+   *
+   * <p>If another thread evicted this record after it was found, it is not tracked again; the
+   * caller can still use it, but it will be fetched again next time.
+   *
+   * @param weight the weight to use if the key is not already tracked
+   */
+  private void track(K key, Record<V> record, long weight) {
+    final var stripe = stripe(key);
+    synchronized (stripe) {
+      if (records.get(key) == record) {
+        final var usage = stripe.get(key);
+        if (usage == null) {
+          stripe.put(key, new Usage(clock.incrementAndGet(), weight));
+          trackedEntries.incrementAndGet();
+          totalWeight.addAndGet(weight);
+        } else {
+          usage.tick = clock.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /** Start or stop tracking usage when the size limits change */
+  private void updateTracking() {
+    synchronized (evictionLock) {
+      final var limited = maximumEntries > 0 || maximumWeight > 0;
+      if (limited && !tracking) {
+        tracking = true;
+        // Items added before there was a limit are treated as used now, in no particular order
+        records.forEach((key, record) -> track(key, record, record.collectionSize()));
+      } else if (!limited && tracking) {
+        tracking = false;
+        for (final var stripe : stripes) {
+          synchronized (stripe) {
+            stripe.clear();
+          }
+        }
+        trackedEntries.set(0);
+        totalWeight.set(0);
+      }
+    }
+    evict();
   }
 
   public final void invalidate(K key) {
@@ -151,6 +343,32 @@ public abstract class KeyValueCache<K, V> implements Owner, Iterable<Map.Entry<K
     records.values().forEach(Record::invalidate);
   }
 
+  /**
+   * Set the maximum number of items to keep in this cache
+   *
+   * <p>When the cache is full, the least recently used items are removed.
+   *
+   * @param maximumEntries the maximum number of keys, or zero for no limit
+   */
+  public final void maximumEntries(long maximumEntries) {
+    this.maximumEntries = maximumEntries;
+    updateTracking();
+  }
+
+  /**
+   * Set the maximum total size of the collections stored in this cache
+   *
+   * <p>The weight of an item is the number of elements in the collection it stores, as reported by
+   * {@link Record#collectionSize()}. When the cache is full, the least recently used items are
+   * removed.
+   *
+   * @param maximumWeight the maximum total weight, or zero for no limit
+   */
+  public final void maximumWeight(long maximumWeight) {
+    this.maximumWeight = maximumWeight;
+    updateTracking();
+  }
+
   public final Iterator<Map.Entry<K, Record<V>>> iterator() {
     return records.entrySet().iterator();
   }
@@ -160,6 +378,39 @@ public abstract class KeyValueCache<K, V> implements Owner, Iterable<Map.Entry<K
     return name;
   }
 
+  @Override
+  public final boolean refreshAhead() {
+    return refreshAhead;
+  }
+
+  /**
+   * Set whether values should be refreshed in the background before they expire
+   *
+   * @param refreshAhead if true, readers get the current value while it is fetched again on a
+   *     background thread; otherwise, readers wait for expired values to be fetched
+   */
+  public final void refreshAhead(boolean refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  @Override
+  public final Duration singleFlightTimeout() {
+    return singleFlightTimeout;
+  }
+
+  /**
+   * Set how long readers should wait for a value another reader is fetching
+   *
+   * <p>If several readers want a value that has not been fetched yet, only one of them fetches it.
+   * By default, the others fail immediately. With a timeout, they wait for the first reader's fetch
+   * and share its result.
+   *
+   * @param singleFlightTimeout the maximum time to wait, or zero to fail immediately
+   */
+  public final void singleFlightTimeout(Duration singleFlightTimeout) {
+    this.singleFlightTimeout = singleFlightTimeout;
+  }
+
   @Override
   public final long ttl() {
     return ttl;
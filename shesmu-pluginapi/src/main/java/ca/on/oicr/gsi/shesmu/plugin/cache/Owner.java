@@ -2,6 +2,7 @@ package ca.on.oicr.gsi.shesmu.plugin.cache;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
+import java.time.Duration;
 import java.util.function.DoubleSupplier;
 
 /** Interface for caches so that records can communicate with their containers */
@@ -21,6 +22,27 @@ public interface Owner {
   /** The name of the cache for use in monitoring */
   String name();
 
+  /**
+   * Whether records should be refreshed in the background before they expire
+   *
+   * <p>If true, readers will get the current value immediately while a new value is fetched on a
+   * background thread. Readers will only wait for a fetch if there is no value yet or the value has
+   * been invalidated.
+   */
+  default boolean refreshAhead() {
+    return false;
+  }
+
+  /**
+   * How long a reader with no value should wait for a fetch already in progress by another reader
+   *
+   * <p>If zero, readers that have no value while another reader is fetching it will fail
+   * immediately rather than wait.
+   */
+  default Duration singleFlightTimeout() {
+    return Duration.ZERO;
+  }
+
   /** The time-to-live for a record in cache */
   long ttl();
 }
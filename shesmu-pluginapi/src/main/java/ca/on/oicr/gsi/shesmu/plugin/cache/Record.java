@@ -24,6 +24,26 @@ public interface Record<V> {
               "The UNIX time when a cache refresh was finished.")
           .labelNames("name")
           .register();
+  Counter refreshBlocked =
+      Counter.build(
+              "shesmu_cache_refresh_blocked",
+              "The number of times a reader had to wait for a value to be fetched in a cache that"
+                  + " refreshes ahead.")
+          .labelNames("name")
+          .register();
+  Counter refreshCoalesced =
+      Counter.build(
+              "shesmu_cache_refresh_coalesced",
+              "The number of times a reader waited for another reader's fetch of a value rather"
+                  + " than fetching it again.")
+          .labelNames("name")
+          .register();
+  Gauge refreshQueueDepth =
+      Gauge.build(
+              "shesmu_cache_refresh_queue",
+              "The number of records waiting to be refreshed in the background.")
+          .labelNames("name")
+          .register();
   LatencyHistogram refreshLatency =
       new LatencyHistogram(
           "shesmu_cache_refresh_latency",
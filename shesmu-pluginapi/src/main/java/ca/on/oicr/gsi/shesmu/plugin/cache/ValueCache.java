@@ -5,6 +5,7 @@ import ca.on.oicr.gsi.prometheus.LatencyHistogram;
 import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import java.lang.ref.SoftReference;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Objects;
@@ -44,6 +45,8 @@ public abstract class ValueCache<S> implements Owner {
 
   private final String name;
 
+  private volatile boolean refreshAhead;
+  private volatile Duration singleFlightTimeout = Duration.ZERO;
   private int ttl;
 
   private final Record<S> value;
@@ -134,6 +137,39 @@ public abstract class ValueCache<S> implements Owner {
     return name;
   }
 
+  @Override
+  public final boolean refreshAhead() {
+    return refreshAhead;
+  }
+
+  /**
+   * Set whether values should be refreshed in the background before they expire
+   *
+   * @param refreshAhead if true, readers get the current value while it is fetched again on a
+   *     background thread; otherwise, readers wait for expired values to be fetched
+   */
+  public final void refreshAhead(boolean refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  @Override
+  public final Duration singleFlightTimeout() {
+    return singleFlightTimeout;
+  }
+
+  /**
+   * Set how long readers should wait for a value another reader is fetching
+   *
+   * <p>If several readers want a value that has not been fetched yet, only one of them fetches it.
+   * By default, the others fail immediately. With a timeout, they wait for the first reader's fetch
+   * and share its result.
+   *
+   * @param singleFlightTimeout the maximum time to wait, or zero to fail immediately
+   */
+  public final void singleFlightTimeout(Duration singleFlightTimeout) {
+    this.singleFlightTimeout = singleFlightTimeout;
+  }
+
   @Override
   public final long ttl() {
     return ttl;
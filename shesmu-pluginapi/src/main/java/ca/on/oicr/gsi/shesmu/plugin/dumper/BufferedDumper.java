@@ -0,0 +1,124 @@
+package ca.on.oicr.gsi.shesmu.plugin.dumper;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A dumper that writes rows on a background thread
+ *
+ * <p>Olives call {@link #write(Object...)} on the thread running the olive, so any time spent
+ * formatting and writing output slows the olive down. This dumper places rows in a bounded queue
+ * and a separate thread writes them out. If the writer falls behind and the queue fills up, the
+ * olive waits for space, so memory use stays bounded.
+ *
+ * <p>Rows must not be written after {@link #stop()} has been called.
+ */
+public abstract class BufferedDumper implements Dumper {
+  private static final Object[] END = new Object[0];
+  private final String name;
+  private final BlockingQueue<Object[]> queue;
+  private boolean stopped;
+  private Thread writer;
+
+  /**
+   * Create a new dumper with a default queue size
+   *
+   * @param name the name of the dumper, used to name the writer thread
+   */
+  protected BufferedDumper(String name) {
+    this(name, 1024);
+  }
+
+  /**
+   * Create a new dumper
+   *
+   * @param name the name of the dumper, used to name the writer thread
+   * @param capacity the number of rows that can be waiting to be written
+   */
+  protected BufferedDumper(String name, int capacity) {
+    this.name = name;
+    queue = new ArrayBlockingQueue<>(capacity);
+  }
+
+  private void drain() {
+    var failed = false;
+    try {
+      while (true) {
+        final var row = queue.take();
+        if (row == END) {
+          return;
+        }
+        if (failed) {
+          // Keep emptying the queue so the olive doesn't wait forever
+          continue;
+        }
+        try {
+          writeRow(row);
+        } catch (Exception e) {
+          e.printStackTrace();
+          failed = true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Complete the output once all rows have been written
+   *
+   * <p>This is called once, on the thread that called {@link #stop()}, even if no rows were
+   * written.
+   */
+  protected abstract void finish() throws Exception;
+
+  @Override
+  public final void stop() {
+    final Thread writer;
+    synchronized (this) {
+      if (stopped) {
+        return;
+      }
+      stopped = true;
+      writer = this.writer;
+    }
+    try {
+      if (writer != null) {
+        queue.put(END);
+        writer.join();
+      }
+      finish();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public final void write(Object... values) {
+    synchronized (this) {
+      if (stopped) {
+        return;
+      }
+      if (writer == null) {
+        writer = Thread.ofVirtual().name("dumper-" + name).start(this::drain);
+      }
+    }
+    try {
+      queue.put(values);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Write a single row to the output
+   *
+   * <p>This is called on the writer thread, in the order the rows were provided. If this throws,
+   * the remaining rows are discarded.
+   *
+   * @param values the values provided to {@link #write(Object...)}
+   */
+  protected abstract void writeRow(Object[] values) throws Exception;
+}
@@ -0,0 +1,310 @@
+package ca.on.oicr.gsi.shesmu.plugin.json;
+
+import ca.on.oicr.gsi.Pair;
+import ca.on.oicr.gsi.shesmu.plugin.Tuple;
+import ca.on.oicr.gsi.shesmu.plugin.input.TimeFormat;
+import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
+import ca.on.oicr.gsi.shesmu.plugin.types.ImyhatTransformer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Create a reader that parses a JSON value based on a type using the streaming interface
+ *
+ * <p>This produces the same values as {@link UnpackJson}, but reads them directly from the parser's
+ * tokens rather than building a tree first.
+ */
+public class UnpackStreaming implements ImyhatTransformer<UnpackStreaming.Reader> {
+
+  /** Read a value from a JSON stream */
+  public interface Reader {
+
+    /**
+     * Read a value
+     *
+     * @param parser the parser, positioned on the first token of the value; after reading, it will
+     *     be positioned on the last token of the value
+     * @return the value read
+     */
+    Object read(JsonParser parser) throws IOException;
+
+    /**
+     * Provide the value to use when the value is absent from the JSON document
+     *
+     * @throws IllegalStateException if this type cannot be absent
+     */
+    Object missing();
+  }
+
+  private interface ValueReader extends Reader {
+    @Override
+    default Object missing() {
+      throw new IllegalStateException("Missing value in JSON document");
+    }
+  }
+
+  // UnpackJson only uses the time format for the top-level value, so nested values get the default
+  private static final UnpackStreaming NESTED = new UnpackStreaming(TimeFormat.MILLIS_NUMERIC);
+
+  private static Object[] readTuple(JsonParser parser, Reader[] readers) throws IOException {
+    final var values = new Object[readers.length];
+    if (parser.currentToken() == JsonToken.START_ARRAY) {
+      var index = 0;
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        if (index < readers.length) {
+          values[index] = readers[index].read(parser);
+        } else {
+          parser.skipChildren();
+        }
+        index++;
+      }
+    } else {
+      parser.skipChildren();
+    }
+    for (var i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        values[i] = readers[i].missing();
+      }
+    }
+    return values;
+  }
+
+  private final TimeFormat format;
+
+  public UnpackStreaming(TimeFormat format) {
+    this.format = format;
+  }
+
+  @Override
+  public Reader algebraic(Stream<AlgebraicTransformer> contents) {
+    // The type tag might come after the contents, so there is no way to know how to read the
+    // contents without buffering them
+    final var transformers = contents.collect(Collectors.toList());
+    return (ValueReader)
+        parser -> new UnpackJson(parser.readValueAsTree(), format).algebraic(transformers.stream());
+  }
+
+  @Override
+  public Reader bool() {
+    return (ValueReader)
+        parser -> {
+          final var result = parser.getValueAsBoolean();
+          parser.skipChildren();
+          return result;
+        };
+  }
+
+  @Override
+  public Reader date() {
+    return new Reader() {
+      @Override
+      public Object read(JsonParser parser) throws IOException {
+        final var token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+          return Instant.EPOCH;
+        } else if (token.isNumeric() && format == TimeFormat.MILLIS_NUMERIC) {
+          return Instant.ofEpochMilli(parser.getValueAsLong());
+        } else if (token.isNumeric() && format == TimeFormat.SECONDS_NUMERIC) {
+          return Instant.ofEpochMilli((long) (1000 * parser.getValueAsDouble()));
+        } else {
+          return DateTimeFormatter.ISO_INSTANT.parse(parser.getText(), Instant::from);
+        }
+      }
+
+      @Override
+      public Object missing() {
+        return Instant.EPOCH;
+      }
+    };
+  }
+
+  @Override
+  public Reader floating() {
+    return (ValueReader)
+        parser -> {
+          final var result = parser.getValueAsDouble();
+          parser.skipChildren();
+          return result;
+        };
+  }
+
+  @Override
+  public Reader integer() {
+    return (ValueReader)
+        parser -> {
+          final var result = parser.getValueAsLong();
+          parser.skipChildren();
+          return result;
+        };
+  }
+
+  @Override
+  public Reader json() {
+    return new Reader() {
+      @Override
+      public Object read(JsonParser parser) throws IOException {
+        final JsonNode node = parser.readValueAsTree();
+        return node == null ? NullNode.getInstance() : node;
+      }
+
+      @Override
+      public Object missing() {
+        return NullNode.getInstance();
+      }
+    };
+  }
+
+  @Override
+  public Reader list(Imyhat inner) {
+    final var reader = inner.apply(NESTED);
+    return (ValueReader)
+        parser -> {
+          final var result = inner.newSet();
+          switch (parser.currentToken()) {
+            case VALUE_NULL:
+              break;
+            case START_ARRAY:
+              while (parser.nextToken() != JsonToken.END_ARRAY) {
+                result.add(reader.read(parser));
+              }
+              break;
+            default:
+              throw new IllegalArgumentException("Invalid JSON for list");
+          }
+          return result;
+        };
+  }
+
+  @Override
+  public Reader map(Imyhat key, Imyhat value) {
+    @SuppressWarnings("unchecked")
+    final var comparator = (Comparator<Object>) key.comparator();
+    final var keyReader = key.apply(NESTED);
+    final var valueReader = value.apply(NESTED);
+    final var stringKeys = key.isSame(Imyhat.STRING);
+    return (ValueReader)
+        parser -> {
+          final SortedMap<Object, Object> map = new TreeMap<>(comparator);
+          if (stringKeys && parser.currentToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+              final var name = parser.currentName();
+              parser.nextToken();
+              map.put(name, valueReader.read(parser));
+            }
+            return map;
+          }
+          if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("Invalid JSON for map");
+          }
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_ARRAY
+                || parser.nextToken() == JsonToken.END_ARRAY) {
+              throw new IllegalArgumentException("Invalid JSON for map");
+            }
+            final var k = keyReader.read(parser);
+            if (parser.nextToken() == JsonToken.END_ARRAY) {
+              throw new IllegalArgumentException("Invalid JSON for map");
+            }
+            final var v = valueReader.read(parser);
+            if (parser.nextToken() != JsonToken.END_ARRAY) {
+              throw new IllegalArgumentException("Invalid JSON for map");
+            }
+            map.put(k, v);
+          }
+          return map;
+        };
+  }
+
+  @Override
+  public Reader object(Stream<Pair<String, Imyhat>> contents) {
+    final var fields = contents.sorted(Comparator.comparing(Pair::first)).toList();
+    final var readers = new Reader[fields.size()];
+    final Map<String, Integer> indices = new HashMap<>();
+    for (var i = 0; i < readers.length; i++) {
+      readers[i] = fields.get(i).second().apply(NESTED);
+      indices.put(fields.get(i).first(), i);
+    }
+    return (ValueReader)
+        parser -> {
+          final var values = new Object[readers.length];
+          if (parser.currentToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+              final var index = indices.get(parser.currentName());
+              parser.nextToken();
+              if (index == null) {
+                parser.skipChildren();
+              } else {
+                values[index] = readers[index].read(parser);
+              }
+            }
+          } else {
+            parser.skipChildren();
+          }
+          for (var i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+              values[i] = readers[i].missing();
+            }
+          }
+          return new Tuple(values);
+        };
+  }
+
+  @Override
+  public Reader optional(Imyhat inner) {
+    final var reader = inner.apply(this);
+    return new Reader() {
+      @Override
+      public Object read(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL
+            ? Optional.empty()
+            : Optional.of(reader.read(parser));
+      }
+
+      @Override
+      public Object missing() {
+        return Optional.empty();
+      }
+    };
+  }
+
+  @Override
+  public Reader path() {
+    return (ValueReader) parser -> Paths.get(string(parser));
+  }
+
+  @Override
+  public Reader string() {
+    return (ValueReader) UnpackStreaming::string;
+  }
+
+  private static String string(JsonParser parser) throws IOException {
+    switch (parser.currentToken()) {
+      case START_ARRAY:
+      case START_OBJECT:
+        parser.skipChildren();
+        return "";
+      default:
+        return parser.getText();
+    }
+  }
+
+  @Override
+  public Reader tuple(Stream<Imyhat> contents) {
+    final var readers = contents.map(type -> type.apply(NESTED)).toArray(Reader[]::new);
+    return (ValueReader) parser -> new Tuple(readTuple(parser, readers));
+  }
+}
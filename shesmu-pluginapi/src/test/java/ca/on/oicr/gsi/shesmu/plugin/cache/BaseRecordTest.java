@@ -0,0 +1,205 @@
+package ca.on.oicr.gsi.shesmu.plugin.cache;
+
+import ca.on.oicr.gsi.Pair;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BaseRecordTest {
+  /**
+   * A cache with a single record whose fetches return the fetch number and can be held until
+   * released
+   */
+  private static final class TestOwner implements Owner, Updater<Optional<Integer>> {
+    private final AtomicInteger fetches = new AtomicInteger();
+    private volatile CountDownLatch hold = new CountDownLatch(0);
+    private final String name;
+    private final boolean refreshAhead;
+    private final Duration singleFlightTimeout;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final long ttl;
+
+    private TestOwner(String name, long ttl, boolean refreshAhead, Duration singleFlightTimeout) {
+      this.name = name;
+      this.ttl = ttl;
+      this.refreshAhead = refreshAhead;
+      this.singleFlightTimeout = singleFlightTimeout;
+    }
+
+    double blocked() {
+      return Record.refreshBlocked.labels(name).get();
+    }
+
+    double coalesced() {
+      return Record.refreshCoalesced.labels(name).get();
+    }
+
+    @Override
+    public Stream<Pair<String, String>> identifiers() {
+      return Stream.empty();
+    }
+
+    @Override
+    public String name() {
+      return name;
+    }
+
+    @Override
+    public Owner owner() {
+      return this;
+    }
+
+    @Override
+    public boolean refreshAhead() {
+      return refreshAhead;
+    }
+
+    @Override
+    public Duration singleFlightTimeout() {
+      return singleFlightTimeout;
+    }
+
+    @Override
+    public long ttl() {
+      return ttl;
+    }
+
+    @Override
+    public Optional<Integer> update(Instant lastModifed) throws Exception {
+      final var fetch = fetches.incrementAndGet();
+      started.countDown();
+      Assertions.assertTrue(hold.await(10, TimeUnit.SECONDS), "Fetch was never released");
+      return Optional.of(fetch);
+    }
+  }
+
+  // A negative time-to-live makes a record stale as soon as it is fetched
+  private static final long ALWAYS_STALE = -1;
+  private static final long NEVER_STALE = 1000;
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    final var deadline = Instant.now().plusSeconds(10);
+    while (!condition.getAsBoolean()) {
+      Assertions.assertTrue(Instant.now().isBefore(deadline), "Timed out waiting for cache");
+      Thread.sleep(10);
+    }
+  }
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void start() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRefreshAheadInBackground() throws InterruptedException {
+    final var owner = new TestOwner("test_refresh_ahead", ALWAYS_STALE, true, Duration.ZERO);
+    final var record = new SimpleRecord<>(owner);
+    // With no value yet, the first reader has to wait
+    Assertions.assertEquals(Optional.of(1), record.refresh("test"));
+    Assertions.assertEquals(1.0, owner.blocked());
+
+    owner.hold = new CountDownLatch(1);
+    // The value is stale, so it is refreshed, but the reader gets the current value immediately
+    Assertions.assertEquals(Optional.of(1), record.refresh("test"));
+    await(() -> owner.fetches.get() == 2);
+    // While the refresh is in progress, another one is not started
+    Assertions.assertEquals(Optional.of(1), record.refresh("test"));
+    Assertions.assertEquals(2, owner.fetches.get());
+    Assertions.assertEquals(1.0, owner.blocked());
+
+    owner.hold.countDown();
+    await(() -> record.readStale().equals(Optional.of(2)));
+    Assertions.assertEquals(1.0, owner.blocked());
+  }
+
+  @Test
+  public void testRefreshAheadInvalidatedBlocks() {
+    final var owner = new TestOwner("test_refresh_ahead_invalid", NEVER_STALE, true, Duration.ZERO);
+    final var record = new SimpleRecord<>(owner);
+    Assertions.assertEquals(Optional.of(1), record.refresh("test"));
+    Assertions.assertEquals(Optional.of(1), record.refresh("test"));
+    // An invalidated value must not be returned, so the reader waits for the new one
+    record.invalidate();
+    Assertions.assertEquals(Optional.of(2), record.refresh("test"));
+    Assertions.assertEquals(2.0, owner.blocked());
+  }
+
+  @Test
+  public void testRefreshInForeground() {
+    final var owner = new TestOwner("test_refresh_foreground", ALWAYS_STALE, false, Duration.ZERO);
+    final var record = new SimpleRecord<>(owner);
+    Assertions.assertEquals(Optional.of(1), record.refresh("test"));
+    Assertions.assertEquals(Optional.of(2), record.refresh("test"));
+    Assertions.assertEquals(Optional.of(3), record.refresh("test"));
+    // Blocking is only counted for caches that are meant to refresh ahead
+    Assertions.assertEquals(0.0, owner.blocked());
+  }
+
+  @Test
+  public void testSingleFlightDisabled() throws InterruptedException, ExecutionException {
+    final var owner = new TestOwner("test_single_flight_off", NEVER_STALE, false, Duration.ZERO);
+    final var record = new SimpleRecord<>(owner);
+    owner.hold = new CountDownLatch(1);
+    final var first = executor.submit(() -> record.refresh("first"));
+    Assertions.assertTrue(owner.started.await(10, TimeUnit.SECONDS));
+    Assertions.assertThrows(InitialCachePopulationException.class, () -> record.refresh("second"));
+    Assertions.assertEquals(0.0, owner.coalesced());
+    owner.hold.countDown();
+    Assertions.assertEquals(Optional.of(1), first.get());
+    Assertions.assertEquals(1, owner.fetches.get());
+  }
+
+  @Test
+  public void testSingleFlightTimeout() throws InterruptedException, ExecutionException {
+    final var owner =
+        new TestOwner("test_single_flight_timeout", NEVER_STALE, false, Duration.ofMillis(100));
+    final var record = new SimpleRecord<>(owner);
+    owner.hold = new CountDownLatch(1);
+    final var first = executor.submit(() -> record.refresh("first"));
+    Assertions.assertTrue(owner.started.await(10, TimeUnit.SECONDS));
+    final var error =
+        Assertions.assertThrows(
+            InitialCachePopulationException.class, () -> record.refresh("second"));
+    Assertions.assertTrue(
+        error.getMessage().contains("gave up waiting for fetch in progress"), error.getMessage());
+    Assertions.assertEquals(1.0, owner.coalesced());
+    owner.hold.countDown();
+    Assertions.assertEquals(Optional.of(1), first.get());
+    Assertions.assertEquals(1, owner.fetches.get());
+  }
+
+  @Test
+  public void testSingleFlightWaits() throws InterruptedException, ExecutionException {
+    final var owner =
+        new TestOwner("test_single_flight_wait", NEVER_STALE, false, Duration.ofSeconds(10));
+    final var record = new SimpleRecord<>(owner);
+    owner.hold = new CountDownLatch(1);
+    final var first = executor.submit(() -> record.refresh("first"));
+    Assertions.assertTrue(owner.started.await(10, TimeUnit.SECONDS));
+    final var second = executor.submit(() -> record.refresh("second"));
+    await(() -> owner.coalesced() == 1.0);
+    owner.hold.countDown();
+    Assertions.assertEquals(Optional.of(1), first.get());
+    Assertions.assertEquals(Optional.of(1), second.get());
+    Assertions.assertEquals(1, owner.fetches.get());
+  }
+}
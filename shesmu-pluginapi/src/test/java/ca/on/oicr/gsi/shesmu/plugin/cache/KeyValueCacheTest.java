@@ -0,0 +1,159 @@
+package ca.on.oicr.gsi.shesmu.plugin.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class KeyValueCacheTest {
+  /** A cache where the value for each key is a list with as many items as the key */
+  private static class CountingCache extends KeyValueCache<Integer, Stream<Integer>> {
+    private final Map<Integer, Integer> fetches = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> sizes = new ConcurrentHashMap<>();
+
+    CountingCache(String name) {
+      super(name, 60, ReplacingRecord::new);
+    }
+
+    @Override
+    protected Stream<Integer> fetch(Integer key, Instant lastUpdated) {
+      fetches.merge(key, 1, Integer::sum);
+      return Stream.iterate(0, i -> i + 1).limit(sizes.getOrDefault(key, key));
+    }
+
+    int fetches(int key) {
+      return fetches.getOrDefault(key, 0);
+    }
+
+    List<Integer> keys() {
+      return StreamSupport.stream(spliterator(), false)
+          .map(Map.Entry::getKey)
+          .sorted()
+          .collect(Collectors.toList());
+    }
+
+    void read(int... keys) {
+      for (final var key : keys) {
+        Assertions.assertEquals((long) sizes.getOrDefault(key, key), get(key).count());
+      }
+    }
+  }
+
+  @Test
+  public void testEntriesLeastRecentlyUsed() {
+    final var cache = new CountingCache("test_kv_entries");
+    cache.maximumEntries(3);
+    cache.read(1, 2, 3, 1, 4);
+    // 2 was the least recently used when 4 was added
+    Assertions.assertEquals(List.of(1, 3, 4), cache.keys());
+    cache.read(1, 3, 4);
+    Assertions.assertEquals(1, cache.fetches(1));
+    Assertions.assertEquals(1, cache.fetches(3));
+    Assertions.assertEquals(1, cache.fetches(4));
+    cache.read(2);
+    Assertions.assertEquals(2, cache.fetches(2));
+    Assertions.assertEquals(List.of(2, 3, 4), cache.keys());
+  }
+
+  @Test
+  public void testConcurrentReaders() throws InterruptedException, ExecutionException {
+    final var cache = new CountingCache("test_kv_concurrent");
+    cache.maximumEntries(20);
+    // Readers of a new key wait for whichever one is fetching it instead of failing
+    cache.singleFlightTimeout(Duration.ofSeconds(10));
+    final var executor = Executors.newFixedThreadPool(8);
+    try {
+      final var results = new ArrayList<Future<?>>();
+      for (var thread = 0; thread < 8; thread++) {
+        final var seed = thread;
+        results.add(
+            executor.submit(
+                () -> {
+                  final var random = new Random(seed);
+                  for (var i = 0; i < 2000; i++) {
+                    cache.read(random.nextInt(100));
+                  }
+                }));
+      }
+      for (final var result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assertions.assertTrue(cache.keys().size() <= 20, "Cache grew to " + cache.keys().size());
+    // The most recently used key must survive any eviction
+    cache.read(1000);
+    cache.maximumEntries(1);
+    Assertions.assertEquals(List.of(1000), cache.keys());
+  }
+
+  @Test
+  public void testLimitChanged() {
+    final var cache = new CountingCache("test_kv_limit_changed");
+    cache.read(1, 2, 3, 4, 5);
+    // Items read before there was a limit are still counted against it
+    cache.maximumEntries(3);
+    Assertions.assertEquals(3, cache.keys().size());
+    cache.read(6);
+    Assertions.assertEquals(3, cache.keys().size());
+    Assertions.assertTrue(cache.keys().contains(6));
+    cache.maximumEntries(0);
+    cache.read(7, 8, 9);
+    Assertions.assertEquals(6, cache.keys().size());
+  }
+
+  @Test
+  public void testUnlimited() {
+    final var cache = new CountingCache("test_kv_unlimited");
+    cache.read(1, 2, 3, 4, 5, 6, 7, 8, 9);
+    cache.read(1, 2, 3, 4, 5, 6, 7, 8, 9);
+    Assertions.assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9), cache.keys());
+  }
+
+  @Test
+  public void testWeight() {
+    final var cache = new CountingCache("test_kv_weight");
+    cache.maximumWeight(10);
+    cache.read(4, 5, 1);
+    Assertions.assertEquals(List.of(1, 4, 5), cache.keys());
+    // Adding 3 puts the cache at 13, so the oldest items are removed until it is at most 9
+    cache.read(3);
+    Assertions.assertEquals(List.of(1, 3, 5), cache.keys());
+    cache.read(4);
+    Assertions.assertEquals(2, cache.fetches(4));
+    Assertions.assertEquals(List.of(1, 3, 4), cache.keys());
+  }
+
+  @Test
+  public void testWeightChangesOnRefresh() {
+    final var cache = new CountingCache("test_kv_weight_refresh");
+    cache.maximumWeight(10);
+    cache.sizes.put(1, 2);
+    cache.sizes.put(2, 2);
+    cache.read(1, 2);
+    Assertions.assertEquals(List.of(1, 2), cache.keys());
+    // The refreshed value is much larger, so the other item no longer fits
+    cache.sizes.put(1, 9);
+    cache.invalidate(1);
+    cache.read(1);
+    Assertions.assertEquals(List.of(1), cache.keys());
+    // Once it shrinks again, there is room for both
+    cache.sizes.put(1, 2);
+    cache.invalidate(1);
+    cache.read(1, 2);
+    Assertions.assertEquals(List.of(1, 2), cache.keys());
+    Assertions.assertEquals(2, cache.fetches(2));
+  }
+}
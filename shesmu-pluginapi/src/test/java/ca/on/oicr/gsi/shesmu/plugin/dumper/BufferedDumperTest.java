@@ -0,0 +1,52 @@
+package ca.on.oicr.gsi.shesmu.plugin.dumper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BufferedDumperTest {
+  private static class ListDumper extends BufferedDumper {
+    private final AtomicInteger finished = new AtomicInteger();
+    private final List<Object> rows = new ArrayList<>();
+
+    ListDumper() {
+      super("test", 16);
+    }
+
+    @Override
+    protected void finish() {
+      finished.incrementAndGet();
+    }
+
+    @Override
+    protected void writeRow(Object[] values) {
+      rows.add(values[0]);
+    }
+  }
+
+  @Test
+  public void testOrderPreserved() {
+    final var dumper = new ListDumper();
+    for (var i = 0; i < 10_000; i++) {
+      dumper.write(i, "x");
+    }
+    dumper.stop();
+    Assertions.assertEquals(10_000, dumper.rows.size());
+    for (var i = 0; i < 10_000; i++) {
+      Assertions.assertEquals(i, dumper.rows.get(i));
+    }
+    Assertions.assertEquals(1, dumper.finished.get());
+  }
+
+  @Test
+  public void testStopWithoutRows() {
+    final var dumper = new ListDumper();
+    dumper.stop();
+    dumper.stop();
+    dumper.write(1);
+    Assertions.assertTrue(dumper.rows.isEmpty());
+    Assertions.assertEquals(1, dumper.finished.get());
+  }
+}
@@ -0,0 +1,66 @@
+package ca.on.oicr.gsi.shesmu.plugin.json;
+
+import ca.on.oicr.gsi.shesmu.plugin.input.TimeFormat;
+import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Comparator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class UnpackStreamingTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static void check(String type, String json, TimeFormat format) throws IOException {
+    final var imyhat = Imyhat.parse(type);
+    final var expected = imyhat.apply(new UnpackJson(MAPPER.readTree(json), format));
+    try (final var parser = MAPPER.getFactory().createParser(json)) {
+      parser.nextToken();
+      final var actual = imyhat.apply(new UnpackStreaming(format)).read(parser);
+      @SuppressWarnings("unchecked")
+      final var comparator = (Comparator<Object>) imyhat.comparator();
+      Assertions.assertEquals(0, comparator.compare(expected, actual), json);
+      Assertions.assertNull(parser.nextToken(), "Parser not at end of value");
+    }
+  }
+
+  private static void check(String type, String json) throws IOException {
+    check(type, json, TimeFormat.MILLIS_NUMERIC);
+  }
+
+  @Test
+  public void testScalars() throws IOException {
+    check("b", "true");
+    check("i", "42");
+    check("i", "\"42\"");
+    check("f", "3.5");
+    check("s", "\"hello\"");
+    check("s", "12");
+    check("s", "null");
+    check("p", "\"/tmp/foo\"");
+    check("d", "1000");
+    check("d", "1.5", TimeFormat.SECONDS_NUMERIC);
+    check("d", "\"2020-01-01T00:00:00Z\"", TimeFormat.ISO8660_STRING);
+    check("d", "null");
+  }
+
+  @Test
+  public void testContainers() throws IOException {
+    check("as", "[\"b\", \"a\", \"b\"]");
+    check("as", "null");
+    check("msi", "{\"a\": 1, \"b\": 2}");
+    check("mis", "[[1, \"a\"], [2, \"b\"]]");
+    check("t2is", "[1, \"a\", \"extra\"]");
+    check("o2a$ib$s", "{\"b\": \"x\", \"junk\": {\"y\": [1, 2]}, \"a\": 3}");
+    check("o1a$qi", "{}");
+    check("qi", "null");
+    check("qai", "[1, 2]");
+  }
+
+  @Test
+  public void testMissing() {
+    Assertions.assertThrows(
+        IllegalStateException.class,
+        () -> Imyhat.STRING.apply(new UnpackStreaming(TimeFormat.MILLIS_NUMERIC)).missing());
+  }
+}
@@ -141,6 +141,10 @@ interface ScriptFile extends SourceLocation {
   runtime: number | null;
   /** The last time the olive was run, in milliseconds since the UNIX epoch. */
   lastRun: number | null;
+  /**
+   * The number of consecutive runs that reused the previous output because the input was unchanged
+   */
+  skippedRuns: number;
   /** The olives in this script */
   olives: Olive[];
 }
@@ -222,6 +226,11 @@ function overview(file: ScriptFile, olive: Olive | null) {
           file.cpuTime == null ? "Unknown" : formatTimeSpan(file.cpuTime),
       }
     ),
+    tableRow(
+      null,
+      { contents: "Skipped Runs" },
+      { contents: file.skippedRuns.toString() }
+    ),
     tableRow(
       null,
       { contents: "Input Fomat" },
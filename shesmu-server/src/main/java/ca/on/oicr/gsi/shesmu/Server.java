@@ -38,7 +38,6 @@ import ca.on.oicr.gsi.shesmu.plugin.filter.AlertFilter;
 import ca.on.oicr.gsi.shesmu.plugin.filter.ExportSearch;
 import ca.on.oicr.gsi.shesmu.plugin.filter.SourceOliveLocation;
 import ca.on.oicr.gsi.shesmu.plugin.grouper.GrouperDefinition;
-import ca.on.oicr.gsi.shesmu.plugin.json.PackJsonObject;
 import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
 import ca.on.oicr.gsi.shesmu.plugin.types.TypeParser;
 import ca.on.oicr.gsi.shesmu.plugin.wdl.WdlInputType;
@@ -48,6 +47,7 @@ import ca.on.oicr.gsi.shesmu.runtime.RuntimeSupport;
 import ca.on.oicr.gsi.shesmu.server.ActionProcessor;
 import ca.on.oicr.gsi.shesmu.server.ActionProcessor.Filter;
 import ca.on.oicr.gsi.shesmu.server.BaseHotloadingCompiler;
+import ca.on.oicr.gsi.shesmu.server.CachedResponse;
 import ca.on.oicr.gsi.shesmu.server.CommandRequest;
 import ca.on.oicr.gsi.shesmu.server.ExtractRequest;
 import ca.on.oicr.gsi.shesmu.server.FunctionRequest;
@@ -55,6 +55,7 @@ import ca.on.oicr.gsi.shesmu.server.FunctionRunner;
 import ca.on.oicr.gsi.shesmu.server.FunctionRunnerCompiler;
 import ca.on.oicr.gsi.shesmu.server.GuidedMeditation;
 import ca.on.oicr.gsi.shesmu.server.InputSource;
+import ca.on.oicr.gsi.shesmu.server.JsonDumper;
 import ca.on.oicr.gsi.shesmu.server.MasterRunner;
 import ca.on.oicr.gsi.shesmu.server.MeditationCompilationRequest;
 import ca.on.oicr.gsi.shesmu.server.MetroDiagram;
@@ -136,7 +137,9 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -281,7 +284,7 @@ public final class Server implements ServerConfig, ActionServices {
   private final Map<String, FunctionRunner> functionRunners = new HashMap<>();
   private final AutoUpdatingDirectory<GuidedMeditation> guidedMeditations;
   private final Semaphore inputDownloadSemaphore = new Semaphore(DOWNLOAD_THREADS);
-  private final Map<String, String> jsonDumpers = new ConcurrentHashMap<>();
+  private final Map<String, byte[]> jsonDumpers = new ConcurrentHashMap<>();
   private final MasterRunner master;
   private final ThreadLocal<Boolean> overloadState = ThreadLocal.withInitial(() -> false);
   private final PluginManager pluginManager;
@@ -402,29 +405,8 @@ public final class Server implements ServerConfig, ActionServices {
                     .orElseGet(
                         () ->
                             jsonDumpers.containsKey(name)
-                                ? new Dumper() {
-                                  private final ArrayNode output =
-                                      RuntimeSupport.MAPPER.createArrayNode();
-
-                                  @Override
-                                  public void stop() {
-                                    try {
-                                      jsonDumpers.put(
-                                          name, RuntimeSupport.MAPPER.writeValueAsString(output));
-                                    } catch (JsonProcessingException e) {
-                                      e.printStackTrace();
-                                    }
-                                  }
-
-                                  @Override
-                                  public void write(Object... values) {
-                                    final var row = output.addObject();
-                                    for (var i = 0; i < types.length; i++) {
-                                      types[i].accept(
-                                          new PackJsonObject(row, columns[i]), values[i]);
-                                    }
-                                  }
-                                }
+                                ? new JsonDumper(
+                                    name, columns, types, lines -> jsonDumpers.put(name, lines))
                                 : new Dumper() {
                                   @Override
                                   public void stop() {
@@ -467,6 +449,12 @@ public final class Server implements ServerConfig, ActionServices {
                     oliveHash);
               }
 
+              @Override
+              public void measureSharing(
+                  String filename, int line, int column, String hash, long recordsSaved) {
+                processor.measureSharing(filename, line, column, hash, recordsSaved);
+              }
+
               @Override
               public void oliveRuntime(String filename, int line, int column, long timeInNs) {
                 processor.oliveRuntime(filename, line, column, timeInNs);
@@ -1469,13 +1457,7 @@ public final class Server implements ServerConfig, ActionServices {
           }
         });
 
-    addJson(
-        "/actions",
-        (mapper, query) -> {
-          final var array = mapper.createArrayNode();
-          actionDefsJson(array);
-          return array;
-        });
+    addDefinitionJson("/actions", this::actionDefsJson);
     add(
         "/tags",
         t -> {
@@ -1509,42 +1491,12 @@ public final class Server implements ServerConfig, ActionServices {
     addJson("/pauses", (mapper, query) -> pauses());
     addJson("/savedsearches", (mapper, query) -> savedSearches());
 
-    addJson(
-        "/refillers",
-        (mapper, query) -> {
-          final var array = mapper.createArrayNode();
-          refillerDefsJson(array);
-          return array;
-        });
+    addDefinitionJson("/refillers", this::refillerDefsJson);
 
-    addJson(
-        "/constants",
-        (mapper, query) -> {
-          final var array = mapper.createArrayNode();
-          constantDefsJson(array);
-          return array;
-        });
-    addJson(
-        "/signatures",
-        (mapper, query) -> {
-          final var array = mapper.createArrayNode();
-          signatureDefsJson(array);
-          return array;
-        });
-    addJson(
-        "/functions",
-        (mapper, query) -> {
-          final var array = mapper.createArrayNode();
-          functionsDefsJson(array);
-          return array;
-        });
-    addJson(
-        "/olivedefinitions",
-        (mapper, query) -> {
-          final var array = mapper.createArrayNode();
-          oliveDefsJson(array);
-          return array;
-        });
+    addDefinitionJson("/constants", this::constantDefsJson);
+    addDefinitionJson("/signatures", this::signatureDefsJson);
+    addDefinitionJson("/functions", this::functionsDefsJson);
+    addDefinitionJson("/olivedefinitions", this::oliveDefsJson);
     addJson(
         "/olives",
         (mapper, query) -> {
@@ -1633,9 +1585,13 @@ public final class Server implements ServerConfig, ActionServices {
             jsonOutput.writeNumberField("total", processor.size(filters));
             jsonOutput.writeArrayFieldStart("results");
             final var availableSortKeys = new TreeSet<String>();
-            processor.stream(pluginManager, sortBy, availableSortKeys::add, filters)
-                .skip(Math.max(0, query.getSkip()))
-                .limit(query.getLimit())
+            processor.stream(
+                    pluginManager,
+                    sortBy,
+                    availableSortKeys::add,
+                    query.getSkip(),
+                    query.getLimit(),
+                    filters)
                 .forEach(
                     action -> {
                       try {
@@ -1906,8 +1862,9 @@ public final class Server implements ServerConfig, ActionServices {
         t -> {
           t.getResponseHeaders().set("Content-type", "application/json");
           t.sendResponseHeaders(200, 0);
-          try (var os = t.getResponseBody()) {
-            os.write(processor.currentAlerts().getBytes(StandardCharsets.UTF_8));
+          try (final var os = t.getResponseBody();
+              final var jGenerator = RuntimeSupport.MAPPER.createGenerator(os, JsonEncoding.UTF8)) {
+            processor.currentAlerts(jGenerator);
           }
         });
     add(
@@ -1917,7 +1874,7 @@ public final class Server implements ServerConfig, ActionServices {
           t.sendResponseHeaders(200, 0);
           try (final var os = t.getResponseBody();
               final var jGenerator = RuntimeSupport.MAPPER.createGenerator(os, JsonEncoding.UTF8)) {
-            processor.alerts(jGenerator, a -> true);
+            processor.alerts(jGenerator);
           }
         });
     add(
@@ -2443,14 +2400,25 @@ public final class Server implements ServerConfig, ActionServices {
           final var name = RuntimeSupport.MAPPER.readValue(t.getRequestBody(), String.class);
           switch (t.getRequestMethod()) {
             case "POST":
-              t.getResponseHeaders().set("Content-type", "application/json");
-              t.sendResponseHeaders(200, 0);
-              try (var os = t.getResponseBody()) {
-                os.write(jsonDumpers.getOrDefault(name, "[]").getBytes(StandardCharsets.UTF_8));
+              final var lines = jsonDumpers.getOrDefault(name, new byte[0]);
+              if (Optional.ofNullable(t.getRequestHeaders().getFirst("Accept"))
+                  .filter(accept -> accept.contains("application/x-ndjson"))
+                  .isPresent()) {
+                t.getResponseHeaders().set("Content-type", "application/x-ndjson");
+                t.sendResponseHeaders(200, lines.length);
+                try (var os = t.getResponseBody()) {
+                  os.write(lines);
+                }
+              } else {
+                t.getResponseHeaders().set("Content-type", "application/json");
+                t.sendResponseHeaders(200, 0);
+                try (var os = t.getResponseBody()) {
+                  JsonDumper.writeArray(lines, os);
+                }
               }
               break;
             case "PUT":
-              jsonDumpers.computeIfAbsent(name, k -> "[]");
+              jsonDumpers.computeIfAbsent(name, k -> new byte[0]);
               t.getResponseHeaders().set("Content-type", "application/json");
               t.sendResponseHeaders(201, -1);
               try (var os = t.getResponseBody()) {}
@@ -2678,24 +2646,49 @@ public final class Server implements ServerConfig, ActionServices {
 
   /** Add a file backed by a class resource */
   private void add(String url, String type) {
+    final var cache = new AtomicReference<CachedResponse>();
     server.createContext(
         "/" + url,
         t -> {
-          t.getResponseHeaders().set("Content-type", type);
-          t.sendResponseHeaders(200, 0);
-          final var b = new byte[1024];
-          try (var output = t.getResponseBody();
-              var input = getClass().getResourceAsStream(url)) {
-            int count;
-            while ((count = input.read(b)) > 0) {
-              output.write(b, 0, count);
+          var response = cache.get();
+          if (response == null) {
+            try (var input = getClass().getResourceAsStream(url)) {
+              if (input == null) {
+                t.sendResponseHeaders(404, -1);
+                t.close();
+                return;
+              }
+              response = CachedResponse.of(type, input.readAllBytes());
             }
+            cache.set(response);
+          }
+          try {
+            response.send(t);
           } catch (final IOException e) {
             e.printStackTrace();
           }
         });
   }
 
+  /**
+   * Add a JSON endpoint that describes the available definitions
+   *
+   * <p>The output is kept until the definitions change, rather than being regenerated for every
+   * request.
+   */
+  private void addDefinitionJson(String url, Consumer<ArrayNode> writer) {
+    final var response =
+        new CachedResponse.Versioned(
+            "application/json",
+            this::definitionVersion,
+            () -> {
+              final var array = RuntimeSupport.MAPPER.createArrayNode();
+              writer.accept(array);
+              return RuntimeSupport.MAPPER.writeValueAsBytes(array);
+            });
+    add(url, response::send);
+  }
+
   /** Add a new service endpoint with Prometheus monitoring that handles JSON */
   private void addJson(String url, BiFunction<ObjectMapper, String, JsonNode> fetcher) {
     add(
@@ -2728,6 +2721,10 @@ public final class Server implements ServerConfig, ActionServices {
             });
   }
 
+  private long definitionVersion() {
+    return pluginManager.definitionVersion() + compiler.definitionVersion();
+  }
+
   public void downloadInputData(
       HttpExchange t, InputSource inputSource, BaseInputFormatDefinition format, boolean readStale)
       throws IOException {
@@ -2968,6 +2965,8 @@ public final class Server implements ServerConfig, ActionServices {
               fileNode.put(
                   "lastRun",
                   fileTable.first() == null ? null : fileTable.first().lastRun().toEpochMilli());
+              fileNode.put(
+                  "skippedRuns", fileTable.first() == null ? 0 : fileTable.first().skippedRuns());
               final var olivesNode = fileNode.putArray("olives");
 
               fileTable
@@ -12,6 +12,7 @@ import ca.on.oicr.gsi.shesmu.plugin.grouper.Grouper;
 import ca.on.oicr.gsi.shesmu.plugin.grouper.GrouperDefinition;
 import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
 import ca.on.oicr.gsi.shesmu.runtime.InputProvider;
+import ca.on.oicr.gsi.shesmu.runtime.JoinIndex;
 import ca.on.oicr.gsi.shesmu.runtime.OliveServices;
 import ca.on.oicr.gsi.shesmu.runtime.RuntimeSupport;
 import ca.on.oicr.gsi.shesmu.runtime.SignatureAccessor;
@@ -108,6 +109,7 @@ public abstract class BaseOliveBuilder {
   private static final Type A_GAUGE_TYPE = Type.getType(Gauge.class);
   private static final Type A_GROUPER_TYPE = Type.getType(Grouper.class);
   protected static final Type A_INPUT_PROVIDER_TYPE = Type.getType(InputProvider.class);
+  private static final Type A_JOIN_INDEX_TYPE = Type.getType(JoinIndex.class);
   private static final Type A_OBJECTS_TYPE = Type.getType(Objects.class);
   private static final Type A_OBJECT_ARRAY_TYPE = Type.getType(Object[].class);
   protected static final Type A_OBJECT_TYPE = Type.getType(Object.class);
@@ -127,6 +129,11 @@ public abstract class BaseOliveBuilder {
           "bootstrap",
           "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
           false);
+  private static final Method METHOD_ACTION_GENERATOR__JOIN_INDEX =
+      new Method(
+          "joinIndex",
+          A_JOIN_INDEX_TYPE,
+          new Type[] {A_STRING_TYPE, A_STREAM_TYPE, A_FUNCTION_TYPE, BOOLEAN_TYPE});
   private static final Method METHOD_COMPARATOR__COMPARING =
       new Method("comparing", A_COMPARATOR_TYPE, new Type[] {A_FUNCTION_TYPE});
   private static final Method METHOD_COMPARATOR__REVERSED =
@@ -138,14 +145,17 @@ public abstract class BaseOliveBuilder {
   private static final Method METHOD_HASH_CODE = new Method("hashCode", INT_TYPE, new Type[] {});
   protected static final Method METHOD_INPUT_PROVIDER__FETCH =
       new Method("fetch", A_STREAM_TYPE, new Type[] {A_STRING_TYPE});
+  private static final Method METHOD_JOIN_INDEX__OF =
+      new Method("of", A_JOIN_INDEX_TYPE, new Type[] {A_STREAM_TYPE, A_FUNCTION_TYPE});
+  private static final Method METHOD_JOIN_INDEX__OF_INTERSECTION =
+      new Method("ofIntersection", A_JOIN_INDEX_TYPE, new Type[] {A_STREAM_TYPE, A_FUNCTION_TYPE});
   private static final Method METHOD_LEFT_INTERSECTION_JOIN =
       new Method(
           "leftIntersectionJoin",
           A_STREAM_TYPE,
           new Type[] {
             A_STREAM_TYPE,
-            A_STREAM_TYPE,
-            A_FUNCTION_TYPE,
+            A_JOIN_INDEX_TYPE,
             A_FUNCTION_TYPE,
             A_BIFUNCTION_TYPE,
             A_FUNCTION_TYPE,
@@ -157,8 +167,7 @@ public abstract class BaseOliveBuilder {
           A_STREAM_TYPE,
           new Type[] {
             A_STREAM_TYPE,
-            A_STREAM_TYPE,
-            A_FUNCTION_TYPE,
+            A_JOIN_INDEX_TYPE,
             A_FUNCTION_TYPE,
             A_BIFUNCTION_TYPE,
             A_FUNCTION_TYPE,
@@ -202,16 +211,12 @@ public abstract class BaseOliveBuilder {
       new Method(
           "join",
           A_STREAM_TYPE,
-          new Type[] {
-            A_STREAM_TYPE, A_STREAM_TYPE, A_FUNCTION_TYPE, A_FUNCTION_TYPE, A_BIFUNCTION_TYPE
-          });
+          new Type[] {A_STREAM_TYPE, A_JOIN_INDEX_TYPE, A_FUNCTION_TYPE, A_BIFUNCTION_TYPE});
   private static final Method METHOD_RUNTIME_SUPPORT__JOIN_INTERSECTION =
       new Method(
           "joinIntersection",
           A_STREAM_TYPE,
-          new Type[] {
-            A_STREAM_TYPE, A_STREAM_TYPE, A_FUNCTION_TYPE, A_FUNCTION_TYPE, A_BIFUNCTION_TYPE
-          });
+          new Type[] {A_STREAM_TYPE, A_JOIN_INDEX_TYPE, A_FUNCTION_TYPE, A_BIFUNCTION_TYPE});
   protected static final Method METHOD_SIGNATURE_ACCESSOR__DYNAMIC_SIGNATURE =
       new Method("dynamicSignature", A_OBJECT_TYPE, new Type[] {A_STRING_TYPE, A_OBJECT_TYPE});
   protected static final Method METHOD_SIGNATURE_ACCESSOR__STATIC_SIGNATURE =
@@ -297,6 +302,12 @@ public abstract class BaseOliveBuilder {
     return currentType;
   }
 
+  /**
+   * Whether this olive is only ever run as part of the script's run, so that any join indices it
+   * builds are discarded at the end of the run
+   */
+  protected abstract boolean canShareJoinIndices();
+
   protected abstract void emitSigner(SignatureDefinition name, Renderer renderer);
 
   /**
@@ -416,6 +427,52 @@ public abstract class BaseOliveBuilder {
     return flattenBuilder;
   }
 
+  /**
+   * Create the code to build the index of the inner input for a join
+   *
+   * <p>If the inner input is an input format and the key expression only depends on the inner
+   * record, the index is the same for every olive in the script that joins on the same expression,
+   * so it is built once per run and shared.
+   *
+   * @param innerType the inner input source
+   * @param intersection whether the inner key is a set of keys
+   * @param innerKeyForm a normalised form of the inner key expression, if it can be shared
+   * @param pushInnerKey the code to create the inner key function
+   */
+  private Consumer<Renderer> joinIndex(
+      JoinInputSource innerType,
+      boolean intersection,
+      Optional<String> innerKeyForm,
+      Consumer<Renderer> pushInnerKey) {
+    final var sharedName =
+        innerKeyForm
+            .filter(
+                form -> canShareJoinIndices() && innerType.additionalFormatCollector().isEmpty())
+            // An intersection join indexes each element of the key rather than the whole key, so
+            // it can't share an index with a regular join on the same expression
+            .map(
+                form -> innerType.format().name() + (intersection ? " intersection " : " ") + form);
+    return renderer -> {
+      if (sharedName.isPresent()) {
+        renderer.methodGen().loadThis();
+        renderer.methodGen().push(sharedName.get());
+      }
+      loadInputProvider(renderer.methodGen());
+      innerType.render(renderer);
+      pushInnerKey.accept(renderer);
+      if (sharedName.isPresent()) {
+        renderer.methodGen().push(intersection);
+        renderer.methodGen().invokeVirtual(owner.selfType(), METHOD_ACTION_GENERATOR__JOIN_INDEX);
+      } else {
+        renderer
+            .methodGen()
+            .invokeStatic(
+                A_JOIN_INDEX_TYPE,
+                intersection ? METHOD_JOIN_INDEX__OF_INTERSECTION : METHOD_JOIN_INDEX__OF);
+      }
+    };
+  }
+
   public final JoinBuilder join(
       int line,
       int column,
@@ -423,6 +480,7 @@ public abstract class BaseOliveBuilder {
       JoinInputSource innerType,
       Imyhat outerKeyType,
       Imyhat innerKeyType,
+      Optional<String> innerKeyForm,
       LoadableValue... capturedVariables) {
     final var className =
         String.format("%s/Join %d:%d", BaseHotloadingCompiler.PACKAGE_INTERNAL, line, column);
@@ -447,15 +505,22 @@ public abstract class BaseOliveBuilder {
             LambdaBuilder.function(innerKeyType, innerType.type()),
             capturedVariables);
 
+    final var renderIndex =
+        joinIndex(
+            innerType,
+            kind.intersection(),
+            innerKeyForm,
+            renderer -> {
+              innerKeyLambda.push(renderer);
+              kind.renderInnerKeyWrapper(renderer);
+            });
+
     steps.add(
         renderer -> {
-          loadInputProvider(renderer.methodGen());
-          innerType.render(renderer);
+          renderIndex.accept(renderer);
 
           outerKeyLambda.push(renderer);
           kind.renderOuterKeyWrapper(renderer);
-          innerKeyLambda.push(renderer);
-          kind.renderInnerKeyWrapper(renderer);
           LambdaBuilder.pushNew(
               renderer,
               LambdaBuilder.bifunction(newType, oldType, innerType.type()),
@@ -482,6 +547,7 @@ public abstract class BaseOliveBuilder {
       boolean intersection,
       JoinInputSource innerType,
       Imyhat keyType,
+      Optional<String> innerKeyForm,
       BiConsumer<SignatureDefinition, Renderer> innerSigner,
       LoadableValue... capturedVariables) {
     final var joinedClassName =
@@ -523,13 +589,13 @@ public abstract class BaseOliveBuilder {
             LambdaBuilder.biconsumer(newType, joinedType),
             capturedVariables);
 
+    final var renderIndex = joinIndex(innerType, intersection, innerKeyForm, innerKeyLambda::push);
+
     steps.add(
         renderer -> {
-          loadInputProvider(renderer.methodGen());
-          innerType.render(renderer);
+          renderIndex.accept(renderer);
 
           outerKeyLambda.push(renderer);
-          innerKeyLambda.push(renderer);
           LambdaBuilder.pushNew(
               renderer,
               LambdaBuilder.bifunction(joinedType, oldType, innerType.type()),
@@ -25,6 +25,16 @@ import org.objectweb.asm.commons.Method;
 /** An olive that will result in an action being performed */
 public final class OliveBuilder extends BaseOliveBuilder {
 
+  /**
+   * A clause that is evaluated once and shared by multiple olives
+   *
+   * @param input the shared input produced by this clause
+   * @param line the line of the clause in this olive
+   * @param column the column of the clause in this olive
+   * @param consumers the number of olives that use this clause
+   */
+  public record SharedClause(int input, int line, int column, int consumers) {}
+
   public static void buildSignerAccessor(
       RootBuilder owner, Type accessorType, String signerPrefix, InputFormatDefinition format) {
     final var signerClass = owner.createClassVisitor();
@@ -135,6 +145,28 @@ public final class OliveBuilder extends BaseOliveBuilder {
             A_ACTION_TYPE, A_STRING_TYPE, INT_TYPE, INT_TYPE, A_STRING_TYPE, A_STRING_ARRAY_TYPE
           });
 
+  private static final Method METHOD_ACTION_GENERATOR__SHARED_FLOW =
+      new Method(
+          "sharedFlow",
+          VOID_TYPE,
+          new Type[] {
+            INT_TYPE,
+            A_ACTION_CONSUMER_TYPE,
+            A_INPUT_PROVIDER_TYPE,
+            A_STRING_TYPE,
+            INT_TYPE,
+            INT_TYPE,
+            A_STRING_TYPE,
+            A_STRING_TYPE,
+            INT_TYPE,
+            INT_TYPE,
+            A_STRING_TYPE
+          });
+  private static final Method METHOD_ACTION_GENERATOR__SHARED_INPUT =
+      new Method(
+          "sharedInput",
+          A_STREAM_TYPE,
+          new Type[] {INT_TYPE, A_ACTION_CONSUMER_TYPE, A_INPUT_PROVIDER_TYPE});
   private static final Method METHOD_OLIVE_SERVICES__OLIVE_RUNTIME =
       new Method(
           "oliveRuntime", VOID_TYPE, new Type[] {A_STRING_TYPE, INT_TYPE, INT_TYPE, LONG_TYPE});
@@ -150,6 +182,7 @@ public final class OliveBuilder extends BaseOliveBuilder {
   private final int column;
   private boolean hasAccessor;
   private final int line;
+  private List<SharedClause> sharedClauses = List.of();
   private final String signerPrefix;
   private final List<LoadableValue> sourceLocationLoadableValues =
       List.of(
@@ -265,21 +298,51 @@ public final class OliveBuilder extends BaseOliveBuilder {
     methodGen.pop();
   }
 
+  @Override
+  protected boolean canShareJoinIndices() {
+    return true;
+  }
+
   @Override
   protected void emitSigner(SignatureDefinition signer, Renderer renderer) {
     renderSigner(owner, initialFormat, signerPrefix, signer, renderer);
   }
 
   private void finish(Consumer<Renderer> finishStream) {
+    owner.startOlive();
     final var runMethod =
         owner.rootRenderer(true, actionName, sourceLocationLoadableValues.stream());
     final var startTime = runMethod.methodGen().newLocal(LONG_TYPE);
     runMethod.methodGen().invokeStatic(A_SYSTEM_TYPE, METHOD_SYSTEM__NANO_TIME);
     runMethod.methodGen().storeLocal(startTime);
 
-    runMethod.methodGen().loadArg(1);
-    runMethod.methodGen().push(initialFormat.name());
-    runMethod.methodGen().invokeInterface(A_INPUT_PROVIDER_TYPE, METHOD_INPUT_PROVIDER__FETCH);
+    if (sharedClauses.isEmpty()) {
+      runMethod.methodGen().loadArg(1);
+      runMethod.methodGen().push(initialFormat.name());
+      runMethod.methodGen().invokeInterface(A_INPUT_PROVIDER_TYPE, METHOD_INPUT_PROVIDER__FETCH);
+    } else {
+      // The shared clauses still need to report the flow through them for this olive
+      for (final var clause : sharedClauses) {
+        runMethod.methodGen().loadThis();
+        runMethod.methodGen().push(clause.input());
+        runMethod.methodGen().loadArg(0);
+        runMethod.methodGen().loadArg(1);
+        runMethod.methodGen().push(owner.sourcePath());
+        runMethod.methodGen().push(clause.line());
+        runMethod.methodGen().push(clause.column());
+        runMethod.methodGen().push(owner.hash);
+        runMethod.methodGen().push(owner.sourcePath());
+        runMethod.methodGen().push(line);
+        runMethod.methodGen().push(column);
+        runMethod.methodGen().push(owner.hash);
+        runMethod.methodGen().invokeVirtual(owner.selfType(), METHOD_ACTION_GENERATOR__SHARED_FLOW);
+      }
+      runMethod.methodGen().loadThis();
+      runMethod.methodGen().push(sharedClauses.get(sharedClauses.size() - 1).input());
+      runMethod.methodGen().loadArg(0);
+      runMethod.methodGen().loadArg(1);
+      runMethod.methodGen().invokeVirtual(owner.selfType(), METHOD_ACTION_GENERATOR__SHARED_INPUT);
+    }
 
     steps.forEach(
         step ->
@@ -338,6 +401,7 @@ public final class OliveBuilder extends BaseOliveBuilder {
     runMethod
         .methodGen()
         .invokeInterface(A_OLIVE_SERVICES_TYPE, METHOD_OLIVE_SERVICES__OLIVE_RUNTIME);
+    owner.finishOlive();
   }
 
   /** Generate bytecode for the olive and create a method to consume the result. */
@@ -463,6 +527,15 @@ public final class OliveBuilder extends BaseOliveBuilder {
     }
   }
 
+  /**
+   * Start this olive from the output of clauses shared with other olives
+   *
+   * <p>The shared clauses must not also be added to this olive.
+   */
+  public void sharedClauses(List<SharedClause> sharedClauses) {
+    this.sharedClauses = sharedClauses;
+  }
+
   @Override
   public Stream<LoadableValue> loadableValues() {
     return Stream.of(
@@ -15,6 +15,27 @@ import java.util.stream.Stream;
 
 /** Base type for an olive clause */
 public abstract class OliveClauseNode {
+  /** A clause that can be evaluated once and have its output used by multiple olives */
+  public interface Shareable {
+    /**
+     * Get a key that identifies what this clause does to the input
+     *
+     * <p>If two clauses provide the same key and receive the same input, they must produce the same
+     * output, regardless of which olive they are in.
+     */
+    String key();
+
+    /**
+     * Generate byte code for this clause so that it can be shared by multiple olives
+     *
+     * @param builder the script being generated
+     * @param parent the shared input this clause consumes or -1 if it consumes the script's input
+     * @param consumers the number of olives that will use the output of this clause
+     * @return the shared input produced by this clause
+     */
+    int render(RootBuilder builder, int parent, int consumers);
+  }
+
   private interface DumpConstructor {
     OliveClauseNodeBaseDump create(Optional<String> label, int line, int column, String dumperName);
   }
@@ -547,6 +568,58 @@ public abstract class OliveClauseNode {
 
   public abstract int line();
 
+  /**
+   * Produce a normalised form of an expression that is the same for equivalent expressions in any
+   * olive
+   *
+   * @param expression the expression to normalise
+   * @param constants the names of the variables from outside the olive that the expression may use
+   * @return the normalised form or empty if the expression uses anything specific to the olive or
+   *     cannot be normalised
+   */
+  protected static Optional<String> normalisedForm(
+      ExpressionNode expression, Set<String> constants) {
+    final Set<String> captures = new HashSet<>();
+    expression.collectFreeVariables(captures, Target.Flavour::needsCapture);
+    // Variables always ask for the signer accessor, but it is only used in “Define” olives
+    captures.remove(BaseOliveBuilder.SIGNER_ACCESSOR_NAME);
+    final Set<String> signatures = new HashSet<>();
+    expression.collectFreeVariables(signatures, Target.Flavour.STREAM_SIGNATURE::equals);
+    // Anything specific to the olive, like the action name or signatures, can't be shared
+    if (!constants.containsAll(captures) || !signatures.isEmpty()) {
+      return Optional.empty();
+    }
+    final Set<String> variables = new TreeSet<>();
+    expression.collectFreeVariables(variables, flavour -> true);
+    try {
+      // The JavaScript version of the expression is a convenient normalised form; anything that
+      // can't be converted, such as plugin functions, will throw
+      return Optional.of(
+          EcmaScriptRenderer.root(
+              "",
+              "",
+              renderer -> {
+                for (final var variable : variables) {
+                  renderer.define(
+                      new EcmaLoadableValue() {
+                        @Override
+                        public String get() {
+                          return variable;
+                        }
+
+                        @Override
+                        public String name() {
+                          return variable;
+                        }
+                      });
+                }
+                renderer.statement(expression.renderEcma(renderer));
+              }));
+    } catch (RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
   /**
    * Generate byte code for this clause.
    *
@@ -574,6 +647,17 @@ public abstract class OliveClauseNode {
   public abstract boolean resolveDefinitions(
       OliveCompilerServices oliveCompilerServices, Consumer<String> errorHandler);
 
+  /**
+   * Get a version of this clause that can be shared by multiple olives, if it is possible
+   *
+   * <p>Most clauses depend on the rest of the olive, so they cannot be shared.
+   *
+   * @param constants the names of the variables from outside the olive that a shared clause may use
+   */
+  public Optional<Shareable> sharing(Set<String> constants) {
+    return Optional.empty();
+  }
+
   /** Type any expression in the clause */
   public abstract boolean typeCheck(Consumer<String> errorHandler);
 }
@@ -122,6 +122,7 @@ public abstract class OliveClauseNodeBaseJoin extends OliveClauseNode {
             inputSource,
             outerKey.type(),
             innerKey.type(),
+            normalisedForm(innerKey, Set.of()),
             oliveBuilder
                 .loadableValues()
                 .filter(value -> freeVariables.contains(value.name()))
@@ -260,6 +260,7 @@ public abstract class OliveClauseNodeBaseLeftJoin extends OliveClauseNode {
             intersection(),
             inputSource,
             outerKey.type(),
+            normalisedForm(innerKey, Set.of()),
             (signatureDefinition, renderer) ->
                 BaseOliveBuilder.renderSigner(
                     oliveBuilder.owner,
@@ -119,6 +119,27 @@ public class OliveClauseNodeWhere extends OliveClauseNode {
     return expression.resolveDefinitions(oliveCompilerServices, errorHandler);
   }
 
+  @Override
+  public Optional<Shareable> sharing(Set<String> constants) {
+    return normalisedForm(expression, constants)
+        .map(
+            key ->
+                new Shareable() {
+                  @Override
+                  public String key() {
+                    return key;
+                  }
+
+                  @Override
+                  public int render(RootBuilder builder, int parent, int consumers) {
+                    final Set<String> freeVariables = new HashSet<>();
+                    expression.collectFreeVariables(freeVariables, Flavour::needsCapture);
+                    return builder.sharedFilter(
+                        parent, line, column, consumers, freeVariables, expression::render);
+                  }
+                });
+  }
+
   @Override
   public boolean typeCheck(Consumer<String> errorHandler) {
     final var ok = expression.typeCheck(errorHandler);
@@ -103,6 +103,12 @@ public final class OliveDefineBuilder extends BaseOliveBuilder
     // None required as we are within the same file
   }
 
+  @Override
+  protected boolean canShareJoinIndices() {
+    // Define olives can be called from other scripts, outside of this script's run
+    return false;
+  }
+
   @Override
   protected void emitSigner(SignatureDefinition signer, Renderer renderer) {
     renderer.emitNamed(SIGNER_ACCESSOR_NAME);
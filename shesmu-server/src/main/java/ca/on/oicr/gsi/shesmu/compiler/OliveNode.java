@@ -324,6 +324,32 @@ public abstract class OliveNode {
   public abstract boolean resolveTypes(
       OliveCompilerServices oliveCompilerServices, Consumer<String> errorHandler);
 
+  /**
+   * Use clauses shared with other olives in place of the leading clauses of this olive
+   *
+   * @param builder the script being generated
+   * @param keys the keys, as provided by {@link #sharingKeys(Set)}, of the clauses to share; this
+   *     may be shorter than what was provided if other olives do not share all of them
+   * @param consumers the number of olives that use each shared clause
+   * @param sharedInputs the shared inputs that have already been generated for each key; if a key
+   *     is missing, this olive must generate it and add it
+   */
+  public abstract void shareClauses(
+      RootBuilder builder,
+      List<String> keys,
+      Map<String, Integer> consumers,
+      Map<String, Integer> sharedInputs);
+
+  /**
+   * Get the keys for the leading clauses of this olive that could be shared with other olives
+   *
+   * <p>The key for each clause also identifies all the clauses before it, so two olives with the
+   * same key for a clause can share it and all the clauses before it.
+   *
+   * @param constants the names of the variables from outside the olive that a shared clause may use
+   */
+  public abstract List<String> sharingKeys(Set<String> constants);
+
   /** Type check this olive and all its constituent parts */
   public abstract boolean typeCheck(Consumer<String> errorHandler);
 }
@@ -171,7 +171,7 @@ public class OliveNodeAlert extends OliveNodeWithClauses implements RejectNode {
             tags,
             description,
             Stream::empty,
-            clauses().stream().flatMap(OliveClauseNode::dashboard),
+            clauseDashboard(),
             Stream.concat(
                 Stream.of(labels, annotations)
                     .flatMap(List::stream)
@@ -274,7 +274,7 @@ public class OliveNodeAlert extends OliveNodeWithClauses implements RejectNode {
         annotation -> annotation.collectFreeVariables(captures, Flavour::needsCapture));
     final var oliveBuilder =
         builder.buildRunOlive(line, column, null, signableNames, signableVariableChecks);
-    clauses().forEach(clause -> clause.render(builder, oliveBuilder, definitions));
+    renderClauses(builder, oliveBuilder, definitions);
     oliveBuilder.line(line);
     final var action =
         oliveBuilder.finish(
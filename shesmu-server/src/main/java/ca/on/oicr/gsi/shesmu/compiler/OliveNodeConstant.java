@@ -4,6 +4,7 @@ import ca.on.oicr.gsi.shesmu.compiler.definitions.FunctionDefinition;
 import ca.on.oicr.gsi.shesmu.compiler.description.OliveTable;
 import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -138,6 +139,21 @@ public final class OliveNodeConstant extends OliveNode implements Target {
     return true;
   }
 
+  @Override
+  public void shareClauses(
+      RootBuilder builder,
+      List<String> keys,
+      Map<String, Integer> consumers,
+      Map<String, Integer> sharedInputs) {
+    // There are never any keys to share
+  }
+
+  @Override
+  public List<String> sharingKeys(Set<String> constants) {
+    // Constants do not consume the script's input, so they have no clauses to share
+    return List.of();
+  }
+
   @Override
   public Imyhat type() {
     return body.type();
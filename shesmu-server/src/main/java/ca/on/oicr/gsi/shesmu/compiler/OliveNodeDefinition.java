@@ -232,6 +232,12 @@ public final class OliveNodeDefinition extends OliveNodeWithClauses implements C
     isRoot = state != ClauseStreamOrder.TRANSFORMED;
   }
 
+  @Override
+  public List<String> sharingKeys(Set<String> constants) {
+    // Define olives are run on whatever input the calling olive provides
+    return List.of();
+  }
+
   @Override
   public boolean skipCheckUnusedDeclarations() {
     return export;
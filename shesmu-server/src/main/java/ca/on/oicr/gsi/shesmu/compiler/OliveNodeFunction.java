@@ -200,6 +200,21 @@ public class OliveNodeFunction extends OliveNode implements FunctionDefinition {
         == parameters.size();
   }
 
+  @Override
+  public void shareClauses(
+      RootBuilder builder,
+      List<String> keys,
+      Map<String, Integer> consumers,
+      Map<String, Integer> sharedInputs) {
+    // There are never any keys to share
+  }
+
+  @Override
+  public List<String> sharingKeys(Set<String> constants) {
+    // Functions do not consume the script's input, so they have no clauses to share
+    return List.of();
+  }
+
   @Override
   public Imyhat returnType() {
     return body.type();
@@ -133,7 +133,7 @@ public final class OliveNodeRefill extends OliveNodeWithClauses {
             tags,
             description,
             definition.supplementaryInformation(),
-            clauses().stream().flatMap(OliveClauseNode::dashboard),
+            clauseDashboard(),
             arguments.stream()
                 .flatMap(
                     arg -> {
@@ -161,7 +161,7 @@ public final class OliveNodeRefill extends OliveNodeWithClauses {
       RootBuilder builder, Function<String, CallableDefinitionRenderer> definitions) {
     final var oliveBuilder =
         builder.buildRunOlive(line, column, null, signableNames, signableVariableChecks);
-    clauses().forEach(clause -> clause.render(builder, oliveBuilder, definitions));
+    renderClauses(builder, oliveBuilder, definitions);
     oliveBuilder.line(line);
     oliveBuilder.finish(
         refillerName,
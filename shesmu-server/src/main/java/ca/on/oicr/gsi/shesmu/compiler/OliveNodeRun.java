@@ -97,7 +97,7 @@ public final class OliveNodeRun extends OliveNodeWithClauses {
             tags,
             description,
             definition.supplementaryInformation(),
-            clauses().stream().flatMap(OliveClauseNode::dashboard),
+            clauseDashboard(),
             arguments.stream()
                 .flatMap(
                     arg -> {
@@ -127,7 +127,7 @@ public final class OliveNodeRun extends OliveNodeWithClauses {
     final var oliveBuilder =
         builder.buildRunOlive(
             line, column, definition.name(), signableNames, signableVariableChecks);
-    clauses().forEach(clause -> clause.render(builder, oliveBuilder, definitions));
+    renderClauses(builder, oliveBuilder, definitions);
     oliveBuilder.line(line);
     final var action =
         oliveBuilder.finish(
@@ -1,20 +1,27 @@
 package ca.on.oicr.gsi.shesmu.compiler;
 
+import ca.on.oicr.gsi.shesmu.compiler.OliveBuilder.SharedClause;
 import ca.on.oicr.gsi.shesmu.compiler.definitions.FunctionDefinition;
+import ca.on.oicr.gsi.shesmu.compiler.description.OliveClauseRow;
 import ca.on.oicr.gsi.shesmu.runtime.ActionGenerator;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /** An olive stanza declaration */
 public abstract class OliveNodeWithClauses extends OliveNode {
 
   private final List<OliveClauseNode> clauses;
+  private List<OliveClauseNode.Shareable> shareable = List.of();
+  private List<SharedClause> sharedClauses = List.of();
   protected final Set<String> signableNames = new TreeSet<>();
   protected final List<SignableVariableCheck> signableVariableChecks = new ArrayList<>();
 
@@ -46,6 +53,33 @@ public abstract class OliveNodeWithClauses extends OliveNode {
     return state != ClauseStreamOrder.BAD;
   }
 
+  /**
+   * Describe the clauses in this node for the dashboard
+   *
+   * <p>Clauses that are shared with other olives are labelled as such.
+   */
+  protected final Stream<OliveClauseRow> clauseDashboard() {
+    return IntStream.range(0, clauses.size())
+        .boxed()
+        .flatMap(
+            i -> {
+              final var rows = clauses.get(i).dashboard();
+              if (i >= sharedClauses.size()) {
+                return rows;
+              }
+              final var consumers = sharedClauses.get(i).consumers();
+              return rows.map(
+                  row ->
+                      new OliveClauseRow(
+                          String.format("%s (shared by %d olives)", row.syntax(), consumers),
+                          row.line(),
+                          row.column(),
+                          row.measuredFlow(),
+                          row.deadly(),
+                          row.variables()));
+            });
+  }
+
   /** List all the clauses in this node */
   protected List<OliveClauseNode> clauses() {
     return clauses;
@@ -74,6 +108,22 @@ public abstract class OliveNodeWithClauses extends OliveNode {
   public abstract void render(
       RootBuilder builder, Function<String, CallableDefinitionRenderer> definitions);
 
+  /**
+   * Generate bytecode for the clauses in this olive
+   *
+   * <p>Any clauses shared with other olives are not generated; the olive will start from the output
+   * of the last shared clause instead.
+   */
+  protected final void renderClauses(
+      RootBuilder builder,
+      OliveBuilder oliveBuilder,
+      Function<String, CallableDefinitionRenderer> definitions) {
+    oliveBuilder.sharedClauses(sharedClauses);
+    clauses.stream()
+        .skip(sharedClauses.size())
+        .forEach(clause -> clause.render(builder, oliveBuilder, definitions));
+  }
+
   /** Resolve all variable plugins */
   @Override
   public abstract boolean resolve(
@@ -101,6 +151,45 @@ public abstract class OliveNodeWithClauses extends OliveNode {
 
   protected abstract void setPurity(ClauseStreamOrder state);
 
+  @Override
+  public final void shareClauses(
+      RootBuilder builder,
+      List<String> keys,
+      Map<String, Integer> consumers,
+      Map<String, Integer> sharedInputs) {
+    final List<SharedClause> shared = new ArrayList<>();
+    var parent = -1;
+    for (var i = 0; i < keys.size(); i++) {
+      final var clause = clauses.get(i);
+      final var sharedClause = shareable.get(i);
+      final var upstream = parent;
+      final int count = consumers.get(keys.get(i));
+      parent =
+          sharedInputs.computeIfAbsent(
+              keys.get(i), k -> sharedClause.render(builder, upstream, count));
+      shared.add(new SharedClause(parent, clause.line(), clause.column(), count));
+    }
+    sharedClauses = shared;
+  }
+
+  @Override
+  public List<String> sharingKeys(Set<String> constants) {
+    final List<OliveClauseNode.Shareable> shareable = new ArrayList<>();
+    final List<String> keys = new ArrayList<>();
+    final var prefix = new StringBuilder();
+    for (final var clause : clauses) {
+      final var sharing = clause.sharing(constants);
+      if (sharing.isEmpty()) {
+        break;
+      }
+      shareable.add(sharing.get());
+      prefix.append(sharing.get().key()).append("\n");
+      keys.add(prefix.toString());
+    }
+    this.shareable = shareable;
+    return keys;
+  }
+
   public abstract boolean skipCheckUnusedDeclarations();
 
   /** Type check this olive and all its constituent parts */
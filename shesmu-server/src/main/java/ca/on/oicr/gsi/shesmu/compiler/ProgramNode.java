@@ -150,13 +150,46 @@ public class ProgramNode {
     final Map<String, CallableDefinitionRenderer> definitions = new HashMap<>();
     pragmas.forEach(pragma -> pragma.renderGuard(builder));
     olives.forEach(olive -> olive.build(builder, definitions));
+    shareClauses(builder);
     olives.forEach(
         olive ->
             olive.render(
                 builder, name -> definitions.getOrDefault(name, externalDefinitions.apply(name))));
+    builder.runOlives();
     pragmas.forEach(pragma -> pragma.renderAtExit(builder));
   }
 
+  /**
+   * Find leading clauses that are identical across olives so they are only evaluated once
+   *
+   * <p>Each olive can share any number of leading clauses with other olives, as long as at least
+   * one other olive has the same clauses in the same order.
+   */
+  private void shareClauses(RootBuilder builder) {
+    final var constants =
+        builder.constants(true).map(LoadableValue::name).collect(Collectors.toSet());
+    final Map<OliveNode, List<String>> keys = new HashMap<>();
+    final Map<String, Integer> consumers = new HashMap<>();
+    for (final var olive : olives) {
+      final var oliveKeys = olive.sharingKeys(constants);
+      keys.put(olive, oliveKeys);
+      for (final var key : oliveKeys) {
+        consumers.merge(key, 1, Integer::sum);
+      }
+    }
+    final Map<String, Integer> sharedInputs = new HashMap<>();
+    for (final var olive : olives) {
+      final var oliveKeys = keys.get(olive);
+      var length = 0;
+      while (length < oliveKeys.size() && consumers.get(oliveKeys.get(length)) > 1) {
+        length++;
+      }
+      if (length > 0) {
+        olive.shareClauses(builder, oliveKeys.subList(0, length), consumers, sharedInputs);
+      }
+    }
+  }
+
   public int timeout() {
     var timeout = new AtomicInteger(20 * 60);
     pragmas.forEach(pragma -> pragma.timeout(timeout));
@@ -33,6 +33,7 @@ import java.util.stream.Stream;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.commons.TableSwitchGenerator;
 
 /** Helper to build an {@link ActionGenerator} */
 public abstract class RootBuilder implements OwningBuilder {
@@ -62,14 +63,41 @@ public abstract class RootBuilder implements OwningBuilder {
               A_STRING_TYPE,
               Type.getType(MethodType.class)),
           false);
+  private static final Method METHOD_ACTION_GENERATOR__COMPUTE_SHARED_INPUT =
+      new Method(
+          "computeSharedInput",
+          A_STREAM_TYPE,
+          new Type[] {INT_TYPE, A_OLIVE_SERVICES_TYPE, A_INPUT_PROVIDER_TYPE});
   private static final Method METHOD_ACTION_GENERATOR__INPUTS =
       new Method("inputs", A_STREAM_TYPE, new Type[] {});
   private static final Method METHOD_ACTION_GENERATOR__LOOKUP =
       new Method("lookup", A_LOOKUP_TYPE, new Type[] {});
   private static final Method METHOD_ACTION_GENERATOR__RUN =
       new Method("run", VOID_TYPE, new Type[] {A_OLIVE_SERVICES_TYPE, A_INPUT_PROVIDER_TYPE});
+  private static final Method METHOD_ACTION_GENERATOR__RUN_OLIVE =
+      new Method(
+          "runOlive",
+          VOID_TYPE,
+          new Type[] {INT_TYPE, A_OLIVE_SERVICES_TYPE, A_INPUT_PROVIDER_TYPE});
+  private static final Method METHOD_ACTION_GENERATOR__RUN_OLIVES =
+      new Method(
+          "runOlives",
+          VOID_TYPE,
+          new Type[] {A_OLIVE_SERVICES_TYPE, A_INPUT_PROVIDER_TYPE, INT_TYPE});
   private static final Method METHOD_ACTION_GENERATOR__RUN_PREPARE =
       new Method("prepare", VOID_TYPE, new Type[] {A_OLIVE_SERVICES_TYPE});
+  private static final Method METHOD_ACTION_GENERATOR__SHARED_INPUT =
+      new Method(
+          "sharedInput",
+          A_STREAM_TYPE,
+          new Type[] {INT_TYPE, A_OLIVE_SERVICES_TYPE, A_INPUT_PROVIDER_TYPE});
+  private static final Method METHOD_ACTION_GENERATOR__SHARED_SCAN =
+      new Method(
+          "sharedScan",
+          A_STREAM_TYPE,
+          new Type[] {
+            INT_TYPE, A_STREAM_TYPE, INT_TYPE, A_STRING_TYPE, INT_TYPE, INT_TYPE, A_STRING_TYPE
+          });
   private static final Method METHOD_ACTION_GENERATOR__TIMEOUT =
       new Method("timeout", INT_TYPE, new Type[] {});
   private static final Method METHOD_BUILD_GAUGE =
@@ -165,10 +193,13 @@ public abstract class RootBuilder implements OwningBuilder {
   private final Set<String> gauges = new HashSet<>();
   final String hash;
   private final InputFormatDefinition inputFormatDefinition;
+  private GeneratorAdapter oliveMethod;
+  private final List<Method> olives = new ArrayList<>();
   private final String path;
   private final GeneratorAdapter runMethod;
   private final GeneratorAdapter runPrepare;
   private final Type selfType;
+  private final List<Method> sharedInputs = new ArrayList<>();
   private final Supplier<Stream<SignatureDefinition>> signatures;
   private final Set<String> usedFormats = new HashSet<>();
   private final Set<CallableDefinitionRenderer> usedFormatsFromDefine = new HashSet<>();
@@ -391,6 +422,66 @@ public abstract class RootBuilder implements OwningBuilder {
     runPrepare.visitMaxs(0, 0);
     runPrepare.visitEnd();
 
+    final var runOliveMethod =
+        new GeneratorAdapter(
+            Opcodes.ACC_PROTECTED, METHOD_ACTION_GENERATOR__RUN_OLIVE, null, null, classVisitor);
+    runOliveMethod.visitCode();
+    if (!olives.isEmpty()) {
+      runOliveMethod.loadArg(0);
+      runOliveMethod.tableSwitch(
+          IntStream.range(0, olives.size()).toArray(),
+          new TableSwitchGenerator() {
+            @Override
+            public void generateCase(int key, Label end) {
+              runOliveMethod.loadThis();
+              runOliveMethod.loadArg(1);
+              runOliveMethod.loadArg(2);
+              runOliveMethod.invokeVirtual(selfType, olives.get(key));
+              runOliveMethod.goTo(end);
+            }
+
+            @Override
+            public void generateDefault() {
+              // Do nothing.
+            }
+          });
+    }
+    runOliveMethod.visitInsn(Opcodes.RETURN);
+    runOliveMethod.visitMaxs(0, 0);
+    runOliveMethod.visitEnd();
+
+    if (!sharedInputs.isEmpty()) {
+      final var computeSharedInputMethod =
+          new GeneratorAdapter(
+              Opcodes.ACC_PROTECTED,
+              METHOD_ACTION_GENERATOR__COMPUTE_SHARED_INPUT,
+              null,
+              null,
+              classVisitor);
+      computeSharedInputMethod.visitCode();
+      computeSharedInputMethod.loadArg(0);
+      computeSharedInputMethod.tableSwitch(
+          IntStream.range(0, sharedInputs.size()).toArray(),
+          new TableSwitchGenerator() {
+            @Override
+            public void generateCase(int key, Label end) {
+              computeSharedInputMethod.loadThis();
+              computeSharedInputMethod.loadArg(1);
+              computeSharedInputMethod.loadArg(2);
+              computeSharedInputMethod.invokeVirtual(selfType, sharedInputs.get(key));
+              computeSharedInputMethod.returnValue();
+            }
+
+            @Override
+            public void generateDefault() {
+              computeSharedInputMethod.throwException(
+                  Type.getType(IllegalArgumentException.class), "Unknown shared input.");
+            }
+          });
+      computeSharedInputMethod.visitMaxs(0, 0);
+      computeSharedInputMethod.visitEnd();
+    }
+
     var inputFormatsMethod =
         new GeneratorAdapter(
             Opcodes.ACC_PUBLIC, METHOD_ACTION_GENERATOR__INPUTS, null, null, classVisitor);
@@ -420,6 +511,18 @@ public abstract class RootBuilder implements OwningBuilder {
     classVisitor.visitEnd();
   }
 
+  /**
+   * Complete the bytecode for the olive currently being generated
+   *
+   * @see #startOlive()
+   */
+  final void finishOlive() {
+    oliveMethod.visitInsn(Opcodes.RETURN);
+    oliveMethod.visitMaxs(0, 0);
+    oliveMethod.visitEnd();
+    oliveMethod = null;
+  }
+
   public InputFormatDefinition inputFormatDefinition() {
     return inputFormatDefinition;
   }
@@ -454,18 +557,110 @@ public abstract class RootBuilder implements OwningBuilder {
   /**
    * Get the renderer for {@link ActionGenerator#run(OliveServices, InputProvider)}
    *
-   * <p>No stream variables are available in this context
+   * <p>If an olive is being generated, this will be the method for that olive, which has the same
+   * parameters. No stream variables are available in this context
    */
   public final Renderer rootRenderer(
       boolean allowUserDefined, String actionName, Stream<LoadableValue> captures) {
     return new RendererNoStream(
         this,
-        runMethod,
+        oliveMethod == null ? runMethod : oliveMethod,
         Stream.of(constants(allowUserDefined), Stream.of(actionNameSpecial(actionName)), captures)
             .flatMap(Function.identity()),
         RootBuilder::invalidSignerEmitter);
   }
 
+  /**
+   * Run all the olives that have been generated
+   *
+   * <p>This must be called after all olives are generated, but before any clean up code that must
+   * run after the olives.
+   */
+  public final void runOlives() {
+    runMethod.loadThis();
+    runMethod.loadArg(0);
+    runMethod.loadArg(1);
+    runMethod.push(olives.size());
+    runMethod.invokeVirtual(selfType, METHOD_ACTION_GENERATOR__RUN_OLIVES);
+  }
+
+  /**
+   * Create a filtered version of the input that can be shared by multiple olives
+   *
+   * <p>The filter is evaluated once per run and the matching input is provided to every olive that
+   * starts with this filter.
+   *
+   * @param parent the shared input to filter or -1 to filter the script's input
+   * @param line the line of the clause that produced this filter
+   * @param column the column of the clause that produced this filter
+   * @param consumers the number of olives that will use this filter
+   * @param freeVariables the names of the constants the filter requires
+   * @param predicate generate the body of the filter; this must leave a boolean on the stack
+   * @return the identifier of the new shared input
+   */
+  public final int sharedFilter(
+      int parent,
+      int line,
+      int column,
+      int consumers,
+      Set<String> freeVariables,
+      Consumer<Renderer> predicate) {
+    final var index = sharedInputs.size();
+    final var method =
+        new Method(
+            "sharedInput$" + index,
+            A_STREAM_TYPE,
+            new Type[] {A_OLIVE_SERVICES_TYPE, A_INPUT_PROVIDER_TYPE});
+    sharedInputs.add(method);
+    final var methodGen =
+        new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null, null, classVisitor);
+    methodGen.visitCode();
+    methodGen.loadThis();
+    methodGen.push(index);
+    if (parent < 0) {
+      methodGen.loadArg(1);
+      methodGen.push(inputFormatDefinition.name());
+      methodGen.invokeInterface(
+          A_INPUT_PROVIDER_TYPE, BaseOliveBuilder.METHOD_INPUT_PROVIDER__FETCH);
+    } else {
+      methodGen.loadThis();
+      methodGen.push(parent);
+      methodGen.loadArg(0);
+      methodGen.loadArg(1);
+      methodGen.invokeVirtual(selfType, METHOD_ACTION_GENERATOR__SHARED_INPUT);
+    }
+    methodGen.push(consumers);
+    methodGen.push(path);
+    methodGen.push(line);
+    methodGen.push(column);
+    methodGen.push(hash);
+    methodGen.invokeVirtual(selfType, METHOD_ACTION_GENERATOR__SHARED_SCAN);
+
+    final var lambda =
+        new LambdaBuilder(
+            this,
+            String.format("Shared Where %d:%d", line, column),
+            LambdaBuilder.predicate(inputFormatDefinition.type()),
+            constants(true)
+                .filter(value -> freeVariables.contains(value.name()))
+                .toArray(LoadableValue[]::new));
+    lambda.push(
+        new RendererNoStream(this, methodGen, constants(true), RootBuilder::invalidSignerEmitter));
+    methodGen.invokeInterface(A_STREAM_TYPE, BaseOliveBuilder.METHOD_STREAM__FILTER);
+    methodGen.returnValue();
+    methodGen.visitMaxs(0, 0);
+    methodGen.visitEnd();
+
+    final var filter =
+        lambda.renderer(inputFormatDefinition.type(), RootBuilder::invalidSignerEmitter);
+    filter.methodGen().visitCode();
+    predicate.accept(filter);
+    filter.methodGen().returnValue();
+    filter.methodGen().visitMaxs(0, 0);
+    filter.methodGen().visitEnd();
+    return index;
+  }
+
   /** Get the type of the class being generated */
   public final Type selfType() {
     return selfType;
@@ -475,6 +670,24 @@ public abstract class RootBuilder implements OwningBuilder {
     return signatures.get();
   }
 
+  /**
+   * Start generating a new olive
+   *
+   * <p>Each olive is generated as a separate method, so they can be run independently by {@link
+   * ActionGenerator#runOlives(OliveServices, InputProvider, int)}. Until {@link #finishOlive()} is
+   * called, {@link #rootRenderer(boolean, String, Stream)} will write into this method.
+   */
+  final void startOlive() {
+    final var method =
+        new Method(
+            "olive$" + olives.size(),
+            VOID_TYPE,
+            new Type[] {A_OLIVE_SERVICES_TYPE, A_INPUT_PROVIDER_TYPE});
+    olives.add(method);
+    oliveMethod = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null, null, classVisitor);
+    oliveMethod.visitCode();
+  }
+
   @Override
   public final String sourceLocation(int line, int column) {
     return String.format("%s:%d:%d[%s]", sourcePath(), line, column, hash);
@@ -8,6 +8,14 @@ import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
@@ -18,6 +26,15 @@ import java.util.stream.Stream;
  * only what is defined in this class.
  */
 public abstract class ActionGenerator implements RequiredServices {
+  private static final class SharedInput {
+    private int column;
+    private int consumers;
+    private String filename;
+    private String hash;
+    private int line;
+    private final AtomicLong scanned = new AtomicLong();
+    private final CompletableFuture<List<Object>> values = new CompletableFuture<>();
+  }
 
   /** An action generator which ignores the input. */
   public static final ActionGenerator NULL =
@@ -46,7 +63,26 @@ public abstract class ActionGenerator implements RequiredServices {
         }
       };
 
+  private static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      } else if (e.getCause() instanceof Error error) {
+        throw error;
+      } else {
+        throw e;
+      }
+    }
+  }
+
   private final List<Collector> collectors = new ArrayList<>();
+  private final Map<String, CompletableFuture<JoinIndex<Object, Object>>> joinIndices =
+      new ConcurrentHashMap<>();
+  private volatile boolean parallelOlives;
+  private final Map<Integer, SharedInput> sharedInputs = new ConcurrentHashMap<>();
+  private volatile WorkPool workPool;
 
   /**
    * Create a new Prometheus monitoring gauge for this action.
@@ -63,6 +99,20 @@ public abstract class ActionGenerator implements RequiredServices {
     return g;
   }
 
+  /**
+   * Compute a filtered version of the input that is shared by multiple olives
+   *
+   * @param index the shared input to compute
+   * @param consumer the output handler provided to {@link #run(OliveServices, InputProvider)}
+   * @param input the input provided to {@link #run(OliveServices, InputProvider)}
+   */
+  @RuntimeInterop
+  protected Stream<Object> computeSharedInput(
+      int index, OliveServices consumer, InputProvider input) {
+    // The compiler will override this if any olives share clauses
+    throw new IllegalArgumentException("Unknown shared input.");
+  }
+
   /**
    * All of the input formats that are used by this generator.
    *
@@ -70,6 +120,39 @@ public abstract class ActionGenerator implements RequiredServices {
    */
   public abstract Stream<String> inputs();
 
+  /**
+   * Get an index of the inner input for a join that is shared by other joins in this script
+   *
+   * <p>The index is only built once per run, by whichever olive needs it first, and all other
+   * olives that join against the same input using the same key reuse it.
+   *
+   * @param key a unique identifier for the input format and key expression
+   * @param inner the inner input; it is closed without being used if the index already exists
+   * @param makeKey compute the key (or set of keys) for an inner record
+   * @param intersection whether the key function produces a set of keys
+   */
+  @RuntimeInterop
+  @SuppressWarnings("unchecked")
+  protected final JoinIndex<Object, Object> joinIndex(
+      String key, Stream<Object> inner, Function<Object, Object> makeKey, boolean intersection) {
+    final var created = new CompletableFuture<JoinIndex<Object, Object>>();
+    final var existing = joinIndices.putIfAbsent(key, created);
+    if (existing != null) {
+      inner.close();
+      return await(existing);
+    }
+    try {
+      created.complete(
+          intersection
+              ? JoinIndex.ofIntersection(inner, value -> (Set<Object>) makeKey.apply(value))
+              : JoinIndex.of(inner, makeKey));
+    } catch (Throwable e) {
+      created.completeExceptionally(e);
+      throw e;
+    }
+    return created.join();
+  }
+
   /**
    * Gets a private lookup for this class
    *
@@ -80,6 +163,22 @@ public abstract class ActionGenerator implements RequiredServices {
    */
   public abstract Lookup lookup();
 
+  /**
+   * Set the executor to run work for this script on
+   *
+   * <p>Large groupings in olives are split across this executor. If parallel olives are enabled,
+   * the olives in this script will also run concurrently using this executor; otherwise, they are
+   * run one after another on the thread that calls {@link #run(OliveServices, InputProvider)}.
+   *
+   * @param executor the executor to use or null to do all work on the calling thread
+   * @param threads the number of threads the executor has
+   * @param parallelOlives whether to run olives concurrently
+   */
+  public final void workExecutor(Executor executor, int threads, boolean parallelOlives) {
+    workPool = executor == null ? null : new WorkPool(executor, threads);
+    this.parallelOlives = parallelOlives;
+  }
+
   /**
    * Add all Prometheus monitoring for this program.
    *
@@ -116,6 +215,155 @@ public abstract class ActionGenerator implements RequiredServices {
   @RuntimeInterop
   public abstract void run(OliveServices consumer, InputProvider input);
 
+  /**
+   * Run a single olive in this script
+   *
+   * @param index the olive to run, between zero and the number of olives provided to {@link
+   *     #runOlives(OliveServices, InputProvider, int)}
+   * @param consumer the output handler provided to {@link #run(OliveServices, InputProvider)}
+   * @param input the input provided to {@link #run(OliveServices, InputProvider)}
+   */
+  @RuntimeInterop
+  protected void runOlive(int index, OliveServices consumer, InputProvider input) {
+    // The compiler will override this if there are any olives
+  }
+
+  /**
+   * Run all the olives in this script
+   *
+   * <p>If a work executor has been set and parallel olives are enabled, the olives are run
+   * concurrently, as described in {@link WorkPool#run(int, java.util.function.IntConsumer)}.
+   *
+   * @param consumer the output handler provided to {@link #run(OliveServices, InputProvider)}
+   * @param input the input provided to {@link #run(OliveServices, InputProvider)}
+   * @param count the number of olives in this script
+   */
+  @RuntimeInterop
+  protected final void runOlives(OliveServices consumer, InputProvider input, int count) {
+    try {
+      final var pool = workPool;
+      if (pool == null) {
+        for (var i = 0; i < count; i++) {
+          runOlive(i, consumer, input);
+        }
+      } else if (parallelOlives && count > 1) {
+        pool.run(count, i -> runOlive(i, consumer, input));
+      } else {
+        pool.within(
+            () -> {
+              for (var i = 0; i < count; i++) {
+                runOlive(i, consumer, input);
+              }
+            });
+      }
+    } finally {
+      // Shared input and join indices are only valid for one run, so discard them
+      for (final var shared : sharedInputs.values()) {
+        if (shared.filename != null) {
+          consumer.measureSharing(
+              shared.filename,
+              shared.line,
+              shared.column,
+              shared.hash,
+              shared.scanned.get() * (shared.consumers - 1));
+        }
+      }
+      sharedInputs.clear();
+      joinIndices.clear();
+    }
+  }
+
+  /**
+   * Report the flow through a shared clause for one of the olives that uses it
+   *
+   * @param index the shared input produced by the clause
+   * @param consumer the output handler provided to {@link #run(OliveServices, InputProvider)}
+   * @param input the input provided to {@link #run(OliveServices, InputProvider)}
+   */
+  @RuntimeInterop
+  protected final void sharedFlow(
+      int index,
+      OliveServices consumer,
+      InputProvider input,
+      String filename,
+      int line,
+      int column,
+      String hash,
+      String oliveFile,
+      int oliveLine,
+      int oliveColumn,
+      String oliveHash) {
+    try (final var flow =
+        consumer.measureFlow(
+            sharedValues(index, consumer, input).stream(),
+            filename,
+            line,
+            column,
+            hash,
+            oliveFile,
+            oliveLine,
+            oliveColumn,
+            oliveHash)) {
+      flow.forEach(value -> {});
+    }
+  }
+
+  /**
+   * Get a filtered version of the input that is shared by multiple olives
+   *
+   * <p>The input is only filtered once per run, by whichever olive needs it first, and all other
+   * olives reuse the result.
+   *
+   * @param index the shared input to get
+   * @param consumer the output handler provided to {@link #run(OliveServices, InputProvider)}
+   * @param input the input provided to {@link #run(OliveServices, InputProvider)}
+   */
+  @RuntimeInterop
+  protected final Stream<Object> sharedInput(
+      int index, OliveServices consumer, InputProvider input) {
+    return sharedValues(index, consumer, input).stream();
+  }
+
+  /**
+   * Track the input that goes into a shared input while it is being computed
+   *
+   * @param index the shared input being computed
+   * @param input the input to the shared clause
+   * @param consumers the number of olives that use the shared input
+   */
+  @RuntimeInterop
+  protected final Stream<Object> sharedScan(
+      int index,
+      Stream<Object> input,
+      int consumers,
+      String filename,
+      int line,
+      int column,
+      String hash) {
+    final var shared = sharedInputs.get(index);
+    shared.consumers = consumers;
+    shared.filename = filename;
+    shared.line = line;
+    shared.column = column;
+    shared.hash = hash;
+    return input.peek(value -> shared.scanned.incrementAndGet());
+  }
+
+  private List<Object> sharedValues(int index, OliveServices consumer, InputProvider input) {
+    final var created = new SharedInput();
+    final var existing = sharedInputs.putIfAbsent(index, created);
+    if (existing == null) {
+      try (final var values = computeSharedInput(index, consumer, input)) {
+        created.values.complete(values.toList());
+      } catch (Throwable e) {
+        created.values.completeExceptionally(e);
+        throw e;
+      }
+      return created.values.join();
+    }
+    return await(existing.values);
+  }
+
   /**
    * The maximum runtime of this script, in seconds.
    *
@@ -44,8 +44,11 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.LongSupplier;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -545,8 +548,9 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
     private Set<ImportVerifier> imports = Set.of();
     private final String instance;
     private volatile boolean live = true;
+    private final OutputReuse output = new OutputReuse(UNCHANGED_INPUT_SKIP_LIMIT);
     private OliveRunInfo runInfo;
-    private CompletableFuture<?> running = CompletableFuture.completedFuture(null);
+    private volatile CompletableFuture<?> running = CompletableFuture.completedFuture(null);
 
     private Script(Path fileName) {
       this.fileName = fileName;
@@ -590,21 +594,27 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
       return exportedDefineOlives.stream().map(Supplier::get);
     }
 
-    public synchronized String run(OliveServices consumer, InputProvider input) {
+    /**
+     * Run the olives in this script
+     *
+     * <p>If the input is unchanged since the last run, the output of that run may be reused
+     * instead, as described in {@link OutputReuse}.
+     *
+     * @param consumer the output handler for the olives
+     * @param input the input data for this round
+     * @param inputVersions the version of the data for each input format used by this script
+     * @return a description of the outcome
+     */
+    public synchronized String run(
+        OliveServices consumer, InputProvider input, Map<String, Long> inputVersions) {
       if (!live) {
         return "Deleted while waiting to run.";
       }
       if (CompiledGenerator.this.checkPaused.test(fileName.toString())) {
         return "Script is paused.";
       }
-      try (final MonitoredOliveServices monitoredConsumer =
-          new MonitoredOliveServices(consumer, fileName.toString())) {
-        generator.run(monitoredConsumer, input);
-        return "Completed normally";
-      } catch (final Throwable e) {
-        e.printStackTrace();
-        return e.toString();
-      }
+      return output.run(
+          consumer, fileName.toString(), inputVersions, services -> generator.run(services, input));
     }
 
     @Override
@@ -716,9 +726,11 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
               if (generator != x) {
                 generator.unregister();
                 x.register();
+                x.workExecutor(workExecutor, OLIVE_THREADS, PARALLEL_OLIVES);
                 generator = x;
               }
               runInfo = null;
+              output.clear();
             });
         errors = compiler.errors().collect(Collectors.toList());
         return result.isPresent() ? Optional.empty() : Optional.of(2);
@@ -827,6 +839,13 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
   public static final LatencyHistogram INPUT_FETCH_TIME =
       new LatencyHistogram(
           "shesmu_input_fetch_time", "The number of records for each input format.", "format");
+  public static final Gauge INPUT_READY_TIME =
+      Gauge.build(
+              "shesmu_input_ready_time",
+              "The number of seconds after the start of the last olive round that each input"
+                  + " format's data was available.")
+          .labelNames("format")
+          .register();
   public static final Gauge INPUT_RECORDS =
       Gauge.build("shesmu_input_records", "The number of records for each input format.")
           .labelNames("format")
@@ -854,10 +873,22 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
           .labelNames("filename")
           .register();
 
+  private static final Integer INPUT_FETCH_THREADS =
+      Optional.ofNullable(System.getenv("INPUT_FETCH_THREADS"))
+          .map(Integer::parseInt)
+          .orElse(Runtime.getRuntime().availableProcessors() / 2 + 1);
   private static final Integer OLIVE_THREADS =
       Optional.ofNullable(System.getenv("OLIVE_THREADS"))
           .map(Integer::parseInt)
           .orElse(Runtime.getRuntime().availableProcessors() / 2 + 1);
+  private static final boolean PARALLEL_OLIVES =
+      Optional.ofNullable(System.getenv("PARALLEL_OLIVES"))
+          .map(Boolean::parseBoolean)
+          .orElse(false);
+  private static final int UNCHANGED_INPUT_SKIP_LIMIT =
+      Optional.ofNullable(System.getenv("UNCHANGED_INPUT_SKIP_LIMIT"))
+          .map(Integer::parseInt)
+          .orElse(0);
 
   static {
     try {
@@ -984,8 +1015,18 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
 
   private final Predicate<String> checkPaused;
   private final DefinitionRepository definitionRepository;
+  // Goes up every time a script is added, removed, or recompiled, since that can change what it
+  // exports
+  private final AtomicLong definitionVersion = new AtomicLong();
   private final ScheduledExecutorService executor;
+  // A summary of the input data from the last round, kept to check if it has changed in the next
+  // round, and a counter for each format that goes up every time it does
+  private final Map<String, OutputReuse.InputIdentity> previousData = new ConcurrentHashMap<>();
+  private final Map<String, Long> inputVersions = new ConcurrentHashMap<>();
   private Optional<AutoUpdatingDirectory<Script>> scripts = Optional.empty();
+  private final ExecutorService fetchExecutor =
+      Executors.newFixedThreadPool(
+          INPUT_FETCH_THREADS, new ShesmuThreadFactory("input-fetch", Thread.NORM_PRIORITY));
   private final ExecutorService workExecutor =
       Executors.newFixedThreadPool(
           OLIVE_THREADS, new ShesmuThreadFactory("olive", Thread.MIN_PRIORITY));
@@ -1022,6 +1063,15 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
     return scripts().flatMap(Script::dashboard);
   }
 
+  /**
+   * Get a counter that changes whenever the definitions exported by scripts might have changed
+   *
+   * <p>This can be used to check if information derived from the definitions is out of date.
+   */
+  public long definitionVersion() {
+    return definitionVersion.get();
+  }
+
   /** Get all the error messages from the last compilation as an HTML blob. */
   public void errorHtml(SectionRenderer renderer) {
     scripts().forEach(script -> script.errorHtml(renderer));
@@ -1049,125 +1099,202 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
 
   public void run(OliveServices consumer, InputSource input) {
     // Load all the input data in an attempt to cache it before any olives try to
-    // use it. This avoids making the first olive seem really slow.
-    final Set<String> usedFormats =
+    // use it. This avoids making the first olive seem really slow. The formats are fetched
+    // concurrently and each olive is started as soon as the formats it needs are available, so a
+    // slow format only holds back the olives that use it.
+    final Set<Script> waiting =
         scripts()
             .filter(s -> s.running.isDone())
-            .flatMap(s -> s.generator.inputs())
-            .collect(Collectors.toSet());
-    final var cache =
-        new InputProvider() {
-          final Map<String, List<Object>> data =
-              SOURCES
-                  .all()
-                  .filter(
-                      format ->
-                          usedFormats.contains(format.name())
-                              && !consumer.isOverloaded(format.name()))
-                  .flatMap(
-                      format -> {
-                        try (AutoCloseable timer = INPUT_FETCH_TIME.start(format.name());
-                            AutoCloseable inflight =
-                                Server.inflightCloseable("Fetching " + format.name())) {
-                          final Stream<Object> results = input.fetch(format.name(), false);
-                          if (results instanceof ErrorableStream<Object> errorableResults) {
-                            if (!errorableResults.isOk()) {
-                              INPUT_RECORDS.labels(format.name()).set(0);
-                              return Stream.empty();
-                            }
-                          }
-                          final List<Object> listResults = results.toList();
-                          INPUT_RECORDS.labels(format.name()).set(listResults.size());
-                          return Stream.of(new Pair<>(format.name(), listResults));
-                        } catch (final Exception e) {
-                          e.printStackTrace();
-                          // If we failed to load this format, pretend like it was inhibited and
-                          // don't run dependent olives
-                          return Stream.empty();
-                        }
-                      })
-                  .collect(Collectors.toMap(Pair::first, Pair::second));
-
-          public boolean isReady(String format) {
-            return data.containsKey(format);
-          }
-
-          @Override
-          public Stream<Object> fetch(String format) {
-            return data.getOrDefault(format, List.of()).stream();
-          }
-        };
+            .collect(
+                Collectors.toCollection(() -> Collections.newSetFromMap(new IdentityHashMap<>())));
+    final Set<String> usedFormats =
+        waiting.stream().flatMap(s -> s.generator.inputs()).collect(Collectors.toSet());
+    final var data =
+        prefetch(
+            SOURCES
+                .all()
+                .map(InputFormatDefinition::name)
+                .filter(format -> usedFormats.contains(format) && !consumer.isOverloaded(format)),
+            format -> fetchInput(input, format),
+            fetchExecutor,
+            waiting,
+            script -> script.generator.inputs(),
+            (script, cache) -> dispatch(script, consumer, cache));
+    final InputProvider cache = format -> data.getOrDefault(format, List.of()).stream();
 
     scripts()
         .filter(
             script ->
-                script.running
-                    .isDone()) // This is a potential race condition: an olive finished while we
-        // were collecting the input. Since we check for the data the olive requires being
+                !waiting.contains(script)
+                    && script.running
+                        .isDone()) // This is a potential race condition: an olive finished while
+        // we were collecting the input. Since we check for the data the olive requires being
         // present, it's safe to run the olive even if it wasn't done when we previously checked.
-        .filter(
-            script ->
-                script
-                    .generator
-                    .inputs()
-                    .allMatch(cache::isReady)) // Don't run any olives that require data we don't
-        // have.
-        .forEach(
-            script -> {
-              final AtomicReference<Runnable> inflight =
-                  new AtomicReference<>(Server.inflight("Queued " + script.fileName.toString()));
-              // For each script, create two futures: one that runs the olive script and
-              // return true and one that will wait for the timeout and return false
-              final CompletableFuture<OliveRunInfo> timeoutFuture =
-                  new CompletableFuture<OliveRunInfo>();
-              final CompletableFuture<OliveRunInfo> processFuture =
-                  CompletableFuture.supplyAsync(
-                      () -> {
-                        final Instant startTime = Instant.now();
-                        inflight.get().run();
-                        inflight.set(Server.inflight("Running " + script.fileName.toString()));
-                        script.runInfo =
-                            new OliveRunInfo(true, "Running now", null, startTime, null);
-                        final long inputCount =
-                            script.dashboard == null
-                                ? 0
-                                : cache.fetch(script.dashboard.format().name()).count();
-                        // We wait to schedule the timeout for when the script is actually
-                        // starting
-                        executor.schedule(
-                            () ->
-                                timeoutFuture.complete(
-                                    new OliveRunInfo(
-                                        false, "Deadline exceeded", inputCount, startTime, null)),
-                            script.generator.timeout(),
-                            TimeUnit.SECONDS);
-                        final long startCpu = CPU_TIME.getAsLong();
-                        final String result = script.run(consumer, cache);
-                        return new OliveRunInfo(
-                            true,
-                            result,
-                            inputCount,
-                            startTime,
-                            Duration.ofNanos(CPU_TIME.getAsLong() - startCpu));
-                      },
-                      workExecutor);
-
-              // Then create another future that waits for either of the above to finish and
-              // nukes the other
-              script.running =
-                  CompletableFuture.anyOf(timeoutFuture, processFuture)
-                      .thenAccept(
-                          obj -> {
-                            final OliveRunInfo runInfo = (OliveRunInfo) obj;
-                            script.runInfo = runInfo;
-                            OLIVE_WATCHDOG
-                                .labels(script.fileName.toString())
-                                .set(runInfo.isOk() ? 0 : 1);
-                            timeoutFuture.cancel(true);
-                            processFuture.cancel(true);
-                            inflight.get().run();
-                          });
-            });
+        .filter(script -> script.generator.inputs().allMatch(data::containsKey))
+        .forEach(script -> dispatch(script, consumer, cache));
+  }
+
+  /**
+   * Fetch the data for an input format
+   *
+   * @return the records or empty if the format could not be fetched
+   */
+  private Optional<List<Object>> fetchInput(InputSource input, String format) {
+    try (AutoCloseable timer = INPUT_FETCH_TIME.start(format);
+        AutoCloseable inflight = Server.inflightCloseable("Fetching " + format)) {
+      final Stream<Object> results = input.fetch(format, false);
+      if (results instanceof ErrorableStream<Object> errorableResults) {
+        if (!errorableResults.isOk()) {
+          INPUT_RECORDS.labels(format).set(0);
+          return Optional.empty();
+        }
+      }
+      final List<Object> listResults = results.toList();
+      INPUT_RECORDS.labels(format).set(listResults.size());
+      if (UNCHANGED_INPUT_SKIP_LIMIT > 0) {
+        final var identity = OutputReuse.InputIdentity.of(listResults);
+        if (!identity.equals(previousData.put(format, identity))) {
+          inputVersions.merge(format, 1L, Long::sum);
+        }
+      }
+      return Optional.of(listResults);
+    } catch (final Exception e) {
+      e.printStackTrace();
+      // If we failed to load this format, pretend like it was inhibited
+      // and don't run dependent olives
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Fetch input formats concurrently and start each script as soon as all the formats it uses are
+   * available
+   *
+   * <p>Scripts that use a format that is not fetched or fails to fetch are not started. This waits
+   * until every fetch has finished and every script that can be started has been.
+   *
+   * @param formats the input formats to fetch
+   * @param fetch fetch the records for an input format, or empty if they are not available
+   * @param executor the executor to fetch the formats on
+   * @param scripts the scripts waiting to run
+   * @param inputs the input formats a script uses
+   * @param dispatch start a script with the fetched data
+   * @return the records for each format that was fetched successfully
+   */
+  static <S> Map<String, List<Object>> prefetch(
+      Stream<String> formats,
+      Function<String, Optional<List<Object>>> fetch,
+      Executor executor,
+      Collection<S> scripts,
+      Function<S, Stream<String>> inputs,
+      BiConsumer<S, InputProvider> dispatch) {
+    final long roundStart = System.nanoTime();
+    final Map<String, List<Object>> data = new ConcurrentHashMap<>();
+    final InputProvider cache = format -> data.getOrDefault(format, List.of()).stream();
+    final Map<String, CompletableFuture<Void>> fetches =
+        formats.collect(
+            Collectors.toMap(
+                Function.identity(),
+                format ->
+                    CompletableFuture.runAsync(
+                        () ->
+                            fetch
+                                .apply(format)
+                                .ifPresent(
+                                    records -> {
+                                      data.put(format, records);
+                                      INPUT_READY_TIME
+                                          .labels(format)
+                                          .set((System.nanoTime() - roundStart) / 1e9);
+                                    }),
+                        executor)));
+
+    CompletableFuture.allOf(
+            scripts.stream()
+                .filter(
+                    script ->
+                        inputs
+                            .apply(script)
+                            .allMatch(fetches::containsKey)) // Don't run any olives that require
+                // data we aren't going to have.
+                .map(
+                    script ->
+                        CompletableFuture.allOf(
+                                inputs
+                                    .apply(script)
+                                    .map(fetches::get)
+                                    .toArray(CompletableFuture[]::new))
+                            .thenRun(
+                                () -> {
+                                  if (inputs.apply(script).allMatch(data::containsKey)) {
+                                    dispatch.accept(script, cache);
+                                  }
+                                }))
+                .toArray(CompletableFuture[]::new))
+        .join();
+    return data;
+  }
+
+  private void dispatch(Script script, OliveServices consumer, InputProvider cache) {
+    final Map<String, Long> versions =
+        script
+            .generator
+            .inputs()
+            .collect(
+                Collectors.toMap(
+                    Function.identity(),
+                    format -> inputVersions.getOrDefault(format, 0L),
+                    (a, b) -> a));
+    final AtomicReference<Runnable> inflight =
+        new AtomicReference<>(Server.inflight("Queued " + script.fileName.toString()));
+    // For each script, create two futures: one that runs the olive script and
+    // return true and one that will wait for the timeout and return false
+    final CompletableFuture<OliveRunInfo> timeoutFuture = new CompletableFuture<OliveRunInfo>();
+    final CompletableFuture<OliveRunInfo> processFuture =
+        CompletableFuture.supplyAsync(
+            () -> {
+              final Instant startTime = Instant.now();
+              inflight.get().run();
+              inflight.set(Server.inflight("Running " + script.fileName.toString()));
+              script.runInfo = new OliveRunInfo(true, "Running now", null, startTime, null);
+              final long inputCount =
+                  script.dashboard == null
+                      ? 0
+                      : cache.fetch(script.dashboard.format().name()).count();
+              // We wait to schedule the timeout for when the script is actually
+              // starting
+              executor.schedule(
+                  () ->
+                      timeoutFuture.complete(
+                          new OliveRunInfo(
+                              false, "Deadline exceeded", inputCount, startTime, null)),
+                  script.generator.timeout(),
+                  TimeUnit.SECONDS);
+              final long startCpu = CPU_TIME.getAsLong();
+              final String result = script.run(consumer, cache, versions);
+              return new OliveRunInfo(
+                  true,
+                  result,
+                  inputCount,
+                  startTime,
+                  Duration.ofNanos(CPU_TIME.getAsLong() - startCpu),
+                  script.output.skippedRuns());
+            },
+            workExecutor);
+
+    // Then create another future that waits for either of the above to finish and
+    // nukes the other
+    script.running =
+        CompletableFuture.anyOf(timeoutFuture, processFuture)
+            .thenAccept(
+                obj -> {
+                  final OliveRunInfo runInfo = (OliveRunInfo) obj;
+                  script.runInfo = runInfo;
+                  OLIVE_WATCHDOG.labels(script.fileName.toString()).set(runInfo.isOk() ? 0 : 1);
+                  timeoutFuture.cancel(true);
+                  processFuture.cancel(true);
+                  inflight.get().run();
+                });
   }
 
   private Stream<Script> scripts() {
@@ -1180,7 +1307,10 @@ public class CompiledGenerator implements DefinitionRepository, Predicate<Source
   }
 
   public void start(FileWatcher fileWatcher) {
-    scripts = Optional.of(new AutoUpdatingDirectory<>(fileWatcher, ".shesmu", Script::new));
+    final var directory = new AutoUpdatingDirectory<>(fileWatcher, ".shesmu", Script::new);
+    directory.subscribe(definitionVersion::incrementAndGet);
+    scripts = Optional.of(directory);
+    definitionVersion.incrementAndGet();
   }
 
   @Override
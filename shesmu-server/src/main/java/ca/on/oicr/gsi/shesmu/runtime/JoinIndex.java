@@ -0,0 +1,143 @@
+package ca.on.oicr.gsi.shesmu.runtime;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A hash index of the inner input to a join
+ *
+ * <p>The index stores the inner records once and, for each key, the positions of the records that
+ * have that key. Since the index is not modified once built, it can be reused by multiple joins
+ * against the same input using the same key.
+ *
+ * <p>Only the inner side of a join is held in memory; the outer records are matched against the
+ * index as they stream past.
+ *
+ * @param <K> the type of the joining key
+ * @param <N> the type of the inner records
+ */
+public final class JoinIndex<K, N> {
+  private static final class Positions {
+    private int[] items = new int[4];
+    private int size;
+
+    void add(int position) {
+      if (size == items.length) {
+        items = Arrays.copyOf(items, size * 2);
+      }
+      items[size++] = position;
+    }
+
+    int[] toArray() {
+      return items.length == size ? items : Arrays.copyOf(items, size);
+    }
+  }
+
+  private static final String NULL_KEY_MESSAGE = "Join key cannot be null";
+
+  private static <K, N> JoinIndex<K, N> build(
+      Stream<N> inner, Function<N, ? extends Collection<K>> makeKeys) {
+    final var values = inner.collect(Collectors.toList());
+    inner.close();
+    final Map<K, Positions> builder = new HashMap<>();
+    for (var i = 0; i < values.size(); i++) {
+      for (final var key : makeKeys.apply(values.get(i))) {
+        builder.computeIfAbsent(key, k -> new Positions()).add(i);
+      }
+    }
+    final Map<K, int[]> positions = new HashMap<>();
+    for (final var entry : builder.entrySet()) {
+      positions.put(entry.getKey(), entry.getValue().toArray());
+    }
+    return new JoinIndex<>(values, positions);
+  }
+
+  /**
+   * Index records that each have a single key
+   *
+   * @param inner the records to index; the stream will be closed
+   * @param makeKey compute the key for a record; the key must not be null
+   */
+  @RuntimeInterop
+  public static <K, N> JoinIndex<K, N> of(Stream<N> inner, Function<N, K> makeKey) {
+    return build(
+        inner,
+        value ->
+            Collections.singletonList(
+                Objects.requireNonNull(makeKey.apply(value), NULL_KEY_MESSAGE)));
+  }
+
+  /**
+   * Index records that each have a set of keys
+   *
+   * @param inner the records to index; the stream will be closed
+   * @param makeKeys compute the keys for a record
+   */
+  @RuntimeInterop
+  public static <K, N> JoinIndex<K, N> ofIntersection(
+      Stream<N> inner, Function<N, Set<K>> makeKeys) {
+    return build(inner, makeKeys);
+  }
+
+  private final Map<K, int[]> positions;
+  private final List<N> values;
+
+  private JoinIndex(List<N> values, Map<K, int[]> positions) {
+    this.values = values;
+    this.positions = positions;
+  }
+
+  /**
+   * Find the records that have a key
+   *
+   * @param key the key to match; it must not be null
+   * @return the matching records in the order they were indexed
+   */
+  public Stream<N> find(K key) {
+    final var matches = positions.get(Objects.requireNonNull(key, NULL_KEY_MESSAGE));
+    return matches == null ? Stream.empty() : Arrays.stream(matches).mapToObj(values::get);
+  }
+
+  /**
+   * Find the records that have at least one key in common with a set of keys
+   *
+   * @param keys the keys to match
+   * @return the matching records, each appearing once, in the order they were indexed
+   */
+  public Stream<N> findAny(Set<K> keys) {
+    if (keys.size() == 1) {
+      return find(keys.iterator().next());
+    }
+    final var matches = new Positions();
+    for (final var key : keys) {
+      final var keyMatches = positions.get(key);
+      if (keyMatches != null) {
+        for (final var position : keyMatches) {
+          matches.add(position);
+        }
+      }
+    }
+    if (matches.size == 0) {
+      return Stream.empty();
+    }
+    final var sorted = matches.items;
+    Arrays.sort(sorted, 0, matches.size);
+    var unique = 1;
+    for (var i = 1; i < matches.size; i++) {
+      if (sorted[i] != sorted[unique - 1]) {
+        sorted[unique++] = sorted[i];
+      }
+    }
+    return IntStream.of(sorted).limit(unique).mapToObj(values::get);
+  }
+}
@@ -46,18 +46,28 @@ public final class MonitoredOliveServices implements OliveServices, AutoCloseabl
               "The number of unique alerts produced during the last run of a script that were previously unknown to the scheduler.")
           .labelNames("filename")
           .register();
-  private final Map<Action, Pair<Set<String>, Set<SourceLocation>>> actions = new HashMap<>();
-  private final Map<List<String>, AlertInfo> alerts = new HashMap<>();
+  private final Map<Action, Pair<Set<String>, Set<SourceLocation>>> actions;
+  private final Map<List<String>, AlertInfo> alerts;
   private final OliveServices backing;
   private final String filename;
 
   public MonitoredOliveServices(OliveServices backing, String filename) {
+    this(backing, filename, new HashMap<>(), new HashMap<>());
+  }
+
+  private MonitoredOliveServices(
+      OliveServices backing,
+      String filename,
+      Map<Action, Pair<Set<String>, Set<SourceLocation>>> actions,
+      Map<List<String>, AlertInfo> alerts) {
     this.backing = backing;
     this.filename = filename;
+    this.actions = actions;
+    this.alerts = alerts;
   }
 
   @Override
-  public boolean accept(
+  public synchronized boolean accept(
       Action action, String filename, int line, int column, String hash, String[] tags) {
     final var pair =
         actions.computeIfAbsent(action, k -> new Pair<>(new TreeSet<>(), new HashSet<>()));
@@ -66,7 +76,7 @@ public final class MonitoredOliveServices implements OliveServices, AutoCloseabl
   }
 
   @Override
-  public boolean accept(
+  public synchronized boolean accept(
       String[] labels,
       String[] annotation,
       long ttl,
@@ -82,7 +92,7 @@ public final class MonitoredOliveServices implements OliveServices, AutoCloseabl
     return alert.locations.add(new SourceLocation(filename, line, column, hash));
   }
 
-  public void close() throws Exception {
+  public synchronized void close() throws Exception {
     var newActions = 0;
     for (final var entry : actions.entrySet()) {
       final var tags = entry.getValue().first().toArray(String[]::new);
@@ -123,6 +133,18 @@ public final class MonitoredOliveServices implements OliveServices, AutoCloseabl
     newAlertCount.labels(filename).set(newAlerts);
   }
 
+  /**
+   * Create a copy of these services that will send the same actions and alerts to a new output
+   * handler when closed
+   *
+   * <p>This must only be used once this instance has been closed.
+   *
+   * @param backing the output handler to send the actions and alerts to
+   */
+  public MonitoredOliveServices replay(OliveServices backing) {
+    return new MonitoredOliveServices(backing, filename, actions, alerts);
+  }
+
   @Override
   public Dumper findDumper(String name, String[] columns, Imyhat... types) {
     return backing.findDumper(name, columns, types);
@@ -148,6 +170,12 @@ public final class MonitoredOliveServices implements OliveServices, AutoCloseabl
         input, filename, line, column, hash, oliveFile, oliveLine, oliveColumn, oliveHash);
   }
 
+  @Override
+  public void measureSharing(
+      String filename, int line, int column, String hash, long recordsSaved) {
+    backing.measureSharing(filename, line, column, hash, recordsSaved);
+  }
+
   @Override
   public void oliveRuntime(String filename, int line, int column, long timeInNs) {
     backing.oliveRuntime(filename, line, column, timeInNs);
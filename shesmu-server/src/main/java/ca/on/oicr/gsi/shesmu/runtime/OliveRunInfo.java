@@ -9,16 +9,28 @@ public class OliveRunInfo {
   private final boolean ok;
   private final Duration runtime;
   private final Duration cpuTime;
+  private final int skippedRuns;
   private final String status;
 
   public OliveRunInfo(
       boolean ok, String status, Long inputCount, Instant lastRun, Duration cpuTime) {
+    this(ok, status, inputCount, lastRun, cpuTime, 0);
+  }
+
+  public OliveRunInfo(
+      boolean ok,
+      String status,
+      Long inputCount,
+      Instant lastRun,
+      Duration cpuTime,
+      int skippedRuns) {
     this.ok = ok;
     this.status = status;
     this.inputCount = inputCount;
     this.lastRun = lastRun;
     this.runtime = Duration.between(lastRun, Instant.now());
     this.cpuTime = cpuTime;
+    this.skippedRuns = skippedRuns;
   }
 
   public Duration cpuTime() {
@@ -41,6 +53,13 @@ public class OliveRunInfo {
     return runtime;
   }
 
+  /**
+   * The number of consecutive runs that reused the previous output because the input was unchanged
+   */
+  public int skippedRuns() {
+    return skippedRuns;
+  }
+
   public String status() {
     return status;
   }
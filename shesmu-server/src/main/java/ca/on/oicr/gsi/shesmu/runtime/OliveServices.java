@@ -33,5 +33,17 @@ public interface OliveServices {
       int oliveColumn,
       String oliveHash);
 
+  /**
+   * Report how much work was avoided by sharing a clause between multiple olives
+   *
+   * @param filename the file containing the shared clause
+   * @param line the line of the shared clause
+   * @param column the column of the shared clause
+   * @param hash the hash of the script
+   * @param recordsSaved the number of input records that the clause did not have to process again
+   *     in the last run because it was shared
+   */
+  void measureSharing(String filename, int line, int column, String hash, long recordsSaved);
+
   void oliveRuntime(String filename, int line, int column, long timeInNs);
 }
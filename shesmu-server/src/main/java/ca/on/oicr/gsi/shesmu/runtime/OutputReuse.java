@@ -0,0 +1,107 @@
+package ca.on.oicr.gsi.shesmu.runtime;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the output of a script's last run so it can be sent again if the script's input has not
+ * changed
+ *
+ * <p>Only actions and alerts are reused. A run that reuses output does not run any olives, so it
+ * does not write to dumpers, send data to refillers, or report olive runtime and flow metrics.
+ * Since constants and functions can change without any signal, the olives are still run after a
+ * limited number of consecutive reuses.
+ */
+final class OutputReuse {
+  /**
+   * A summary of the records fetched for an input format, based on the identity of the records
+   *
+   * <p>Input formats backed by a cache return the same objects until the cache is refreshed, so
+   * comparing identities shows whether new data has been fetched without comparing every record or
+   * keeping the previous records. Formats that create new objects on every fetch never appear
+   * unchanged. Since identity hash codes are not unique, two different inputs could have the same
+   * summary, but that requires every record's hash code to collide and, even then, the olives will
+   * still be run once the reuse limit is reached.
+   *
+   * @param size the number of records
+   * @param hash a combination of the identity hash code of every record, in order
+   */
+  record InputIdentity(int size, long hash) {
+    static InputIdentity of(List<?> records) {
+      var hash = 0L;
+      for (final var record : records) {
+        hash = (hash + System.identityHashCode(record)) * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 29;
+      }
+      return new InputIdentity(records.size(), hash);
+    }
+  }
+
+  private final int limit;
+  private Map<String, Long> lastInputVersions = Map.of();
+  private MonitoredOliveServices lastOutput;
+  private int skippedRuns;
+
+  /**
+   * Create a new tracker
+   *
+   * @param limit the maximum number of consecutive runs that can reuse output; if zero, output is
+   *     never reused
+   */
+  OutputReuse(int limit) {
+    this.limit = limit;
+  }
+
+  /** Forget the output of the last run, so the olives must run next time */
+  void clear() {
+    lastOutput = null;
+  }
+
+  /**
+   * Run a script's olives or, if the input is unchanged since the last successful run, send that
+   * run's actions and alerts again
+   *
+   * @param consumer the output handler for the olives
+   * @param fileName the script's file name, used for monitoring
+   * @param inputVersions the version of the data for each input format used by the script
+   * @param olives a callback to run the olives, sending their output to the services provided
+   * @return a description of the outcome
+   */
+  String run(
+      OliveServices consumer,
+      String fileName,
+      Map<String, Long> inputVersions,
+      Consumer<OliveServices> olives) {
+    if (lastOutput != null && inputVersions.equals(lastInputVersions) && skippedRuns < limit) {
+      skippedRuns++;
+      try {
+        lastOutput.replay(consumer).close();
+        return "Input unchanged; reused output of last run";
+      } catch (final Throwable e) {
+        e.printStackTrace();
+        return e.toString();
+      }
+    }
+    skippedRuns = 0;
+    lastOutput = null;
+    try (final MonitoredOliveServices monitoredConsumer =
+        new MonitoredOliveServices(consumer, fileName)) {
+      olives.accept(monitoredConsumer);
+      if (limit > 0) {
+        lastInputVersions = inputVersions;
+        lastOutput = monitoredConsumer;
+      }
+      return "Completed normally";
+    } catch (final Throwable e) {
+      e.printStackTrace();
+      lastOutput = null;
+      return e.toString();
+    }
+  }
+
+  /** The number of consecutive runs that have reused output */
+  int skippedRuns() {
+    return skippedRuns;
+  }
+}
@@ -42,16 +42,17 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
@@ -107,6 +108,12 @@ public final class RuntimeSupport {
             throw new UnsupportedOperationException();
           };
 
+  /** The number of input rows a “Group” clause must have before it is split across cores */
+  private static final int PARALLEL_GROUP_THRESHOLD =
+      Optional.ofNullable(System.getenv("PARALLEL_GROUP_THRESHOLD"))
+          .map(Integer::parseInt)
+          .orElse(100_000);
+
   private static final Map<Pair<String, Integer>, CallSite> callsites = new HashMap<>();
 
   static {
@@ -234,6 +241,104 @@ public final class RuntimeSupport {
     return result == null ? JsonNodeFactory.instance.nullNode() : result;
   }
 
+  /**
+   * Collect input rows into groups
+   *
+   * <p>Rows are added to their group in the order they appear in the input. Large inputs are split
+   * by the hash of the key and each partition is grouped on a separate thread from the script's
+   * work pool. Since every row for a key lands in the same partition, no group is ever modified by
+   * more than one thread and the partitions can be combined without merging groups.
+   *
+   * @param input the rows to group
+   * @param makeKey create the key for a row; rows with a null key are discarded
+   * @param create create a new group for a key
+   * @param add add a row to a group
+   * @return the groups, in no particular order
+   */
+  private static <I, K, G> List<G> group(
+      Stream<I> input, Function<I, K> makeKey, Function<K, G> create, BiConsumer<G, I> add) {
+    final var pool = WorkPool.current().filter(p -> p.threads() > 1).orElse(null);
+    if (pool == null) {
+      // There's no one to share the work with, so don't hold on to the rows
+      final var groups = groupSequentially(input, makeKey, create, add);
+      input.close();
+      return groups;
+    }
+    final var rows = input.toList();
+    input.close();
+    if (rows.size() < PARALLEL_GROUP_THRESHOLD) {
+      return groupSequentially(rows.stream(), makeKey, create, add);
+    }
+    final var partitions = pool.threads();
+    final var sliceSize = (rows.size() + partitions - 1) / partitions;
+    final var keys = new Object[rows.size()];
+    final var partition = new int[rows.size()];
+    // For each contiguous slice of the input, the indices of the rows in that slice ordered by
+    // partition, and where each partition starts in that list
+    final var buckets = new int[partitions][];
+    final var bucketStarts = new int[partitions][];
+    pool.run(
+        partitions,
+        slice -> {
+          final var start = slice * sliceSize;
+          final var end = Math.min(rows.size(), start + sliceSize);
+          final var starts = new int[partitions + 1];
+          for (var i = start; i < end; i++) {
+            final var key = makeKey.apply(rows.get(i));
+            keys[i] = key;
+            if (key == null) {
+              partition[i] = -1;
+            } else {
+              // Spread the hash bits the same way HashMap does so that keys with poor hash codes
+              // still end up in different partitions
+              partition[i] = Math.floorMod(key.hashCode() ^ (key.hashCode() >>> 16), partitions);
+              starts[partition[i] + 1]++;
+            }
+          }
+          for (var p = 0; p < partitions; p++) {
+            starts[p + 1] += starts[p];
+          }
+          final var bucket = new int[starts[partitions]];
+          final var fill = Arrays.copyOf(starts, partitions);
+          for (var i = start; i < end; i++) {
+            if (partition[i] >= 0) {
+              bucket[fill[partition[i]]++] = i;
+            }
+          }
+          buckets[slice] = bucket;
+          bucketStarts[slice] = starts;
+        });
+    final List<Collection<G>> output = new ArrayList<>(Collections.nCopies(partitions, null));
+    pool.run(
+        partitions,
+        p -> {
+          final Map<K, G> groups = new HashMap<>();
+          for (var slice = 0; slice < partitions; slice++) {
+            for (var j = bucketStarts[slice][p]; j < bucketStarts[slice][p + 1]; j++) {
+              final var i = buckets[slice][j];
+              @SuppressWarnings("unchecked")
+              final var key = (K) keys[i];
+              add.accept(groups.computeIfAbsent(key, create), rows.get(i));
+            }
+          }
+          output.set(p, groups.values());
+        });
+    return output.stream().flatMap(Collection::stream).collect(Collectors.toList());
+  }
+
+  private static <I, K, G> List<G> groupSequentially(
+      Stream<I> input, Function<I, K> makeKey, Function<K, G> create, BiConsumer<G, I> add) {
+    final Map<K, G> groups = new HashMap<>();
+    input.forEachOrdered(
+        row -> {
+          final var key = makeKey.apply(row);
+          if (key != null) {
+            add.accept(groups.computeIfAbsent(key, create), row);
+          }
+        });
+    return new ArrayList<>(groups.values());
+  }
+
   public static CallSite inputBootstrap(
       Lookup lookup, String variableName, MethodType methodType, String inputFormatName) {
     // This is redirects to the input format manager; it's here to limit our export interface
@@ -243,56 +348,23 @@ public final class RuntimeSupport {
   @RuntimeInterop
   public static <I, N, K, O> Stream<O> join(
       Stream<I> input,
-      Stream<N> inner,
+      JoinIndex<K, N> inner,
       Function<I, K> makeOuterKey,
-      Function<N, K> makeInnerKey,
       BiFunction<I, N, O> joiner) {
-    final var inputGroups = input.collect(Collectors.groupingBy(makeOuterKey));
-    input.close();
-    final var innerGroups = inner.collect(Collectors.groupingBy(makeInnerKey));
-    inner.close();
-    return inputGroups.entrySet().stream()
-        .flatMap(
-            e ->
-                innerGroups.getOrDefault(e.getKey(), List.of()).stream()
-                    .flatMap(n -> e.getValue().stream().map(i -> joiner.apply(i, n))));
+    // Only the inner side is held in memory; the outer side is joined as it streams past
+    return input.flatMap(i -> inner.find(makeOuterKey.apply(i)).map(n -> joiner.apply(i, n)));
   }
 
   @RuntimeInterop
   public static <I, N, K, O> Stream<O> joinIntersection(
       Stream<I> input,
-      Stream<N> inner,
+      JoinIndex<K, N> inner,
       Function<I, Set<K>> makeOuterKey,
-      Function<N, Set<K>> makeInnerKey,
       BiFunction<I, N, O> joiner) {
-    final var inputs = input.collect(Collectors.toList());
-    input.close();
-    final Map<K, Set<Integer>> inputGroups = new HashMap<>();
-    for (var i = 0; i < inputs.size(); i++) {
-      for (final var key : makeOuterKey.apply(inputs.get(i))) {
-        inputGroups.computeIfAbsent(key, k -> new TreeSet<>()).add(i);
-      }
-    }
-
-    final var inners = inner.collect(Collectors.toList());
-    inner.close();
-    final Map<K, Set<Integer>> innerGroups = new HashMap<>();
-    for (var i = 0; i < inners.size(); i++) {
-      for (final var key : makeInnerKey.apply(inners.get(i))) {
-        innerGroups.computeIfAbsent(key, k -> new TreeSet<>()).add(i);
-      }
-    }
-
-    final Set<Pair<Integer, Integer>> joins = new HashSet<>();
-    for (final var entry : inputGroups.entrySet()) {
-      for (final var innerId : innerGroups.getOrDefault(entry.getKey(), Set.of())) {
-        for (final var inputId : entry.getValue()) {
-          joins.add(new Pair<>(inputId, innerId));
-        }
-      }
-    }
-
-    return joins.stream().map(p -> joiner.apply(inputs.get(p.first()), inners.get(p.second())));
+    // Only the inner side is held in memory; each outer record is joined with every inner record
+    // that shares at least one key as it streams past
+    return input.flatMap(
+        outer -> inner.findAny(makeOuterKey.apply(outer)).map(right -> joiner.apply(outer, right)));
   }
 
   @RuntimeInterop
@@ -329,10 +401,9 @@ public final class RuntimeSupport {
    * Left join a stream of input against another input format
    *
    * @param input the stream to be joined against
-   * @param inner the type of the inner (right) input stream
+   * @param inner the index of the inner (right) input stream
    * @param joiner a function to create an intermediate joined type from the two types
    * @param makeOuterKey create the joining key from an outer record
-   * @param makeInnerKey create the joining key from an inner record
    * @param makeOutput a function to create a new output type; it must accept a joined type where
    *     the right side will be null
    * @param collector a function that processes joined inputs with both right and left values to an
@@ -341,28 +412,16 @@ public final class RuntimeSupport {
   @RuntimeInterop
   public static <I, N, K, J, O> Stream<O> leftIntersectionJoin(
       Stream<I> input,
-      Stream<N> inner,
+      JoinIndex<K, N> inner,
       Function<I, Set<K>> makeOuterKey,
-      Function<N, Set<K>> makeInnerKey,
       BiFunction<I, N, J> joiner,
       Function<J, O> makeOutput,
       BiConsumer<O, J> collector) {
-    final var inners = inner.collect(Collectors.toList());
-    inner.close();
-    final Map<K, Set<Integer>> innerGroups = new HashMap<>();
-    for (var i = 0; i < inners.size(); i++) {
-      for (final var key : makeInnerKey.apply(inners.get(i))) {
-        innerGroups.computeIfAbsent(key, k -> new TreeSet<>()).add(i);
-      }
-    }
-
     return input.map(
         outer -> {
           final var output = makeOutput.apply(joiner.apply(outer, null));
-          makeOuterKey.apply(outer).stream()
-              .flatMap(k -> innerGroups.getOrDefault(k, Set.of()).stream())
-              .distinct()
-              .map(inners::get)
+          inner
+              .findAny(makeOuterKey.apply(outer))
               .forEach(right -> collector.accept(output, joiner.apply(outer, right)));
           return output;
         });
@@ -372,10 +431,9 @@ public final class RuntimeSupport {
    * Left join a stream of input against another input format
    *
    * @param input the stream to be joined against
-   * @param inner the type of the inner (right) input stream
+   * @param inner the index of the inner (right) input stream
    * @param joiner a function to create an intermediate joined type from the two types
    * @param makeOuterKey create the joining key from an outer record
-   * @param makeInnerKey create the joining key from an inner record
    * @param makeOutput a function to create a new output type; it must accept a joined type where
    *     the right side will be null
    * @param collector a function that processes joined inputs with both right and left values to an
@@ -384,30 +442,20 @@ public final class RuntimeSupport {
   @RuntimeInterop
   public static <I, N, K, J, O> Stream<O> leftJoin(
       Stream<I> input,
-      Stream<N> inner,
+      JoinIndex<K, N> inner,
       Function<I, K> makeOuterKey,
-      Function<N, K> makeInnerKey,
       BiFunction<I, N, J> joiner,
       Function<J, O> makeOutput,
       BiConsumer<O, J> collector) {
-    final var inputGroups = input.collect(Collectors.groupingBy(makeOuterKey));
-    input.close();
-    final var innerGroups = inner.collect(Collectors.groupingBy(makeInnerKey));
-
-    return inputGroups.entrySet().stream()
-        .flatMap(
-            e -> {
-              final var innerData = innerGroups.getOrDefault(e.getKey(), List.of());
-
-              return e.getValue().stream()
-                  .map(
-                      left -> {
-                        final var output = makeOutput.apply(joiner.apply(left, null));
-                        innerData.forEach(
-                            right -> collector.accept(output, joiner.apply(left, right)));
-                        return output;
-                      });
-            });
+    // Only the inner side is held in memory; the outer side is joined as it streams past
+    return input.map(
+        left -> {
+          final var output = makeOutput.apply(joiner.apply(left, null));
+          inner
+              .find(makeOuterKey.apply(left))
+              .forEach(right -> collector.accept(output, joiner.apply(left, right)));
+          return output;
+        });
   }
 
   public static Optional<Instant> localDate(long year, long month, long day) {
@@ -632,15 +680,7 @@ public final class RuntimeSupport {
   @RuntimeInterop
   public static <I, O> Stream<O> regroup(
       Stream<I> input, Grouper<I, O> grouper, Function<I, O> makeKey) {
-    final var groups =
-        input
-            .map(i -> new Pair<>(makeKey.apply(i), i))
-            .filter(p -> p.first() != null)
-            .collect(
-                Collectors.groupingBy(
-                    Pair::first, Collectors.mapping(Pair::second, Collectors.toList())));
-    input.close();
-    return groups.values().stream()
+    return group(input, makeKey, key -> new ArrayList<I>(), List::add).stream()
         .flatMap(
             list ->
                 grouper
@@ -670,17 +710,7 @@ public final class RuntimeSupport {
   @RuntimeInterop
   public static <I, O> Stream<O> regroup(
       Stream<I> input, Function<I, O> makeKey, BiConsumer<O, I> collector) {
-    final var groups =
-        input
-            .map(i -> new Pair<>(makeKey.apply(i), i))
-            .filter(p -> p.first() != null)
-            .collect(
-                Collectors.groupingBy(
-                    Pair::first, Collectors.mapping(Pair::second, Collectors.toList())));
-    input.close();
-    return groups.entrySet().stream()
-        .peek(e -> e.getValue().forEach(x -> collector.accept(e.getKey(), x)))
-        .map(Entry::getKey);
+    return group(input, makeKey, Function.identity(), collector).stream();
   }
 
   /** Clip the extension off a file path and return just the filename */
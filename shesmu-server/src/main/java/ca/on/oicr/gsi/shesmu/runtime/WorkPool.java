@@ -0,0 +1,101 @@
+package ca.on.oicr.gsi.shesmu.runtime;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * The threads a script can split its work across
+ *
+ * <p>While a script is running, the pool it was given is available to the runtime library through
+ * {@link #current()}, so work is done on the script's own threads rather than a shared pool that
+ * olive code might block.
+ */
+final class WorkPool {
+  private static final ThreadLocal<WorkPool> CURRENT = new ThreadLocal<>();
+
+  /** Get the pool for the script running on this thread, if there is one */
+  static Optional<WorkPool> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  private final Executor executor;
+  private final int threads;
+
+  WorkPool(Executor executor, int threads) {
+    this.executor = executor;
+    this.threads = threads;
+  }
+
+  /**
+   * Run tasks concurrently in this pool
+   *
+   * <p>The calling thread also runs tasks, rather than only waiting, so this cannot deadlock even
+   * if every thread in the pool is busy with this script. If any task fails, no further tasks are
+   * started and the exception is thrown once the ones already running have finished.
+   *
+   * @param count the number of tasks to run
+   * @param task the task to run, given an index between zero and the number of tasks
+   */
+  void run(int count, IntConsumer task) {
+    final var next = new AtomicInteger();
+    final var remaining = new CountDownLatch(count);
+    final var failure = new AtomicReference<Throwable>();
+    final Runnable worker =
+        () ->
+            within(
+                () -> {
+                  int index;
+                  while ((index = next.getAndIncrement()) < count) {
+                    try {
+                      if (failure.get() == null) {
+                        task.accept(index);
+                      }
+                    } catch (Throwable e) {
+                      failure.compareAndSet(null, e);
+                    } finally {
+                      remaining.countDown();
+                    }
+                  }
+                });
+    for (var i = 1; i < Math.min(count, threads); i++) {
+      executor.execute(worker);
+    }
+    worker.run();
+    try {
+      remaining.await();
+    } catch (InterruptedException e) {
+      failure.compareAndSet(null, e);
+      Thread.currentThread().interrupt();
+    }
+    final var e = failure.get();
+    if (e instanceof RuntimeException runtimeException) {
+      throw runtimeException;
+    } else if (e instanceof Error error) {
+      throw error;
+    } else if (e != null) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** The number of threads in this pool */
+  int threads() {
+    return threads;
+  }
+
+  /**
+   * Make this pool available through {@link #current()} while performing an action on this thread
+   */
+  void within(Runnable action) {
+    final var previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      action.run();
+    } finally {
+      CURRENT.set(previous);
+    }
+  }
+}
@@ -21,7 +21,6 @@ import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
 import ca.on.oicr.gsi.shesmu.runtime.OliveServices;
 import ca.on.oicr.gsi.shesmu.runtime.RuntimeSupport;
 import ca.on.oicr.gsi.shesmu.server.plugins.PluginManager;
-import ca.on.oicr.gsi.shesmu.util.AutoLock;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -40,16 +39,17 @@ import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -57,8 +57,10 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
@@ -105,14 +107,20 @@ public final class ActionProcessor
   }
 
   public static final class Alert {
-    private Map<String, String> annotations = new TreeMap<>();
-    private String endsAt;
-    @JsonIgnore private Instant expiryTime;
+    private volatile Map<String, String> annotations = new TreeMap<>();
+    private volatile String endsAt;
+    @JsonIgnore private volatile Instant expiryTime;
     private String generatorURL;
     private final String id;
     private Map<String, String> labels = new TreeMap<>();
 
     private final Set<SourceLocation> locations = ConcurrentHashMap.newKeySet();
+    // The expiry time and revision last delivered to Alertmanager and the current revision, which
+    // changes with the annotations; only accessed by the alert store while it holds this alert's
+    // label set
+    @JsonIgnore Instant pushedExpiry;
+    @JsonIgnore long pushedRevision;
+    @JsonIgnore long revision;
     private String startsAt;
 
     public Alert(String id) {
@@ -124,6 +132,10 @@ public final class ActionProcessor
       this.endsAt = DateTimeFormatter.ISO_INSTANT.format(expiryTime);
     }
 
+    Instant expiryInstant() {
+      return expiryTime;
+    }
+
     public String expiryTime() {
       return DateTimeFormatter.ISO_INSTANT.format(expiryTime);
     }
@@ -187,6 +199,17 @@ public final class ActionProcessor
 
   /** A filter all the actions based on some criteria */
   public abstract static class Filter {
+    /**
+     * Find a set of actions that contains every action this filter could match, if one can be
+     * determined from the action processor's indices.
+     *
+     * <p>The actions in this set will still be checked against the filter, so it can contain extra
+     * actions.
+     */
+    protected Optional<Set<Information>> candidates() {
+      return Optional.empty();
+    }
+
     protected abstract boolean check(Action action, Information info);
 
     /** Produce a filter that selects the opposite output of this filter. */
@@ -204,13 +227,28 @@ public final class ActionProcessor
 
   private static class Information implements Comparable<Information> {
 
-    public final Instant created = Instant.now();
+    final Action action;
+    Instant created = Instant.now();
     final String id;
-    Instant lastAdded = Instant.now();
+    volatile Instant lastAdded = Instant.now();
     Instant lastChecked = Instant.EPOCH;
     ActionState lastState = ActionState.UNKNOWN;
     Instant lastStateTransition = Instant.now();
+
+    /** The tags this action has been added to the tag index under */
+    final Set<String> indexedTags = ConcurrentHashMap.newKeySet();
+
     final Set<SourceLocation> locations = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether the state was restored from the state store and the action has not been checked since
+     * the server started
+     */
+    volatile boolean restored;
+
+    /** Whether this action is in the check queue or waiting to be scheduled */
+    final AtomicBoolean scheduled = new AtomicBoolean();
+
     final Set<String> tags = ConcurrentHashMap.newKeySet();
     String thrown;
     volatile boolean updateInProgress;
@@ -227,30 +265,66 @@ public final class ActionProcessor
         id = "";
       }
       this.id = id;
+      this.action = action;
     }
 
     @Override
     public int compareTo(Information information) {
       return Integer.compare(lastState.processPriority(), information.lastState.processPriority());
     }
+
+    void restore(ActionStateStore.StoredAction stored) {
+      created = Instant.ofEpochMilli(stored.created());
+      lastChecked = Instant.ofEpochMilli(stored.checked());
+      lastState = stored.state();
+      lastStateTransition = Instant.ofEpochMilli(stored.transition());
+      tags.addAll(stored.tags());
+      stored.locations().stream()
+          .map(ActionStateStore.StoredLocation::toSourceLocation)
+          .forEach(locations::add);
+      restored = true;
+    }
+
+    ActionStateStore.StoredAction store() {
+      return new ActionStateStore.StoredAction(
+          id,
+          lastState,
+          lastChecked.toEpochMilli(),
+          created.toEpochMilli(),
+          lastStateTransition.toEpochMilli(),
+          List.copyOf(tags),
+          locations.stream().map(ActionStateStore.StoredLocation::of).toList());
+    }
   }
 
+  /** An entry in the check queue for an action that will be eligible to be checked at a time */
+  private record ScheduledCheck(Instant due, Action action, Information information) {}
+
   private abstract static class InstantFilter extends Filter {
     private final Optional<Instant> end;
+    private final Optional<TimeIndex<Information>> index;
     private final Optional<Instant> start;
 
-    private InstantFilter(Optional<Instant> start, Optional<Instant> end) {
+    private InstantFilter(
+        Optional<TimeIndex<Information>> index, Optional<Instant> start, Optional<Instant> end) {
       super();
+      this.index = index;
       this.start = start;
       this.end = end;
     }
 
-    private InstantFilter(long offset) {
+    private InstantFilter(Optional<TimeIndex<Information>> index, long offset) {
       super();
+      this.index = index;
       this.start = Optional.of(Instant.now().minusMillis(offset));
       this.end = Optional.empty();
     }
 
+    @Override
+    protected final Optional<Set<Information>> candidates() {
+      return index.map(i -> i.find(start, end));
+    }
+
     @Override
     protected final boolean check(Action action, Information info) {
       return get(action, info)
@@ -277,61 +351,101 @@ public final class ActionProcessor
           return "added";
         }
       };
-  public static final AlertFilterBuilder<Predicate<Alert>, String> ALERT_FILTER_BUILDER =
+  public static final AlertFilterBuilder<AlertStore.Filter, String> ALERT_FILTER_BUILDER =
       new AlertFilterBuilder<>() {
         @Override
-        public Predicate<Alert> and(Stream<Predicate<Alert>> filters) {
-          final var predicates = filters.collect(Collectors.toList());
-          return alert -> predicates.stream().allMatch(predicate -> predicate.test(alert));
+        public AlertStore.Filter and(Stream<AlertStore.Filter> filters) {
+          final var filterList = filters.collect(Collectors.toList());
+          return new AlertStore.Filter() {
+            @Override
+            protected Optional<Set<Alert>> candidates(AlertStore store) {
+              // Every alert must match all the filters, so the smallest set will do
+              return filterList.stream()
+                  .map(f -> f.candidates(store))
+                  .flatMap(Optional::stream)
+                  .min(Comparator.comparingInt(Set::size));
+            }
+
+            @Override
+            protected boolean test(Alert alert) {
+              return filterList.stream().allMatch(f -> f.test(alert));
+            }
+          };
         }
 
         @Override
-        public Predicate<Alert> fromSourceLocation(Stream<SourceOliveLocation> locations) {
+        public AlertStore.Filter fromSourceLocation(Stream<SourceOliveLocation> locations) {
           final List<Predicate<SourceLocation>> predicates = locations.collect(Collectors.toList());
-          return alert ->
-              alert.locations.stream()
-                  .anyMatch(
-                      location ->
-                          predicates.stream().anyMatch(predicate -> predicate.test(location)));
+          return alertFilter(
+              alert ->
+                  alert.locations.stream()
+                      .anyMatch(
+                          location ->
+                              predicates.stream().anyMatch(predicate -> predicate.test(location))));
         }
 
         @Override
-        public Predicate<Alert> hasLabelName(Pattern labelName) {
-          return alert -> alert.labels.keySet().stream().anyMatch(labelName.asPredicate());
+        public AlertStore.Filter hasLabelName(Pattern labelName) {
+          return alertFilter(
+              alert -> alert.labels.keySet().stream().anyMatch(labelName.asPredicate()));
         }
 
         @Override
-        public Predicate<Alert> hasLabelName(String labelName) {
-          return alert -> alert.labels.containsKey(labelName);
+        public AlertStore.Filter hasLabelName(String labelName) {
+          return alertFilter(
+              store -> store.withLabel(labelName), alert -> alert.labels.containsKey(labelName));
         }
 
         @Override
-        public Predicate<Alert> hasLabelValue(String labelName, Pattern regex) {
-          return alert -> {
-            final var value = alert.labels.get(labelName);
-            return value != null && regex.matcher(value).matches();
-          };
+        public AlertStore.Filter hasLabelValue(String labelName, Pattern regex) {
+          return alertFilter(
+              store -> store.withLabel(labelName),
+              alert -> {
+                final var value = alert.labels.get(labelName);
+                return value != null && regex.matcher(value).matches();
+              });
         }
 
         @Override
-        public Predicate<Alert> hasLabelValue(String labelName, String labelValue) {
-          return alert -> labelValue.equals(alert.labels.get(labelName));
+        public AlertStore.Filter hasLabelValue(String labelName, String labelValue) {
+          return alertFilter(
+              store -> store.withLabel(labelName, labelValue),
+              alert -> labelValue.equals(alert.labels.get(labelName)));
         }
 
         @Override
-        public Predicate<Alert> isLive() {
-          return Alert::isLive;
+        public AlertStore.Filter isLive() {
+          return alertFilter(AlertStore::liveSet, Alert::isLive);
         }
 
         @Override
-        public Predicate<Alert> negate(Predicate<Alert> filter) {
-          return filter.negate();
+        public AlertStore.Filter negate(AlertStore.Filter filter) {
+          return alertFilter(alert -> !filter.test(alert));
         }
 
         @Override
-        public Predicate<Alert> or(Stream<Predicate<Alert>> filters) {
-          final var predicates = filters.collect(Collectors.toList());
-          return alert -> predicates.stream().anyMatch(predicate -> predicate.test(alert));
+        public AlertStore.Filter or(Stream<AlertStore.Filter> filters) {
+          final var filterList = filters.collect(Collectors.toList());
+          return new AlertStore.Filter() {
+            @Override
+            protected Optional<Set<Alert>> candidates(AlertStore store) {
+              // A union is only useful if every branch can be narrowed down
+              final var union = new HashSet<Alert>();
+              for (final var filter : filterList) {
+                final var candidates = filter.candidates(store);
+                if (candidates.isEmpty()) {
+                  return Optional.empty();
+                }
+                union.addAll(candidates.get());
+              }
+              return Optional.of(union);
+            }
+
+            @Override
+            protected boolean test(Alert alert) {
+              return filterList.stream().anyMatch(f -> f.test(alert));
+            }
+          };
         }
       };
   private static final BinMember<Instant> CHECKED =
@@ -373,6 +487,10 @@ public final class ActionProcessor
           return "external";
         }
       };
+  private static final int ALERT_FULL_PUSH_EVERY = 12;
+  private static final Duration ALERT_PUSH_INTERVAL = Duration.ofMinutes(5);
+  // Expired alerts are kept for a while so they can still be seen in the UI
+  private static final Duration ALERT_RETENTION = Duration.ofDays(1);
   private static final JsonNodeFactory JSON_FACTORY = JsonNodeFactory.withExactBigDecimals(false);
   private static final Bin<Instant> INSTANT_BIN =
       new Bin<>() {
@@ -442,6 +560,13 @@ public final class ActionProcessor
       Gauge.build("shesmu_olive_run_time", "The runtime of an olive in seconds.")
           .labelNames("filename", "line", "column")
           .register();
+  private static final Gauge OLIVE_SHARED_RECORDS_SAVED =
+      Gauge.build(
+              "shesmu_olive_shared_records_saved",
+              "The number of input records that did not need to be processed again because a"
+                  + " clause was shared by multiple olives.")
+          .labelNames("filename", "line", "column", "hash")
+          .register();
   private static final Pattern SLASH = Pattern.compile("/");
   private static final Property<String> SOURCE_FILE =
       new Property<>() {
@@ -532,6 +657,14 @@ public final class ActionProcessor
           "shesmu_action_perform_time",
           "The length of time for an action to update it state in seconds.",
           "type");
+  private static final Gauge alertCount =
+      Gauge.build("shesmu_alert_count", "The number of alerts held, including expired ones.")
+          .register();
+  private static final Gauge alertsPushed =
+      Gauge.build(
+              "shesmu_alerts_pushed",
+              "The number of alerts sent to Alertmanager during the last push.")
+          .register();
   private static final Gauge actionThrows =
       Gauge.build(
               "shesmu_action_perform_throw",
@@ -561,6 +694,30 @@ public final class ActionProcessor
           .labelNames("state", "type")
           .register();
 
+  private static AlertStore.Filter alertFilter(Predicate<Alert> predicate) {
+    return new AlertStore.Filter() {
+      @Override
+      protected boolean test(Alert alert) {
+        return predicate.test(alert);
+      }
+    };
+  }
+
+  private static AlertStore.Filter alertFilter(
+      Function<AlertStore, Set<Alert>> index, Predicate<Alert> predicate) {
+    return new AlertStore.Filter() {
+      @Override
+      protected Optional<Set<Alert>> candidates(AlertStore store) {
+        return Optional.of(index.apply(store));
+      }
+
+      @Override
+      protected boolean test(Alert alert) {
+        return predicate.test(alert);
+      }
+    };
+  }
+
   static Function<String, String> commonPathPrefix(Stream<String> input) {
     final var items = input.collect(Collectors.toList());
     if (items.isEmpty()) {
@@ -584,6 +741,20 @@ public final class ActionProcessor
     return new Filter() {
       private final List<Filter> filterList = filters.toList();
 
+      @Override
+      protected Optional<Set<Information>> candidates() {
+        // A union is only useful if every branch can be narrowed down
+        final var union = new HashSet<Information>();
+        for (final var filter : filterList) {
+          final var candidates = filter.candidates();
+          if (candidates.isEmpty()) {
+            return Optional.empty();
+          }
+          union.addAll(candidates.get());
+        }
+        return Optional.of(union);
+      }
+
       @Override
       protected boolean check(Action action, Information info) {
         return filterList.stream().anyMatch(f -> f.check(action, info));
@@ -617,19 +788,43 @@ public final class ActionProcessor
 
   private final ActionServices actionServices;
   private final Map<Action, Information> actions = new ConcurrentHashMap<>();
-  private final AutoLock alertLock = new AutoLock();
-  private final Map<Map<String, String>, Alert> alerts = new HashMap<>();
+  // These indices allow filters to find matching actions without scanning every action. They are
+  // only used to narrow down the search, so every action found is still checked against the filter.
+  private final TimeIndex<Information> checkedIndex = new TimeIndex<>();
+  private final TimeIndex<Information> createdIndex = new TimeIndex<>();
+  private final PropertyIndex<String, Information> fileIndex = new PropertyIndex<>();
+  private final PropertyIndex<String, Information> idIndex = new PropertyIndex<>();
+  private final PropertyIndex<SourceLocation, Information> locationIndex = new PropertyIndex<>();
+  private final PropertyIndex<ActionState, Information> stateIndex = new PropertyIndex<>();
+  private final PropertyIndex<String, Information> tagIndex = new PropertyIndex<>();
+  private final TimeIndex<Information> transitionIndex = new TimeIndex<>();
+  // The transition times split by state and action type, so the newest transition for the oldest
+  // time metric can be found without scanning every action
+  private final Map<Pair<ActionState, String>, TimeIndex<Information>> transitionByStateIndex =
+      new ConcurrentHashMap<>();
+  private final PropertyIndex<String, Information> typeIndex = new PropertyIndex<>();
+  private long alertPushes;
+  private boolean fullAlertPush;
+  private final AlertStore alerts = new AlertStore();
   private final URI baseUri;
-  private String currentAlerts = "[]";
+  private final PriorityBlockingQueue<ScheduledCheck> checkQueue =
+      new PriorityBlockingQueue<>(1024, Comparator.comparing(ScheduledCheck::due));
   private final AtomicInteger currentRunningActions = new AtomicInteger();
   private final Set<String> knownActionTypes = ConcurrentHashMap.newKeySet();
   private final PluginManager manager;
   private final Set<String> pausedFiles = ConcurrentHashMap.newKeySet();
   private final Set<SourceLocation> pausedOlives = ConcurrentHashMap.newKeySet();
   private final Set<SourceLocation> sourceLocations = ConcurrentHashMap.newKeySet();
+  private final Optional<ActionStateStore> stateStore;
   private final ScheduledExecutorService timeoutExecutor =
       Executors.newSingleThreadScheduledExecutor();
 
+  /**
+   * Actions that are due to be checked but didn't fit in a previous round; this is only accessed by
+   * the update task
+   */
+  private final List<Entry<Action, Information>> waitingChecks = new ArrayList<>();
+
   private static final Integer ACTION_THREADS =
       Optional.ofNullable(System.getenv("ACTION_THREADS"))
           .map(Integer::parseInt)
@@ -640,10 +835,19 @@ public final class ActionProcessor
           ACTION_THREADS, new ShesmuThreadFactory("actions", Thread.MIN_PRIORITY));
 
   public ActionProcessor(URI baseUri, PluginManager manager, ActionServices actionServices) {
+    this(baseUri, manager, actionServices, ActionStateStore.fromEnvironment());
+  }
+
+  ActionProcessor(
+      URI baseUri,
+      PluginManager manager,
+      ActionServices actionServices,
+      Optional<ActionStateStore> stateStore) {
     super();
     this.baseUri = baseUri;
     this.manager = manager;
     this.actionServices = actionServices;
+    this.stateStore = stateStore;
   }
 
   /**
@@ -652,30 +856,56 @@ public final class ActionProcessor
    * <p>If this action is a duplicate of an existing action, the existing state is kept.
    */
   @Override
-  public synchronized boolean accept(
+  public boolean accept(
       Action action, String filename, int line, int column, String hash, String[] tags) {
-    Information information;
-    boolean isDuplicate;
     knownActionTypes.add(action.type());
-    if (!actions.containsKey(action)) {
-      information = new Information(action);
-      action.accepted(information.id);
-      actions.put(action, information);
-      stateCount.labels(ActionState.UNKNOWN.name(), action.type()).inc();
-      isDuplicate = false;
-    } else {
-      information = actions.get(action);
-      // This addresses a race condition where the action is concurrently purged
-      if (information == null) {
-        return true;
+    // Most actions are duplicates from a previous round, so try a lock-free read first. Only new
+    // actions need to go through computeIfAbsent, which locks the single hash bin the action
+    // belongs to rather than the whole processor, so olives on different threads only contend
+    // when they produce actions that collide.
+    var information = actions.get(action);
+    final boolean isDuplicate;
+    if (information == null) {
+      final var created = new Information[1];
+      information =
+          actions.computeIfAbsent(
+              action,
+              a -> {
+                final var fresh = new Information(a);
+                stateStore.flatMap(store -> store.restore(fresh.id)).ifPresent(fresh::restore);
+                created[0] = fresh;
+                return fresh;
+              });
+      isDuplicate = created[0] == null;
+      if (!isDuplicate) {
+        action.accepted(information.id);
+        stateCount.labels(information.lastState.name(), action.type()).inc();
+        index(information);
+        scheduleCheck(action, information);
       }
-      information.lastAdded = Instant.now();
+    } else {
       isDuplicate = true;
     }
+    if (isDuplicate) {
+      information.lastAdded = Instant.now();
+    }
     final var location = new SourceLocation(filename, line, column, hash);
-    information.locations.add(location);
-    information.tags.addAll(List.of(tags));
+    if (information.locations.add(location)) {
+      fileIndex.add(location.fileName(), information);
+      locationIndex.add(location, information);
+    }
+    for (final var tag : tags) {
+      information.tags.add(tag);
+      if (information.indexedTags.add(tag)) {
+        tagIndex.add(tag, information);
+      }
+    }
     sourceLocations.add(location);
+    // The indices were updated outside of the map, so if the action was purged in the meantime,
+    // the purge may have missed some of the entries added here
+    if (actions.get(action) != information) {
+      unindex(information);
+    }
     lastAdd.setToCurrentTime();
     return isDuplicate;
   }
@@ -696,29 +926,12 @@ public final class ActionProcessor
     if (!labelMap.containsKey("instance")) {
       labelMap.put("instance", baseUri.toASCIIString());
     }
-    try (var lock = alertLock.acquire()) {
-      Alert alert;
-      final var duplicate = alerts.containsKey(labelMap);
-      if (duplicate) {
-        alert = alerts.get(labelMap);
-      } else {
-        final var digest = MessageDigest.getInstance("SHA1");
-        for (final var entry : labelMap.entrySet()) {
-          digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
-          digest.update((byte) 0);
-          digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
-          digest.update((byte) 0);
-        }
-        alert = new Alert(Utils.bytesToHex(digest.digest()));
-        alert.setLabels(labelMap);
-        alert.setStartsAt(Instant.now());
-        alerts.put(labelMap, alert);
-        alert.setGeneratorURL(baseUri.resolve("#" + alert.id()).toASCIIString());
-      }
-      alert.setAnnotations(repack(annotations, "Annotations"));
-      alert.expiresIn(ttl);
-      alert.locations.add(new SourceLocation(filename, line, column, hash));
-    }
+    alerts.accept(
+        labelMap,
+        repack(annotations, "Annotations"),
+        ttl,
+        new SourceLocation(filename, line, column, hash),
+        this::createAlert);
     return false;
   }
 
@@ -726,14 +939,12 @@ public final class ActionProcessor
     return startStream(filters).map(e -> e.getValue().id);
   }
 
-  public void alerts(JsonGenerator output, Predicate<Alert> predicate) throws IOException {
-    output.writeStartArray();
-    for (final var alert : alerts.values()) {
-      if (predicate.test(alert)) {
-        output.writeObject(alert);
-      }
-    }
-    output.writeEndArray();
+  public void alerts(JsonGenerator output) throws IOException {
+    writeAlerts(output, alerts.all());
+  }
+
+  public void alerts(JsonGenerator output, AlertStore.Filter filter) throws IOException {
+    writeAlerts(output, alerts.find(filter));
   }
 
   /**
@@ -803,6 +1014,10 @@ public final class ActionProcessor
                                             public Boolean reset() {
                                               labels.put("command", c.command());
                                               if (e.getValue().lastState != ActionState.UNKNOWN) {
+                                                stateIndex.move(
+                                                    e.getValue().lastState,
+                                                    ActionState.UNKNOWN,
+                                                    e.getValue());
                                                 stateCount
                                                     .labels(
                                                         e.getValue().lastState.name(),
@@ -813,9 +1028,27 @@ public final class ActionProcessor
                                                         ActionState.UNKNOWN.name(),
                                                         e.getKey().type())
                                                     .inc();
-                                                e.getValue().lastStateTransition = Instant.now();
+                                                final var transition = Instant.now();
+                                                transitionIndex.move(
+                                                    e.getValue().lastStateTransition,
+                                                    transition,
+                                                    e.getValue());
+                                                transitionByStateIndex(
+                                                        e.getValue().lastState, e.getKey().type())
+                                                    .remove(
+                                                        e.getValue().lastStateTransition,
+                                                        e.getValue());
+                                                transitionByStateIndex(
+                                                        ActionState.UNKNOWN, e.getKey().type())
+                                                    .add(transition, e.getValue());
+                                                e.getValue().lastStateTransition = transition;
                                               }
                                               e.getValue().lastState = ActionState.UNKNOWN;
+                                              stateStore.ifPresent(
+                                                  store -> store.write(e.getValue().store()));
+                                              if (!e.getValue().updateInProgress) {
+                                                scheduleCheck(e.getKey(), e.getValue());
+                                              }
                                               return true;
                                             }
                                           },
@@ -823,8 +1056,7 @@ public final class ActionProcessor
                               (a, b) -> a || b);
                     },
                     Collectors.counting()));
-    purge.forEach(actions::remove);
-    purge.forEach(Action::purgeCleanup);
+    purge.forEach(this::remove);
     return new CommandStatistics(
         count.getOrDefault(true, 0L),
         count.getOrDefault(false, 0L),
@@ -921,8 +1153,28 @@ public final class ActionProcessor
     }
   }
 
-  public String currentAlerts() {
-    return currentAlerts;
+  private Alert createAlert(Map<String, String> labels) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (final var entry : labels.entrySet()) {
+      digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    final var alert = new Alert(Utils.bytesToHex(digest.digest()));
+    alert.setLabels(labels);
+    alert.setStartsAt(Instant.now());
+    alert.setGeneratorURL(baseUri.resolve("#" + alert.id()).toASCIIString());
+    return alert;
+  }
+
+  public void currentAlerts(JsonGenerator output) throws IOException {
+    writeAlerts(output, alerts.live());
   }
 
   public Stream<ObjectNode> drain(SourceLocationLinker linker, Filter... filters) {
@@ -934,11 +1186,7 @@ public final class ActionProcessor
               deadActions.add(entry.getKey());
               return makeActionJson(linker, entry, false);
             })
-        .onClose(
-            () -> {
-              actions.keySet().removeAll(deadActions);
-              deadActions.forEach(Action::purgeCleanup);
-            });
+        .onClose(() -> deadActions.forEach(this::remove));
   }
 
   @Override
@@ -973,7 +1221,7 @@ public final class ActionProcessor
        */
       @Override
       public Filter added(Optional<Instant> start, Optional<Instant> end) {
-        return new InstantFilter(start, end) {
+        return new InstantFilter(Optional.empty(), start, end) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -984,7 +1232,7 @@ public final class ActionProcessor
 
       @Override
       public Filter addedAgo(Long offset) {
-        return new InstantFilter(offset) {
+        return new InstantFilter(Optional.empty(), offset) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -999,6 +1247,15 @@ public final class ActionProcessor
         return new Filter() {
           private final List<Filter> filterList = filters.collect(Collectors.toList());
 
+          @Override
+          protected Optional<Set<Information>> candidates() {
+            // Every action must match all the filters, so the smallest set will do
+            return filterList.stream()
+                .map(Filter::candidates)
+                .flatMap(Optional::stream)
+                .min(Comparator.comparingInt(Set::size));
+          }
+
           @Override
           protected boolean check(Action action, Information info) {
             return filterList.stream().allMatch(f -> f.check(action, info));
@@ -1014,7 +1271,7 @@ public final class ActionProcessor
        */
       @Override
       public Filter checked(Optional<Instant> start, Optional<Instant> end) {
-        return new InstantFilter(start, end) {
+        return new InstantFilter(Optional.of(checkedIndex), start, end) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -1025,7 +1282,7 @@ public final class ActionProcessor
 
       @Override
       public Filter checkedAgo(Long offset) {
-        return new InstantFilter(offset) {
+        return new InstantFilter(Optional.of(checkedIndex), offset) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -1036,7 +1293,7 @@ public final class ActionProcessor
 
       @Override
       public Filter created(Optional<Instant> start, Optional<Instant> end) {
-        return new InstantFilter(start, end) {
+        return new InstantFilter(Optional.of(createdIndex), start, end) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -1047,7 +1304,7 @@ public final class ActionProcessor
 
       @Override
       public Filter createdAgo(Long offset) {
-        return new InstantFilter(offset) {
+        return new InstantFilter(Optional.of(createdIndex), offset) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -1064,7 +1321,7 @@ public final class ActionProcessor
        */
       @Override
       public Filter external(Optional<Instant> start, Optional<Instant> end) {
-        return new InstantFilter(start, end) {
+        return new InstantFilter(Optional.empty(), start, end) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -1075,7 +1332,7 @@ public final class ActionProcessor
 
       @Override
       public Filter externalAgo(Long offset) {
-        return new InstantFilter(offset) {
+        return new InstantFilter(Optional.empty(), offset) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -1094,6 +1351,11 @@ public final class ActionProcessor
         final var set = files.collect(Collectors.toSet());
         return new Filter() {
 
+          @Override
+          protected Optional<Set<Information>> candidates() {
+            return Optional.of(fileIndex.find(set.stream()));
+          }
+
           @Override
           protected boolean check(Action action, Information info) {
             return info.locations.stream().map(SourceLocation::fileName).anyMatch(set::contains);
@@ -1113,9 +1375,36 @@ public final class ActionProcessor
        */
       @Override
       public Filter fromSourceLocation(Stream<SourceOliveLocation> locations) {
-        final List<Predicate<SourceLocation>> list = locations.collect(Collectors.toList());
+        final var list = locations.collect(Collectors.toList());
         return new Filter() {
 
+          @Override
+          protected Optional<Set<Information>> candidates() {
+            // A location without a file matches nothing; a complete location can use the exact
+            // index and anything less specific can only be narrowed down to the file
+            final var result = new HashSet<Information>();
+            for (final var location : list) {
+              if (location.getFile() == null) {
+                continue;
+              }
+              if (location.getLine() != null
+                  && location.getColumn() != null
+                  && location.getHash() != null) {
+                result.addAll(
+                    locationIndex.find(
+                        Stream.of(
+                            new SourceLocation(
+                                location.getFile(),
+                                location.getLine(),
+                                location.getColumn(),
+                                location.getHash()))));
+              } else {
+                result.addAll(fileIndex.find(Stream.of(location.getFile())));
+              }
+            }
+            return Optional.of(result);
+          }
+
           @Override
           protected boolean check(Action action, Information info) {
             return list.stream().anyMatch(l -> info.locations.stream().anyMatch(l));
@@ -1132,6 +1421,11 @@ public final class ActionProcessor
       public Filter ids(List<String> ids) {
         return new Filter() {
 
+          @Override
+          protected Optional<Set<Information>> candidates() {
+            return Optional.of(idIndex.find(ids.stream()));
+          }
+
           @Override
           protected boolean check(Action action, Information info) {
             return ids.contains(info.id);
@@ -1150,6 +1444,11 @@ public final class ActionProcessor
             states.collect(Collectors.toCollection(() -> EnumSet.noneOf(ActionState.class)));
         return new Filter() {
 
+          @Override
+          protected Optional<Set<Information>> candidates() {
+            return Optional.of(stateIndex.find(set.stream()));
+          }
+
           @Override
           protected boolean check(Action action, Information info) {
             return set.contains(info.lastState);
@@ -1186,7 +1485,7 @@ public final class ActionProcessor
        */
       @Override
       public Filter statusChanged(Optional<Instant> start, Optional<Instant> end) {
-        return new InstantFilter(start, end) {
+        return new InstantFilter(Optional.of(transitionIndex), start, end) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -1197,7 +1496,7 @@ public final class ActionProcessor
 
       @Override
       public Filter statusChangedAgo(Long offset) {
-        return new InstantFilter(offset) {
+        return new InstantFilter(Optional.of(transitionIndex), offset) {
 
           @Override
           protected Optional<Instant> get(Action action, Information info) {
@@ -1227,6 +1526,12 @@ public final class ActionProcessor
       public Filter tags(Stream<String> tags) {
         final var tagSet = tags.collect(Collectors.toSet());
         return new Filter() {
+
+          @Override
+          protected Optional<Set<Information>> candidates() {
+            return Optional.of(tagIndex.find(tagSet.stream()));
+          }
+
           @Override
           protected boolean check(Action action, Information info) {
             return Stream.concat(info.tags.stream(), action.tags()).anyMatch(tagSet::contains);
@@ -1262,6 +1567,11 @@ public final class ActionProcessor
         final var set = types.collect(Collectors.toSet());
         return new Filter() {
 
+          @Override
+          protected Optional<Set<Information>> candidates() {
+            return Optional.of(typeIndex.find(set.stream()));
+          }
+
           @Override
           protected boolean check(Action action, Information info) {
             return set.contains(action.type());
@@ -1279,6 +1589,11 @@ public final class ActionProcessor
   public Filter fromSourceLocation(SourceLocation location) {
     return new Filter() {
 
+      @Override
+      protected Optional<Set<Information>> candidates() {
+        return Optional.of(locationIndex.find(Stream.of(location)));
+      }
+
       @Override
       protected boolean check(Action action, Information info) {
         return info.locations.contains(location);
@@ -1287,8 +1602,7 @@ public final class ActionProcessor
   }
 
   public void getAlert(OutputStream output, String id) throws IOException {
-    final var alert = alerts.values().stream().filter(a -> a.id.equals(id)).findAny().orElse(null);
-    RuntimeSupport.MAPPER.writeValue(output, alert);
+    RuntimeSupport.MAPPER.writeValue(output, alerts.get(id).orElse(null));
   }
 
   @SafeVarargs
@@ -1515,6 +1829,14 @@ public final class ActionProcessor
     return input.peek(x -> counter.incrementAndGet()).onClose(() -> child.set(counter.get()));
   }
 
+  @Override
+  public void measureSharing(
+      String filename, int line, int column, String hash, long recordsSaved) {
+    OLIVE_SHARED_RECORDS_SAVED
+        .labels(filename, Integer.toString(line), Integer.toString(column), hash)
+        .set(recordsSaved);
+  }
+
   @Override
   public void oliveRuntime(String filename, int line, int column, long timeInNs) {
     OLIVE_RUN_TIME
@@ -1544,8 +1866,7 @@ public final class ActionProcessor
             .peek(e -> stateCount.labels(e.getValue().lastState.name(), e.getKey().type()).dec())
             .map(Entry::getKey)
             .collect(Collectors.toSet());
-    deadActions.forEach(Action::purgeCleanup);
-    actions.keySet().removeAll(deadActions);
+    deadActions.forEach(this::remove);
     return deadActions.size();
   }
 
@@ -1573,6 +1894,81 @@ public final class ActionProcessor
             .get();
   }
 
+  /** Add a newly accepted action to all the indices */
+  private void index(Information information) {
+    checkedIndex.add(information.lastChecked, information);
+    createdIndex.add(information.created, information);
+    idIndex.add(information.id, information);
+    stateIndex.add(information.lastState, information);
+    transitionIndex.add(information.lastStateTransition, information);
+    transitionByStateIndex(information.lastState, information.action.type())
+        .add(information.lastStateTransition, information);
+    typeIndex.add(information.action.type(), information);
+    for (final var location : information.locations) {
+      fileIndex.add(location.fileName(), information);
+      locationIndex.add(location, information);
+    }
+    reindexTags(information);
+  }
+
+  private TimeIndex<Information> transitionByStateIndex(ActionState state, String type) {
+    return transitionByStateIndex.computeIfAbsent(new Pair<>(state, type), k -> new TimeIndex<>());
+  }
+
+  /**
+   * Update the tag index for an action
+   *
+   * <p>The tags assigned by olives only ever grow, but the tags provided by the action itself can
+   * change, so they have to be checked again after the action is performed.
+   */
+  private void reindexTags(Information information) {
+    final var current =
+        Stream.concat(information.tags.stream(), information.action.tags())
+            .collect(Collectors.toSet());
+    for (final var tag : current) {
+      if (information.indexedTags.add(tag)) {
+        tagIndex.add(tag, information);
+      }
+    }
+    information.indexedTags.removeIf(
+        tag -> {
+          // Olives may have added a tag since the current set was collected
+          if (current.contains(tag) || information.tags.contains(tag)) {
+            return false;
+          }
+          tagIndex.remove(tag, information);
+          return true;
+        });
+  }
+
+  /** Remove an action that has been purged from all the indices */
+  private void unindex(Information information) {
+    checkedIndex.remove(information.lastChecked, information);
+    createdIndex.remove(information.created, information);
+    idIndex.remove(information.id, information);
+    stateIndex.remove(information.lastState, information);
+    transitionIndex.remove(information.lastStateTransition, information);
+    transitionByStateIndex(information.lastState, information.action.type())
+        .remove(information.lastStateTransition, information);
+    typeIndex.remove(information.action.type(), information);
+    for (final var location : information.locations) {
+      fileIndex.remove(location.fileName(), information);
+      locationIndex.remove(location, information);
+    }
+    for (final var tag : information.indexedTags) {
+      tagIndex.remove(tag, information);
+    }
+  }
+
+  private void remove(Action action) {
+    final var information = actions.remove(action);
+    if (information != null) {
+      unindex(information);
+      stateStore.ifPresent(store -> store.purge(information.id));
+    }
+    action.purgeCleanup();
+  }
+
   private Map<String, String> repack(String[] input, String name) {
     if (input.length % 2 != 0) {
       throw new IllegalArgumentException(name + " must be paired.");
@@ -1594,6 +1990,30 @@ public final class ActionProcessor
     pausedFiles.remove(file);
   }
 
+  /**
+   * Put an action in the check queue for the next time it is eligible to be checked
+   *
+   * <p>If the action is already in the queue, this does nothing. Actions that are finished are not
+   * queued.
+   */
+  private void scheduleCheck(Action action, Information information) {
+    if (isCheckable(information) && information.scheduled.compareAndSet(false, true)) {
+      checkQueue.add(new ScheduledCheck(nextCheck(action, information), action, information));
+    }
+  }
+
+  private static boolean isCheckable(Information information) {
+    // Actions restored from the state store are checked once, even if they are finished, so that
+    // the plugin's action object can catch up on its state
+    return information.restored
+        || information.lastState != ActionState.SUCCEEDED
+            && information.lastState != ActionState.ZOMBIE;
+  }
+
+  private static Instant nextCheck(Action action, Information information) {
+    return information.lastChecked.plus(Math.max(10, action.retryMinutes()), ChronoUnit.MINUTES);
+  }
+
   public long size(Filter... filters) {
     return startStream(filters).count();
   }
@@ -1605,11 +2025,34 @@ public final class ActionProcessor
   /** Begin the action processor */
   public void start(ScheduledExecutorService executor, Predicate<SourceLocation> isOliveLive) {
     executor.scheduleWithFixedDelay(() -> this.update(isOliveLive), 5, 1, TimeUnit.MINUTES);
-    executor.scheduleWithFixedDelay(this::updateAlerts, 5, 5, TimeUnit.MINUTES);
+    executor.scheduleWithFixedDelay(
+        this::updateAlerts,
+        ALERT_PUSH_INTERVAL.toMinutes(),
+        ALERT_PUSH_INTERVAL.toMinutes(),
+        TimeUnit.MINUTES);
+    stateStore.ifPresent(
+        store ->
+            executor.scheduleWithFixedDelay(
+                () -> store.compact(actions.values().stream().map(Information::store)),
+                1,
+                1,
+                TimeUnit.HOURS));
   }
 
   private Stream<Entry<Action, Information>> startStream(Filter... filters) {
-    return actions.entrySet().stream()
+    // If any of the filters can use an index, start from the smallest set of candidates instead of
+    // every action; the candidates may include actions that have since been purged, so check they
+    // are still present
+    return Arrays.stream(filters)
+        .map(Filter::candidates)
+        .flatMap(Optional::stream)
+        .min(Comparator.comparingInt(Set::size))
+        .map(
+            candidates ->
+                candidates.stream()
+                    .filter(information -> actions.get(information.action) == information)
+                    .map(information -> Map.entry(information.action, information)))
+        .orElseGet(() -> actions.entrySet().stream())
         .filter(
             entry ->
                 Arrays.stream(filters)
@@ -1689,14 +2132,21 @@ public final class ActionProcessor
   }
 
   /**
-   * Stream all the actions, converted to JSON objects, in the processor matching a filter set
+   * Stream a page of the actions, converted to JSON objects, in the processor matching a filter set
    *
+   * <p>Only the actions on the page and the ones before it are kept while searching, so this does
+   * not need to sort every matching action.
+   *
+   * @param skip the number of actions to skip at the start
+   * @param limit the maximum number of actions to return
    * @param filters the filters to match
    */
   public Stream<ObjectNode> stream(
       SourceLocationLinker linker,
       Optional<String> customSortKey,
       Consumer<String> availableSortKeys,
+      long skip,
+      long limit,
       Filter... filters) {
     final Comparator<Map.Entry<Action, Information>> comparator =
         customSortKey
@@ -1716,9 +2166,31 @@ public final class ActionProcessor
                           return result;
                         })
             .orElse(Comparator.comparing(e -> e.getValue().id));
-    return startStream(filters)
-        .sorted(comparator)
-        .peek(e -> e.getKey().sortKeys().forEach(availableSortKeys))
+    final var start = Math.max(0, skip);
+    final var end = start + Math.max(0, limit);
+    final Stream<Entry<Action, Information>> page;
+    if (end < 0 || end > Integer.MAX_VALUE) {
+      page = startStream(filters).sorted(comparator).skip(start).limit(limit);
+    } else {
+      // Keep the best actions seen so far with the worst one at the head so it can be replaced
+      final var best =
+          new PriorityQueue<Entry<Action, Information>>(
+              (int) Math.min(end, 1024) + 1, comparator.reversed());
+      startStream(filters)
+          .forEach(
+              entry -> {
+                if (best.size() < end) {
+                  best.add(entry);
+                } else if (end > 0 && comparator.compare(entry, best.peek()) < 0) {
+                  best.poll();
+                  best.add(entry);
+                }
+              });
+      final var sorted = new ArrayList<>(best);
+      sorted.sort(comparator);
+      page = sorted.stream().skip(start);
+    }
+    return page.peek(e -> e.getKey().sortKeys().forEach(availableSortKeys))
         .map(entry -> makeActionJson(linker, entry, true));
   }
 
@@ -1728,40 +2200,80 @@ public final class ActionProcessor
   }
 
   private void update(Predicate<SourceLocation> isOliveLive) {
+    update(isOliveLive, Instant.now());
+  }
 
-    final var now = Instant.now();
-    final var candidates =
-        actions.entrySet().stream()
-            .filter(
-                entry ->
-                    entry.getValue().lastState != ActionState.SUCCEEDED
-                        && entry.getValue().lastState != ActionState.ZOMBIE
-                        && !entry.getValue().updateInProgress
-                        && Duration.between(entry.getValue().lastChecked, now).toMinutes()
-                            >= Math.max(10, entry.getKey().retryMinutes()))
-            /*
-             * Sort by time since last checked, and then priority, to avoid starving actions of
-             * attention because of priority, then sort by their ActionState's processPriority so
-             * that certain ActionStates get checked first.
-             */
-            .sorted(
-                Comparator.<Map.Entry<Action, Information>>comparingLong(
-                        e ->
-                            Duration.between(
-                                        now,
-                                        e.getValue().lastChecked == null
-                                            ? e.getValue().created
-                                            : e.getValue().lastChecked)
-                                    .getSeconds()
-                                / 600)
-                    .thenComparingInt(e -> e.getKey().priority()))
-            .sorted(Map.Entry.comparingByValue())
-            .limit(1000L * ACTION_THREADS - currentRunningActions.get())
-            .collect(Collectors.toList());
+  /**
+   * Start checking the actions that are due
+   *
+   * @param isOliveLive whether an olive is still live
+   * @param now the time used to decide which actions are due
+   */
+  void update(Predicate<SourceLocation> isOliveLive, Instant now) {
+    // Rather than scan every action, pull out the ones whose next check time has arrived. The
+    // queue is ordered by eligibility time, so this is proportional to the number of due actions.
+    ScheduledCheck check;
+    while ((check = checkQueue.poll()) != null) {
+      if (check.due().isAfter(now)) {
+        checkQueue.add(check);
+        break;
+      }
+      final var information = check.information();
+      if (actions.get(check.action()) != information || !isCheckable(information)) {
+        // The action has been purged or has finished since it was queued
+        information.scheduled.set(false);
+      } else if (nextCheck(check.action(), information).isAfter(now)) {
+        // The action's retry interval has changed since it was queued, so put it back
+        checkQueue.add(
+            new ScheduledCheck(
+                nextCheck(check.action(), information), check.action(), information));
+      } else {
+        waitingChecks.add(Map.entry(check.action(), information));
+      }
+    }
+    waitingChecks.removeIf(
+        entry -> {
+          if (actions.get(entry.getKey()) != entry.getValue() || !isCheckable(entry.getValue())) {
+            entry.getValue().scheduled.set(false);
+            return true;
+          }
+          return false;
+        });
+    /*
+     * Sort by time since last checked, and then priority, to avoid starving actions of
+     * attention because of priority, then sort by their ActionState's processPriority so
+     * that certain ActionStates get checked first.
+     */
+    waitingChecks.sort(
+        Comparator.<Map.Entry<Action, Information>>comparingLong(
+                e ->
+                    Duration.between(
+                                now,
+                                e.getValue().lastChecked == null
+                                    ? e.getValue().created
+                                    : e.getValue().lastChecked)
+                            .getSeconds()
+                        / 600)
+            .thenComparingInt(e -> e.getKey().priority()));
+    waitingChecks.sort(Map.Entry.comparingByValue());
+    final var selected =
+        waitingChecks.subList(
+            0,
+            (int)
+                Math.max(
+                    0,
+                    Math.min(
+                        waitingChecks.size(),
+                        1000L * ACTION_THREADS - currentRunningActions.get())));
+    final List<Entry<Action, Information>> candidates = new ArrayList<>(selected);
+    selected.clear();
+    for (final var entry : candidates) {
+      entry.getValue().updateInProgress = true;
+      entry.getValue().scheduled.set(false);
+    }
     currentRunningActionsGauge.set(currentRunningActions.addAndGet(candidates.size()));
 
     for (final var entry : candidates) {
-      entry.getValue().updateInProgress = true;
       final var location =
           entry.getValue().locations.stream()
               .map(Object::toString)
@@ -1783,7 +2295,9 @@ public final class ActionProcessor
                     () -> timeoutFuture.complete(true),
                     Math.max(timeout.getSeconds(), 60),
                     TimeUnit.SECONDS);
-                entry.getValue().lastChecked = Instant.now();
+                final var checked = Instant.now();
+                checkedIndex.move(entry.getValue().lastChecked, checked, entry.getValue());
+                entry.getValue().lastChecked = checked;
                 final var oldState = entry.getValue().lastState;
                 final var oldThrown = entry.getValue().thrown != null;
                 queuedInflight.run();
@@ -1816,12 +2330,25 @@ public final class ActionProcessor
                   }
                 }
                 if (oldState != entry.getValue().lastState) {
-                  entry.getValue().lastStateTransition = Instant.now();
+                  final var transition = Instant.now();
+                  stateIndex.move(oldState, entry.getValue().lastState, entry.getValue());
+                  transitionIndex.move(
+                      entry.getValue().lastStateTransition, transition, entry.getValue());
+                  transitionByStateIndex(oldState, entry.getKey().type())
+                      .remove(entry.getValue().lastStateTransition, entry.getValue());
+                  transitionByStateIndex(entry.getValue().lastState, entry.getKey().type())
+                      .add(transition, entry.getValue());
+                  entry.getValue().lastStateTransition = transition;
                   stateCount.labels(oldState.name(), entry.getKey().type()).dec();
                   stateCount.labels(entry.getValue().lastState.name(), entry.getKey().type()).inc();
                 }
                 actionThrows.inc((entry.getValue().thrown != null ? 0 : 1) - (oldThrown ? 0 : 1));
+                entry.getValue().restored = false;
+                // Plugins can change an action's tags as its state changes
+                reindexTags(entry.getValue());
+                stateStore.ifPresent(store -> store.write(entry.getValue().store()));
                 entry.getValue().updateInProgress = false;
+                scheduleCheck(entry.getKey(), entry.getValue());
                 currentRunningActionsGauge.set(currentRunningActions.decrementAndGet());
                 return false;
               },
@@ -1835,20 +2362,11 @@ public final class ActionProcessor
     }
     scheduledInRound.set(candidates.size());
     lastRun.setToCurrentTime();
-    final var lastTransitions =
-        actions.entrySet().stream()
-            .collect(
-                Collectors.groupingBy(
-                    (Entry<Action, Information> e) ->
-                        new Pair<>(e.getValue().lastState, e.getKey().type()),
-                    Collectors.mapping(
-                        (Entry<Action, Information> e) -> e.getValue().lastStateTransition,
-                        Collectors.maxBy(Comparator.naturalOrder()))));
     for (final var actionType : knownActionTypes) {
       for (final var state : ActionState.values()) {
         final var time =
-            lastTransitions
-                .getOrDefault(new Pair<>(state, actionType), Optional.empty())
+            Optional.ofNullable(transitionByStateIndex.get(new Pair<>(state, actionType)))
+                .flatMap(TimeIndex::latest)
                 .orElse(null);
         if (time == null) {
           oldest.remove(state.name(), actionType);
@@ -1860,16 +2378,46 @@ public final class ActionProcessor
   }
 
   private void updateAlerts() {
-    try (var lock = alertLock.acquire();
-        var inflight = Server.inflightCloseable("Push alerts")) {
-      currentAlerts =
-          RuntimeSupport.MAPPER.writeValueAsString(
-              alerts.values().stream().filter(Alert::isLive).collect(Collectors.toList()));
+    try (var inflight = Server.inflightCloseable("Push alerts")) {
+      final var now = Instant.now();
+      alerts.evict(now.minus(ALERT_RETENTION));
+      alertCount.set(alerts.size());
+      // Alertmanager resolves an alert once its end time passes, so an alert that has been extended
+      // needs to be resent before the end time Alertmanager knows about. If any endpoint could not
+      // confirm it has everything sent before (it failed, restarted, or is new), everything is sent
+      // again on the next push; that is also done periodically as a safeguard.
+      final var changes =
+          alerts.changes(
+              now.plus(ALERT_PUSH_INTERVAL.multipliedBy(2)),
+              fullAlertPush || alertPushes++ % ALERT_FULL_PUSH_EVERY == 0,
+              alert -> RuntimeSupport.MAPPER.valueToTree(alert));
+      alertsPushed.set(changes.alerts().size());
+      // Plugins that don't take changes are sent every live alert, as they always have been; it is
+      // only serialized if one of them asks for it
+      final var allAlerts = new String[1];
+      if (manager.pushAlertChanges(
+          RuntimeSupport.MAPPER.writeValueAsString(changes.alerts()),
+          () -> {
+            if (allAlerts[0] == null) {
+              allAlerts[0] = RuntimeSupport.MAPPER.valueToTree(alerts.live().toList()).toString();
+            }
+            return allAlerts[0];
+          })) {
+        changes.delivered();
+        fullAlertPush = false;
+      } else {
+        fullAlertPush = true;
+      }
     } catch (final Exception e) {
       e.printStackTrace();
     }
-    if (currentAlerts != null) {
-      manager.pushAlerts(currentAlerts);
+  }
+
+  private static void writeAlerts(JsonGenerator output, Stream<Alert> alerts) throws IOException {
+    output.writeStartArray();
+    for (final var alert : (Iterable<Alert>) alerts::iterator) {
+      output.writeObject(alert);
     }
+    output.writeEndArray();
   }
 }
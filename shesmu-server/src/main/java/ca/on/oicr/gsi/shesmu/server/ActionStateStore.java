@@ -0,0 +1,241 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import ca.on.oicr.gsi.shesmu.plugin.SourceLocation;
+import ca.on.oicr.gsi.shesmu.plugin.action.ActionState;
+import ca.on.oicr.gsi.shesmu.runtime.RuntimeSupport;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the bookkeeping the action processor has about each action on disk so that it survives a
+ * restart
+ *
+ * <p>Actions themselves cannot be reconstructed from disk since they belong to plugins, but olives
+ * will produce the same actions again once the server is back up. When the action processor sees an
+ * action for the first time, it can ask this store for the state that was recorded for the same
+ * action identifier before the restart and continue the check schedule from there.
+ *
+ * <p>The store is an append-only log of JSON records, one per line. A later record for the same
+ * action replaces an earlier one and a record with no state is a tombstone for a purged action. The
+ * log is periodically compacted by rewriting it with only the live records.
+ */
+final class ActionStateStore {
+
+  /** The state of an action as recorded in the log */
+  record StoredAction(
+      String id,
+      ActionState state,
+      long checked,
+      long created,
+      long transition,
+      List<String> tags,
+      List<StoredLocation> locations) {
+    @JsonIgnore
+    boolean isTombstone() {
+      return state == null;
+    }
+  }
+
+  /** A source location of an action as recorded in the log */
+  record StoredLocation(String file, int line, int column, String hash) {
+    static StoredLocation of(SourceLocation location) {
+      return new StoredLocation(
+          location.fileName(), location.line(), location.column(), location.hash());
+    }
+
+    @JsonIgnore
+    SourceLocation toSourceLocation() {
+      return new SourceLocation(file, line, column, hash);
+    }
+  }
+
+  /**
+   * Open the state store configured for this server, if any
+   *
+   * <p>The store is only enabled if the <code>ACTION_STATE_FILE</code> environment variable is set.
+   */
+  static Optional<ActionStateStore> fromEnvironment() {
+    return Optional.ofNullable(System.getenv("ACTION_STATE_FILE"))
+        .map(Path::of)
+        .flatMap(
+            path -> {
+              try {
+                return Optional.of(new ActionStateStore(path));
+              } catch (IOException e) {
+                e.printStackTrace();
+                return Optional.empty();
+              }
+            });
+  }
+
+  private static final ObjectReader READER = RuntimeSupport.MAPPER.readerFor(StoredAction.class);
+  private static final ObjectWriter WRITER = RuntimeSupport.MAPPER.writerFor(StoredAction.class);
+  private static final Gauge loadTime =
+      Gauge.build(
+              "shesmu_action_state_store_load_time",
+              "The number of seconds required to load the action state store at start up.")
+          .register();
+  private static final Gauge pendingRestore =
+      Gauge.build(
+              "shesmu_action_state_store_pending",
+              "The number of actions loaded from the action state store that have not been produced"
+                  + " by an olive since start up.")
+          .register();
+  private static final Counter restored =
+      Counter.build(
+              "shesmu_action_state_store_restored",
+              "The number of actions whose state was restored from the action state store.")
+          .register();
+  private static final Gauge storeSize =
+      Gauge.build(
+              "shesmu_action_state_store_records",
+              "The number of records in the action state store log, including superseded ones.")
+          .register();
+
+  /** How long to keep records for actions that no olive has produced since start up */
+  private static final Duration UNCLAIMED_RETENTION = Duration.ofDays(1);
+
+  private final Instant loaded = Instant.now();
+  private final Path path;
+  private final Map<String, StoredAction> unclaimed = new ConcurrentHashMap<>();
+  private long records;
+  private BufferedWriter writer;
+
+  /**
+   * Open a state store, loading any records already in the log
+   *
+   * @param path the log file, which is created if it does not exist
+   */
+  ActionStateStore(Path path) throws IOException {
+    this.path = path;
+    final var start = System.nanoTime();
+    if (Files.exists(path)) {
+      try (final var lines = Files.lines(path, StandardCharsets.UTF_8)) {
+        lines.forEach(
+            line -> {
+              records++;
+              try {
+                final var record = READER.<StoredAction>readValue(line);
+                if (record.isTombstone()) {
+                  unclaimed.remove(record.id());
+                } else {
+                  unclaimed.put(record.id(), record);
+                }
+              } catch (IOException e) {
+                // A partially written line at the end of the log from a crash is expected; skip it
+                e.printStackTrace();
+              }
+            });
+      }
+    }
+    loadTime.set((System.nanoTime() - start) / 1e9);
+    pendingRestore.set(unclaimed.size());
+    storeSize.set(records);
+    writer =
+        Files.newBufferedWriter(
+            path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Rewrite the log so it only contains the records provided
+   *
+   * <p>Records that were loaded at start up but have not been claimed yet are preserved for a grace
+   * period, since olives may take some time to produce all their actions again.
+   *
+   * @param live the current state of all actions in the action processor
+   */
+  void compact(Stream<StoredAction> live) {
+    final var keepUnclaimed = Instant.now().isBefore(loaded.plus(UNCLAIMED_RETENTION));
+    if (!keepUnclaimed) {
+      unclaimed.clear();
+      pendingRestore.set(0);
+    }
+    final var temporary = path.resolveSibling(path.getFileName() + ".compacting");
+    synchronized (this) {
+      try {
+        try {
+          var count = 0L;
+          try (final var output = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (final var record :
+                (Iterable<StoredAction>)
+                    Stream.concat(unclaimed.values().stream(), live)::iterator) {
+              output.write(WRITER.writeValueAsString(record));
+              output.newLine();
+              count++;
+            }
+          }
+          writer.close();
+          Files.move(
+              temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+          records = count;
+          storeSize.set(records);
+        } finally {
+          writer.close();
+          writer =
+              Files.newBufferedWriter(
+                  path,
+                  StandardCharsets.UTF_8,
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.APPEND);
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Record that an action has been removed from the action processor
+   *
+   * @param id the action identifier
+   */
+  void purge(String id) {
+    unclaimed.remove(id);
+    write(new StoredAction(id, null, 0, 0, 0, List.of(), List.of()));
+  }
+
+  /**
+   * Retrieve the state that was recorded for an action before the server started
+   *
+   * <p>Each record can only be retrieved once.
+   *
+   * @param id the action identifier
+   */
+  Optional<StoredAction> restore(String id) {
+    final var result = Optional.ofNullable(unclaimed.remove(id));
+    if (result.isPresent()) {
+      restored.inc();
+      pendingRestore.set(unclaimed.size());
+    }
+    return result;
+  }
+
+  /** Append the current state of an action to the log */
+  synchronized void write(StoredAction action) {
+    try {
+      writer.write(WRITER.writeValueAsString(action));
+      writer.newLine();
+      writer.flush();
+      storeSize.set(++records);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
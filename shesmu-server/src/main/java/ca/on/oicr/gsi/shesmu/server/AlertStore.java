@@ -0,0 +1,278 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import ca.on.oicr.gsi.shesmu.plugin.SourceLocation;
+import ca.on.oicr.gsi.shesmu.server.ActionProcessor.Alert;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The alerts produced by olives
+ *
+ * <p>Alerts are stored by their label set. Since olives on different threads can produce the same
+ * alert, each label set is updated atomically without a lock over the whole store. Alerts are also
+ * indexed by their ID, their labels, and the time they expire. The expiry index is used to find the
+ * live alerts, to evict alerts that have been dead for a while, and to decide which alerts need to
+ * be sent to Alertmanager again.
+ */
+public final class AlertStore {
+  /**
+   * A filter over alerts that can use the store's indices to narrow down the alerts it has to check
+   */
+  public abstract static class Filter {
+    /**
+     * Find a set of alerts that contains every alert this filter could match, if one can be
+     * determined from the store's indices.
+     *
+     * <p>The alerts in this set will still be checked against the filter, so it can contain extra
+     * alerts.
+     */
+    protected Optional<Set<Alert>> candidates(AlertStore store) {
+      return Optional.empty();
+    }
+
+    protected abstract boolean test(Alert alert);
+  }
+
+  /**
+   * The alerts that need to be sent to Alertmanager
+   *
+   * <p>The alerts are not considered sent until {@link #delivered()} is called, so if delivery
+   * fails, they will be included in the next set of changes.
+   *
+   * @param <T> the form of the alerts being sent
+   */
+  public final class Changes<T> {
+    private final List<T> alerts = new ArrayList<>();
+    private final List<Sent> sent = new ArrayList<>();
+
+    private Changes() {}
+
+    /** The alerts to send */
+    public List<T> alerts() {
+      return alerts;
+    }
+
+    /** Record that the alerts were delivered, so they are not sent again unless they change */
+    public void delivered() {
+      for (final var item : sent) {
+        AlertStore.this.alerts.computeIfPresent(
+            item.alert().getLabels(),
+            (key, alert) -> {
+              if (alert == item.alert() && item.revision() >= alert.pushedRevision) {
+                alert.pushedRevision = item.revision();
+                alert.pushedExpiry = item.expiry();
+              }
+              return alert;
+            });
+      }
+    }
+  }
+
+  private record Expiry(Instant time, String id, Alert alert) {}
+
+  private record Sent(Alert alert, long revision, Instant expiry) {}
+
+  private static final Comparator<Expiry> EXPIRY_ORDER =
+      Comparator.comparing(Expiry::time).thenComparing(Expiry::id);
+
+  private static <K> void index(Map<K, Set<Alert>> index, K key, Alert alert) {
+    index.compute(
+        key,
+        (k, alerts) -> {
+          if (alerts == null) {
+            alerts = ConcurrentHashMap.newKeySet();
+          }
+          alerts.add(alert);
+          return alerts;
+        });
+  }
+
+  private static <K> void unindex(Map<K, Set<Alert>> index, K key, Alert alert) {
+    // Unlike the action indices, label values are unbounded, so empty keys are removed
+    index.computeIfPresent(
+        key,
+        (k, alerts) -> {
+          alerts.remove(alert);
+          return alerts.isEmpty() ? null : alerts;
+        });
+  }
+
+  private final Map<Map<String, String>, Alert> alerts = new ConcurrentHashMap<>();
+  private final ConcurrentSkipListSet<Expiry> expiryIndex =
+      new ConcurrentSkipListSet<>(EXPIRY_ORDER);
+  private final Map<String, Alert> idIndex = new ConcurrentHashMap<>();
+  private final Map<String, Set<Alert>> labelNameIndex = new ConcurrentHashMap<>();
+  private final Map<Map.Entry<String, String>, Set<Alert>> labelValueIndex =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Create or update an alert
+   *
+   * @param labels the labels that identify the alert
+   * @param annotations the annotations to associate with the alert
+   * @param ttl the number of seconds the alert should be live for
+   * @param location the olive that produced the alert
+   * @param create a function to create a new alert if the label set is not already present
+   */
+  public void accept(
+      Map<String, String> labels,
+      Map<String, String> annotations,
+      long ttl,
+      SourceLocation location,
+      Function<Map<String, String>, Alert> create) {
+    alerts.compute(
+        labels,
+        (key, alert) -> {
+          if (alert == null) {
+            alert = create.apply(key);
+            idIndex.put(alert.id(), alert);
+            for (final var label : key.entrySet()) {
+              index(labelNameIndex, label.getKey(), alert);
+              index(labelValueIndex, Map.entry(label.getKey(), label.getValue()), alert);
+            }
+            alert.revision++;
+          } else {
+            expiryIndex.remove(new Expiry(alert.expiryInstant(), alert.id(), alert));
+            if (!alert.getAnnotations().equals(annotations)) {
+              alert.revision++;
+            }
+          }
+          alert.setAnnotations(annotations);
+          alert.expiresIn(ttl);
+          alert.getLocations().add(location);
+          expiryIndex.add(new Expiry(alert.expiryInstant(), alert.id(), alert));
+          return alert;
+        });
+  }
+
+  /** Get every alert, live or dead */
+  public Stream<Alert> all() {
+    return alerts.values().stream();
+  }
+
+  /**
+   * Collect the alerts that Alertmanager needs to be told about
+   *
+   * <p>An alert is included if it is live and is new, has different annotations, has an expiry time
+   * earlier than the one last sent, or if the expiry time last sent is before the horizon and the
+   * alert has since been extended.
+   *
+   * @param horizon the time by which Alertmanager must have been told about an extended alert or it
+   *     will consider it resolved; this should be after the next push
+   * @param full if true, include every live alert regardless of what was sent before
+   * @param serialize a function to convert an alert to its sent form; this is called while no other
+   *     thread can modify the alert
+   */
+  public <T> Changes<T> changes(Instant horizon, boolean full, Function<Alert, T> serialize) {
+    final var now = Instant.now();
+    final var output = new Changes<T>();
+    for (final var expiry : expiryIndex.tailSet(new Expiry(now, "", null), false)) {
+      alerts.computeIfPresent(
+          expiry.alert().getLabels(),
+          (key, alert) -> {
+            if (alert != expiry.alert() || !alert.isLive()) {
+              return alert;
+            }
+            final var expiryTime = alert.expiryInstant();
+            final var pushed = alert.pushedExpiry;
+            if (full
+                || alert.revision != alert.pushedRevision
+                || pushed == null
+                || expiryTime.isBefore(pushed)
+                || pushed.isBefore(horizon) && expiryTime.isAfter(pushed)) {
+              output.alerts.add(serialize.apply(alert));
+              output.sent.add(new Sent(alert, alert.revision, expiryTime));
+            }
+            return alert;
+          });
+    }
+    return output;
+  }
+
+  /**
+   * Remove alerts that expired before a cut-off time
+   *
+   * @param cutoff alerts that expired before this time are removed
+   * @return the number of alerts removed
+   */
+  public int evict(Instant cutoff) {
+    var count = 0;
+    for (final var dead : expiryIndex.headSet(new Expiry(cutoff, "", null))) {
+      // If the alert was refreshed since the index was read, the expiry time will no longer match
+      // and it will be left alone
+      if (alerts.computeIfPresent(
+              dead.alert().getLabels(),
+              (key, alert) ->
+                  alert == dead.alert() && alert.expiryInstant().equals(dead.time()) ? null : alert)
+          == null) {
+        expiryIndex.remove(dead);
+        idIndex.remove(dead.id(), dead.alert());
+        for (final var label : dead.alert().getLabels().entrySet()) {
+          unindex(labelNameIndex, label.getKey(), dead.alert());
+          unindex(labelValueIndex, Map.entry(label.getKey(), label.getValue()), dead.alert());
+        }
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Find alerts matching a filter
+   *
+   * @param filter the filter to check
+   */
+  public Stream<Alert> find(Filter filter) {
+    // The candidates may include alerts that have since been evicted, so check they are still
+    // present
+    return filter
+        .candidates(this)
+        .map(
+            candidates ->
+                candidates.stream().filter(alert -> alerts.get(alert.getLabels()) == alert))
+        .orElseGet(this::all)
+        .filter(filter::test);
+  }
+
+  /**
+   * Find an alert by its ID
+   *
+   * @param id the alert ID
+   */
+  public Optional<Alert> get(String id) {
+    return Optional.ofNullable(idIndex.get(id));
+  }
+
+  /** Get the alerts that are currently live */
+  public Stream<Alert> live() {
+    return expiryIndex.tailSet(new Expiry(Instant.now(), "", null), false).stream()
+        .map(Expiry::alert);
+  }
+
+  Set<Alert> liveSet() {
+    return live().collect(Collectors.toSet());
+  }
+
+  Set<Alert> withLabel(String name) {
+    return labelNameIndex.getOrDefault(name, Set.of());
+  }
+
+  Set<Alert> withLabel(String name, String value) {
+    return labelValueIndex.getOrDefault(Map.entry(name, value), Set.of());
+  }
+
+  /** The number of alerts in the store */
+  public int size() {
+    return alerts.size();
+  }
+}
@@ -636,6 +636,12 @@ public abstract class BaseSimulateRequest {
                         return input.peek(i -> counter.incrementAndGet());
                       }
 
+                      @Override
+                      public void measureSharing(
+                          String filename, int line, int column, String hash, long recordsSaved) {
+                        // Not interesting for a simulation
+                      }
+
                       @Override
                       public void oliveRuntime(
                           String filename, int line, int column, long timeInNs) {
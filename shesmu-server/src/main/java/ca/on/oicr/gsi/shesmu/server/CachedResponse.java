@@ -0,0 +1,166 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body held in memory
+ *
+ * <p>The body is compressed once, when the response is created, rather than on every request. Each
+ * representation has a strong ETag based on its contents, so clients can revalidate with <code>
+ * If-None-Match</code> and get an empty <code>304 Not Modified</code> response if nothing changed.
+ */
+public final class CachedResponse {
+  /** Creates the body of a response */
+  public interface Generator {
+    byte[] generate() throws IOException;
+  }
+
+  /**
+   * A response that is generated once and then reused until a version number changes
+   *
+   * <p>This is meant for output that is expensive to produce but only changes when something else
+   * is updated, so the version number is read on every request and the body is only regenerated
+   * when it differs from the one used to produce the cached body.
+   */
+  public static final class Versioned {
+    private record Entry(long version, CachedResponse response) {}
+
+    private final AtomicReference<Entry> cache = new AtomicReference<>();
+    private final Generator generator;
+    private final String type;
+    private final LongSupplier version;
+
+    /**
+     * Create a new versioned response
+     *
+     * @param type the MIME type of the body
+     * @param version the current version of the data used to produce the body
+     * @param generator the function to produce the body
+     */
+    public Versioned(String type, LongSupplier version, Generator generator) {
+      this.type = type;
+      this.version = version;
+      this.generator = generator;
+    }
+
+    /**
+     * Send the response, regenerating it if the version has changed
+     *
+     * @param t the exchange to respond to
+     */
+    public void send(HttpExchange t) throws IOException {
+      final var current = version.getAsLong();
+      var entry = cache.get();
+      if (entry == null || entry.version() != current) {
+        entry = new Entry(current, of(type, generator.generate()));
+        cache.set(entry);
+      }
+      entry.response().send(t);
+    }
+  }
+
+  private static String etag(byte[] body, String suffix) {
+    try {
+      return "\""
+          + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body), 0, 16)
+          + suffix
+          + "\"";
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (var candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Prepare a response
+   *
+   * @param type the MIME type of the body
+   * @param body the uncompressed body
+   */
+  public static CachedResponse of(String type, byte[] body) {
+    final var buffer = new ByteArrayOutputStream();
+    try (var output = new GZIPOutputStream(buffer)) {
+      output.write(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    final var gzipped = buffer.toByteArray();
+    // Small or already compressed files (e.g., images) don't benefit from compression
+    return gzipped.length < body.length
+        ? new CachedResponse(type, body, gzipped)
+        : new CachedResponse(type, body, null);
+  }
+
+  private final byte[] body;
+  private final String etag;
+  private final byte[] gzipped;
+  private final String gzippedEtag;
+  private final String type;
+
+  private CachedResponse(String type, byte[] body, byte[] gzipped) {
+    this.type = type;
+    this.body = body;
+    this.gzipped = gzipped;
+    etag = etag(body, "");
+    gzippedEtag = gzipped == null ? null : etag(body, "-gzip");
+  }
+
+  /**
+   * Send this response, compressed if the client supports it
+   *
+   * @param t the exchange to respond to
+   */
+  public void send(HttpExchange t) throws IOException {
+    final var acceptEncoding = t.getRequestHeaders().getFirst("Accept-Encoding");
+    final var useGzip =
+        gzipped != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+    final var selectedEtag = useGzip ? gzippedEtag : etag;
+    final var headers = t.getResponseHeaders();
+    headers.set("Content-type", type);
+    headers.set("ETag", selectedEtag);
+    headers.set("Vary", "Accept-Encoding");
+    headers.set("Cache-Control", "no-cache");
+    if (matches(t.getRequestHeaders().getFirst("If-None-Match"), selectedEtag)) {
+      t.sendResponseHeaders(304, -1);
+      t.close();
+      return;
+    }
+    if (useGzip) {
+      headers.set("Content-Encoding", "gzip");
+    }
+    final var output = useGzip ? gzipped : body;
+    if (t.getRequestMethod().equals("HEAD")) {
+      t.sendResponseHeaders(200, -1);
+      t.close();
+      return;
+    }
+    t.sendResponseHeaders(200, output.length);
+    try (var os = t.getResponseBody()) {
+      os.write(output);
+    }
+  }
+}
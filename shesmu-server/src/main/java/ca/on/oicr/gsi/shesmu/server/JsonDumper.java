@@ -0,0 +1,76 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import ca.on.oicr.gsi.shesmu.plugin.dumper.BufferedDumper;
+import ca.on.oicr.gsi.shesmu.plugin.json.PackJsonObject;
+import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
+import ca.on.oicr.gsi.shesmu.runtime.RuntimeSupport;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * A dumper that collects rows so they can be downloaded through the <code>/jsondumper</code>
+ * endpoint
+ *
+ * <p>Each row is serialised to JSON as soon as it is written, on the dumper's writer thread, and
+ * stored as JSON lines: one JSON object per line.
+ */
+public final class JsonDumper extends BufferedDumper {
+
+  /**
+   * Write JSON lines as a JSON array
+   *
+   * @param lines the JSON lines produced by a dumper
+   * @param output the stream to write to
+   */
+  public static void writeArray(byte[] lines, OutputStream output) throws IOException {
+    output.write('[');
+    var start = 0;
+    for (var i = 0; i < lines.length; i++) {
+      if (lines[i] == '\n') {
+        if (start > 0) {
+          output.write(',');
+        }
+        output.write(lines, start, i - start);
+        start = i + 1;
+      }
+    }
+    output.write(']');
+  }
+
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final String[] columns;
+  private final Consumer<byte[]> output;
+  private final Imyhat[] types;
+
+  /**
+   * Create a new dumper
+   *
+   * @param name the name of the dumper
+   * @param columns the names of the columns
+   * @param types the types of the columns
+   * @param output a callback to receive the JSON lines when the dumper is stopped
+   */
+  public JsonDumper(String name, String[] columns, Imyhat[] types, Consumer<byte[]> output) {
+    super(name);
+    this.columns = columns;
+    this.types = types;
+    this.output = output;
+  }
+
+  @Override
+  protected void finish() {
+    output.accept(buffer.toByteArray());
+  }
+
+  @Override
+  protected void writeRow(Object[] values) throws IOException {
+    final var row = RuntimeSupport.MAPPER.createObjectNode();
+    for (var i = 0; i < types.length; i++) {
+      types[i].accept(new PackJsonObject(row, columns[i]), values[i]);
+    }
+    buffer.write(RuntimeSupport.MAPPER.writeValueAsBytes(row));
+    buffer.write('\n');
+  }
+}
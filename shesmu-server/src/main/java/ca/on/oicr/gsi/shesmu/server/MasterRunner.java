@@ -114,6 +114,12 @@ public class MasterRunner {
                   oliveHash);
             }
 
+            @Override
+            public void measureSharing(
+                String filename, int line, int column, String hash, long recordsSaved) {
+              services.measureSharing(filename, line, column, hash, recordsSaved);
+            }
+
             @Override
             public void oliveRuntime(String filename, int line, int column, long timeInNs) {
               services.oliveRuntime(filename, line, column, timeInNs);
@@ -0,0 +1,72 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * An index from a property value to the items that have that value
+ *
+ * <p>This is meant to narrow down a search before checking items against a filter, so it may
+ * contain more items than actually match. When an item's value changes, it is added to the new
+ * value before being removed from the old one, so a search done in the meantime will not miss it.
+ * Keys with no items are removed since some properties, such as identifiers and tags, have an
+ * unbounded number of values.
+ *
+ * @param <K> the type of the property value
+ * @param <T> the type of the items being indexed
+ */
+final class PropertyIndex<K, T> {
+  private final Map<K, Set<T>> index = new ConcurrentHashMap<>();
+
+  /** Associate an item with a property value */
+  public void add(K key, T item) {
+    index.compute(
+        key,
+        (k, items) -> {
+          if (items == null) {
+            items = ConcurrentHashMap.newKeySet();
+          }
+          items.add(item);
+          return items;
+        });
+  }
+
+  /** Find all the items that have any of the property values provided */
+  public Set<T> find(Stream<K> keys) {
+    final var result = new HashSet<T>();
+    keys.forEach(
+        key -> {
+          final var items = index.get(key);
+          if (items != null) {
+            result.addAll(items);
+          }
+        });
+    return result;
+  }
+
+  /** Change the property value associated with an item */
+  public void move(K oldKey, K newKey, T item) {
+    if (!oldKey.equals(newKey)) {
+      add(newKey, item);
+      remove(oldKey, item);
+    }
+  }
+
+  /** Remove the association between an item and a property value */
+  public void remove(K key, T item) {
+    index.computeIfPresent(
+        key,
+        (k, items) -> {
+          items.remove(item);
+          return items.isEmpty() ? null : items;
+        });
+  }
+
+  /** The number of property values that have items */
+  int size() {
+    return index.size();
+  }
+}
@@ -0,0 +1,65 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index from a timestamp to the items associated with that time
+ *
+ * <p>Like {@link PropertyIndex}, this is only meant to narrow down a search, so it may contain
+ * extra items.
+ *
+ * @param <T> the type of the items being indexed
+ */
+final class TimeIndex<T> {
+  private final TreeMap<Long, Set<T>> index = new TreeMap<>();
+
+  /** Associate an item with a time */
+  public synchronized void add(Instant time, T item) {
+    index.computeIfAbsent(time.toEpochMilli(), k -> new HashSet<>()).add(item);
+  }
+
+  /**
+   * Find all items with times in a range
+   *
+   * @param start the inclusive start of the range, or unbounded if empty
+   * @param end the inclusive end of the range, or unbounded if empty
+   */
+  public synchronized Set<T> find(Optional<Instant> start, Optional<Instant> end) {
+    final var startMillis = start.map(Instant::toEpochMilli).orElse(Long.MIN_VALUE);
+    final var endMillis = end.map(Instant::toEpochMilli).orElse(Long.MAX_VALUE);
+    final var result = new HashSet<T>();
+    if (startMillis <= endMillis) {
+      index.subMap(startMillis, true, endMillis, true).values().forEach(result::addAll);
+    }
+    return result;
+  }
+
+  /** Get the most recent time associated with any item, if there are any items */
+  public synchronized Optional<Instant> latest() {
+    return index.isEmpty() ? Optional.empty() : Optional.of(Instant.ofEpochMilli(index.lastKey()));
+  }
+
+  /** Change the time associated with an item */
+  public synchronized void move(Instant oldTime, Instant newTime, T item) {
+    if (!oldTime.equals(newTime)) {
+      add(newTime, item);
+      remove(oldTime, item);
+    }
+  }
+
+  /** Remove the association between an item and a time */
+  public synchronized void remove(Instant time, T item) {
+    final var key = time.toEpochMilli();
+    final var items = index.get(key);
+    if (items != null) {
+      items.remove(item);
+      if (items.isEmpty()) {
+        index.remove(key);
+      }
+    }
+  }
+}
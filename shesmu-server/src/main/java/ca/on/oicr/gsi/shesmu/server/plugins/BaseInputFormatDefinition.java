@@ -21,7 +21,7 @@ import ca.on.oicr.gsi.shesmu.plugin.input.JsonInputSource;
 import ca.on.oicr.gsi.shesmu.plugin.input.TimeFormat;
 import ca.on.oicr.gsi.shesmu.plugin.json.JsonPluginFile;
 import ca.on.oicr.gsi.shesmu.plugin.json.PackStreaming;
-import ca.on.oicr.gsi.shesmu.plugin.json.UnpackJson;
+import ca.on.oicr.gsi.shesmu.plugin.json.UnpackStreaming;
 import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
 import ca.on.oicr.gsi.shesmu.plugin.types.ImyhatConsumer;
 import ca.on.oicr.gsi.shesmu.runtime.RuntimeSupport;
@@ -31,9 +31,7 @@ import ca.on.oicr.gsi.status.SectionRenderer;
 import ca.on.oicr.gsi.status.TableRowWriter;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.CallSite;
@@ -54,6 +52,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -124,17 +123,7 @@ public abstract class BaseInputFormatDefinition implements InputFormatDefinition
               try (final InputStream input = source.fetch(key);
                   final JsonParser parser =
                       RuntimeSupport.MAPPER.getFactory().createParser(input)) {
-                final List<Object> results = new ArrayList<>();
-                if (parser.nextToken() != JsonToken.START_ARRAY) {
-                  throw new IllegalStateException("Expected an array");
-                }
-                while (parser.nextToken() != JsonToken.END_ARRAY) {
-                  results.add(readJson(RuntimeSupport.MAPPER.readTree(parser)));
-                }
-                if (parser.nextToken() != null) {
-                  throw new IllegalStateException("Junk at end of JSON document");
-                }
-                return results.stream();
+                return readJsonArray(parser).stream();
               }
             }
 
@@ -168,17 +157,7 @@ public abstract class BaseInputFormatDefinition implements InputFormatDefinition
               try (final InputStream input = source.fetch();
                   final JsonParser parser =
                       RuntimeSupport.MAPPER.getFactory().createParser(input)) {
-                final List<Object> results = new ArrayList<>();
-                if (parser.nextToken() != JsonToken.START_ARRAY) {
-                  throw new IllegalStateException("Expected an array");
-                }
-                while (parser.nextToken() != JsonToken.END_ARRAY) {
-                  results.add(readJson(RuntimeSupport.MAPPER.readTree(parser)));
-                }
-                if (parser.nextToken() != null) {
-                  throw new IllegalStateException("Junk at end of JSON document");
-                }
-                return results.stream();
+                return readJsonArray(parser).stream();
               }
             }
           };
@@ -214,10 +193,6 @@ public abstract class BaseInputFormatDefinition implements InputFormatDefinition
     public void read() {
       // Exciting! Don't care.
     }
-
-    public Object read(ObjectNode node) {
-      return type.apply(new UnpackJson(node.get(name), timeFormat));
-    }
   }
 
   private class LocalJsonFile implements WatchedFileListener {
@@ -236,12 +211,9 @@ public abstract class BaseInputFormatDefinition implements InputFormatDefinition
             @Override
             protected Optional<List<Object>> fetch(Instant lastUpdated) throws Exception {
               dirty = false;
-              try {
-                List<Object> result =
-                    Stream.of(
-                            RuntimeSupport.MAPPER.readValue(fileName.toFile(), ObjectNode[].class))
-                        .map(BaseInputFormatDefinition.this::readJson)
-                        .collect(Collectors.toList());
+              try (final var parser =
+                  RuntimeSupport.MAPPER.getFactory().createParser(fileName.toFile())) {
+                final var result = readJsonArray(parser);
                 JsonPluginFile.GOOD_JSON.labels(fileName.toString()).set(1);
                 return Optional.of(result);
               } catch (Exception e) {
@@ -318,17 +290,7 @@ public abstract class BaseInputFormatDefinition implements InputFormatDefinition
                 url, name, response.statusCode());
             return new ErrorableStream<>(Stream.empty(), false);
           }
-          final List<Object> results = new ArrayList<>();
-          if (parser.nextToken() != JsonToken.START_ARRAY) {
-            throw new IllegalStateException("Expected an array");
-          }
-          while (parser.nextToken() != JsonToken.END_ARRAY) {
-            results.add(readJson(RuntimeSupport.MAPPER.readTree(parser)));
-          }
-          if (parser.nextToken() != null) {
-            throw new IllegalStateException("Junk at end of JSON document");
-          }
-          return results.stream();
+          return readJsonArray(parser).stream();
         }
       }
     }
@@ -452,6 +414,8 @@ public abstract class BaseInputFormatDefinition implements InputFormatDefinition
   private final List<GangDefinition> gangs;
   private final AutoUpdatingDirectory<LocalJsonFile> local;
   private final String name;
+  private final Map<String, Integer> readerIndices = new HashMap<>();
+  private final List<UnpackStreaming.Reader> readers;
   private final AutoUpdatingDirectory<RemoteJsonSource> remotes;
   private final List<InputVariableDefinition> variables;
 
@@ -510,6 +474,15 @@ public abstract class BaseInputFormatDefinition implements InputFormatDefinition
                                     .handle()
                                     .asType(MethodType.methodType(Object.class, Object.class))))))
             .toList();
+    // Similarly, we need a thing to read a field using the streaming Jackson interface directly
+    // into the tuple, so we never have to build a JSON tree for each record
+    readers =
+        variables.stream()
+            .map(variable -> variable.type().apply(new UnpackStreaming(variable.timeFormat())))
+            .toList();
+    for (var i = 0; i < variables.size(); i++) {
+      readerIndices.put(variables.get(i).name(), i);
+    }
     for (final InputVariableDefinition variable : variables) {
       INPUT_VARIABLES_REGISTRY.put(
           new Pair<>(name, variable.name()), new ConstantCallSite(variable.handle()));
@@ -562,18 +535,46 @@ public abstract class BaseInputFormatDefinition implements InputFormatDefinition
     return name;
   }
 
-  private Tuple readJson(ObjectNode node) {
-    final Object[] values = new Object[variables.size()];
-    for (int i = 0; i < values.length; i++) {
-      values[i] = variables.get(i).read(node);
+  private Tuple readJson(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      throw new IllegalStateException("Expected an object");
+    }
+    final var values = new Object[readers.size()];
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final var index = readerIndices.get(parser.currentName());
+      parser.nextToken();
+      if (index == null) {
+        parser.skipChildren();
+      } else {
+        values[index] = readers.get(index).read(parser);
+      }
+    }
+    for (var i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        values[i] = readers.get(i).missing();
+      }
     }
     return new Tuple(values);
   }
 
-  public List<Object> readJsonString(String data) throws JsonProcessingException {
-    return Stream.of(RuntimeSupport.MAPPER.readValue(data, ObjectNode[].class))
-        .map(this::readJson)
-        .collect(Collectors.toList());
+  private List<Object> readJsonArray(JsonParser parser) throws IOException {
+    final List<Object> results = new ArrayList<>();
+    if (parser.nextToken() != JsonToken.START_ARRAY) {
+      throw new IllegalStateException("Expected an array");
+    }
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      results.add(readJson(parser));
+    }
+    if (parser.nextToken() != null) {
+      throw new IllegalStateException("Junk at end of JSON document");
+    }
+    return results;
+  }
+
+  public List<Object> readJsonString(String data) throws IOException {
+    try (final var parser = RuntimeSupport.MAPPER.getFactory().createParser(data)) {
+      return readJsonArray(parser);
+    }
   }
 
   private final Stream<Object> variables(boolean readStale) {
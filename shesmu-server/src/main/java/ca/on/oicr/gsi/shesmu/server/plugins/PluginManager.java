@@ -75,6 +75,7 @@ import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -465,21 +466,25 @@ public final class PluginManager
       @Override
       public void clearActions() {
         actions.clear();
+        definitionVersion.incrementAndGet();
       }
 
       @Override
       public void clearConstants() {
         constants.clear();
+        definitionVersion.incrementAndGet();
       }
 
       @Override
       public void clearFunctions() {
         functions.clear();
+        definitionVersion.incrementAndGet();
       }
 
       @Override
       public void clearRefillers() {
         refillers.clear();
+        definitionVersion.incrementAndGet();
       }
 
       @Override
@@ -529,6 +534,7 @@ public final class PluginManager
                     parameters.map(p -> new InvokeDynamicActionParameterDescriptor(name, p)),
                     InvokeDynamicActionParameterDescriptor.findActionDefinitionsByAnnotation(
                         clazz, fileFormat.lookup()))));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -545,6 +551,7 @@ public final class PluginManager
                 type,
                 description,
                 instance.fileName()));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -562,6 +569,7 @@ public final class PluginManager
                 type.type(),
                 description,
                 instance.fileName()));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -582,6 +590,7 @@ public final class PluginManager
                 returnType.type(),
                 description,
                 instance.fileName()));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -600,6 +609,7 @@ public final class PluginManager
                 type,
                 description,
                 instance.fileName()));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -619,6 +629,7 @@ public final class PluginManager
                 MH_SUPPLIER_GET.bindTo(signer),
                 returnType.type(),
                 instance.fileName()));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -644,6 +655,7 @@ public final class PluginManager
             name,
             new ArbitraryFunctionDefinition(
                 qualifiedName, description, instance.fileName(), handle, returnType, parameters));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -673,6 +685,7 @@ public final class PluginManager
                 handle,
                 returnType.type(),
                 new FunctionParameter(parameterDescription, parameterType.type())));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -757,6 +770,7 @@ public final class PluginManager
                 return returnType.type();
               }
             });
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -780,6 +794,7 @@ public final class PluginManager
                         InvokeDynamicRefillerParameterDescriptor
                             .findRefillerDefinitionsByAnnotation(info.type(), fileFormat.lookup()))
                     .collect(Collectors.toList())));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -809,6 +824,7 @@ public final class PluginManager
                 MH_SUPPLIER_GET.bindTo(signer),
                 returnType.type(),
                 instance.fileName()));
+        definitionVersion.incrementAndGet();
         return qualifiedName;
       }
 
@@ -997,6 +1013,7 @@ public final class PluginManager
               fileWatcher,
               fileFormat.extension(),
               p -> wrappers.computeIfAbsent(p, x -> new WeakReference<>(new FileWrapper(x))).get());
+      configuration.subscribe(definitionVersion::incrementAndGet);
     }
 
     public final Stream<ActionDefinition> actions() {
@@ -1742,9 +1759,13 @@ public final class PluginManager
           .forEach(writeSource);
     }
 
-    public void pushAlerts(String alertJson) {
-      fileFormat.pushAlerts(alertJson);
-      configuration.stream().forEach(f -> f.instance.pushAlerts(alertJson));
+    public boolean pushAlertChanges(String changedAlertJson, Supplier<String> allAlertJson) {
+      // Every file must be sent the alerts, even if an earlier one fails
+      var ok = fileFormat.pushAlertChanges(changedAlertJson, allAlertJson);
+      for (final var file : configuration.stream().toList()) {
+        ok &= file.instance.pushAlertChanges(changedAlertJson, allAlertJson);
+      }
+      return ok;
     }
 
     public Stream<RefillerDefinition> refillers() {
@@ -1952,6 +1973,8 @@ public final class PluginManager
   }
 
   private final ThreadLocal<Boolean> LOG_REENTRANT_CHECK = ThreadLocal.withInitial(() -> false);
+  // Goes up every time a plugin adds or removes a definition
+  private final AtomicLong definitionVersion = new AtomicLong();
   private final FileWatcher fileWatcher;
   private final List<FormatTypeWrapper<?, ?>> formatTypes;
 
@@ -1982,6 +2005,15 @@ public final class PluginManager
     return formatTypes.size();
   }
 
+  /**
+   * Get a counter that changes whenever the definitions provided by plugins might have changed
+   *
+   * <p>This can be used to check if information derived from the definitions is out of date.
+   */
+  public long definitionVersion() {
+    return definitionVersion.get();
+  }
+
   private FormatTypeWrapper<?, ?> create(PluginFileType<?> pluginFileType) {
     PLUGIN_HASHES.add(pluginFileType);
     return new FormatTypeWrapper<>(pluginFileType);
@@ -2101,10 +2133,20 @@ public final class PluginManager
     return Stream.empty();
   }
 
-  public void pushAlerts(String alertJson) {
+  /**
+   * Send alerts to every plugin
+   *
+   * @param changedAlertJson the alerts that have changed since the last confirmed push
+   * @param allAlertJson all the alerts that are firing, for plugins that don't take changes
+   * @return true if every plugin confirmed it has received these alerts and all the alerts sent
+   *     before
+   */
+  public boolean pushAlertChanges(String changedAlertJson, Supplier<String> allAlertJson) {
+    var ok = true;
     for (var type : formatTypes) {
-      type.pushAlerts(alertJson);
+      ok &= type.pushAlertChanges(changedAlertJson, allAlertJson);
     }
+    return ok;
   }
 
   @Override
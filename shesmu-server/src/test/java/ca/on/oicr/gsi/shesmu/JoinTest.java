@@ -0,0 +1,87 @@
+package ca.on.oicr.gsi.shesmu;
+
+import ca.on.oicr.gsi.shesmu.runtime.JoinIndex;
+import ca.on.oicr.gsi.shesmu.runtime.RuntimeSupport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class JoinTest {
+  private static JoinIndex<Integer, String> index() {
+    return JoinIndex.of(Stream.of("a1", "b2", "c1", "d3"), s -> s.charAt(1) - '0');
+  }
+
+  @Test
+  public void joinStreamsOuter() {
+    final var consumed = new AtomicInteger();
+    final var results =
+        RuntimeSupport.join(
+                Stream.iterate(1, i -> i + 1).peek(i -> consumed.incrementAndGet()),
+                index(),
+                Function.identity(),
+                (i, s) -> i + s)
+            .limit(3)
+            .collect(Collectors.toList());
+    Assertions.assertEquals(List.of("1a1", "1c1", "2b2"), results);
+    Assertions.assertEquals(2, consumed.get(), "The outer input must not be read ahead");
+  }
+
+  @Test
+  public void joinIntersectionOnce() {
+    final JoinIndex<String, String> inner =
+        JoinIndex.ofIntersection(
+            Stream.of("ab", "bc", "xy"),
+            s -> s.chars().mapToObj(c -> String.valueOf((char) c)).collect(Collectors.toSet()));
+    Assertions.assertEquals(
+        List.of("abc:ab", "abc:bc"),
+        RuntimeSupport.joinIntersection(
+                Stream.of(Set.of("a", "b", "c")),
+                inner,
+                Function.identity(),
+                (keys, s) -> keys.stream().sorted().collect(Collectors.joining()) + ":" + s)
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void leftJoinUnmatched() {
+    final var results =
+        RuntimeSupport.<Integer, String, Integer, String, List<String>>leftJoin(
+                Stream.of(1, 4),
+                index(),
+                Function.identity(),
+                (i, s) -> s,
+                s -> new ArrayList<>(),
+                (output, s) -> output.add(s))
+            .collect(Collectors.toList());
+    Assertions.assertEquals(List.of(List.of("a1", "c1"), List.of()), results);
+  }
+
+  @Test
+  public void nullKeysRejected() {
+    Assertions.assertThrows(
+        NullPointerException.class,
+        () ->
+            RuntimeSupport.join(Stream.of(1, 2), index(), i -> i == 2 ? null : i, (i, s) -> s)
+                .collect(Collectors.toList()));
+    Assertions.assertThrows(
+        NullPointerException.class,
+        () ->
+            RuntimeSupport.<Integer, String, Integer, String, List<String>>leftJoin(
+                    Stream.of(1, 2),
+                    index(),
+                    i -> i == 2 ? null : i,
+                    (i, s) -> s,
+                    s -> new ArrayList<>(),
+                    (output, s) -> output.add(s))
+                .collect(Collectors.toList()));
+    Assertions.assertThrows(
+        NullPointerException.class,
+        () -> JoinIndex.of(Stream.of("a1", "b"), s -> s.length() == 2 ? 1 : null));
+  }
+}
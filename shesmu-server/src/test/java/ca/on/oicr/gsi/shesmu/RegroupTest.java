@@ -0,0 +1,62 @@
+package ca.on.oicr.gsi.shesmu;
+
+import ca.on.oicr.gsi.shesmu.runtime.RuntimeSupport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RegroupTest {
+  private static final class Bucket {
+    private final long key;
+    private final List<Long> values = new ArrayList<>();
+
+    private Bucket(long key) {
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Bucket other && key == other.key;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(key);
+    }
+  }
+
+  private static void check(long size) {
+    final var results =
+        RuntimeSupport.<Long, Bucket>regroup(
+                LongStream.range(0, size).boxed(),
+                i -> i % 7 == 3 ? null : new Bucket(i % 1000),
+                (bucket, i) -> bucket.values.add(i))
+            .collect(Collectors.toList());
+    Assertions.assertEquals(1000, results.size());
+    var total = 0L;
+    for (final var bucket : results) {
+      var previous = -1L;
+      for (final var value : bucket.values) {
+        Assertions.assertEquals(bucket.key, value % 1000);
+        Assertions.assertNotEquals(3, value % 7);
+        Assertions.assertTrue(previous < value, "Rows must be grouped in input order");
+        previous = value;
+      }
+      total += bucket.values.size();
+    }
+    Assertions.assertEquals(LongStream.range(0, size).filter(i -> i % 7 != 3).count(), total);
+  }
+
+  @Test
+  public void regroupLarge() {
+    check(500_000);
+  }
+
+  @Test
+  public void regroupSmall() {
+    check(5_000);
+  }
+}
@@ -38,6 +38,11 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -54,16 +59,16 @@ import org.objectweb.asm.commons.Method;
 public class RunTest {
   private static class ActionChecker implements OliveServices {
 
-    private int bad;
-    private int good;
+    private final AtomicInteger bad = new AtomicInteger();
+    private final AtomicInteger good = new AtomicInteger();
 
     @Override
     public boolean accept(
         Action action, String filename, int line, int column, String hash, String[] tags) {
       if (action.perform(null, Duration.ZERO, true) == ActionState.SUCCEEDED) {
-        good++;
+        good.incrementAndGet();
       } else {
-        bad++;
+        bad.incrementAndGet();
       }
       return false;
     }
@@ -79,9 +84,9 @@ public class RunTest {
         String hash) {
       if (IntStream.range(0, labels.length / 2)
           .anyMatch(i -> labels[i * 2].equals("value") && labels[i * 2 + 1].equals("true"))) {
-        good++;
+        good.incrementAndGet();
       } else {
-        bad++;
+        bad.incrementAndGet();
       }
       return true;
     }
@@ -89,20 +94,20 @@ public class RunTest {
     @Override
     public Dumper findDumper(String name, String[] columns, Imyhat... types) {
       if (columns.length != types.length) {
-        bad++;
+        bad.incrementAndGet();
       }
       // We assume this test is bad unless it cleans up the dumper, as is required by that API.
-      bad++;
+      bad.incrementAndGet();
       return new Dumper() {
         @Override
         public void stop() {
-          bad--;
+          bad.decrementAndGet();
         }
 
         @Override
         public void write(Object... values) {
           if (values.length != types.length) {
-            bad++;
+            bad.incrementAndGet();
           }
         }
       };
@@ -128,7 +133,13 @@ public class RunTest {
     }
 
     public boolean ok() {
-      return bad == 0 && good > 0;
+      return bad.get() == 0 && good.get() > 0;
+    }
+
+    @Override
+    public void measureSharing(
+        String filename, int line, int column, String hash, long recordsSaved) {
+      // Don't care
     }
 
     @Override
@@ -148,7 +159,7 @@ public class RunTest {
   }
 
   private static class InputProviderChecker implements InputProvider {
-    private final Set<String> usedFormats = new HashSet<>();
+    private final Set<String> usedFormats = ConcurrentHashMap.newKeySet();
 
     public Stream<Object> fetch(String format) {
       usedFormats.add(format);
@@ -230,6 +241,7 @@ public class RunTest {
   }
 
   private static final Type A_OK_ACTION_TYPE = Type.getType(OkAction.class);
+  private static final int PARALLEL_THREADS = 4;
   private static final List<ConstantDefinition> CONSTANTS =
       List.of(ConstantDefinition.of("project_constant", "the_foo_study", "Testing constant"));
   private static final InnerTestValue[] INNER_TEST_DATA =
@@ -366,7 +378,7 @@ public class RunTest {
               A_OK_ACTION_TYPE, new Method("<init>", Type.VOID_TYPE, new Type[] {}));
         }
       };
-  public static final ThreadLocal<Boolean> REFILL_OKAY = new ThreadLocal<>();
+  public static final AtomicBoolean REFILL_OKAY = new AtomicBoolean();
   static final TestValue[] TEST_DATA =
       new TestValue[] {
         new TestValue(
@@ -418,20 +430,35 @@ public class RunTest {
   @Test
   public void testData() throws IOException {
     System.err.println("Testing data-handling code");
+    testAll(null);
+  }
+
+  @Test
+  public void testDataParallel() throws IOException {
+    System.err.println("Testing data-handling code with parallel olives");
+    final ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_THREADS);
+    try {
+      testAll(executor);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void testAll(ExecutorService executor) throws IOException {
     try (var files = Files.walk(Paths.get(this.getClass().getResource("/run").getPath()), 1)) {
       Assertions.assertTrue(
           files
                   .filter(Files::isRegularFile)
                   .filter(f -> f.getFileName().toString().endsWith(".shesmu"))
                   .sorted(Comparator.comparing(Path::getFileName))
-                  .filter(this::testFile)
+                  .filter(file -> testFile(file, executor))
                   .count()
               == 0,
           "Sample program failed to run!");
     }
   }
 
-  private boolean testFile(Path file) {
+  private boolean testFile(Path file, ExecutorService executor) {
     final var dashboard = new AtomicReference<FileTable>();
     try {
       final var compiler =
@@ -572,6 +599,7 @@ public class RunTest {
                   importVerifier -> {})
               .orElse(ActionGenerator.NULL);
       compiler.errors().forEach(System.err::println);
+      generator.workExecutor(executor, PARALLEL_THREADS, true);
       final var checker = new ActionChecker();
       final var input = new InputProviderChecker();
       REFILL_OKAY.set(false);
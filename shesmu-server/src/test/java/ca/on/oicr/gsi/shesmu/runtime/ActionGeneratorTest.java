@@ -0,0 +1,104 @@
+package ca.on.oicr.gsi.shesmu.runtime;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ActionGeneratorTest {
+  /** A script whose olives record that they started and one of them may fail */
+  private static final class TestGenerator extends ActionGenerator {
+    private final int count;
+    private final int failing;
+    private final Set<Integer> started = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    private TestGenerator(int count, int failing) {
+      this.count = count;
+      this.failing = failing;
+    }
+
+    @Override
+    public Stream<String> inputs() {
+      return Stream.empty();
+    }
+
+    @Override
+    public Lookup lookup() {
+      return MethodHandles.lookup();
+    }
+
+    @Override
+    public void run(OliveServices consumer, InputProvider input) {
+      runOlives(consumer, input, count);
+    }
+
+    @Override
+    protected void runOlive(int index, OliveServices consumer, InputProvider input) {
+      started.add(index);
+      threads.add(Thread.currentThread());
+      if (index == failing) {
+        throw new IllegalStateException("Olive failed");
+      }
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public int timeout() {
+      return 1;
+    }
+  }
+
+  private static final int THREADS = 4;
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void start() {
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterEach
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testParallel() {
+    final var generator = new TestGenerator(20, -1);
+    generator.workExecutor(executor, THREADS, true);
+    generator.run(null, null);
+    Assertions.assertEquals(20, generator.started.size());
+    Assertions.assertTrue(generator.threads.size() > 1, "Olives should run concurrently");
+  }
+
+  @Test
+  public void testParallelFailure() {
+    final var generator = new TestGenerator(20, 0);
+    generator.workExecutor(executor, THREADS, true);
+    final var error =
+        Assertions.assertThrows(IllegalStateException.class, () -> generator.run(null, null));
+    Assertions.assertEquals("Olive failed", error.getMessage());
+    // Only the olives that had already been claimed when the first one failed can have started
+    Assertions.assertTrue(generator.started.size() <= THREADS, "Olives started after a failure");
+  }
+
+  @Test
+  public void testSerialFailure() {
+    final var generator = new TestGenerator(5, 2);
+    generator.workExecutor(executor, THREADS, false);
+    Assertions.assertThrows(IllegalStateException.class, () -> generator.run(null, null));
+    Assertions.assertEquals(Set.of(0, 1, 2), generator.started);
+    Assertions.assertEquals(Set.of(Thread.currentThread()), generator.threads);
+  }
+}
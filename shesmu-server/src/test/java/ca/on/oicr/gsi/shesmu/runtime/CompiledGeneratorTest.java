@@ -0,0 +1,148 @@
+package ca.on.oicr.gsi.shesmu.runtime;
+
+import io.prometheus.client.CollectorRegistry;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CompiledGeneratorTest {
+  /** A script that needs some input formats and records the data it was started with */
+  private static final class TestScript {
+    private final CompletableFuture<Map<String, List<Object>>> dispatched =
+        new CompletableFuture<>();
+    private final List<String> formats;
+
+    private TestScript(String... formats) {
+      this.formats = List.of(formats);
+    }
+
+    private void dispatch(InputProvider cache) {
+      Assertions.assertTrue(
+          dispatched.complete(
+              formats.stream()
+                  .collect(
+                      Collectors.toMap(format -> format, format -> cache.fetch(format).toList()))),
+          "Script was started more than once");
+    }
+  }
+
+  private static Double readyTime(String format) {
+    return CollectorRegistry.defaultRegistry.getSampleValue(
+        "shesmu_input_ready_time", new String[] {"format"}, new String[] {format});
+  }
+
+  private ExecutorService executor;
+
+  private CompletableFuture<Map<String, List<Object>>> prefetch(
+      Map<String, Optional<List<Object>>> results,
+      Map<String, CountDownLatch> holds,
+      String[] formats,
+      TestScript... scripts) {
+    return CompletableFuture.supplyAsync(
+        () ->
+            CompiledGenerator.prefetch(
+                Stream.of(formats),
+                format -> {
+                  final var hold = holds.get(format);
+                  if (hold != null) {
+                    try {
+                      Assertions.assertTrue(hold.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                      throw new RuntimeException(e);
+                    }
+                  }
+                  return results.get(format);
+                },
+                executor,
+                List.of(scripts),
+                script -> script.formats.stream(),
+                TestScript::dispatch),
+        executor);
+  }
+
+  @BeforeEach
+  public void start() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testFailedFetch() throws InterruptedException, ExecutionException, TimeoutException {
+    final var working = new TestScript("test_prefetch_ok");
+    final var failed = new TestScript("test_prefetch_ok", "test_prefetch_failed");
+    final var unfetched = new TestScript("test_prefetch_skipped");
+    final var data =
+        prefetch(
+                Map.of(
+                    "test_prefetch_ok",
+                    Optional.of(List.of("a")),
+                    "test_prefetch_failed",
+                    Optional.empty()),
+                Map.of(),
+                new String[] {"test_prefetch_ok", "test_prefetch_failed"},
+                working,
+                failed,
+                unfetched)
+            .get(10, TimeUnit.SECONDS);
+    Assertions.assertEquals(Map.of("test_prefetch_ok", List.of("a")), data);
+    Assertions.assertEquals(Map.of("test_prefetch_ok", List.of("a")), working.dispatched.get());
+    // Scripts that need a format that failed or wasn't fetched at all are not started
+    Assertions.assertFalse(failed.dispatched.isDone());
+    Assertions.assertFalse(unfetched.dispatched.isDone());
+    Assertions.assertNotNull(readyTime("test_prefetch_ok"));
+    Assertions.assertNull(readyTime("test_prefetch_failed"));
+  }
+
+  @Test
+  public void testScriptsStartWhenInputsReady()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    final var hold = new CountDownLatch(1);
+    final var fast = new TestScript("test_prefetch_fast");
+    final var slow = new TestScript("test_prefetch_fast", "test_prefetch_slow");
+    final var round =
+        prefetch(
+            Map.of(
+                "test_prefetch_fast",
+                Optional.of(List.of(1L, 2L)),
+                "test_prefetch_slow",
+                Optional.of(List.of(3L))),
+            Map.of("test_prefetch_slow", hold),
+            new String[] {"test_prefetch_fast", "test_prefetch_slow"},
+            fast,
+            slow);
+    // A slow format only holds back the scripts that use it
+    Assertions.assertEquals(
+        Map.of("test_prefetch_fast", List.of(1L, 2L)), fast.dispatched.get(10, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    Assertions.assertFalse(slow.dispatched.isDone());
+    Assertions.assertFalse(round.isDone(), "Round finished before every script was started");
+
+    hold.countDown();
+    round.get(10, TimeUnit.SECONDS);
+    // Once the round is over, every script that can run has been started
+    Assertions.assertTrue(slow.dispatched.isDone());
+    Assertions.assertEquals(
+        Map.of("test_prefetch_fast", List.of(1L, 2L), "test_prefetch_slow", List.of(3L)),
+        slow.dispatched.get());
+    // The slow format was ready only after it was released
+    Assertions.assertTrue(readyTime("test_prefetch_slow") >= 0.1);
+    Assertions.assertTrue(readyTime("test_prefetch_fast") < readyTime("test_prefetch_slow"));
+  }
+}
@@ -0,0 +1,175 @@
+package ca.on.oicr.gsi.shesmu.runtime;
+
+import ca.on.oicr.gsi.shesmu.plugin.action.Action;
+import ca.on.oicr.gsi.shesmu.plugin.dumper.Dumper;
+import ca.on.oicr.gsi.shesmu.plugin.types.Imyhat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class OutputReuseTest {
+  /** Collects the alerts sent to the action processor */
+  private static final class AlertRecorder implements OliveServices {
+    private final List<String> alerts = new ArrayList<>();
+
+    @Override
+    public boolean accept(
+        Action action, String filename, int line, int column, String hash, String[] tags) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean accept(
+        String[] labels,
+        String[] annotation,
+        long ttl,
+        String filename,
+        int line,
+        int column,
+        String hash) {
+      alerts.add(String.join("=", labels));
+      return false;
+    }
+
+    @Override
+    public Dumper findDumper(String name, String[] columns, Imyhat... types) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isOverloaded(String... services) {
+      return false;
+    }
+
+    @Override
+    public <T> Stream<T> measureFlow(
+        Stream<T> input,
+        String filename,
+        int line,
+        int column,
+        String hash,
+        String oliveFile,
+        int oliveLine,
+        int oliveColumn,
+        String oliveHash) {
+      return input;
+    }
+
+    @Override
+    public void measureSharing(
+        String filename, int line, int column, String hash, long recordsSaved) {
+      // Don't care
+    }
+
+    @Override
+    public void oliveRuntime(String filename, int line, int column, long timeInNs) {
+      // Don't care
+    }
+  }
+
+  private static final Map<String, Long> FIRST = Map.of("test", 1L);
+  private static final Map<String, Long> SECOND = Map.of("test", 2L);
+  private int failures;
+  private int runs;
+
+  private List<String> run(OutputReuse reuse, Map<String, Long> versions) {
+    final var recorder = new AlertRecorder();
+    reuse.run(
+        recorder,
+        "test.shesmu",
+        versions,
+        services -> {
+          runs++;
+          try {
+            services.accept(
+                new String[] {"run", Integer.toString(runs)},
+                new String[0],
+                60,
+                "test.shesmu",
+                1,
+                1,
+                "hash");
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+          if (failures > 0) {
+            failures--;
+            throw new IllegalStateException("Olive failed");
+          }
+        });
+    return recorder.alerts;
+  }
+
+  @Test
+  public void testDisabled() {
+    final var reuse = new OutputReuse(0);
+    Assertions.assertEquals(List.of("run=1"), run(reuse, FIRST));
+    Assertions.assertEquals(List.of("run=2"), run(reuse, FIRST));
+    Assertions.assertEquals(0, reuse.skippedRuns());
+  }
+
+  @Test
+  public void testFailureDropsOutput() {
+    final var reuse = new OutputReuse(5);
+    Assertions.assertEquals(List.of("run=1"), run(reuse, FIRST));
+    failures = 1;
+    // The partial output of a failed run is still sent, but must not be reused
+    Assertions.assertEquals(List.of("run=2"), run(reuse, SECOND));
+    Assertions.assertEquals(List.of("run=3"), run(reuse, SECOND));
+    Assertions.assertEquals(List.of("run=3"), run(reuse, SECOND));
+    failures = 1;
+    Assertions.assertEquals(List.of("run=4"), run(reuse, FIRST));
+    Assertions.assertEquals(List.of("run=5"), run(reuse, FIRST));
+  }
+
+  @Test
+  public void testRecompileDropsOutput() {
+    final var reuse = new OutputReuse(5);
+    Assertions.assertEquals(List.of("run=1"), run(reuse, FIRST));
+    reuse.clear();
+    Assertions.assertEquals(List.of("run=2"), run(reuse, FIRST));
+    Assertions.assertEquals(List.of("run=2"), run(reuse, FIRST));
+  }
+
+  @Test
+  public void testSkipLimit() {
+    final var reuse = new OutputReuse(2);
+    Assertions.assertEquals(List.of("run=1"), run(reuse, FIRST));
+    Assertions.assertEquals(List.of("run=1"), run(reuse, FIRST));
+    Assertions.assertEquals(1, reuse.skippedRuns());
+    Assertions.assertEquals(List.of("run=1"), run(reuse, FIRST));
+    Assertions.assertEquals(2, reuse.skippedRuns());
+    // The limit has been reached, so the olives must run even though the input is unchanged
+    Assertions.assertEquals(List.of("run=2"), run(reuse, FIRST));
+    Assertions.assertEquals(0, reuse.skippedRuns());
+    Assertions.assertEquals(2, runs);
+  }
+
+  @Test
+  public void testVersionChange() {
+    final var reuse = new OutputReuse(5);
+    Assertions.assertEquals(List.of("run=1"), run(reuse, FIRST));
+    Assertions.assertEquals(List.of("run=2"), run(reuse, SECOND));
+    Assertions.assertEquals(List.of("run=2"), run(reuse, SECOND));
+    // Going back to older data is still a change from the last run
+    Assertions.assertEquals(List.of("run=3"), run(reuse, FIRST));
+  }
+
+  @Test
+  public void testInputIdentity() {
+    final var first = new String("a");
+    final var second = new String("b");
+    final var identity = OutputReuse.InputIdentity.of(List.of(first, second));
+    // The same records from a cache are unchanged, even in a new list
+    Assertions.assertEquals(
+        identity, OutputReuse.InputIdentity.of(new ArrayList<>(List.of(first, second))));
+    // Records that were fetched again are changed, even if they are equal
+    Assertions.assertNotEquals(
+        identity, OutputReuse.InputIdentity.of(List.of(new String("a"), second)));
+    Assertions.assertNotEquals(identity, OutputReuse.InputIdentity.of(List.of(second, first)));
+    Assertions.assertNotEquals(identity, OutputReuse.InputIdentity.of(List.of(first)));
+  }
+}
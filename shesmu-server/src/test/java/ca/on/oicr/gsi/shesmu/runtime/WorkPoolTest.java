@@ -0,0 +1,151 @@
+package ca.on.oicr.gsi.shesmu.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class WorkPoolTest {
+  private static final class Bucket {
+    private final long key;
+    private final List<Long> values = new ArrayList<>();
+
+    private Bucket(long key) {
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Bucket other && key == other.key;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(key);
+    }
+  }
+
+  private static final int THREADS = 4;
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void start() {
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterEach
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testBusyPool() throws InterruptedException {
+    // Occupy every thread in the pool; the caller must still be able to do all the work
+    final var release = new CountDownLatch(1);
+    for (var i = 0; i < THREADS; i++) {
+      executor.execute(
+          () -> {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+    }
+    final var pool = new WorkPool(executor, THREADS);
+    final var done = new AtomicInteger();
+    pool.run(10, i -> done.incrementAndGet());
+    release.countDown();
+    Assertions.assertEquals(10, done.get());
+  }
+
+  @Test
+  public void testFailure() {
+    final var pool = new WorkPool(executor, 1);
+    final var started = new AtomicInteger();
+    final var error =
+        Assertions.assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                pool.run(
+                    10,
+                    i -> {
+                      started.incrementAndGet();
+                      if (i == 2) {
+                        throw new IllegalArgumentException("Olive failed");
+                      }
+                    }));
+    Assertions.assertEquals("Olive failed", error.getMessage());
+    Assertions.assertEquals(3, started.get(), "No tasks should start after one fails");
+  }
+
+  @Test
+  public void testGroupOnPool() {
+    final var size = 500_000L;
+    final var pool = new WorkPool(executor, THREADS);
+    final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    final List<Bucket> results = new ArrayList<>();
+    pool.within(
+        () ->
+            results.addAll(
+                RuntimeSupport.<Long, Bucket>regroup(
+                        LongStream.range(0, size).boxed(),
+                        i -> {
+                          threads.add(Thread.currentThread());
+                          return i % 7 == 3 ? null : new Bucket(i % 1000);
+                        },
+                        (bucket, i) -> bucket.values.add(i))
+                    .collect(Collectors.toList())));
+    Assertions.assertTrue(threads.size() > 1, "Grouping should be split across the pool");
+    Assertions.assertTrue(
+        threads.stream()
+            .allMatch(
+                thread ->
+                    thread == Thread.currentThread()
+                        || !thread.getName().startsWith("ForkJoinPool")),
+        "Grouping must not use the common pool");
+    Assertions.assertEquals(1000, results.size());
+    var total = 0L;
+    for (final var bucket : results) {
+      var previous = -1L;
+      for (final var value : bucket.values) {
+        Assertions.assertEquals(bucket.key, value % 1000);
+        Assertions.assertNotEquals(3, value % 7);
+        Assertions.assertTrue(previous < value, "Rows must be grouped in input order");
+        previous = value;
+      }
+      total += bucket.values.size();
+    }
+    Assertions.assertEquals(LongStream.range(0, size).filter(i -> i % 7 != 3).count(), total);
+  }
+
+  @Test
+  public void testGroupWithoutPoolStreams() {
+    // With no pool to share the work, each row should be grouped as it is read rather than
+    // collecting the whole input first
+    final List<String> events = new ArrayList<>();
+    final var results =
+        RuntimeSupport.<Long, Bucket>regroup(
+                LongStream.range(0, 4).boxed().peek(i -> events.add("read " + i)),
+                i -> {
+                  events.add("key " + i);
+                  return new Bucket(i % 2);
+                },
+                (bucket, i) -> bucket.values.add(i))
+            .collect(Collectors.toList());
+    Assertions.assertEquals(2, results.size());
+    Assertions.assertEquals(
+        List.of("read 0", "key 0", "read 1", "key 1", "read 2", "key 2", "read 3", "key 3"),
+        events);
+  }
+}
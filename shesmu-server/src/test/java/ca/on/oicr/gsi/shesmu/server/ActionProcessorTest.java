@@ -0,0 +1,566 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import ca.on.oicr.gsi.shesmu.plugin.FrontEndIcon;
+import ca.on.oicr.gsi.shesmu.plugin.SourceLocation;
+import ca.on.oicr.gsi.shesmu.plugin.SourceLocation.SourceLocationLinker;
+import ca.on.oicr.gsi.shesmu.plugin.action.Action;
+import ca.on.oicr.gsi.shesmu.plugin.action.ActionCommand;
+import ca.on.oicr.gsi.shesmu.plugin.action.ActionServices;
+import ca.on.oicr.gsi.shesmu.plugin.action.ActionState;
+import ca.on.oicr.gsi.shesmu.plugin.filter.SourceOliveLocation;
+import ca.on.oicr.gsi.shesmu.server.ActionProcessor.Filter;
+import ca.on.oicr.gsi.shesmu.server.ActionStateStore.StoredAction;
+import ca.on.oicr.gsi.shesmu.server.ActionStateStore.StoredLocation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.prometheus.client.CollectorRegistry;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ActionProcessorTest {
+  /** An action that counts how many times it has been performed */
+  private static final class TestAction extends Action {
+    private static final ActionCommand<TestAction> PURGE =
+        new ActionCommand<>(TestAction.class, "TEST-PURGE", FrontEndIcon.TRASH, "Purge") {
+          @Override
+          protected Response execute(TestAction action, Optional<String> user) {
+            return Response.PURGE;
+          }
+        };
+    private static final ActionCommand<TestAction> RESET =
+        new ActionCommand<>(TestAction.class, "TEST-RESET", FrontEndIcon.ARROW_CLOCKWISE, "Reset") {
+          @Override
+          protected Response execute(TestAction action, Optional<String> user) {
+            return Response.RESET;
+          }
+        };
+    private volatile Set<String> actionTags = Set.of();
+    private final String name;
+    private final AtomicInteger performed = new AtomicInteger();
+    private volatile ActionState result = ActionState.QUEUED;
+    private final OptionalInt size;
+
+    private TestAction(String name) {
+      this(name, OptionalInt.empty());
+    }
+
+    private TestAction(String name, OptionalInt size) {
+      this("test", name, size);
+    }
+
+    private TestAction(String type, String name, OptionalInt size) {
+      super(type);
+      this.name = name;
+      this.size = size;
+    }
+
+    @Override
+    public Stream<ActionCommand<?>> commands() {
+      return Stream.of(PURGE, RESET);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof TestAction action && name.equals(action.name);
+    }
+
+    @Override
+    public void generateUUID(Consumer<byte[]> digest) {
+      digest.accept(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode();
+    }
+
+    @Override
+    public ActionState perform(
+        ActionServices services, Duration lastGeneratedByOlive, boolean isOliveLive) {
+      performed.incrementAndGet();
+      return result;
+    }
+
+    @Override
+    public int priority() {
+      return 0;
+    }
+
+    @Override
+    public long retryMinutes() {
+      return 10;
+    }
+
+    @Override
+    public boolean search(Pattern query) {
+      return query.matcher(name).matches();
+    }
+
+    @Override
+    public OptionalInt sortKey(String key) {
+      return key.equals("size") ? size : OptionalInt.empty();
+    }
+
+    @Override
+    public Stream<String> sortKeys() {
+      return Stream.of("size");
+    }
+
+    @Override
+    public Stream<String> tags() {
+      return actionTags.stream();
+    }
+
+    @Override
+    public ObjectNode toJson(ObjectMapper mapper) {
+      final var node = mapper.createObjectNode();
+      node.put("name", name);
+      return node;
+    }
+  }
+
+  private static final SourceLocation LOCATION = new SourceLocation("test.shesmu", 1, 2, "hash");
+
+  private static void accept(ActionProcessor processor, TestAction action, String... tags) {
+    processor.accept(
+        action, LOCATION.fileName(), LOCATION.line(), LOCATION.column(), LOCATION.hash(), tags);
+  }
+
+  private static void command(ActionProcessor processor, String command, Filter... filters) {
+    processor.command(null, location -> true, command, Optional.empty(), filters);
+  }
+
+  /** Find the identifier the action processor will assign to an action */
+  private static String id(TestAction action) {
+    final var processor = processor(Optional.empty());
+    accept(processor, action);
+    return json(processor).get(0).get("actionId").asText();
+  }
+
+  private static List<String> tags(ObjectNode action) {
+    return StreamSupport.stream(action.get("tags").spliterator(), false)
+        .map(JsonNode::asText)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  private static Double transitionTime(String type, String state) {
+    return CollectorRegistry.defaultRegistry.getSampleValue(
+        "shesmu_action_oldest_time", new String[] {"state", "type"}, new String[] {state, type});
+  }
+
+  /** Create a location at line 1, column 2 or, if no hash is provided, anywhere in a file */
+  private static SourceOliveLocation location(String file, String hash) {
+    final var location = new SourceOliveLocation();
+    location.setFile(file);
+    if (hash != null) {
+      location.setLine(1);
+      location.setColumn(2);
+      location.setHash(hash);
+    }
+    return location;
+  }
+
+  private static List<String> page(
+      ActionProcessor processor,
+      Optional<String> sortKey,
+      long skip,
+      long limit,
+      Filter... filters) {
+    return processor.stream(SourceLocationLinker.EMPTY, sortKey, key -> {}, skip, limit, filters)
+        .map(action -> action.get("name").asText())
+        .collect(Collectors.toList());
+  }
+
+  private static List<ObjectNode> json(ActionProcessor processor, Filter... filters) {
+    return processor.stream(
+            SourceLocationLinker.EMPTY, Optional.empty(), key -> {}, 0, 1000, filters)
+        .collect(Collectors.toList());
+  }
+
+  private static ActionProcessor processor(Optional<ActionStateStore> store) {
+    return new ActionProcessor(URI.create("http://localhost/"), null, null, store);
+  }
+
+  /** Run a round of checks and wait for all the actions that were due to be performed */
+  private static void round(ActionProcessor processor, Instant now) throws InterruptedException {
+    processor.update(location -> true, now);
+    final var deadline = Instant.now().plusSeconds(10);
+    while (json(processor).stream().anyMatch(a -> a.get("updateInProgress").asBoolean())) {
+      Assertions.assertTrue(Instant.now().isBefore(deadline), "Actions were never performed");
+      Thread.sleep(10);
+    }
+  }
+
+  @TempDir Path directory;
+
+  private Filter ids(ActionProcessor processor, String... ids) {
+    return processor.filterBuilder(location -> true).ids(List.of(ids));
+  }
+
+  private Path log() {
+    return directory.resolve("actions.jsonl");
+  }
+
+  @Test
+  public void testConcurrentAccept() throws InterruptedException, ExecutionException {
+    final var processor = processor(Optional.empty());
+    final var type = "test_concurrent";
+    final var threads = 8;
+    final var count = 200;
+    final var executor = Executors.newFixedThreadPool(threads);
+    final var start = new CountDownLatch(1);
+    try {
+      final var created = new ArrayList<Future<Integer>>();
+      for (var t = 0; t < threads; t++) {
+        final var thread = t;
+        created.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  var fresh = 0;
+                  for (var i = 0; i < count; i++) {
+                    if (!processor.accept(
+                        new TestAction(type, "a" + i, OptionalInt.empty()),
+                        "thread" + thread + ".shesmu",
+                        1,
+                        1,
+                        "hash",
+                        new String[] {"tag" + thread})) {
+                      fresh++;
+                    }
+                  }
+                  return fresh;
+                }));
+      }
+      start.countDown();
+      var fresh = 0;
+      for (final var future : created) {
+        fresh += future.get();
+      }
+      // Every action must be created by exactly one thread and be a duplicate for all the others
+      Assertions.assertEquals(count, fresh);
+    } finally {
+      executor.shutdownNow();
+    }
+    final var filters = processor.filterBuilder(location -> true);
+    Assertions.assertEquals(count, processor.count(filters.type(Stream.of(type))));
+    Assertions.assertEquals(
+        (double) count,
+        CollectorRegistry.defaultRegistry.getSampleValue(
+            "shesmu_action_state_count",
+            new String[] {"state", "type"},
+            new String[] {"UNKNOWN", type}));
+    final var allTags =
+        IntStream.range(0, threads).mapToObj(t -> "tag" + t).sorted().collect(Collectors.toList());
+    for (final var action : json(processor, filters.type(Stream.of(type)))) {
+      // Locations and tags from every thread are merged into the one action
+      Assertions.assertEquals(threads, action.get("locations").size());
+      Assertions.assertEquals(allTags, tags(action));
+      Assertions.assertTrue(action.get("lastAdded").asLong() >= action.get("created").asLong());
+    }
+    for (var t = 0; t < threads; t++) {
+      Assertions.assertEquals(count, processor.count(filters.tags(Stream.of("tag" + t))));
+      Assertions.assertEquals(
+          count, processor.count(filters.fromFile(Stream.of("thread" + t + ".shesmu"))));
+    }
+  }
+
+  @Test
+  public void testDuplicateUpdatesLastAdded() throws InterruptedException {
+    final var processor = processor(Optional.empty());
+    Assertions.assertFalse(
+        processor.accept(new TestAction("a"), "first.shesmu", 1, 1, "hash", new String[] {"x"}));
+    final var first = json(processor).get(0);
+    Thread.sleep(5);
+    Assertions.assertTrue(
+        processor.accept(new TestAction("a"), "second.shesmu", 1, 1, "hash", new String[] {"y"}));
+    final var second = json(processor).get(0);
+    Assertions.assertTrue(second.get("lastAdded").asLong() > first.get("lastAdded").asLong());
+    Assertions.assertEquals(first.get("created"), second.get("created"));
+    Assertions.assertEquals(2, second.get("locations").size());
+    Assertions.assertEquals(List.of("x", "y"), tags(second));
+  }
+
+  @Test
+  public void testCheckedWhenDue() throws InterruptedException {
+    final var processor = processor(Optional.empty());
+    final var action = new TestAction("a");
+    accept(processor, action);
+    final var now = Instant.now();
+    round(processor, now);
+    Assertions.assertEquals(1, action.performed.get());
+    // Accepting it again must not put it back in the queue
+    accept(processor, new TestAction("a"));
+    round(processor, now);
+    Assertions.assertEquals(1, action.performed.get());
+    round(processor, now.plus(11, ChronoUnit.MINUTES));
+    Assertions.assertEquals(2, action.performed.get());
+  }
+
+  @Test
+  public void testFinishedRescheduledOnReset() throws InterruptedException {
+    final var processor = processor(Optional.empty());
+    final var action = new TestAction("a");
+    action.result = ActionState.SUCCEEDED;
+    accept(processor, action);
+    final var later = Instant.now().plus(11, ChronoUnit.MINUTES);
+    round(processor, later);
+    round(processor, later);
+    Assertions.assertEquals(1, action.performed.get());
+    command(processor, "TEST-RESET");
+    // Resetting an action more than once must not queue it more than once
+    command(processor, "TEST-RESET");
+    round(processor, later);
+    Assertions.assertEquals(2, action.performed.get());
+    round(processor, later);
+    Assertions.assertEquals(2, action.performed.get());
+  }
+
+  @Test
+  public void testNewestTransitionGauge() throws InterruptedException {
+    final var type = "test_transition";
+    final var processor = processor(Optional.empty());
+    final var action = new TestAction(type, "a", OptionalInt.empty());
+    action.result = ActionState.SUCCEEDED;
+    accept(processor, action);
+    final var now = Instant.now();
+    round(processor, now);
+    // The metric is updated at the end of a round, so it only sees the transition in the next one
+    round(processor, now);
+    final var transition = json(processor).get(0).get("lastStatusChange").asLong();
+    Assertions.assertEquals(
+        (double) Instant.ofEpochMilli(transition).getEpochSecond(),
+        transitionTime(type, "SUCCEEDED"));
+    Assertions.assertNull(transitionTime(type, "UNKNOWN"));
+
+    command(
+        processor, "TEST-PURGE", processor.filterBuilder(location -> true).type(Stream.of(type)));
+    round(processor, now);
+    Assertions.assertNull(transitionTime(type, "SUCCEEDED"));
+  }
+
+  @Test
+  public void testPurgedNotChecked() throws InterruptedException {
+    final var processor = processor(Optional.empty());
+    final var purged = new TestAction("a");
+    accept(processor, purged);
+    command(processor, "TEST-PURGE");
+    final var replacement = new TestAction("a");
+    accept(processor, replacement);
+    round(processor, Instant.now());
+    Assertions.assertEquals(0, purged.performed.get());
+    Assertions.assertEquals(1, replacement.performed.get());
+  }
+
+  @Test
+  public void testRestoredFinishedCheckedOnce() throws IOException, InterruptedException {
+    final var store = new ActionStateStore(log());
+    store.write(
+        new StoredAction(
+            id(new TestAction("a")),
+            ActionState.SUCCEEDED,
+            5000,
+            1000,
+            3000,
+            List.of(),
+            List.of()));
+    final var processor = processor(Optional.of(new ActionStateStore(log())));
+    final var action = new TestAction("a");
+    action.result = ActionState.SUCCEEDED;
+    accept(processor, action);
+    final var later = Instant.now().plus(11, ChronoUnit.MINUTES);
+    round(processor, later);
+    Assertions.assertEquals(1, action.performed.get());
+    round(processor, later);
+    Assertions.assertEquals(1, action.performed.get());
+  }
+
+  @Test
+  public void testIndexUpkeep() throws InterruptedException {
+    final var processor = processor(Optional.empty());
+    final var filters = processor.filterBuilder(location -> true);
+    final var action = new TestAction("a");
+    action.actionTags = Set.of("plugin");
+    accept(processor, action, "olive");
+    accept(processor, new TestAction("b"), "olive");
+    final var id = id(new TestAction("a"));
+    Assertions.assertEquals(1, processor.count(filters.ids(List.of(id))));
+    Assertions.assertEquals(2, processor.count(filters.tags(Stream.of("olive"))));
+    Assertions.assertEquals(1, processor.count(filters.tags(Stream.of("plugin"))));
+    Assertions.assertEquals(2, processor.count(filters.isState(Stream.of(ActionState.UNKNOWN))));
+
+    // Performing changes the state, check time and the tags the action provides
+    final var before = Instant.now();
+    action.actionTags = Set.of("changed");
+    round(processor, before);
+    Assertions.assertEquals(2, processor.count(filters.isState(Stream.of(ActionState.QUEUED))));
+    Assertions.assertEquals(0, processor.count(filters.isState(Stream.of(ActionState.UNKNOWN))));
+    Assertions.assertEquals(
+        2, processor.count(filters.checked(Optional.of(before), Optional.empty())));
+    Assertions.assertEquals(
+        2, processor.count(filters.statusChanged(Optional.of(before), Optional.empty())));
+    Assertions.assertEquals(0, processor.count(filters.tags(Stream.of("plugin"))));
+    Assertions.assertEquals(1, processor.count(filters.tags(Stream.of("changed"))));
+
+    // Purging removes the action from every index
+    command(processor, "TEST-PURGE", filters.ids(List.of(id)));
+    Assertions.assertEquals(0, processor.count(filters.ids(List.of(id))));
+    Assertions.assertEquals(1, processor.count(filters.tags(Stream.of("olive"))));
+    Assertions.assertEquals(0, processor.count(filters.tags(Stream.of("changed"))));
+    Assertions.assertEquals(1, processor.count(filters.isState(Stream.of(ActionState.QUEUED))));
+    Assertions.assertEquals(1, processor.count(filters.type(Stream.of("test"))));
+    Assertions.assertEquals(1, processor.count(filters.fromFile(Stream.of(LOCATION.fileName()))));
+    Assertions.assertEquals(
+        1, processor.count(filters.created(Optional.empty(), Optional.empty())));
+
+    // The same action produced again is indexed from scratch
+    accept(processor, new TestAction("a"));
+    Assertions.assertEquals(1, processor.count(filters.ids(List.of(id))));
+    Assertions.assertEquals(1, processor.count(filters.isState(Stream.of(ActionState.UNKNOWN))));
+    Assertions.assertEquals(1, processor.count(filters.tags(Stream.of("olive"))));
+  }
+
+  @Test
+  public void testFromSourceLocation() {
+    final var processor = processor(Optional.empty());
+    final var filters = processor.filterBuilder(location -> true);
+    processor.accept(new TestAction("a"), "one.shesmu", 1, 2, "hash", new String[0]);
+    processor.accept(new TestAction("b"), "one.shesmu", 3, 4, "hash", new String[0]);
+    processor.accept(new TestAction("c"), "two.shesmu", 1, 2, "hash", new String[0]);
+    Assertions.assertEquals(
+        2, processor.count(filters.fromSourceLocation(Stream.of(location("one.shesmu", null)))));
+    Assertions.assertEquals(
+        1, processor.count(filters.fromSourceLocation(Stream.of(location("one.shesmu", "hash")))));
+    Assertions.assertEquals(
+        0, processor.count(filters.fromSourceLocation(Stream.of(location("one.shesmu", "old")))));
+    Assertions.assertEquals(
+        2,
+        processor.count(
+            filters.fromSourceLocation(
+                Stream.of(location("one.shesmu", "hash"), location("two.shesmu", "hash")))));
+    Assertions.assertEquals(
+        0, processor.count(filters.fromSourceLocation(Stream.of(new SourceOliveLocation()))));
+  }
+
+  @Test
+  public void testPageMatchesFullSort() {
+    final var processor = processor(Optional.empty());
+    for (var i = 0; i < 200; i++) {
+      // Many actions share a sort key and some have none, so ties must be broken consistently
+      accept(
+          processor,
+          new TestAction(
+              String.format("a%03d", i), i % 11 == 0 ? OptionalInt.empty() : OptionalInt.of(i % 7)),
+          i % 3 == 0 ? "third" : "other");
+    }
+    final var third = processor.filterBuilder(location -> true).tags(Stream.of("third"));
+    for (final var sortKey : List.of(Optional.<String>empty(), Optional.of("size"))) {
+      for (final var filters : List.of(new Filter[0], new Filter[] {third})) {
+        // A page that ends past the largest int is sorted in full
+        final var all = page(processor, sortKey, 0, Long.MAX_VALUE, filters);
+        Assertions.assertEquals(filters.length == 0 ? 200 : 67, all.size());
+        for (final var skip : new long[] {0, 1, 5, 37, 66, 199, 250}) {
+          for (final var limit : new long[] {0, 1, 10, 100, 500}) {
+            Assertions.assertEquals(
+                all.subList(
+                    (int) Math.min(skip, all.size()), (int) Math.min(skip + limit, all.size())),
+                page(processor, sortKey, skip, limit, filters),
+                String.format("Page at %d of %d sorted by %s", skip, limit, sortKey));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPurgeWritesTombstone() throws IOException {
+    final var processor = processor(Optional.of(new ActionStateStore(log())));
+    accept(processor, new TestAction("a"), "old");
+    command(processor, "TEST-RESET");
+    final var id = json(processor).get(0).get("actionId").asText();
+    command(processor, "TEST-PURGE");
+    Assertions.assertEquals(List.of(), json(processor));
+
+    final var restarted = processor(Optional.of(new ActionStateStore(log())));
+    accept(restarted, new TestAction("a"));
+    final var actions = json(restarted, ids(restarted, id));
+    Assertions.assertEquals(1, actions.size());
+    // A purged action starts fresh when an olive produces it again
+    Assertions.assertEquals(List.of(), tags(actions.get(0)));
+  }
+
+  @Test
+  public void testResetWritesRecord() throws IOException {
+    final var processor = processor(Optional.of(new ActionStateStore(log())));
+    accept(processor, new TestAction("a"), "before");
+    command(processor, "TEST-RESET");
+    final var id = json(processor).get(0).get("actionId").asText();
+
+    final var restored = new ActionStateStore(log()).restore(id);
+    Assertions.assertTrue(restored.isPresent());
+    Assertions.assertEquals(ActionState.UNKNOWN, restored.get().state());
+    Assertions.assertEquals(List.of("before"), restored.get().tags());
+    Assertions.assertEquals(List.of(StoredLocation.of(LOCATION)), restored.get().locations());
+  }
+
+  @Test
+  public void testRestore() throws IOException {
+    final var id = id(new TestAction("a"));
+    final var store = new ActionStateStore(log());
+    store.write(
+        new StoredAction(
+            id,
+            ActionState.SUCCEEDED,
+            5000,
+            1000,
+            3000,
+            List.of("stored"),
+            List.of(new StoredLocation("old.shesmu", 3, 4, "old"))));
+    final var processor = processor(Optional.of(new ActionStateStore(log())));
+    accept(processor, new TestAction("a"), "new");
+    accept(processor, new TestAction("b"));
+
+    final var restored = json(processor, ids(processor, id));
+    Assertions.assertEquals(1, restored.size());
+    final var action = restored.get(0);
+    Assertions.assertEquals("SUCCEEDED", action.get("state").asText());
+    Assertions.assertEquals(5000, action.get("lastChecked").asLong());
+    Assertions.assertEquals(1000, action.get("created").asLong());
+    Assertions.assertEquals(3000, action.get("lastStatusChange").asLong());
+    Assertions.assertEquals(List.of("new", "stored"), tags(action));
+    Assertions.assertEquals(2, action.get("locations").size());
+    // The restored state must be searchable through the indices too
+    final var filters = processor.filterBuilder(location -> true);
+    Assertions.assertEquals(1, processor.count(filters.isState(Stream.of(ActionState.SUCCEEDED))));
+    Assertions.assertEquals(1, processor.count(filters.tags(Stream.of("stored"))));
+    Assertions.assertEquals(1, processor.count(filters.fromFile(Stream.of("old.shesmu"))));
+    // An action with no stored record starts fresh
+    Assertions.assertEquals(1, processor.count(filters.isState(Stream.of(ActionState.UNKNOWN))));
+  }
+}
@@ -0,0 +1,105 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import ca.on.oicr.gsi.shesmu.plugin.action.ActionState;
+import ca.on.oicr.gsi.shesmu.server.ActionStateStore.StoredAction;
+import ca.on.oicr.gsi.shesmu.server.ActionStateStore.StoredLocation;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ActionStateStoreTest {
+  private static StoredAction action(String id, ActionState state, long checked) {
+    return new StoredAction(
+        id,
+        state,
+        checked,
+        1000,
+        2000,
+        List.of("tag"),
+        List.of(new StoredLocation("test.shesmu", 1, 2, "hash")));
+  }
+
+  @TempDir Path directory;
+
+  private Path log() {
+    return directory.resolve("actions.jsonl");
+  }
+
+  @Test
+  public void testCompact() throws IOException {
+    final var store = new ActionStateStore(log());
+    store.write(action("a", ActionState.QUEUED, 1));
+    store.write(action("a", ActionState.SUCCEEDED, 2));
+    store.write(action("b", ActionState.FAILED, 3));
+    store.write(action("c", ActionState.FAILED, 4));
+    store.purge("c");
+    Assertions.assertEquals(5, Files.readAllLines(log()).size());
+
+    final var reloaded = new ActionStateStore(log());
+    Assertions.assertEquals(
+        Optional.of(action("a", ActionState.SUCCEEDED, 2)), reloaded.restore("a"));
+    // Only the live action and the records no olive has claimed yet are kept
+    reloaded.compact(Stream.of(action("a", ActionState.SUCCEEDED, 5)));
+    Assertions.assertEquals(2, Files.readAllLines(log()).size());
+    // The store can still be written to after compaction
+    reloaded.write(action("d", ActionState.QUEUED, 6));
+
+    final var compacted = new ActionStateStore(log());
+    Assertions.assertEquals(
+        Optional.of(action("a", ActionState.SUCCEEDED, 5)), compacted.restore("a"));
+    Assertions.assertEquals(
+        Optional.of(action("b", ActionState.FAILED, 3)), compacted.restore("b"));
+    Assertions.assertEquals(Optional.empty(), compacted.restore("c"));
+    Assertions.assertEquals(
+        Optional.of(action("d", ActionState.QUEUED, 6)), compacted.restore("d"));
+  }
+
+  @Test
+  public void testPartialRecord() throws IOException {
+    final var store = new ActionStateStore(log());
+    store.write(action("a", ActionState.FAILED, 1));
+    // Simulate a crash in the middle of writing a record
+    Files.writeString(
+        log(), "{\"id\":\"b\",\"sta", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    final var reloaded = new ActionStateStore(log());
+    Assertions.assertEquals(Optional.of(action("a", ActionState.FAILED, 1)), reloaded.restore("a"));
+    Assertions.assertEquals(Optional.empty(), reloaded.restore("b"));
+  }
+
+  @Test
+  public void testRestore() throws IOException {
+    final var store = new ActionStateStore(log());
+    store.write(action("a", ActionState.QUEUED, 1));
+    store.write(action("a", ActionState.FAILED, 2));
+    // Records written after start up are not available to restore until the next start up
+    Assertions.assertEquals(Optional.empty(), store.restore("a"));
+
+    final var reloaded = new ActionStateStore(log());
+    Assertions.assertEquals(Optional.of(action("a", ActionState.FAILED, 2)), reloaded.restore("a"));
+    // Each record can only be claimed once
+    Assertions.assertEquals(Optional.empty(), reloaded.restore("a"));
+  }
+
+  @Test
+  public void testTombstone() throws IOException {
+    final var store = new ActionStateStore(log());
+    store.write(action("a", ActionState.FAILED, 1));
+    store.purge("a");
+    store.write(action("b", ActionState.FAILED, 1));
+    store.purge("b");
+    store.write(action("b", ActionState.QUEUED, 2));
+
+    final var reloaded = new ActionStateStore(log());
+    Assertions.assertEquals(Optional.empty(), reloaded.restore("a"));
+    // An action produced again after being purged is live again
+    Assertions.assertEquals(Optional.of(action("b", ActionState.QUEUED, 2)), reloaded.restore("b"));
+  }
+}
@@ -0,0 +1,94 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import ca.on.oicr.gsi.shesmu.plugin.SourceLocation;
+import ca.on.oicr.gsi.shesmu.server.ActionProcessor.Alert;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.Function;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AlertStoreTest {
+  private static final SourceLocation LOCATION = new SourceLocation("test.shesmu", 1, 1, "x");
+
+  private static Alert create(Map<String, String> labels) {
+    final var alert = new Alert(labels.toString());
+    alert.setLabels(labels);
+    alert.setStartsAt(Instant.now());
+    return alert;
+  }
+
+  private static int push(AlertStore store, Instant horizon, boolean full) {
+    final var changes = store.changes(horizon, full, Function.identity());
+    changes.delivered();
+    return changes.alerts().size();
+  }
+
+  @Test
+  public void testUndeliveredResent() {
+    final var store = new AlertStore();
+    final var labels = Map.of("alertname", "Test");
+    final var horizon = Instant.now().plus(Duration.ofMinutes(10));
+    store.accept(labels, Map.of(), 3600, LOCATION, AlertStoreTest::create);
+    final var failed = store.changes(horizon, false, Function.identity());
+    Assertions.assertEquals(1, failed.alerts().size());
+    // The alert changes while the failed push is in flight
+    store.accept(labels, Map.of("summary", "Changed"), 3600, LOCATION, AlertStoreTest::create);
+    final var retry = store.changes(horizon, false, Function.identity());
+    Assertions.assertEquals(1, retry.alerts().size());
+    Assertions.assertEquals("Changed", retry.alerts().get(0).getAnnotations().get("summary"));
+    retry.delivered();
+    // A late confirmation of an older push must not undo a newer one
+    failed.delivered();
+    Assertions.assertEquals(0, push(store, horizon, false));
+  }
+
+  @Test
+  public void testChanges() {
+    final var store = new AlertStore();
+    final var labels = Map.of("alertname", "Test");
+    final var horizon = Instant.now().plus(Duration.ofMinutes(10));
+    store.accept(labels, Map.of(), 3600, LOCATION, AlertStoreTest::create);
+    Assertions.assertEquals(1, push(store, horizon, false));
+    store.accept(labels, Map.of(), 3600, LOCATION, AlertStoreTest::create);
+    Assertions.assertEquals(0, push(store, horizon, false));
+    store.accept(labels, Map.of("summary", "Changed"), 3600, LOCATION, AlertStoreTest::create);
+    Assertions.assertEquals(1, push(store, horizon, false));
+    Assertions.assertEquals(1, push(store, horizon, true));
+  }
+
+  @Test
+  public void testExtensionNearExpiry() {
+    final var store = new AlertStore();
+    final var labels = Map.of("alertname", "Test");
+    final var horizon = Instant.now().plus(Duration.ofMinutes(10));
+    store.accept(labels, Map.of(), 60, LOCATION, AlertStoreTest::create);
+    Assertions.assertEquals(1, push(store, horizon, false));
+    // Alertmanager would resolve this alert before the next push, so it must be sent again
+    store.accept(labels, Map.of(), 3600, LOCATION, AlertStoreTest::create);
+    Assertions.assertEquals(1, push(store, horizon, false));
+    Assertions.assertEquals(0, push(store, horizon, false));
+  }
+
+  @Test
+  public void testEvict() {
+    final var store = new AlertStore();
+    store.accept(Map.of("alertname", "Dead"), Map.of(), -60, LOCATION, AlertStoreTest::create);
+    store.accept(Map.of("alertname", "Live"), Map.of(), 3600, LOCATION, AlertStoreTest::create);
+    Assertions.assertEquals(1, store.live().count());
+    Assertions.assertEquals(1, store.evict(Instant.now()));
+    Assertions.assertEquals(1, store.size());
+    Assertions.assertTrue(store.get(Map.of("alertname", "Dead").toString()).isEmpty());
+    Assertions.assertEquals(
+        0,
+        store
+            .find(ActionProcessor.ALERT_FILTER_BUILDER.hasLabelValue("alertname", "Dead"))
+            .count());
+    Assertions.assertEquals(
+        1,
+        store
+            .find(ActionProcessor.ALERT_FILTER_BUILDER.hasLabelValue("alertname", "Live"))
+            .count());
+  }
+}
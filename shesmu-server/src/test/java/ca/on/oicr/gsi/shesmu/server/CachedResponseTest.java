@@ -0,0 +1,95 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CachedResponseTest {
+  private static final HttpClient CLIENT = HttpClient.newHttpClient();
+  private final AtomicInteger generated = new AtomicInteger();
+  private HttpServer server;
+  private final AtomicLong version = new AtomicLong();
+
+  private HttpResponse<byte[]> get(String... headers) throws Exception {
+    final var builder =
+        HttpRequest.newBuilder(
+            URI.create("http://localhost:" + server.getAddress().getPort() + "/test"));
+    if (headers.length > 0) {
+      builder.headers(headers);
+    }
+    return CLIENT.send(builder.GET().build(), BodyHandlers.ofByteArray());
+  }
+
+  @BeforeEach
+  public void start() throws Exception {
+    final var response =
+        new CachedResponse.Versioned(
+            "application/json",
+            version::get,
+            () ->
+                ("[" + "\"value\",".repeat(100) + generated.incrementAndGet() + "]")
+                    .getBytes(StandardCharsets.UTF_8));
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/test", response::send);
+    server.start();
+  }
+
+  @AfterEach
+  public void stop() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testCachedUntilVersionChanges() throws Exception {
+    final var first = get();
+    Assertions.assertEquals(200, first.statusCode());
+    final var etag = first.headers().firstValue("ETag").orElseThrow();
+    Assertions.assertEquals(etag, get().headers().firstValue("ETag").orElseThrow());
+    Assertions.assertEquals(1, generated.get());
+
+    version.incrementAndGet();
+    final var second = get();
+    Assertions.assertEquals(2, generated.get());
+    Assertions.assertNotEquals(etag, second.headers().firstValue("ETag").orElseThrow());
+    Assertions.assertNotEquals(
+        new String(first.body(), StandardCharsets.UTF_8),
+        new String(second.body(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testGzip() throws Exception {
+    final var plain = get();
+    final var compressed = get("Accept-Encoding", "gzip");
+    Assertions.assertEquals(
+        "gzip", compressed.headers().firstValue("Content-Encoding").orElseThrow());
+    Assertions.assertNotEquals(
+        plain.headers().firstValue("ETag"), compressed.headers().firstValue("ETag"));
+    try (var input = new GZIPInputStream(new ByteArrayInputStream(compressed.body()))) {
+      Assertions.assertArrayEquals(plain.body(), input.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testNotModified() throws Exception {
+    final var etag = get().headers().firstValue("ETag").orElseThrow();
+    final var revalidated = get("If-None-Match", etag);
+    Assertions.assertEquals(304, revalidated.statusCode());
+    Assertions.assertEquals(0, revalidated.body().length);
+
+    version.incrementAndGet();
+    Assertions.assertEquals(200, get("If-None-Match", etag).statusCode());
+  }
+}
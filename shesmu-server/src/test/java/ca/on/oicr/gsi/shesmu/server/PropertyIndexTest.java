@@ -0,0 +1,48 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import java.util.Set;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PropertyIndexTest {
+  @Test
+  public void testFind() {
+    final var index = new PropertyIndex<String, Integer>();
+    index.add("a", 1);
+    index.add("a", 2);
+    index.add("b", 2);
+    index.add("c", 3);
+    Assertions.assertEquals(Set.of(1, 2), index.find(Stream.of("a")));
+    Assertions.assertEquals(Set.of(1, 2, 3), index.find(Stream.of("a", "b", "c")));
+    Assertions.assertEquals(Set.of(), index.find(Stream.of("d")));
+    Assertions.assertEquals(Set.of(), index.find(Stream.empty()));
+  }
+
+  @Test
+  public void testMove() {
+    final var index = new PropertyIndex<String, Integer>();
+    index.add("a", 1);
+    index.move("a", "b", 1);
+    Assertions.assertEquals(Set.of(), index.find(Stream.of("a")));
+    Assertions.assertEquals(1, index.size());
+    Assertions.assertEquals(Set.of(1), index.find(Stream.of("b")));
+    // Moving to the same value must not remove the item
+    index.move("b", "b", 1);
+    Assertions.assertEquals(Set.of(1), index.find(Stream.of("b")));
+  }
+
+  @Test
+  public void testRemove() {
+    final var index = new PropertyIndex<String, Integer>();
+    index.add("a", 1);
+    index.add("a", 2);
+    index.remove("a", 1);
+    index.remove("b", 1);
+    Assertions.assertEquals(Set.of(2), index.find(Stream.of("a")));
+    index.remove("a", 2);
+    Assertions.assertEquals(Set.of(), index.find(Stream.of("a")));
+    // Values with no items left are dropped
+    Assertions.assertEquals(0, index.size());
+  }
+}
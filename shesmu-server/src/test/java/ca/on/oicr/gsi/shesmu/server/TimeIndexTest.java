@@ -0,0 +1,68 @@
+package ca.on.oicr.gsi.shesmu.server;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TimeIndexTest {
+  private static final Instant FIRST = Instant.ofEpochSecond(1000);
+  private static final Instant SECOND = Instant.ofEpochSecond(2000);
+  private static final Instant THIRD = Instant.ofEpochSecond(3000);
+
+  private static TimeIndex<Integer> index() {
+    final var index = new TimeIndex<Integer>();
+    index.add(FIRST, 1);
+    index.add(SECOND, 2);
+    index.add(SECOND, 3);
+    index.add(THIRD, 4);
+    return index;
+  }
+
+  @Test
+  public void testFind() {
+    final var index = index();
+    Assertions.assertEquals(Set.of(1, 2, 3, 4), index.find(Optional.empty(), Optional.empty()));
+    // Both ends of the range are included
+    Assertions.assertEquals(Set.of(1, 2, 3), index.find(Optional.of(FIRST), Optional.of(SECOND)));
+    Assertions.assertEquals(Set.of(2, 3, 4), index.find(Optional.of(SECOND), Optional.empty()));
+    Assertions.assertEquals(Set.of(1), index.find(Optional.empty(), Optional.of(FIRST)));
+    Assertions.assertEquals(
+        Set.of(), index.find(Optional.of(FIRST.plusMillis(1)), Optional.of(SECOND.minusMillis(1))));
+    // A reversed range is empty rather than an error
+    Assertions.assertEquals(Set.of(), index.find(Optional.of(THIRD), Optional.of(FIRST)));
+  }
+
+  @Test
+  public void testLatest() {
+    final var index = index();
+    Assertions.assertEquals(Optional.of(THIRD), index.latest());
+    index.remove(THIRD, 4);
+    Assertions.assertEquals(Optional.of(SECOND), index.latest());
+    index.remove(SECOND, 2);
+    Assertions.assertEquals(Optional.of(SECOND), index.latest());
+    index.remove(SECOND, 3);
+    index.remove(FIRST, 1);
+    Assertions.assertEquals(Optional.empty(), index.latest());
+  }
+
+  @Test
+  public void testMove() {
+    final var index = index();
+    index.move(SECOND, THIRD, 2);
+    Assertions.assertEquals(Set.of(3), index.find(Optional.of(SECOND), Optional.of(SECOND)));
+    Assertions.assertEquals(Set.of(2, 4), index.find(Optional.of(THIRD), Optional.of(THIRD)));
+    index.move(THIRD, THIRD, 2);
+    Assertions.assertEquals(Set.of(2, 4), index.find(Optional.of(THIRD), Optional.of(THIRD)));
+  }
+
+  @Test
+  public void testRemove() {
+    final var index = index();
+    index.remove(SECOND, 2);
+    index.remove(SECOND, 3);
+    index.remove(FIRST, 4);
+    Assertions.assertEquals(Set.of(1, 4), index.find(Optional.empty(), Optional.empty()));
+  }
+}